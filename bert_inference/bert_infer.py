@@ -39,39 +39,25 @@ def inference(dict_arrow, eqbi_arrow):
     print(eqbi_arrow)
     dict_df = dict_arrow.to_pandas()
     print(dict_df)
-    eqbi_df = eqbi_arrow.to_pandas()
-    print(eqbi_df)
     #print('Amount of pairs: ' + str(pairs_df.shape[0]))
     print('Amount of unique entries: ' + str(dict_df.shape[0]))
 
-    # Create lists to hold row, column, and value data
-    rows = []
-    columns = []
-    values = []
-    max_col = 0
+    # The blocks arrive in CSR form, the offsets of every block into the ids of its entities
+    blocks = eqbi_arrow.column('entities').combine_chunks()
+    offsets = blocks.offsets.to_numpy()
+    entities = blocks.flatten().to_numpy().astype(np.int64)
 
-    eqbi_df['values'] = eqbi_df['values'].apply(lambda x: [int(val) for val in x])
-
-    # Iterate over the DataFrame rows to populate row, column, and value lists
-    for index, row in eqbi_df.iterrows():
-        key = row['key']
-        key_index = index
-        for value in row['values']:
-            rows.append(key_index)
-            columns.append(value)
-            values.append(1)  # Assuming you want a value of 1 for each entry
-            max_col = max(max_col, value + 1)
-
-    # Convert lists to tensors
-    rows_t = torch.tensor(rows)
-    columns_t = torch.tensor(columns)
+    # One row per block, one column per entity
+    rows_t = torch.repeat_interleave(torch.arange(len(blocks)), torch.from_numpy(np.diff(offsets)))
+    columns_t = torch.from_numpy(entities)
 
     # Create the PyTorch sparse tensor using torch.sparse_coo_tensor
     indices_t = torch.stack((rows_t, columns_t))
-    values_t = torch.tensor(values, dtype=torch.float)  # Assuming values are float
+    values_t = torch.ones(len(entities), dtype=torch.float)
 
     # Get the number of rows for the sparse tensor size
-    num_rows = len(eqbi_df)
+    num_rows = len(blocks)
+    max_col = int(entities.max()) + 1 if len(entities) > 0 else 0
     size = (num_rows, max_col)
 
     # Create the sparse tensor
@@ -349,6 +335,34 @@ def inference(dict_arrow, eqbi_arrow):
 #     print(len(in_ground_truth))
 
     test_df = pd.DataFrame(sorted_indices_pairs, columns=['id1', 'id2'])
+    return classify(test_df, device)
+
+
+# Candidate pairs already pruned by the meta-blocking of the engine, in arrow format
+def inference_pairs(dict_arrow, pairs_arrow):
+
+    device = torch.device("cuda") if torch.cuda.is_available() else torch.device("cpu")
+
+    test_df = pairs_arrow.to_pandas()[['id1', 'id2']]
+    print('Amount of candidate pairs: ' + str(test_df.shape[0]))
+    print('Amount of unique entries: ' + str(dict_arrow.num_rows))
+    return classify(test_df, device)
+
+
+# Progressive matching classifies one batch of pairs per call, the model is loaded once
+_models = {}
+
+
+def load_model(device):
+    if device not in _models:
+        model = DistilBertForSequenceClassification.from_pretrained(MODEL_NAME, local_files_only=True)
+        tokenizer = DistilBertTokenizer.from_pretrained(TOKENIZER_NAME, local_files_only=True)
+        model.to(device)
+        _models[device] = (model, tokenizer)
+    return _models[device]
+
+
+def classify(test_df, device):
 
     test_df.to_csv("candidates.csv", index=False)
     # d_new = dict_df.set_index('id').T.to_dict('list')
@@ -378,11 +392,7 @@ def inference(dict_arrow, eqbi_arrow):
         # Execute the code block only if the model file exists
         test_df = test_df.dropna()
 
-        # Load the model and tokenizer
-        model = DistilBertForSequenceClassification.from_pretrained(MODEL_NAME, local_files_only=True)
-        tokenizer = DistilBertTokenizer.from_pretrained(TOKENIZER_NAME, local_files_only=True)
-
-        model.to(device)
+        model, tokenizer = load_model(device)
         pairs_df = test_df
 
         # Put dummy labels for now - they shouldn't be used since it's inference
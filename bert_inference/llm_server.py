@@ -1,7 +1,24 @@
 #from concurrent.futures.process import _threads_wakeups
+import pyarrow as pa
 import pyarrow.flight as flight
 from time import sleep
-from bert_infer import inference
+from bert_infer import inference, inference_pairs
+
+# matches streamed back by do_exchange
+RESULTS_SCHEMA = pa.schema([('id1', pa.uint32()), ('id2', pa.uint32())])
+
+
+def decoded_schema(schema):
+    """The schema with the dictionary encoded columns replaced by their values."""
+    return pa.schema([pa.field(field.name, field.type.value_type) if pa.types.is_dictionary(field.type) else field
+                      for field in schema])
+
+
+def decode_dictionaries(batch, schema):
+    columns = [column.dictionary_decode() if pa.types.is_dictionary(column.type) else column
+               for column in batch.columns]
+    return pa.RecordBatch.from_arrays(columns, schema=schema)
+
 
 class TinyServer(flight.FlightServerBase):
 
@@ -9,7 +26,6 @@ class TinyServer(flight.FlightServerBase):
                  host = '0.0.0.0', 
                  port = 5678):
         self.tables = {}
-        self.ready = False
         self.location = flight                  \
                         .Location               \
                         .for_grpc_tcp(host, port)
@@ -19,10 +35,35 @@ class TinyServer(flight.FlightServerBase):
                writer):
         table_name = descriptor.path[0].decode('utf-8')
         #print(table_name) 
-        self.tables[table_name] = reader.read_all()
+        # the engine streams bounded record batches, decoded as they arrive
+        schema = decoded_schema(reader.schema)
+        batches = [decode_dictionaries(chunk.data, schema) for chunk in reader]
+        self.tables[table_name] = pa.Table.from_batches(batches, schema)
         #print(self.tables[table_name])
 
 
+    def do_exchange(self, context, descriptor, reader, writer):
+        """Classifies the pairs, or the blocks, streamed by the engine and streams the matches back.
+
+        Pairs are classified batch by batch and the matches of a batch are sent as soon as it is
+        done. Blocks, sent in CSR form, are pruned together, so they are read whole first.
+        """
+        source = descriptor.path[0].decode('utf-8')
+        # the entities of the query are stored under a descriptor of its own, the second path element
+        dictionary = descriptor.path[1].decode('utf-8') if len(descriptor.path) > 1 else 'dict'
+        dict_arrow = self.tables[dictionary]
+        writer.begin(RESULTS_SCHEMA)
+        if source == 'pairs':
+            for chunk in reader:
+                self.send(writer, inference_pairs(dict_arrow, pa.Table.from_batches([chunk.data])))
+        else:
+            self.send(writer, inference(dict_arrow, reader.read_all()))
+
+    @staticmethod
+    def send(writer, output):
+        for batch in output.cast(RESULTS_SCHEMA).to_batches():
+            writer.write_batch(batch)
+
     def do_get(self, context, ticket):
         table_name = ticket.ticket.decode('utf-8')
         table = self.tables[table_name]
@@ -59,13 +100,8 @@ class TinyServer(flight.FlightServerBase):
         # Add flight.Result instances you want to return in this list
         results = []
         if action.type == 'drop_table':
-            table_name = action.body.to_pybytes()
-            del self.tables[table_name]
-        elif action.type == 'is_ready':
-            results = self.is_ready()
-        elif action.type == 'bert_inference':
-            results = self.bert_inference()
-            self.ready = True
+            table_name = action.body.to_pybytes().decode('utf-8')
+            self.tables.pop(table_name, None)
         elif action.type == 'shutdown':
             self.shutdown()
         else:
@@ -76,30 +112,8 @@ class TinyServer(flight.FlightServerBase):
 
     def list_actions(self, context):
         return [('drop_table', 'Drop table'),
-                ('is_ready', 'Responds yes if results are ready, no otherwise'),
                 ('shutdown', 'Shut down server'),]
 
-    def is_ready(self):
-        results = []
-        if(self.ready):
-            result = flight.Result("yes".encode('utf-8'))
-            results.append(result)
-        else:
-            result = flight.Result("no".encode('utf-8'))
-            results.append(result)
-        return results
-    
-    def bert_inference(self):
-        results = []
-       # pairs_arrow = self.tables['pairs']
-        dict_arrow = self.tables['dict']
-        eqbi_arrow = self.tables['eqbi']
-        print(self.tables['eqbi'])
-        output = inference(dict_arrow, eqbi_arrow)
-        self.tables['results'] = output
-        results.append(flight.Result("success".encode('utf-8')))
-        return results
-        
 
 if __name__=='__main__':
     server = TinyServer(port=5678)
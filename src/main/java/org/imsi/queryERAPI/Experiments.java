@@ -35,6 +35,7 @@ import org.imsi.queryEREngine.imsi.er.Utilities.BlockStatistics;
 import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
 import org.imsi.queryEREngine.imsi.er.Utilities.ExecuteBlockComparisons;
 import org.imsi.queryEREngine.imsi.er.Utilities.SerializationUtilities;
+import org.roaringbitmap.RoaringBitmap;
 
 import com.univocity.parsers.csv.CsvParser;
 import com.univocity.parsers.csv.CsvParserSettings;
@@ -325,7 +326,7 @@ public class Experiments {
 			} catch (Exception e1) {
 				e1.printStackTrace();
 			}
-			Set<Integer> qIds = DeduplicationExecution.qIds;
+			RoaringBitmap qIds = DeduplicationExecution.qIds;
 			List<Set<Integer>> inIdsSets = new ArrayList<>();
 			Set<Integer> currSet = null;
 			for (Integer value : qIds) {
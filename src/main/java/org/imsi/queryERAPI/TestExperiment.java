@@ -15,6 +15,7 @@ import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvEnumerator;
 import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvTranslatableTable;
 import org.imsi.queryEREngine.imsi.er.BlockIndex.BaseBlockIndex;
 import org.imsi.queryEREngine.imsi.er.BlockIndex.BlockIndexStatistic;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.MappedBlockIndex;
 import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -30,7 +31,7 @@ public class TestExperiment {
 		// Create Block index and store into data folder (only if not already created)
 
 		BaseBlockIndex blockIndex = new BaseBlockIndex();
-		if((!new File(dumpDirectories.getBlockIndexDirPath() + tableName + "InvertedIndex").exists())) {
+		if((!new File(dumpDirectories.getBlockIndexDirPath() + tableName + MappedBlockIndex.FILE_SUFFIX).exists())) {
 			System.out.println("Creating Block Index..");
 			AtomicBoolean ab = new AtomicBoolean();
 			ab.set(false);
@@ -6,7 +6,9 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.imsi.queryERAPI.util.PagedResult;
 import org.imsi.queryERAPI.util.ResultSetToJsonMapper;
 import org.imsi.queryEREngine.imsi.er.QueryEngine;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.BlockIndexLoader;
 import org.imsi.queryEREngine.imsi.er.BigVizUtilities.BigVizOutput;
+import org.imsi.queryEREngine.imsi.er.Utilities.ArrowMemory;
 import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
 import org.imsi.queryEREngine.imsi.er.Utilities.SerializationUtilities;
 import org.springframework.http.ResponseEntity;
@@ -53,6 +55,18 @@ public class QueryController {
 		
 	}
 	
+	@GetMapping("/ready")
+	public ResponseEntity<String> ready() throws JsonProcessingException {
+		ObjectMapper mapper = new ObjectMapper();
+		return ok(mapper.writeValueAsString(BlockIndexLoader.getReadiness()));
+	}
+
+	@GetMapping("/memory")
+	public ResponseEntity<String> memory() throws JsonProcessingException {
+		ObjectMapper mapper = new ObjectMapper();
+		return ok(mapper.writeValueAsString(ArrowMemory.getStatistics()));
+	}
+
 	@PostMapping("/columns")
 	public ResponseEntity<String> columns(@RequestParam(value = "d", required = true) String dataset) throws JsonProcessingException, SQLException  {
 		String q = "SELECT * FROM " + dataset + " LIMIT 3";
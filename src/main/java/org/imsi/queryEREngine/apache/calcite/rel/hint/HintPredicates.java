@@ -50,6 +50,11 @@ public abstract class HintPredicates {
 	public static final HintPredicate CALC =
 			new NodeTypeHintPredicate(NodeTypeHintPredicate.NodeType.CALC);
 
+	/** A hint predicate that indicates a hint can only be used to
+	 * {@link org.imsi.queryEREngine.imsi.calcite.rel.core.Deduplicate} nodes. */
+	public static final HintPredicate DEDUPLICATE =
+			new NodeTypeHintPredicate(NodeTypeHintPredicate.NodeType.DEDUPLICATE);
+
 	/**
 	 * Returns a composed hint predicate that represents a short-circuiting logical
 	 * AND of an array of hint predicates {@code hintPredicates}.  When evaluating the composed
@@ -22,6 +22,7 @@ import org.imsi.queryEREngine.apache.calcite.rel.core.Calc;
 import org.imsi.queryEREngine.apache.calcite.rel.core.Join;
 import org.imsi.queryEREngine.apache.calcite.rel.core.Project;
 import org.imsi.queryEREngine.apache.calcite.rel.core.TableScan;
+import org.imsi.queryEREngine.imsi.calcite.rel.core.Deduplicate;
 
 /**
  * A hint predicate that specifies which kind of relational
@@ -63,7 +64,12 @@ public class NodeTypeHintPredicate implements HintPredicate {
 		/**
 		 * The hint would be propagated to the Calc nodes.
 		 */
-		CALC(Calc.class);
+		CALC(Calc.class),
+
+		/**
+		 * The hint would be propagated to the Deduplicate nodes.
+		 */
+		DEDUPLICATE(Deduplicate.class);
 
 		/** Relational expression clazz that the hint can apply to. */
 		private Class<?> relClazz;
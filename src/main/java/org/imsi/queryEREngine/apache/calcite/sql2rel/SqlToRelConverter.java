@@ -202,6 +202,7 @@ import org.imsi.queryEREngine.apache.calcite.util.Util;
 import org.imsi.queryEREngine.apache.calcite.util.trace.CalciteTrace;
 import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvFieldType;
 import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvTableScan;
+import org.imsi.queryEREngine.imsi.calcite.rel.core.DeduplicationHints;
 import org.imsi.queryEREngine.imsi.calcite.rel.logical.LogicalDeduplicate;
 import org.imsi.queryEREngine.imsi.calcite.rel.logical.LogicalDeduplicateJoin;
 import org.imsi.queryEREngine.imsi.calcite.rel.logical.LogicalMergeEntities;
@@ -2485,8 +2486,11 @@ public class SqlToRelConverter {
 		      tableName.add(dumpDirectories.getBlockIndexDirPath() + table.getQualifiedName().get(1) + "InvertedIndex");
 		      Prepare.PreparingTable preparingTable = this.catalogReader.getTable(tableName);
 		      RelNode newRoot = LogicalDeduplicate.create(tableRel.getCluster(), tableRel
-		          .getTraitSet().replace(Convention.NONE), tableRel, table, preparingTable, null, 
+		          .getTraitSet().replace(Convention.NONE), ImmutableList.of(), tableRel, table, preparingTable, null, 
 		          key, source, fieldTypes, null);
+		      // table hints of the deduplicated table, the query hints are propagated later
+		      newRoot = ((Hintable) newRoot).attachHints(hintStrategies.apply(
+		          SqlUtil.getRelHint(hintStrategies, tableHints), newRoot));
 			bb.setRoot(newRoot, false);	
 		}
 		if (usedDataset[0]) {
@@ -5998,7 +6002,7 @@ public class SqlToRelConverter {
 
 		/** Returns the hint strategies used to decide how the hints are propagated to
 		 * the relational expressions. Default is
-		 * {@link HintStrategyTable#EMPTY}. */
+		 * {@link DeduplicationHints#HINT_STRATEGY_TABLE}. */
 		HintStrategyTable getHintStrategyTable();
 	}
 
@@ -6011,7 +6015,7 @@ public class SqlToRelConverter {
 		private boolean expand = true;
 		private int inSubQueryThreshold = DEFAULT_IN_SUB_QUERY_THRESHOLD;
 		private RelBuilderFactory relBuilderFactory = RelFactories.LOGICAL_BUILDER;
-		private HintStrategyTable hintStrategyTable = HintStrategyTable.EMPTY;
+		private HintStrategyTable hintStrategyTable = DeduplicationHints.HINT_STRATEGY_TABLE;
 
 		private ConfigBuilder() {}
 
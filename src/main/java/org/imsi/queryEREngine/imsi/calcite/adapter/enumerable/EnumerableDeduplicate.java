@@ -31,11 +31,13 @@ import org.imsi.queryEREngine.apache.calcite.plan.RelOptCluster;
 import org.imsi.queryEREngine.apache.calcite.plan.RelOptTable;
 import org.imsi.queryEREngine.apache.calcite.plan.RelTraitSet;
 import org.imsi.queryEREngine.apache.calcite.rel.RelNode;
+import org.imsi.queryEREngine.apache.calcite.rel.hint.RelHint;
 import org.imsi.queryEREngine.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.imsi.queryEREngine.apache.calcite.rex.RexNode;
 import org.imsi.queryEREngine.apache.calcite.util.Source;
 import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvFieldType;
 import org.imsi.queryEREngine.imsi.calcite.rel.core.Deduplicate;
+import org.imsi.queryEREngine.imsi.calcite.rel.core.DeduplicationHints;
 import org.imsi.queryEREngine.imsi.calcite.util.NewBuiltInMethod;
 import org.imsi.queryEREngine.imsi.er.Utilities.TokenUtility;
 
@@ -54,6 +56,7 @@ public class EnumerableDeduplicate extends Deduplicate implements EnumerableRel
 	 *
 	 * @param cluster  Cluster this relational expression belongs to
 	 * @param traitSet Traits of this relational expression
+	 * @param hints    Deduplication hints of the query
 	 * @param input    Input relational expression
 	 * @param rowType  Output row type
 	 */
@@ -61,6 +64,7 @@ public class EnumerableDeduplicate extends Deduplicate implements EnumerableRel
 	protected EnumerableDeduplicate(
 			RelOptCluster cluster,
 			RelTraitSet traitSet,
+			List<RelHint> hints,
 			RelNode input,
 			RelOptTable table,
 			RelOptTable blockIndex, 
@@ -69,28 +73,29 @@ public class EnumerableDeduplicate extends Deduplicate implements EnumerableRel
 			Source source, 
 			List<CsvFieldType> fieldTypes, 
 			Double comparisons){
-		super(cluster, traitSet, input, table, blockIndex, conjuctions, key, source, fieldTypes, comparisons);
+		super(cluster, traitSet, hints, input, table, blockIndex, conjuctions, key, source, fieldTypes, comparisons);
 	    this
 	      .traitSet = cluster.traitSet().replace(EnumerableConvention.INSTANCE);
 		
 	}
 
 
-	public static RelNode create(RelNode input, RelOptTable table, RelOptTable blockIndex, List<RexNode> conjuctions, Integer key, Source source, List<CsvFieldType> fieldTypes, Double comparisons) {
+	public static RelNode create(List<RelHint> hints, RelNode input, RelOptTable table, RelOptTable blockIndex, List<RexNode> conjuctions, Integer key, Source source, List<CsvFieldType> fieldTypes, Double comparisons) {
 	    RelOptCluster cluster = input.getCluster();
 	    RelMetadataQuery mq = cluster.getMetadataQuery();
 	    RelTraitSet traitSet = cluster.traitSet().replace(EnumerableConvention.INSTANCE);
-	    return new EnumerableDeduplicate(cluster, traitSet, input, table, blockIndex, conjuctions, key, source, fieldTypes, comparisons);
+	    return new EnumerableDeduplicate(cluster, traitSet, hints, input, table, blockIndex, conjuctions, key, source, fieldTypes, comparisons);
 	  }
 	  
 	  @Override
 	public EnumerableDeduplicate copy(RelTraitSet traitSet, RelNode input) {
-	    return new EnumerableDeduplicate(getCluster(), traitSet, input, this.table, this.blockIndex, this.conjuctions, this.key, this.source, this.fieldTypes, this.comparisons);
+	    return new EnumerableDeduplicate(getCluster(), traitSet, this.hints, input, this.table, this.blockIndex, this.conjuctions, this.key, this.source, this.fieldTypes, this.comparisons);
 	  }
 	/**
 	 * Calls the java function that implements the deduplication
 	 * For inputs we get the tableName, source, key and fieldTypes
-	 * as directed by the LogicalPlan and the parsing.
+	 * as directed by the LogicalPlan and the parsing, along with the hinted
+	 * budget, pruning scheme, blocking-only mode and matcher of the query.
 	 */
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
@@ -117,6 +122,7 @@ public class EnumerableDeduplicate extends Deduplicate implements EnumerableRel
 			schemaName = table.getQualifiedName().get(0);
 			tableName = table.getQualifiedName().get(1);
 		}
+		DeduplicationHints hints = getDeduplicationHints();
 		AtomicBoolean ab = new AtomicBoolean();
 		ab.set(false);
 		builder.add(Expressions.return_(null, Expressions.call(
@@ -127,7 +133,12 @@ public class EnumerableDeduplicate extends Deduplicate implements EnumerableRel
 				Expressions.constant(this.source.toString()),
 				Expressions.constant(this.fieldTypes),
 				Expressions.constant(ab),
-				Expressions.constant(TokenUtility.getTokens(this.conjuctions))
+				Expressions.constant(TokenUtility.getTokens(this.conjuctions)),
+				Expressions.constant(hints.getComparisonBudget(), Long.class),
+				Expressions.constant(hints.getTimeBudget(), Long.class),
+				Expressions.constant(hints.getPruning(), String.class),
+				Expressions.constant(hints.isBlockingOnly()),
+				Expressions.constant(hints.getMatcher(), String.class)
 		)));
 		return implementor.result(physType, builder.toBlock());
 
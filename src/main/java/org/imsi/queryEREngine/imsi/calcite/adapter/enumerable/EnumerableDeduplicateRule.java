@@ -28,7 +28,7 @@ public class EnumerableDeduplicateRule extends ConverterRule {
 	public RelNode convert(RelNode rel) {
 		LogicalDeduplicate deduplicate = (LogicalDeduplicate)rel;
 		RelNode input = deduplicate.getInput(0);
-		return EnumerableDeduplicate.create(
+		return EnumerableDeduplicate.create(deduplicate.getHints(),
 				convert(input, input
 						.getTraitSet()
 						.replace(EnumerableConvention.INSTANCE)), deduplicate
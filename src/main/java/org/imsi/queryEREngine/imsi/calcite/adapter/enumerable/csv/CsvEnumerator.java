@@ -22,15 +22,18 @@ import org.imsi.queryEREngine.apache.calcite.rel.type.RelDataType;
 import org.imsi.queryEREngine.apache.calcite.sql.type.SqlTypeName;
 import org.imsi.queryEREngine.apache.calcite.util.Pair;
 import org.imsi.queryEREngine.apache.calcite.util.Source;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.OffsetIndexBuilder;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.RowOffsetReader;
 
 import com.univocity.parsers.csv.CsvParser;
 import com.univocity.parsers.csv.CsvParserSettings;
 
-import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -42,13 +45,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class CsvEnumerator<E> implements Enumerator<E> {
 
 	private  CsvParser parser;
+	private RowOffsetReader reader;
 	private  AtomicBoolean cancelFlag;
 	private int key = 0;
 
 	private E current;
 	private List<CsvFieldType> fieldTypes;
 	public List<String> fieldNames;
-	private HashMap<Integer, Long> offsetIndex;
+	private OffsetIndexBuilder offsetIndex;
 	private Source source;
 
 	public CsvEnumerator(Source source, AtomicBoolean cancelFlag,
@@ -57,20 +61,30 @@ public class CsvEnumerator<E> implements Enumerator<E> {
 	}
 
 	public CsvEnumerator(Source source, AtomicBoolean cancelFlag,
-						 List<CsvFieldType> fieldTypes, int key, HashMap<Integer, Long> offsetIndex) {
-		this(source, cancelFlag, fieldTypes, identityList(fieldTypes.size()), key);
-		this.offsetIndex = offsetIndex;
+						 List<CsvFieldType> fieldTypes, int key, OffsetIndexBuilder offsetIndex) {
+		this(source, cancelFlag, fieldTypes, identityList(fieldTypes.size()), key, offsetIndex);
 	}
 
 	public CsvEnumerator(Source source, AtomicBoolean cancelFlag,
 						 List<CsvFieldType> fieldTypes, Integer[] fields, int key) {
+		this(source, cancelFlag, fieldTypes, fields, key, null);
+	}
+
+	private CsvEnumerator(Source source, AtomicBoolean cancelFlag,
+						 List<CsvFieldType> fieldTypes, Integer[] fields, int key, OffsetIndexBuilder offsetIndex) {
 		this.cancelFlag = cancelFlag;
 		this.source = source;
 		this.cancelFlag = cancelFlag;
 		this.fieldTypes = fieldTypes;
 		this.key = key;
+		this.offsetIndex = offsetIndex;
 		try {
-			this.parser = openCsv(source);
+			if (offsetIndex != null) {
+				this.reader = openReader(source);
+				this.parser = openCsv(reader);
+			} else {
+				this.parser = openCsv(new InputStreamReader(new FileInputStream(source.path()), StandardCharsets.UTF_8));
+			}
 			this.parser.parseNext(); // skip header row
 		} catch (IOException e) {
 			throw new RuntimeException(e);
@@ -132,15 +146,25 @@ public class CsvEnumerator<E> implements Enumerator<E> {
 	}
 
 	public static CsvParser openCsv(Source source) throws IOException {
+		return openCsv(openReader(source));
+	}
+
+	/** Decodes the file as UTF-8, keeping the byte offsets of its rows. */
+	public static RowOffsetReader openReader(Source source) throws IOException {
+		return new RowOffsetReader(new FileInputStream(source.path()), 0, StandardCharsets.UTF_8);
+	}
+
+	public static CsvParser openCsv(Reader reader) {
 		// The settings object provides many configuration options
 		CsvParserSettings parserSettings = new CsvParserSettings();
 		//You can configure the parser to automatically detect what line separator sequence is in the input
 		parserSettings.setNullValue("");
 		parserSettings.setEmptyValue("");
 		parserSettings.setDelimiterDetectionEnabled(true);
+		// a RowOffsetReader maps the offsets of the rows as the parser reads them
+		parserSettings.setReadInputOnSeparateThread(false);
 		CsvParser parser = new CsvParser(parserSettings);
-//		parser.beginParsing(new File(source.path()));
-		parser.beginParsing(new File(source.path()), Charset.forName("US-ASCII"));
+		parser.beginParsing(reader);
 		return parser;
 	}
 
@@ -153,7 +177,7 @@ public class CsvEnumerator<E> implements Enumerator<E> {
 	@Override
 	public boolean moveNext() {
 		for (;;) {
-			long rowOffset = parser.getContext().currentChar() - 1;
+			long charOffset = parser.getContext().currentChar() - 1;
 			final String[] strings = parser.parseNext();
 
 			if (strings == null) {
@@ -161,7 +185,7 @@ public class CsvEnumerator<E> implements Enumerator<E> {
 				return false;
 			}
 			if(!source.path().contains("ground_truth") && offsetIndex != null)
-				offsetIndex.put(Integer.parseInt(strings[key]), rowOffset);
+				offsetIndex.add(Integer.parseInt(strings[key]), reader.offsetOf(charOffset));
 			//strings[0] = Long.toString(rowOffset);
 			current = (E) strings;
 			return true;
@@ -19,7 +19,6 @@ package org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -31,7 +30,16 @@ import org.imsi.queryEREngine.apache.calcite.schema.impl.AbstractSchema;
 import org.imsi.queryEREngine.apache.calcite.util.Source;
 import org.imsi.queryEREngine.apache.calcite.util.Sources;
 import org.imsi.queryEREngine.imsi.er.BlockIndex.BaseBlockIndex;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.BlockIndexCompactor;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.BlockIndexLoader;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.BlockIndexRegistry;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.BlockIndexSegments;
 import org.imsi.queryEREngine.imsi.er.BlockIndex.BlockIndexStatistic;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.EntityBlockCounts;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.MappedBlockIndex;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.OffsetIndexBuilder;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.TokenDictionary;
+import org.imsi.queryEREngine.imsi.er.Utilities.DeduplicationProperties;
 import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
 import org.imsi.queryEREngine.imsi.er.Utilities.SerializationUtilities;
 
@@ -47,6 +55,7 @@ public class CsvSchema extends AbstractSchema {
 	private final CsvTable.Flavor flavor;
 	public static Map<String, Table> tableMap;
 	DumpDirectories dumpDirectories = new DumpDirectories();
+	private static final DeduplicationProperties deduplicationProperties = new DeduplicationProperties();
 
 	/**
 	 * Creates a CSV schema.
@@ -130,7 +139,9 @@ public class CsvSchema extends AbstractSchema {
 				//computeTableStatistics(table, tableName, files, source);
 				builder.put(sourceSansCsv.relative(baseSource).path(), table);
 				if(tableName.contains("ground_truth")) continue;
-				BaseBlockIndex blockIndex = createBlockIndex(table, tableName);
+				// the index is filled in by the loader, queries wait for it through BlockIndexLoader.await
+				BaseBlockIndex blockIndex = new BaseBlockIndex(tableName);
+				BlockIndexLoader.schedule(tableName, () -> createBlockIndex(table, tableName, blockIndex));
 				builder.put(dumpDirectories.getBlockIndexDirPath() + tableName + "InvertedIndex", blockIndex);
 
 			}
@@ -155,28 +166,44 @@ public class CsvSchema extends AbstractSchema {
 		}
 	}
 
-	private BaseBlockIndex createBlockIndex(CsvTranslatableTable table, String tableName) {
+	private BaseBlockIndex createBlockIndex(CsvTranslatableTable table, String tableName, BaseBlockIndex blockIndex) {
+		boolean compact = false;
 		// Create Block index and store into data folder (only if not already created)
-		BaseBlockIndex blockIndex = new BaseBlockIndex();
-		if((!new File(dumpDirectories.getBlockIndexDirPath() + tableName + "InvertedIndex").exists())
+		if((!new File(dumpDirectories.getBlockIndexDirPath() + tableName + MappedBlockIndex.FILE_SUFFIX).exists())
 				|| (!new File(dumpDirectories.getBlockIndexDirPath() + tableName + "EntitiesToBlocks").exists())
-				|| (!new File(dumpDirectories.getOffsetsDirPath() + tableName).exists())) {
+				|| (!new File(BlockIndexSegments.baseOffsetsPath(tableName)).exists())) {
 			System.out.println("Creating Block Index..");
 			double start = System.currentTimeMillis();
 			AtomicBoolean ab = new AtomicBoolean();
 			ab.set(false);
-			HashMap<Integer, Long> offsetIndex = new HashMap<>();
-			@SuppressWarnings({ "unchecked", "rawtypes" })
-			CsvEnumerator<Object[]> enumerator = new CsvEnumerator(table.getSource(), ab,
-					table.getFieldTypes(), table.getKey(), offsetIndex);
+			List<OffsetIndexBuilder> offsetIndex = new ArrayList<>();
+			BlockIndexSegments segments = new BlockIndexSegments(tableName,
+					BaseBlockIndex.lastRowEnd(new File(table.getSource().path()), 0));
+			int tableSize;
+			if(DeduplicationProperties.isParallelIndex()) {
+				tableSize = blockIndex.createBlockIndex(table.getSource(), table.getKey(), offsetIndex,
+						DeduplicationProperties.getIndexThreads(), DeduplicationProperties.isStoreProfiles());
+			}
+			else {
+				OffsetIndexBuilder offsets = new OffsetIndexBuilder();
+				offsetIndex.add(offsets);
+				@SuppressWarnings({ "unchecked", "rawtypes" })
+				CsvEnumerator<Object[]> enumerator = new CsvEnumerator(table.getSource(), ab,
+						table.getFieldTypes(), table.getKey(), offsets);
 
-			int tableSize = blockIndex.createBlockIndex(enumerator, table.getKey());
-			blockIndex.buildBlocks();
+				tableSize = blockIndex.createBlockIndex(enumerator, table.getKey(),
+						DeduplicationProperties.isStoreProfiles());
+			}
+			double entitiesStart = System.currentTimeMillis();
+			blockIndex.createEntitiesToBlocks();
+			double entitiesEnd = System.currentTimeMillis();
+			System.out.println("Entities to blocks in: " + (entitiesEnd - entitiesStart)/1000 + " seconds");
 			double end = System.currentTimeMillis();
 			System.out.println("Created in: " + (end - start)/1000 + " seconds");
 			blockIndex.sortIndex();
 			blockIndex.storeBlockIndex(dumpDirectories.getBlockIndexDirPath(), tableName);
-			SerializationUtilities.storeSerializedObject(offsetIndex,dumpDirectories.getOffsetsDirPath() + tableName);
+			OffsetIndexBuilder.write(offsetIndex, segments.baseOffsetsPath());
+			segments.store();
 			// Statistics
 			BlockIndexStatistic blockIndexStatistic = new BlockIndexStatistic(blockIndex.getInvertedIndex(),
 					blockIndex.getEntitiesToBlocks(), tableName);
@@ -206,11 +233,57 @@ public class CsvSchema extends AbstractSchema {
 					e1.printStackTrace();
 				}
 			}
+			BlockIndexSegments segments = BlockIndexSegments.load(tableName);
+			if(segments == null) {
+				segments = new BlockIndexSegments(tableName, BaseBlockIndex.lastRowEnd(new File(table.getSource().path()), 0));
+				segments.store();
+			}
+			if(BaseBlockIndex.lastRowEnd(new File(table.getSource().path()), segments.getIndexedBytes()) > segments.getIndexedBytes())
+				appendBlockIndex(table, tableName, blockIndex, segments);
+			// indexes built before the block counts were stored get them here, from the loaded index
+			else if(!new File(segments.entityBlockCountsPath()).exists())
+				EntityBlockCounts.write(blockIndex.getInvertedIndex().values(), segments.entityBlockCountsPath());
+			BlockIndexStatistic blockIndexStatistic = blockIndex.getBlockIndexStatistic();
+			blockIndexStatistic.setTableSize(blockIndexStatistic.getTableSize() + segments.getAppendedEntities());
+			compact = segments.getSegments().size() >= DeduplicationProperties.getMaxSegments();
 		}
+		BlockIndexRegistry.register(tableName, blockIndex.getInvertedIndex(), blockIndex.getBlockIndexStatistic());
+		blockIndex.releaseInvertedIndex(tableName);
+		// only once registered, so that the registration of the compacted index is the last one
+		if(compact)
+			BlockIndexCompactor.submit(tableName, blockIndex);
 		return blockIndex;
 
 	}
 
+	/**
+	 * Indexes the rows appended to the CSV file since the last build into a new delta segment
+	 * and adds it to the loaded block index, instead of rebuilding the whole index.
+	 */
+	private void appendBlockIndex(CsvTranslatableTable table, String tableName, BaseBlockIndex blockIndex,
+			BlockIndexSegments segments) {
+		synchronized (BlockIndexSegments.lock(tableName)) {
+			System.out.println("Indexing appended rows..");
+			double start = System.currentTimeMillis();
+			BaseBlockIndex delta = new BaseBlockIndex();
+			OffsetIndexBuilder offsetIndex = new OffsetIndexBuilder();
+			long end = delta.createDeltaBlockIndex(table.getSource(), table.getKey(), segments.getIndexedBytes(), offsetIndex);
+			int segment = segments.addSegment(end, offsetIndex.size());
+			MappedBlockIndex.write(delta.getInvertedIndex(), segments.indexPath(segment));
+			SerializationUtilities.storeSerializedObject(delta.getEntitiesToBlocks(), segments.entitiesToBlocksPath(segment));
+			offsetIndex.write(segments.offsetsPath(segment));
+			BlockIndexSegments.mergeInvertedIndex(blockIndex.getInvertedIndex(), delta.getInvertedIndex());
+			BlockIndexSegments.mergeEntitiesToBlocks(blockIndex.getEntitiesToBlocks(), delta.getEntitiesToBlocks());
+			// the counts cover the base and every delta, so appended entities and blocks are weighed too
+			EntityBlockCounts.write(blockIndex.getInvertedIndex().values(), segments.entityBlockCountsPath());
+			TokenDictionary.store(segments);
+			segments.store();
+			double finish = System.currentTimeMillis();
+			System.out.println("Appended segment " + segment + " with " + offsetIndex.size() + " entities in: "
+					+ (finish - start)/1000 + " seconds");
+		}
+	}
+
 
 	/** Creates table */
 	private CsvTranslatableTable createTable(Source source, String name) {
@@ -24,6 +24,7 @@ import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 
 import net.agkn.hll.HLL;
+import org.roaringbitmap.RoaringBitmap;
 
 public class CsvTableStatistic {
 
@@ -105,8 +106,8 @@ public class CsvTableStatistic {
 		QueryBlockIndex queryBlockIndex = new QueryBlockIndex();
 		queryBlockIndex.createBlockIndex(sample, tableKey);
 		queryBlockIndex.buildQueryBlocks();
-		Set<Integer> qIds = queryBlockIndex.getIds();
-		System.out.println(qIds.size());
+		RoaringBitmap qIds = queryBlockIndex.getIds();
+		System.out.println(qIds.getCardinality());
 		ComparisonsBasedBlockPurging blockPurging = new ComparisonsBasedBlockPurging();
         List<AbstractBlock> blocks = queryBlockIndex
                 .joinBlockIndices(tableName, true);
@@ -117,7 +118,7 @@ public class CsvTableStatistic {
 			 EfficientEdgePruning eEP = new EfficientEdgePruning();
 	         eEP.applyProcessing(blocks);
 	    }
-	    Set<Integer> totalIds = queryBlockIndex.blocksToEntitiesD(blocks);
+	    RoaringBitmap totalIds = queryBlockIndex.blocksToEntitiesD(blocks);
         AbstractEnumerable<Object[]> comparisonEnumerable = createEnumerable((CsvEnumerator<Object[]>) originalEnumerator, totalIds, tableKey);
 		 HashMap<Integer, Object[]> entityMap = createMap(comparisonEnumerable, tableKey);
         ExecuteBlockComparisons ebc = new ExecuteBlockComparisons(entityMap);
@@ -178,7 +179,7 @@ public class CsvTableStatistic {
      * @param key        Key column
      * @return AbstractEnumerable filtered by ids
      */
-    private static AbstractEnumerable<Object[]> createEnumerable(CsvEnumerator<Object[]> enumerator, Set<Integer> qIds, Integer key) {
+    private static AbstractEnumerable<Object[]> createEnumerable(CsvEnumerator<Object[]> enumerator, RoaringBitmap qIds, Integer key) {
         return new AbstractEnumerable<Object[]>() {
             @Override
             public Enumerator<Object[]> enumerator() {
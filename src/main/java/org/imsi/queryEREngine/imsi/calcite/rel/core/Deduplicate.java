@@ -9,19 +9,24 @@ import org.imsi.queryEREngine.apache.calcite.plan.RelTraitSet;
 import org.imsi.queryEREngine.apache.calcite.rel.RelNode;
 import org.imsi.queryEREngine.apache.calcite.rel.RelWriter;
 import org.imsi.queryEREngine.apache.calcite.rel.SingleRel;
+import org.imsi.queryEREngine.apache.calcite.rel.hint.Hintable;
+import org.imsi.queryEREngine.apache.calcite.rel.hint.RelHint;
 import org.imsi.queryEREngine.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.imsi.queryEREngine.apache.calcite.rex.RexNode;
 import org.imsi.queryEREngine.apache.calcite.util.Source;
 import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvFieldType;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * 
  * @author bstam
  * This is the base Class of all Deduplicate relational operators physical or logical.
  * For calcite we need to first create a base class that extends a RelNode class and then
  * extend this class with whatever we want.
+ * The {@link DeduplicationHints} of the query are carried as its hints.
  */
-public abstract class Deduplicate extends SingleRel {
+public abstract class Deduplicate extends SingleRel implements Hintable {
 
 
 	protected final RelOptTable table;
@@ -31,10 +36,12 @@ public abstract class Deduplicate extends SingleRel {
 	protected final List<RexNode> conjuctions;
 	protected final RelOptTable blockIndex;
 	protected Double comparisons;
+	protected final ImmutableList<RelHint> hints;
 	
 	protected Deduplicate(
 			RelOptCluster cluster,
 			RelTraitSet traitSet,
+			List<RelHint> hints,
 			RelNode input,
 			RelOptTable table,
 			RelOptTable blockIndex,
@@ -44,6 +51,7 @@ public abstract class Deduplicate extends SingleRel {
 			List<CsvFieldType> fieldTypes,
 			Double comparisons){
 		super(cluster, traitSet, input);
+		this.hints = ImmutableList.copyOf(hints);
 		this.table = table;
 		this.blockIndex = blockIndex;
 		this.key = key;
@@ -75,7 +83,8 @@ public abstract class Deduplicate extends SingleRel {
 
 	@Override public RelWriter explainTerms(RelWriter pw) {
 		return super.explainTerms(pw)
-				.item("tables", table.getQualifiedName()).item("key", this.key);
+				.item("tables", table.getQualifiedName()).item("key", this.key)
+				.itemIf("hints", hints, !hints.isEmpty());
 	}
 
 	public RelOptTable getRelTable() {
@@ -114,4 +123,12 @@ public abstract class Deduplicate extends SingleRel {
 	public RelOptTable getBlockIndex() {
 		return blockIndex;
 	}
+
+	@Override public ImmutableList<RelHint> getHints() {
+		return hints;
+	}
+
+	public DeduplicationHints getDeduplicationHints() {
+		return DeduplicationHints.of(hints);
+	}
 }
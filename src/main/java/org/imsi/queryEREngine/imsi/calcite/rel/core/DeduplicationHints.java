@@ -0,0 +1,148 @@
+package org.imsi.queryEREngine.imsi.calcite.rel.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.imsi.queryEREngine.apache.calcite.rel.hint.HintPredicates;
+import org.imsi.queryEREngine.apache.calcite.rel.hint.HintStrategy;
+import org.imsi.queryEREngine.apache.calcite.rel.hint.HintStrategyTable;
+import org.imsi.queryEREngine.apache.calcite.rel.hint.RelHint;
+import org.imsi.queryEREngine.apache.calcite.util.Litmus;
+
+/**
+ * Per-query settings of the deduplication pipeline, given as SQL hints of a DEDUP query and
+ * carried on the {@link Deduplicate} operators into the execution:
+ *
+ * <pre>
+ * SELECT /*+ er_budget(comparisons='10000', ms='500'), er_pruning(wnp) *&#47; DEDUP * FROM people
+ * SELECT DEDUP * FROM people /*+ er_blocking_only *&#47;
+ * SELECT /*+ er_matcher(jaccard) *&#47; DEDUP * FROM people
+ * </pre>
+ *
+ * er_budget bounds the comparisons and the matching time of the query, er_pruning picks the
+ * pruning scheme of the local meta-blocking (cep, wnp or cnp) and er_blocking_only returns the
+ * entities after blocking without matching them. er_matcher names the matcher of the query.
+ * The hints are only parsed here: anything not hinted is null, and the execution falls back to
+ * deduplication.properties for it and rejects an unknown matcher.
+ */
+public class DeduplicationHints {
+
+	public static final String BUDGET = "er_budget";
+	public static final String PRUNING = "er_pruning";
+	public static final String BLOCKING_ONLY = "er_blocking_only";
+	public static final String MATCHER = "er_matcher";
+
+	private static final List<String> BUDGET_OPTIONS = Arrays.asList("comparisons", "ms");
+	private static final List<String> PRUNING_SCHEMES = Arrays.asList("cep", "wnp", "cnp");
+
+	/** The hints of the engine, each applying to the Deduplicate operators only. */
+	public static final HintStrategyTable HINT_STRATEGY_TABLE = HintStrategyTable.builder()
+			.hintStrategy(BUDGET, HintStrategy.builder(HintPredicates.DEDUPLICATE)
+					.optionChecker(DeduplicationHints::checkBudget).build())
+			.hintStrategy(PRUNING, HintStrategy.builder(HintPredicates.DEDUPLICATE)
+					.optionChecker(DeduplicationHints::checkPruning).build())
+			.hintStrategy(BLOCKING_ONLY, HintStrategy.builder(HintPredicates.DEDUPLICATE)
+					.optionChecker((hint, litmus) -> litmus.check(hint.listOptions.isEmpty() && hint.kvOptions.isEmpty(),
+							"Hint {} takes no options", hint.hintName)).build())
+			.hintStrategy(MATCHER, HintStrategy.builder(HintPredicates.DEDUPLICATE)
+					.optionChecker(DeduplicationHints::checkMatcher).build())
+			.build();
+
+	public static final DeduplicationHints NONE = new DeduplicationHints(null, null, null, false, null);
+
+	private final Long comparisonBudget;
+	private final Long timeBudget;
+	private final String pruning;
+	private final boolean blockingOnly;
+	private final String matcher;
+
+	public DeduplicationHints(Long comparisonBudget, Long timeBudget, String pruning, boolean blockingOnly,
+			String matcher) {
+		this.comparisonBudget = comparisonBudget;
+		this.timeBudget = timeBudget;
+		this.pruning = pruning;
+		this.blockingOnly = blockingOnly;
+		this.matcher = matcher;
+	}
+
+	/**
+	 * Reads the settings off the hints of a Deduplicate operator, the last hint winning. The parser
+	 * upper-cases unquoted options, so the names of the pruning scheme and the matcher are lowered.
+	 */
+	public static DeduplicationHints of(List<RelHint> hints) {
+		Long comparisonBudget = null;
+		Long timeBudget = null;
+		String pruning = null;
+		boolean blockingOnly = false;
+		String matcher = null;
+		for (RelHint hint : hints) {
+			if (hint.hintName.equalsIgnoreCase(BUDGET)) {
+				for (Map.Entry<String, String> option : hint.kvOptions.entrySet()) {
+					if (option.getKey().equalsIgnoreCase("comparisons")) comparisonBudget = Long.parseLong(option.getValue());
+					else timeBudget = Long.parseLong(option.getValue());
+				}
+			} else if (hint.hintName.equalsIgnoreCase(PRUNING)) {
+				pruning = hint.listOptions.get(0).toLowerCase(Locale.ROOT);
+			} else if (hint.hintName.equalsIgnoreCase(BLOCKING_ONLY)) {
+				blockingOnly = true;
+			} else if (hint.hintName.equalsIgnoreCase(MATCHER)) {
+				matcher = hint.listOptions.get(0).toLowerCase(Locale.ROOT);
+			}
+		}
+		return new DeduplicationHints(comparisonBudget, timeBudget, pruning, blockingOnly, matcher);
+	}
+
+	private static boolean checkBudget(RelHint hint, Litmus litmus) {
+		if (!litmus.check(!hint.kvOptions.isEmpty() && hint.listOptions.isEmpty(),
+				"Hint {} takes comparisons='n' and/or ms='n'", hint.hintName)) return false;
+		for (Map.Entry<String, String> option : hint.kvOptions.entrySet()) {
+			if (!litmus.check(BUDGET_OPTIONS.contains(option.getKey().toLowerCase(Locale.ROOT)) && isBudget(option.getValue()),
+					"Invalid option {}='{}' of hint {}", option.getKey(), option.getValue(), hint.hintName)) return false;
+		}
+		return true;
+	}
+
+	private static boolean checkPruning(RelHint hint, Litmus litmus) {
+		return litmus.check(hint.listOptions.size() == 1 && PRUNING_SCHEMES.contains(hint.listOptions.get(0).toLowerCase(Locale.ROOT)),
+				"Hint {} takes one of {}", hint.hintName, PRUNING_SCHEMES);
+	}
+
+	private static boolean checkMatcher(RelHint hint, Litmus litmus) {
+		return litmus.check(hint.listOptions.size() == 1 && hint.kvOptions.isEmpty(),
+				"Hint {} takes the name of a matcher", hint.hintName);
+	}
+
+	private static boolean isBudget(String value) {
+		try {
+			return 0 <= Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/** The hinted comparison budget, or null. */
+	public Long getComparisonBudget() {
+		return comparisonBudget;
+	}
+
+	/** The hinted time budget in milliseconds, or null. */
+	public Long getTimeBudget() {
+		return timeBudget;
+	}
+
+	/** The hinted pruning scheme, cep, wnp or cnp, or null. */
+	public String getPruning() {
+		return pruning;
+	}
+
+	public boolean isBlockingOnly() {
+		return blockingOnly;
+	}
+
+	/** The hinted matcher, or null. */
+	public String getMatcher() {
+		return matcher;
+	}
+}
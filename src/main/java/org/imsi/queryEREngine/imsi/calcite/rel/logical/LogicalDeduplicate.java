@@ -6,6 +6,7 @@ import org.imsi.queryEREngine.apache.calcite.plan.RelOptCluster;
 import org.imsi.queryEREngine.apache.calcite.plan.RelOptTable;
 import org.imsi.queryEREngine.apache.calcite.plan.RelTraitSet;
 import org.imsi.queryEREngine.apache.calcite.rel.RelNode;
+import org.imsi.queryEREngine.apache.calcite.rel.hint.RelHint;
 import org.imsi.queryEREngine.apache.calcite.rex.RexNode;
 import org.imsi.queryEREngine.apache.calcite.util.Source;
 import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvFieldType;
@@ -21,16 +22,21 @@ import org.imsi.queryEREngine.imsi.calcite.rel.core.Deduplicate;
  * 
  */
 public class LogicalDeduplicate extends Deduplicate {
-	 protected LogicalDeduplicate(RelOptCluster cluster, RelTraitSet traitSet, RelNode input, RelOptTable table, RelOptTable blockIndex, List<RexNode> conjuctions, Integer key, Source source, List<CsvFieldType> fieldTypes, Double comparisons) {
-		 super(cluster, traitSet, input, table, blockIndex, conjuctions, key, source, fieldTypes, comparisons);
+	 protected LogicalDeduplicate(RelOptCluster cluster, RelTraitSet traitSet, List<RelHint> hints, RelNode input, RelOptTable table, RelOptTable blockIndex, List<RexNode> conjuctions, Integer key, Source source, List<CsvFieldType> fieldTypes, Double comparisons) {
+		 super(cluster, traitSet, hints, input, table, blockIndex, conjuctions, key, source, fieldTypes, comparisons);
 	 }
 
-	 public static RelNode create(RelOptCluster cluster, RelTraitSet traitSet, RelNode input, RelOptTable table, RelOptTable blockIndex, List<RexNode> conjuctions, Integer key, Source source, List<CsvFieldType> fieldTypes, Double comparisons) {
-		 return new LogicalDeduplicate(cluster, traitSet, input, table, blockIndex, conjuctions, key, source, fieldTypes, comparisons);
+	 public static RelNode create(RelOptCluster cluster, RelTraitSet traitSet, List<RelHint> hints, RelNode input, RelOptTable table, RelOptTable blockIndex, List<RexNode> conjuctions, Integer key, Source source, List<CsvFieldType> fieldTypes, Double comparisons) {
+		 return new LogicalDeduplicate(cluster, traitSet, hints, input, table, blockIndex, conjuctions, key, source, fieldTypes, comparisons);
 	 }
 
 	 @Override
 	public RelNode copy(RelTraitSet traitSet, RelNode input) {
-		 return new LogicalDeduplicate(getCluster(), traitSet, input, this.table, this.blockIndex, this.conjuctions, this.key, this.source, this.fieldTypes, this.comparisons);
+		 return new LogicalDeduplicate(getCluster(), traitSet, this.hints, input, this.table, this.blockIndex, this.conjuctions, this.key, this.source, this.fieldTypes, this.comparisons);
+	 }
+
+	 @Override
+	public RelNode withHints(List<RelHint> hintList) {
+		 return new LogicalDeduplicate(getCluster(), traitSet, hintList, this.input, this.table, this.blockIndex, this.conjuctions, this.key, this.source, this.fieldTypes, this.comparisons);
 	 }
  }
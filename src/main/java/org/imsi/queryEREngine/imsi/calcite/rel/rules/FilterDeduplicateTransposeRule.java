@@ -103,7 +103,7 @@ public class FilterDeduplicateTransposeRule extends RelOptRule {
 		final Deduplicate deduplicate = call.rel(1);
 		List<RexNode> conjuctions = getConjunctions(filter);
 		RelNode newFilterRel = filter.copy(filter.getTraitSet(), deduplicate.getInput(0), filter.getCondition()); // change input of filter with dedups
-		RelNode newDedupRel = LogicalDeduplicate.create(deduplicate.getCluster(), deduplicate.getTraitSet(),
+		RelNode newDedupRel = LogicalDeduplicate.create(deduplicate.getCluster(), deduplicate.getTraitSet(), deduplicate.getHints(),
 				newFilterRel, deduplicate.getRelTable(), deduplicate.getBlockIndex(), conjuctions,
 				deduplicate.getKey(), deduplicate.getSource(), deduplicate.getFieldTypes(), deduplicate.getComparisons());
 		call.transformTo(newDedupRel);
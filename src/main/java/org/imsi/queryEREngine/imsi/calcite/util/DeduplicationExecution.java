@@ -7,6 +7,8 @@ import org.apache.calcite.linq4j.Enumerator;
 import org.imsi.queryEREngine.apache.calcite.util.Sources;
 import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvEnumerator;
 import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvFieldType;
+import org.imsi.queryEREngine.imsi.calcite.rel.core.DeduplicationHints;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.BlockIndexRegistry;
 import org.imsi.queryEREngine.imsi.er.BlockIndex.QueryBlockIndex;
 import org.imsi.queryEREngine.imsi.er.DataStructures.*;
 import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.BlockRefinement.ComparisonsBasedBlockPurging;
@@ -15,6 +17,9 @@ import org.imsi.queryEREngine.imsi.er.Utilities.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.roaringbitmap.RoaringBitmap;
+
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -47,6 +52,10 @@ public class DeduplicationExecution<T> {
      * @param source     Source of the table data for the scan
      * @param fieldTypes Types of the data
      * @param ab         Used for the csv enumerator, nothing else
+     * @param comparisonBudget Hinted comparison budget of the query, or null
+     * @param timeBudget       Hinted time budget of the query, or null
+     * @param pruning          Hinted pruning scheme of the query, or null
+     * @param blockingOnly     Whether the query is only blocked, without matching
      * @return EntityResolvedTuple contains the UnionFind + HashMap of the table to be used in merging/join
      * @throws IOException
      */
@@ -54,7 +63,7 @@ public class DeduplicationExecution<T> {
 
 
     public static List<AbstractBlock> blocks;
-    public static Set<Integer> qIds = new HashSet<>();
+    public static RoaringBitmap qIds = new RoaringBitmap();
 
     private static double scanTime = 0.0;
     private static final DumpDirectories dumpDirectories = new DumpDirectories();
@@ -63,23 +72,43 @@ public class DeduplicationExecution<T> {
     @SuppressWarnings({"rawtypes", "unchecked"})
 
     public static <T> EntityResolvedTuple deduplicateEnumerator(Enumerable<T> enumerable, String tableName,
-                                                                Integer key, String source, List<CsvFieldType> fieldTypes, AtomicBoolean ab, List<String> tokens) {
+                                                                Integer key, String source, List<CsvFieldType> fieldTypes, AtomicBoolean ab, List<String> tokens,
+                                                                Long comparisonBudget, Long timeBudget, String pruning, boolean blockingOnly,
+                                                                String matcher) {
         CsvEnumerator<Object[]> originalEnumerator = new CsvEnumerator(Sources.of(new File(source)), ab, fieldTypes, key);
         double scanStart = System.currentTimeMillis();
         HashMap<Integer, Object[]> queryData = createMap((AbstractEnumerable<Object[]>) enumerable, key);
         scanTime = (System.currentTimeMillis() - scanStart) / 1000;
-        return deduplicate(queryData, key, fieldTypes.size(), tableName, originalEnumerator, source, tokens);
+        return deduplicate(queryData, key, fieldTypes.size(), tableName, originalEnumerator, source, tokens,
+                new DeduplicationHints(comparisonBudget, timeBudget, pruning, blockingOnly, matcher));
 
     }
 
     public static EntityResolvedTuple deduplicate(HashMap<Integer, Object[]> queryData, Integer key, Integer noOfAttributes,
                                                   String tableName, Enumerator<Object[]> originalEnumerator, String source, List<String> tokens) {
+        return deduplicate(queryData, key, noOfAttributes, tableName, originalEnumerator, source, tokens, DeduplicationHints.NONE);
+    }
+
+    public static EntityResolvedTuple deduplicate(HashMap<Integer, Object[]> queryData, Integer key, Integer noOfAttributes,
+                                                  String tableName, Enumerator<Object[]> originalEnumerator, String source, List<String> tokens,
+                                                  DeduplicationHints hints) {
 
 
         boolean firstDedup = false;
 
         System.out.println("Deduplicating: " + tableName);
     //    System.err.println("tokens : " + tokens);
+
+        // the hints of the query, falling back to deduplication.properties
+        long comparisonBudget = hints.getComparisonBudget() != null
+                ? hints.getComparisonBudget() : deduplicationProperties.getComparisonBudget();
+        long timeBudget = hints.getTimeBudget() != null ? hints.getTimeBudget() : deduplicationProperties.getTimeBudget();
+        NodePruning.Mode nodePruning = hints.getPruning() != null
+                ? deduplicationProperties.parseNodePruning(hints.getPruning()) : deduplicationProperties.getNodePruning();
+        String matcher = hints.getMatcher() != null
+                ? deduplicationProperties.checkMatcher(DeduplicationHints.MATCHER, hints.getMatcher())
+                : deduplicationProperties.getMatcher(tableName);
+        boolean progressive = 0 < comparisonBudget || 0 < timeBudget;
         
         double deduplicateStartTime = System.currentTimeMillis();
 
@@ -88,10 +117,9 @@ public class DeduplicationExecution<T> {
         HashMap<Integer, Set<Integer>> links = loadLinks(tableName);
         HashMap<Integer, Object[]> dataWithLinks = new HashMap<>();
         if (links == null) firstDedup = true;
-        Set<Integer> qIds = new HashSet<>();
-        Set<Integer> totalIds = new HashSet<>();
+        RoaringBitmap qIds = MapUtilities.toBitmap(queryData.keySet());
+        RoaringBitmap totalIds = new RoaringBitmap();
 
-        qIds = MapUtilities.deepCopySet(queryData.keySet());
         double idsTime = storeIds(qIds);
         deduplicateStartTime -= idsTime;
 
@@ -102,16 +130,17 @@ public class DeduplicationExecution<T> {
          */
         if (!firstDedup) {
             // Clear links and keep only qIds
-            Set<Integer> linkedIds = getLinkedIds(key, links, qIds); // Get extra Link Ids that are not in queryData
+            RoaringBitmap linkedIds = getLinkedIds(key, links, qIds); // Get extra Link Ids that are not in queryData
             dataWithLinks = (HashMap<Integer, Object[]>) links.keySet().stream()
                     .filter(queryData::containsKey)
                     .collect(Collectors.toMap(Function.identity(), queryData::get));
             dataWithLinks = getExtraData(dataWithLinks, linkedIds, originalEnumerator, key);
             queryData.keySet().removeAll(links.keySet());
-            totalIds.addAll(linkedIds);  // Add links back
+            totalIds.or(linkedIds);  // Add links back
 
         }
-        final Set<Integer> qIdsNoLinks = MapUtilities.deepCopySet(queryData.keySet());
+        final RoaringBitmap qIdsNoLinks = firstDedup ? qIds.clone()
+                : RoaringBitmap.andNot(qIds, MapUtilities.toBitmap(links.keySet()));
 
         double linksEndTime = System.currentTimeMillis();
         double links1Time = (linksEndTime - linksStartTime) / 1000;
@@ -120,8 +149,7 @@ public class DeduplicationExecution<T> {
         System.err.println("qdata size: " + queryDataSize);
         double blockingStartTime = System.currentTimeMillis();
         QueryBlockIndex queryBlockIndex = new QueryBlockIndex(tableName);
-        queryBlockIndex.createBlockIndex(queryData, key, tokens);
-        queryBlockIndex.buildQueryBlocks();
+        queryBlockIndex.createBlockIndex(qIdsNoLinks, tokens);
         qIds = queryBlockIndex.getIds();
         double blockingEndTime = System.currentTimeMillis();
         String blockingTime = Double.toString((blockingEndTime - blockingStartTime) / 1000);
@@ -131,10 +159,10 @@ public class DeduplicationExecution<T> {
         // List<AbstractBlock> blocks = queryBlockIndex
         //         .joinBlockIndices(tableName, doER);
         List<AbstractBlock> blocks;
-        HashMap<String, Set<Integer>> eqbi;
+        Int2ObjectOpenHashMap<PostingList> eqbi;
 
         double eqbiStartTime = System.currentTimeMillis();
-        Pair<List<AbstractBlock>, HashMap<String, Set<Integer>>> result = queryBlockIndex.joinBlockIndicesReturn(tableName, doER);
+        Pair<List<AbstractBlock>, Int2ObjectOpenHashMap<PostingList>> result = queryBlockIndex.joinEntityBlocks(tableName, doER);
         double eqbiEndTime = System.currentTimeMillis();
 
         System.err.println("Block indices merged in : " + (eqbiEndTime - eqbiStartTime) / 1000 + " seconds");
@@ -151,14 +179,14 @@ public class DeduplicationExecution<T> {
         double blockJoinEnd = System.currentTimeMillis();
         String blockJoinTime = Double.toString((blockJoinEnd - blockJoinStart) / 1000);
 
-        double selectivity = qIds.size() / (double) queryBlockIndex.getBlockIndexStatistic().getTableSize();
+        double selectivity = qIds.getCardinality() / (double) queryBlockIndex.getBlockIndexStatistic().getTableSize();
         System.err.println("Q Selectivity:\t"+selectivity);
 
 
 
         String blocksSize = Integer.toString(blocks.size());
         String blockSizes = getBlockSizes(blocks);
-        String blockEntities = Integer.toString(queryBlockIndex.blocksToEntities(blocks).size());
+        String blockEntities = Integer.toString(queryBlockIndex.blocksToEntities(blocks).getCardinality());
 
         double totalBlockSize = 0;
         double maxBlockSize = 0;
@@ -218,7 +246,17 @@ public class DeduplicationExecution<T> {
 
 
         System.err.println("At start: " + blocks.size());
-  
+        // progressive matching runs on the weighted candidate pairs of the local meta-blocking
+        boolean candidatePairs = (deduplicationProperties.isLocalMetaBlocking() || progressive) && !blocks.isEmpty();
+        if (candidatePairs) {
+            new BlockGraphPruning(deduplicationProperties.isRunBP(), deduplicationProperties.isRunBF(),
+                    deduplicationProperties.isRunEP(), deduplicationProperties.getFilterParam(),
+                    nodePruning)
+                    .setOrderByWeight(progressive)
+                    .setEntityBlockCounts(deduplicationProperties.isTableStatistics()
+                            ? BlockIndexRegistry.get(tableName).getEntityBlockCounts() : null)
+                    .applyProcessing(blocks);
+        }
 
         DeduplicationExecution.qIds = qIds;
         // To find ground truth statistics
@@ -236,6 +274,10 @@ public class DeduplicationExecution<T> {
 
         queryData = mergeMaps(queryData, dataWithLinks);
         ExecuteBlockComparisons<?> ebc = new ExecuteBlockComparisons(queryData, eqbi, randomAccessReader);
+        ebc.setBudget(comparisonBudget, timeBudget);
+        ebc.setBlockingOnly(hints.isBlockingOnly());
+        ebc.setCandidatePairs(candidatePairs);
+        ebc.setMatcher(matcher);
         EntityResolvedTuple<?> entityResolvedTuple = ebc.comparisonExecutionAll(blocks, qIdsNoLinks, key, noOfAttributes,tableName);
         double comparisonEndTime = System.currentTimeMillis();
         double links2StartTime = System.currentTimeMillis();
@@ -407,24 +449,19 @@ public class DeduplicationExecution<T> {
 
     }
 
-    private static HashMap<Integer, Object[]> getExtraData(HashMap<Integer, Object[]> dataWithLinks, Set<Integer> linkedIds, Enumerator<Object[]> originalEnumerator, int tableKey) {
+    private static HashMap<Integer, Object[]> getExtraData(HashMap<Integer, Object[]> dataWithLinks, RoaringBitmap linkedIds, Enumerator<Object[]> originalEnumerator, int tableKey) {
         AbstractEnumerable<Object[]> comparisonEnumerable = createEnumerable((Enumerator<Object[]>) originalEnumerator, linkedIds, tableKey);
         originalEnumerator.close();
         return mergeMaps(dataWithLinks, createMap(comparisonEnumerable, tableKey));
     }
 
-    public static Set<Integer> getLinkedIds(Integer key, Map<Integer, Set<Integer>> links, Set<Integer> qIds) {
+    public static RoaringBitmap getLinkedIds(Integer key, Map<Integer, Set<Integer>> links, RoaringBitmap qIds) {
 
-        Set<Integer> linkedIds = new HashSet<>();
-        Set<Set<Integer>> sublinks = links.entrySet().stream().filter(entry -> {
-            return qIds.contains(entry.getKey());
-        }).map(entry -> {
-            return entry.getValue();
-        }).collect(Collectors.toSet());
-        for (Set<Integer> sublink : sublinks) {
-            linkedIds.addAll(sublink);
-        }
-        linkedIds.removeAll(qIds);
+        RoaringBitmap linkedIds = new RoaringBitmap();
+        links.forEach((id, sublink) -> {
+            if (qIds.contains(id)) linkedIds.or(MapUtilities.toBitmap(sublink));
+        });
+        linkedIds.andNot(qIds);
 
         return linkedIds;
     }
@@ -454,9 +491,12 @@ public class DeduplicationExecution<T> {
         return map2;
     }
 
-    private static double storeIds(Set<Integer> qIds) {
+    private static double storeIds(RoaringBitmap qIds) {
         double startTime = System.currentTimeMillis();
-        SerializationUtilities.storeSerializedObject(qIds, dumpDirectories.getqIdsPath());
+        // The dump keeps its Set<Integer> format, the bitmap is only used in memory
+        Set<Integer> ids = new HashSet<>(qIds.getCardinality());
+        qIds.forEach((int id) -> ids.add(id));
+        SerializationUtilities.storeSerializedObject(ids, dumpDirectories.getqIdsPath());
         return System.currentTimeMillis() - startTime;
     }
 
@@ -552,7 +592,7 @@ public class DeduplicationExecution<T> {
      * @param key        Key column
      * @return AbstractEnumerable filtered by ids
      */
-    private static AbstractEnumerable<Object[]> createEnumerable(Enumerator<Object[]> enumerator, Set<Integer> qIds, Integer key) {
+    private static AbstractEnumerable<Object[]> createEnumerable(Enumerator<Object[]> enumerator, RoaringBitmap qIds, Integer key) {
         return new AbstractEnumerable<Object[]>() {
             @Override
             public Enumerator<Object[]> enumerator() {
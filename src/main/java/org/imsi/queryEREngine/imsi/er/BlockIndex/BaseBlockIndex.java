@@ -1,23 +1,55 @@
 package org.imsi.queryEREngine.imsi.er.BlockIndex;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.imsi.queryEREngine.apache.calcite.util.Source;
 import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvEnumerator;
 import org.imsi.queryEREngine.imsi.er.DataStructures.EntityProfile;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingListBuilder;
+
+import com.univocity.parsers.csv.CsvFormat;
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
 
 public class BaseBlockIndex extends BlockIndex{
 
+	// Shards smaller than this are not worth the extra merge work
+	private static final long MIN_SHARD_BYTES = 1 << 20;
+
+	public BaseBlockIndex() {
+		super();
+	}
+
+	/** Creates the empty index of a table, to be filled in once the table is loaded. */
+	public BaseBlockIndex(String tableName) {
+		super();
+		this.tableName = tableName;
+	}
+
 	public int createBlockIndex(CsvEnumerator<Object[]> enumerator, Integer key) {
 		while(enumerator.moveNext()) {
 			Object[] currentLine = enumerator.current();
 			Integer fields = currentLine.length;
 			if(currentLine[key].toString().equals("")) continue;
-			
+
 			EntityProfile eP = new EntityProfile(currentLine[key].toString());
 			int index = 0;
 			while(index < fields) {
 				if(index != key) {
 					eP.addAttribute(index, currentLine[index].toString());
 				}
-				
+
 				index ++;
 			}
 			this.entityProfiles.add(eP);
@@ -26,4 +58,237 @@ public class BaseBlockIndex extends BlockIndex{
 		return this.entityProfiles.size();
 	}
 
+	/**
+	 * Builds the inverted index while the table is parsed, tokenizing every row straight
+	 * into the postings instead of keeping an EntityProfile per row. Peak memory is bounded
+	 * by the size of the index rather than the size of the table.
+	 *
+	 * @param enumerator rows of the table
+	 * @param key position of the id column
+	 * @param keepProfiles also collect the rows as entity profiles, for storeBlockIndex
+	 * @return number of indexed entities
+	 */
+	public int createBlockIndex(CsvEnumerator<Object[]> enumerator, Integer key, boolean keepProfiles) {
+		HashMap<String, PostingListBuilder> postings = new HashMap<>();
+		HashMap<String, Integer> tfIdf = new HashMap<>();
+		int entities = 0;
+		while(enumerator.moveNext()) {
+			Object[] currentLine = enumerator.current();
+			if(currentLine[key].toString().equals("")) continue;
+
+			Integer entityId = Integer.parseInt(currentLine[key].toString());
+			EntityProfile eP = keepProfiles ? new EntityProfile(currentLine[key].toString()) : null;
+			for(int index = 0; index < currentLine.length; index++) {
+				if(index == key || currentLine[index] == null) continue;
+				String value = currentLine[index].toString();
+				if(keepProfiles) eP.addAttribute(index, value);
+				indexValue(value, entityId, postings, tfIdf);
+			}
+			if(keepProfiles) this.entityProfiles.add(eP);
+			entities++;
+		}
+		enumerator.close();
+		this.setTfIdf(tfIdf);
+		this.invertedIndex = buildPostings(postings);
+		return entities;
+	}
+
+	/**
+	 * Builds the inverted index by splitting the CSV file into row-aligned byte ranges
+	 * that are parsed and tokenized in parallel. The per-shard indices are then merged
+	 * partition by partition. Rows are expected on a single line, as the offsets
+	 * are later read back with readLine().
+	 *
+	 * @param source CSV file of the table
+	 * @param key position of the id column
+	 * @param offsetIndex receives the byte offsets of the entities, one builder per shard
+	 * @param threads size of the fork-join pool
+	 * @param keepProfiles also collect the rows as entity profiles, for storeBlockIndex
+	 * @return number of indexed entities
+	 */
+	public int createBlockIndex(Source source, Integer key, List<OffsetIndexBuilder> offsetIndex, int threads,
+			boolean keepProfiles) {
+		File file = new File(source.path());
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		int entities = 0;
+		try {
+			double start = System.currentTimeMillis();
+			Pair<CsvFormat, Long> header = detectFormat(source);
+			CsvFormat format = header.getLeft();
+			long dataStart = header.getRight();
+			List<long[]> ranges = splitRanges(file, dataStart, threads * 4);
+			double end = System.currentTimeMillis();
+			System.out.println("Split into " + ranges.size() + " shards in: " + (end - start)/1000 + " seconds");
+
+			start = System.currentTimeMillis();
+			List<BlockIndexShard> shards = new ArrayList<>(ranges.size());
+			for (long[] range : ranges)
+				shards.add(new BlockIndexShard(file, range[0], range[1], format, key, keepProfiles));
+			final int partitions = threads;
+			List<Future<BlockIndexShard>> built = new ArrayList<>(shards.size());
+			for (BlockIndexShard shard : shards)
+				built.add(pool.submit(() -> {
+					shard.call();
+					shard.partition(partitions);
+					return shard;
+				}));
+			for (Future<BlockIndexShard> future : built)
+				future.get();
+			end = System.currentTimeMillis();
+			System.out.println("Tokenized shards in: " + (end - start)/1000 + " seconds");
+
+			start = System.currentTimeMillis();
+			List<Future<Map<String, PostingList>>> merged = new ArrayList<>(partitions);
+			List<Future<Map<String, Integer>>> mergedTfIdf = new ArrayList<>(partitions);
+			for (int i = 0; i < partitions; i++) {
+				final int partition = i;
+				merged.add(pool.submit(() -> mergeIndexPartition(shards, partition)));
+				mergedTfIdf.add(pool.submit(() -> mergeTfIdfPartition(shards, partition)));
+			}
+			this.invertedIndex = new HashMap<>();
+			HashMap<String, Integer> tfIdf = new HashMap<>();
+			for (int i = 0; i < partitions; i++) {
+				this.invertedIndex.putAll(merged.get(i).get());
+				tfIdf.putAll(mergedTfIdf.get(i).get());
+			}
+			this.setTfIdf(tfIdf);
+			for (BlockIndexShard shard : shards) {
+				offsetIndex.add(shard.offsetIndex);
+				entities += shard.entities;
+				if (keepProfiles) this.entityProfiles.addAll(shard.entityProfiles);
+			}
+			end = System.currentTimeMillis();
+			System.out.println("Merged shards in: " + (end - start)/1000 + " seconds");
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		} finally {
+			pool.shutdown();
+		}
+		return entities;
+	}
+
+	/**
+	 * Indexes the rows appended to the CSV file after {@code start}, up to the last complete
+	 * row, for a delta segment. Offsets are absolute file offsets, as in the base index.
+	 *
+	 * @param source CSV file of the table
+	 * @param key position of the id column
+	 * @param start end of the rows already indexed
+	 * @param offsetIndex filled with the byte offset of every appended entity
+	 * @return end of the indexed rows
+	 */
+	public long createDeltaBlockIndex(Source source, Integer key, long start, OffsetIndexBuilder offsetIndex) {
+		File file = new File(source.path());
+		long end = lastRowEnd(file, start);
+		BlockIndexShard shard = new BlockIndexShard(file, start, end, detectFormat(source).getLeft(), key,
+				false);
+		try {
+			shard.call();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		this.invertedIndex = buildPostings(shard.invertedIndex);
+		this.setTfIdf(shard.tfIdf);
+		offsetIndex.addAll(shard.offsetIndex);
+		createEntitiesToBlocks();
+		return end;
+	}
+
+	/** Detects the CSV format from the header and returns it with the offset of the first row. */
+	private static Pair<CsvFormat, Long> detectFormat(Source source) {
+		try {
+			RowOffsetReader reader = CsvEnumerator.openReader(source);
+			CsvParser parser = CsvEnumerator.openCsv(reader);
+			parser.parseNext(); // skip header row
+			CsvFormat format = parser.getDetectedFormat();
+			long dataStart = Math.min(reader.offsetOf(parser.getContext().currentChar() - 1),
+					new File(source.path()).length());
+			parser.stopParsing();
+			if (format == null) format = new CsvParserSettings().getFormat();
+			return Pair.of(format, dataStart);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Returns the offset right after the last line break at or after {@code start}, or {@code start}. */
+	public static long lastRowEnd(File file, long start) {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			byte[] buffer = new byte[8192];
+			long end = raf.length();
+			while (end > start) {
+				int length = (int) Math.min(buffer.length, end - start);
+				raf.seek(end - length);
+				raf.readFully(buffer, 0, length);
+				for (int i = length - 1; i >= 0; i--)
+					if (buffer[i] == '\n') return end - length + i + 1;
+				end -= length;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return start;
+	}
+
+	private static Map<String, PostingList> mergeIndexPartition(List<BlockIndexShard> shards, int partition) {
+		Map<String, PostingListBuilder> merged = new HashMap<>();
+		for (BlockIndexShard shard : shards) {
+			for (Map.Entry<String, PostingListBuilder> block : shard.indexPartitions.get(partition).entrySet()) {
+				PostingListBuilder entities = merged.get(block.getKey());
+				if (entities == null)
+					merged.put(block.getKey(), block.getValue());
+				else
+					entities.addAll(block.getValue());
+			}
+			shard.indexPartitions.set(partition, null);
+		}
+		return buildPostings(merged);
+	}
+
+	private static Map<String, Integer> mergeTfIdfPartition(List<BlockIndexShard> shards, int partition) {
+		Map<String, Integer> merged = new HashMap<>();
+		for (BlockIndexShard shard : shards)
+			shard.tfIdfPartitions.get(partition).forEach((token, count) -> merged.merge(token, count, Integer::sum));
+		return merged;
+	}
+
+	/**
+	 * Splits [dataStart, file length) into roughly equal ranges that end right after a line break.
+	 */
+	private static List<long[]> splitRanges(File file, long dataStart, int shards) {
+		List<long[]> ranges = new ArrayList<>();
+		long length = file.length();
+		long shardSize = Math.max((length - dataStart) / Math.max(shards, 1), MIN_SHARD_BYTES);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			byte[] buffer = new byte[8192];
+			long begin = dataStart;
+			while (begin < length) {
+				long end = Math.min(begin + shardSize, length);
+				// move the end of the range after the next line break
+				boolean found = end >= length;
+				while (!found) {
+					raf.seek(end);
+					int read = raf.read(buffer);
+					if (read <= 0) {
+						end = length;
+						break;
+					}
+					for (int i = 0; i < read; i++) {
+						if (buffer[i] == '\n') {
+							end = end + i + 1;
+							found = true;
+							break;
+						}
+					}
+					if (!found) end += read;
+				}
+				ranges.add(new long[] {begin, end});
+				begin = end;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return ranges;
+	}
+
 }
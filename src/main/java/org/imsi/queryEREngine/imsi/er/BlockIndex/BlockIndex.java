@@ -17,6 +17,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
 import java.util.Set;
+import java.util.function.Function;
 
 import org.apache.commons.io.FileUtils;
 import org.imsi.queryEREngine.apache.calcite.plan.RelOptTable;
@@ -40,13 +41,17 @@ import org.imsi.queryEREngine.imsi.er.BlockBuilding.ExtendedCanopyClustering;
 import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
 import org.imsi.queryEREngine.imsi.er.DataStructures.Attribute;
 import org.imsi.queryEREngine.imsi.er.DataStructures.EntityProfile;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingListBuilder;
 import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
 import org.imsi.queryEREngine.imsi.er.Utilities.Converter;
 import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
 import org.imsi.queryEREngine.imsi.er.Utilities.EquiFreqBinning;
-import org.imsi.queryEREngine.imsi.er.Utilities.MapUtilities;
 import org.imsi.queryEREngine.imsi.er.Utilities.SerializationUtilities;
 import org.imsi.queryEREngine.imsi.er.Utilities.TokenStatistics;
+import org.imsi.queryEREngine.imsi.er.Utilities.Tokenizer;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,21 +60,22 @@ implements  TranslatableTable {
 	protected static final Logger DEDUPLICATION_EXEC_LOGGER =  LoggerFactory.getLogger(DeduplicationExecution.class);
 
 	public List<EntityProfile> entityProfiles;
-	protected Map<String, Set<Integer>> invertedIndex;
+	protected Map<String, PostingList> invertedIndex;
 	protected BlockIndexStatistic blockIndexStatistic;
 	protected Map<String, Integer> tfIdf;
 	protected Set<Integer> joinedIds;
 	protected Map<Integer, Set<String>> entitiesToBlocks;
 	protected DumpDirectories dumpDirectories = new DumpDirectories();
+	protected String tableName;
 	
 	public BlockIndex() {
 		this.entityProfiles = new ArrayList<EntityProfile>();
-		this.invertedIndex = new HashMap<String, Set<Integer>>();
+		this.invertedIndex = new HashMap<String, PostingList>();
 		this.blockIndexStatistic = new BlockIndexStatistic();
 	}
 
 	public BlockIndex(String path) {
-		this.invertedIndex = (Map<String, Set<Integer>>) SerializationUtilities.loadSerializedObject(path);
+		this.invertedIndex = (Map<String, PostingList>) SerializationUtilities.loadSerializedObject(path);
 	}
 	
 	public void buildBlocks() {
@@ -78,11 +84,11 @@ implements  TranslatableTable {
 
 	}
 	
-	public static List<AbstractBlock> parseIndex(Map<String, Set<Integer>> invertedIndex) {
+	public static List<AbstractBlock> parseIndex(Map<String, PostingList> invertedIndex) {
 		List<AbstractBlock> blocks = new ArrayList<AbstractBlock>();
-		for (Entry<String, Set<Integer>> term : invertedIndex.entrySet()) {
+		for (Entry<String, PostingList> term : invertedIndex.entrySet()) {
 			if (1 < term.getValue().size()) {
-				int[] idsArray = Converter.convertListToArray(term.getValue());
+				int[] idsArray = term.getValue().toIntArray();
 				UnilateralBlock uBlock = new UnilateralBlock(idsArray);
 				blocks.add(uBlock);
 			}
@@ -91,64 +97,46 @@ implements  TranslatableTable {
 		return blocks;
 	}
 	
-	@SuppressWarnings("unchecked")
-	protected Map<String, Set<Integer>> indexEntities(int sourceId, List<EntityProfile> profiles) {
-		invertedIndex = new HashMap<String, Set<Integer>>();
-		InputStream txtFile = this.getClass().getClassLoader().getResourceAsStream("stopwords/stopwords.txt");
-		//file = new File(this.getClass().getClassLoader().getResource("stopwords_SER").toExternalForm());
-		HashSet<String> stopwords1 = new HashSet<>();
-		BufferedReader reader = null;
-		try {
-			reader = new BufferedReader(new InputStreamReader(txtFile));
-			String line;
-			while ((line = reader.readLine()) != null) {
-				stopwords1.add(line.trim());
-			}
-			reader.close();
-		} catch (FileNotFoundException e) {
-			throw new RuntimeException(e);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-
-		SerializationUtilities.storeSerializedObject(stopwords1, "src/main/resources/stopwords_SER");
-
-		InputStream file = this.getClass().getClassLoader().getResourceAsStream("stopwords_SER");
-		HashSet<String> stopwords = (HashSet<String>) SerializationUtilities
-				.loadSerializedObject(file);
-
-				// System.out.println("Stopwords:");
-				// for (String word : stopwords) {
-				// 	System.out.println(word);
-				// }
-
-
-
+	protected Map<String, PostingList> indexEntities(int sourceId, List<EntityProfile> profiles) {
+		HashMap<String, PostingListBuilder> postings = new HashMap<>();
 		HashMap<String, Integer> tfIdf = new HashMap<>();
 		for (EntityProfile profile : profiles) {
+			Integer entityId = Integer.parseInt(profile.getEntityUrl());
 			for (Attribute attribute : profile.getAttributes()) {
 				if (attribute.getValue() == null)
 					continue;
-				String cleanValue = attribute.getValue().replaceAll("_", " ").trim().replaceAll("\\s*,\\s*$", "")
-						.toLowerCase();
-				for (String token : cleanValue.split("[\\W_]")) {
-					if (2 < token.trim().length()) {
-						if (stopwords.contains(token.toLowerCase()))
-							continue;
-						Set<Integer> termEntities = invertedIndex.computeIfAbsent(token.trim(),
-								x -> new HashSet<Integer>());
-
-						termEntities.add(Integer.parseInt(profile.getEntityUrl()));
-						int tokenCount = tfIdf.containsKey(token) ? tfIdf.get(token) : 0;
-						tfIdf.put(token, tokenCount + 1);
-					}
-				}
+				indexValue(attribute.getValue(), entityId, postings, tfIdf);
 			}
 		}
 		this.setTfIdf(tfIdf);
 		//System.out.println("index size:" + tfIdf.size());
+		invertedIndex = buildPostings(postings);
+		return invertedIndex;
+	}
+
+	/**
+	 * Tokenizes a single attribute value and adds the entity to the block of every token.
+	 * Shared by the sequential and the sharded index construction, so that both produce the same blocks.
+	 */
+	protected static void indexValue(String value, Integer entityId, Map<String, PostingListBuilder> invertedIndex,
+			Map<String, Integer> tfIdf) {
+		Tokenizer.tokenize(value, token -> {
+			invertedIndex.computeIfAbsent(token, x -> new PostingListBuilder()).add(entityId);
+			tfIdf.merge(token, 1, Integer::sum);
+		});
+	}
+
+	/** Turns the postings collected while indexing into immutable posting lists. */
+	public static HashMap<String, PostingList> buildPostings(Map<String, PostingListBuilder> postings) {
+		HashMap<String, PostingList> invertedIndex = new HashMap<>(postings.size() * 4 / 3 + 1);
+		Iterator<Entry<String, PostingListBuilder>> iterator = postings.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry<String, PostingListBuilder> term = iterator.next();
+			invertedIndex.put(term.getKey(), term.getValue().build());
+			iterator.remove();
+		}
 		return invertedIndex;
-	}    
+	}
 
 	public int intersectionsCount(Set set1, Set set2) {
 	    if (set2.size() < set1.size()) return intersectionsCount(set2, set1);
@@ -181,8 +169,9 @@ implements  TranslatableTable {
 	public void createEntitiesToBlocks() {
 		HashMap<Integer, Set<String>> entitiesToBlocks = new HashMap<>();
 		for(String key : invertedIndex.keySet()) {
-			Set<Integer> blockEntities = invertedIndex.get(key);
-			for(Integer blockEntity : blockEntities) {
+			IntIterator blockEntities = invertedIndex.get(key).iterator();
+			while(blockEntities.hasNext()) {
+				int blockEntity = blockEntities.nextInt();
 				Set<String> termTokens = entitiesToBlocks.computeIfAbsent(blockEntity,
 						x -> new HashSet<String>());
 				termTokens.add(key);
@@ -239,37 +228,56 @@ implements  TranslatableTable {
 		Set<String> removeIds = new HashSet<>();
 		for(List<String> bin : bins) {
 			String[] keys = bin.toArray(new String[bin.size()]);
-			Set<Integer> set1 = invertedIndex.get(keys[0]);
+			PostingList set1 = invertedIndex.get(keys[0]);
 			for(int j = 1; j < keys.length; j ++) {
 				String key2 = keys[j];
-				Set<Integer> set2 = invertedIndex.get(key2);
+				PostingList set2 = invertedIndex.get(key2);
 				int size = set2.size();
 				//if(commonRatio(set1, set2) > 0.1) removeIds.add(key2);
 				//if(set1.containsAll(set2)) removeIds.add(key2);
-				set2.retainAll(set1);
-				if(set2.size() < size * 0.1) removeIds.add(key2);
+				if(set2.intersectionCount(set1) < size * 0.1) removeIds.add(key2);
 			}
 		}
 		for(String id : removeIds) invertedIndex.remove(id);
 	}
 	
 	public void storeBlockIndex(String path, String tableName) {
-		SerializationUtilities.storeSerializedObject(this.invertedIndex, path + tableName + "InvertedIndex" );
+		MappedBlockIndex.write(this.invertedIndex, path + tableName + MappedBlockIndex.FILE_SUFFIX);
+		EntityBlockCounts.write(this.invertedIndex.values(), path + tableName + EntityBlockCounts.FILE_SUFFIX);
 		SerializationUtilities.storeSerializedObject(this.entitiesToBlocks, path + tableName + "EntitiesToBlocks" );
-		SerializationUtilities.storeSerializedObject(this.entityProfiles, path + tableName);
+		if (!this.entityProfiles.isEmpty())
+			SerializationUtilities.storeSerializedObject(this.entityProfiles, path + tableName);
 	}
 	
 	public void loadBlockIndex(String path, String tableName) {
-		this.invertedIndex = (Map<String, Set<Integer>>) SerializationUtilities.loadSerializedObject(path + tableName + "InvertedIndex" );
+		MappedBlockIndex mappedBlockIndex = MappedBlockIndex.open(path + tableName + MappedBlockIndex.FILE_SUFFIX);
+		this.invertedIndex = mappedBlockIndex.toMap();
+		mappedBlockIndex.close();
 		this.entitiesToBlocks = (Map<Integer, Set<String>>) SerializationUtilities.loadSerializedObject(path + tableName + "EntitiesToBlocks");
+		BlockIndexSegments segments = BlockIndexSegments.load(tableName);
+		if (segments != null) {
+			segments.mergeInvertedIndex(this.invertedIndex);
+			segments.mergeEntitiesToBlocks(this.entitiesToBlocks);
+		}
 	}
 	
 	
-	public Map<String, Set<Integer>> getInvertedIndex() {
+	public Map<String, PostingList> getInvertedIndex() {
+		if (invertedIndex == null && tableName != null)
+			return BlockIndexRegistry.get(tableName).getInvertedIndex();
 		return invertedIndex;
 	}
 
-	public void setInvertedIndex(Map<String, Set<Integer>> invertedIndex) {
+	/**
+	 * Hands the inverted index over to the {@link BlockIndexRegistry}, which may evict it
+	 * from memory. Later calls to {@link #getInvertedIndex()} go through the registry.
+	 */
+	public void releaseInvertedIndex(String tableName) {
+		this.tableName = tableName;
+		this.invertedIndex = null;
+	}
+
+	public void setInvertedIndex(Map<String, PostingList> invertedIndex) {
 		this.invertedIndex = invertedIndex;
 	}
 
@@ -315,14 +323,12 @@ implements  TranslatableTable {
 	}
 
 
+	/**
+	 * The comparisons of a query are estimated from the statistics registered with the table and
+	 * the postings of the query tokens, looked up one by one, so planning never loads the index.
+	 */
 	@Override
 	public Statistic getStatistic() {
-		
-		
-		final BlockIndexStatistic blockIndexStatistic = this.blockIndexStatistic;
-		final Map<String, Set<Integer>> invertedIndex = MapUtilities.deepCopy(this.invertedIndex);
-		final Map<Integer, Set<String>> entitiesToBlocks = MapUtilities.deepCopy(this.entitiesToBlocks);
-
 		return new Statistic() {
 			@Override
 			public Double getRowCount() {
@@ -362,7 +368,15 @@ implements  TranslatableTable {
 				
 				if(new File(links).exists())
 					entitiesWithLinks = ((HashMap<Integer, Set<Integer>>) SerializationUtilities.loadSerializedObject(links)).keySet();
-				TokenStatistics tokenStatistics = new TokenStatistics(invertedIndex, entitiesToBlocks, blockIndexStatistic, entitiesWithLinks, conjuctions);
+				BlockIndexStatistic blockIndexStatistic = BlockIndex.this.blockIndexStatistic;
+				Function<String, PostingList> postings = token -> invertedIndex.get(token);
+				if(BlockIndex.this.tableName != null) {
+					BlockIndexView view = BlockIndexRegistry.get(BlockIndex.this.tableName);
+					BlockIndexStatistic registered = view.getStatistic();
+					if(registered != null) blockIndexStatistic = registered;
+					postings = view::get;
+				}
+				TokenStatistics tokenStatistics = new TokenStatistics(postings, blockIndexStatistic, entitiesWithLinks, conjuctions);
 				double comparisons = tokenStatistics.getComparisons().doubleValue();
 				double end = System.currentTimeMillis();
 				System.out.println("Comparisons time: " + (end-begin)/1000);
@@ -0,0 +1,107 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
+import org.imsi.queryEREngine.imsi.er.Utilities.SerializationUtilities;
+
+/**
+ * Merges the delta segments of a block index back into its base segment in the background.
+ * The new base is written next to the old one and moved over it, so queries keep reading the
+ * previous files until the registry switches to the compacted index.
+ */
+public class BlockIndexCompactor {
+
+	private static final DumpDirectories dumpDirectories = new DumpDirectories();
+
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "block-index-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private BlockIndexCompactor() {
+	}
+
+	/**
+	 * Schedules the compaction of a table.
+	 *
+	 * @param tableName table to compact
+	 * @param blockIndex index of the table in the schema, updated with the new statistics, may be null
+	 */
+	public static Future<?> submit(String tableName, BlockIndex blockIndex) {
+		return executor.submit(() -> compact(tableName, blockIndex));
+	}
+
+	public static void compact(String tableName, BlockIndex blockIndex) {
+		synchronized (BlockIndexSegments.lock(tableName)) {
+			BlockIndexSegments segments = BlockIndexSegments.load(tableName);
+			if (segments == null || segments.getSegments().isEmpty()) return;
+			double start = System.currentTimeMillis();
+			List<Integer> merged = new ArrayList<>(segments.getSegments());
+
+			BaseBlockIndex compacted = new BaseBlockIndex();
+			compacted.loadBlockIndex(dumpDirectories.getBlockIndexDirPath(), tableName);
+			String basePath = segments.basePath();
+			MappedBlockIndex.write(compacted.getInvertedIndex(), basePath + ".tmp");
+			moveOver(basePath + ".tmp", basePath);
+			EntityBlockCounts.write(compacted.getInvertedIndex().values(), segments.entityBlockCountsPath());
+			SerializationUtilities.storeSerializedObject(compacted.getEntitiesToBlocks(),
+					dumpDirectories.getBlockIndexDirPath() + tableName + "EntitiesToBlocks");
+			OffsetIndexBuilder offsetIndex = new OffsetIndexBuilder();
+			OffsetIndex offsets = BlockIndexSegments.openOffsets(tableName);
+			// an id re-appended in a later segment keeps only its newest offset
+			offsets.forEach((id, offset) -> {
+				if (offsets.get(id) == offset) offsetIndex.add(id, offset);
+			});
+			offsets.close();
+			String offsetsPath = segments.baseOffsetsPath();
+			offsetIndex.write(offsetsPath + ".tmp");
+			moveOver(offsetsPath + ".tmp", offsetsPath);
+
+			compacted.sortIndex();
+			BlockIndexStatistic blockIndexStatistic = new BlockIndexStatistic(compacted.getInvertedIndex(),
+					compacted.getEntitiesToBlocks(), tableName);
+			blockIndexStatistic.setTableSize(offsetIndex.size());
+			try {
+				blockIndexStatistic.storeStatistics();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+
+			segments.removeSegments(merged);
+			segments.store();
+			for (Integer segment : merged) {
+				new File(segments.indexPath(segment)).delete();
+				new File(segments.entitiesToBlocksPath(segment)).delete();
+				new File(segments.offsetsPath(segment)).delete();
+			}
+			// the appended tokens are in the compacted base now
+			new File(segments.tokenDictionaryPath()).delete();
+			BlockIndexRegistry.register(tableName, null, blockIndexStatistic);
+			if (blockIndex != null) blockIndex.setBlockIndexStatistic(blockIndexStatistic);
+			double end = System.currentTimeMillis();
+			System.out.println("Compacted " + merged.size() + " segments of " + tableName + " in: "
+					+ (end - start)/1000 + " seconds");
+		}
+	}
+
+	private static void moveOver(String source, String target) {
+		try {
+			Files.move(Paths.get(source), Paths.get(target), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,97 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.imsi.queryEREngine.imsi.er.Utilities.DeduplicationProperties;
+
+/**
+ * Builds or loads the block indices of a schema off the connection path, so that tables are
+ * registered at once. In eager mode every table is loaded by a pool of background threads,
+ * in lazy mode a table is loaded by the first query that needs it. Either way a query only
+ * waits for the tables it uses.
+ */
+public class BlockIndexLoader {
+
+	private static final Map<String, FutureTask<BaseBlockIndex>> tasks = new ConcurrentHashMap<>();
+	private static final ThreadLocal<String> loading = new ThreadLocal<>();
+	private static ExecutorService executor;
+
+	private BlockIndexLoader() {
+	}
+
+	/**
+	 * Schedules the loading of a table, replacing any previous one.
+	 *
+	 * @param tableName table of the index
+	 * @param loader builds or loads the index and registers it
+	 */
+	public static void schedule(String tableName, Callable<BaseBlockIndex> loader) {
+		FutureTask<BaseBlockIndex> task = new FutureTask<>(() -> {
+			loading.set(tableName);
+			try {
+				return loader.call();
+			} finally {
+				loading.remove();
+			}
+		});
+		tasks.put(tableName, task);
+		if (!DeduplicationProperties.isLazyIndexLoad()) executor().execute(task);
+	}
+
+	private static synchronized ExecutorService executor() {
+		if (executor == null) {
+			AtomicInteger threads = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(DeduplicationProperties.getIndexLoadThreads(), runnable -> {
+				Thread thread = new Thread(runnable, "block-index-loader-" + threads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Waits until the index of a table is loaded, loading it in the calling thread if no one
+	 * started yet. Returns null for tables that were never scheduled.
+	 */
+	public static BaseBlockIndex await(String tableName) {
+		if (tableName == null || tableName.equals(loading.get())) return null;
+		FutureTask<BaseBlockIndex> task = tasks.get(tableName);
+		if (task == null) return null;
+		task.run();
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Loading the block index of " + tableName + " failed", e.getCause());
+		}
+	}
+
+	/** Waits for every scheduled table. */
+	public static void awaitAll() {
+		for (String tableName : tasks.keySet()) await(tableName);
+	}
+
+	public static boolean isReady(String tableName) {
+		FutureTask<BaseBlockIndex> task = tasks.get(tableName);
+		return task == null || task.isDone();
+	}
+
+	/** Returns whether the index of every scheduled table is loaded, by table name. */
+	public static Map<String, Boolean> getReadiness() {
+		Map<String, Boolean> readiness = new TreeMap<>();
+		tasks.forEach((tableName, task) -> readiness.put(tableName, task.isDone()));
+		return readiness;
+	}
+
+}
@@ -0,0 +1,174 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.imsi.queryEREngine.imsi.er.Utilities.DeduplicationProperties;
+import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Process-wide registry of the block indices of all tables. CsvSchema registers every
+ * index it builds or loads, and queries get their postings and statistics from here
+ * instead of reading the dump files again.
+ *
+ * Inverted indices kept on the heap, and the entity tokens inverted from them, are limited by
+ * index.cache.mb. When the budget is exceeded the least recently used tables fall back to their
+ * mapped index files.
+ * Tables with delta segments are served from the base and all deltas together.
+ */
+public class BlockIndexRegistry {
+
+	private static final DeduplicationProperties deduplicationProperties = new DeduplicationProperties();
+	private static final DumpDirectories dumpDirectories = new DumpDirectories();
+
+	// access ordered, the eldest entry is the least recently used table
+	private static final LinkedHashMap<String, BlockIndexView> views = new LinkedHashMap<>(16, 0.75f, true);
+	private static long residentBytes = 0;
+
+	private BlockIndexRegistry() {
+	}
+
+	/**
+	 * Registers the index of a table that is already on the heap, replacing any previous one.
+	 */
+	public static synchronized BlockIndexView register(String tableName, Map<String, PostingList> invertedIndex,
+			BlockIndexStatistic statistic) {
+		evict(tableName);
+		BlockIndexView view = openView(tableName, statistic);
+		views.put(tableName, view);
+		if (invertedIndex != null) {
+			long bytes = estimateBytes(invertedIndex);
+			view.setResidentIndex(invertedIndex, bytes);
+			residentBytes += bytes;
+			enforceBudget(view);
+		}
+		return view;
+	}
+
+	/**
+	 * Returns the index of a table, opening its dump files if it was never registered.
+	 * Waits first for the table to be loaded, outside the registry lock so that other
+	 * tables stay available meanwhile.
+	 */
+	public static BlockIndexView get(String tableName) {
+		BlockIndexLoader.await(tableName);
+		return getLoaded(tableName);
+	}
+
+	private static synchronized BlockIndexView getLoaded(String tableName) {
+		BlockIndexView view = views.get(tableName);
+		if (view != null) return view;
+		view = openView(tableName, loadStatistic(tableName));
+		views.put(tableName, view);
+		return view;
+	}
+
+	/** Maps the base index of a table together with its delta segments. */
+	private static BlockIndexView openView(String tableName, BlockIndexStatistic statistic) {
+		MappedBlockIndex mappedBlockIndex = MappedBlockIndex.open(dumpDirectories.getBlockIndexDirPath() + tableName
+				+ MappedBlockIndex.FILE_SUFFIX);
+		List<MappedBlockIndex> deltas = new ArrayList<>();
+		BlockIndexSegments segments = BlockIndexSegments.load(tableName);
+		if (segments != null)
+			for (Integer segment : segments.getSegments())
+				deltas.add(MappedBlockIndex.open(segments.indexPath(segment)));
+		return new BlockIndexView(tableName, mappedBlockIndex, deltas,
+				TokenDictionary.open(mappedBlockIndex, deltas, segments), statistic);
+	}
+
+	public static synchronized boolean isRegistered(String tableName) {
+		return views.containsKey(tableName);
+	}
+
+	/**
+	 * Removes a table from the registry. The view is not closed: queries that still hold it,
+	 * such as those running while the table is compacted, keep reading its mapped files, which
+	 * are unmapped once the last of them drops the view.
+	 */
+	public static synchronized void evict(String tableName) {
+		BlockIndexView view = views.remove(tableName);
+		if (view == null) return;
+		residentBytes -= view.residentBytes + view.entityTokensBytes;
+		view.setResidentIndex(null, 0);
+		view.setEntityTokens(null, 0);
+	}
+
+	public static synchronized void clear() {
+		for (String tableName : new ArrayList<>(views.keySet())) evict(tableName);
+	}
+
+	public static synchronized long getResidentBytes() {
+		return residentBytes;
+	}
+
+	static synchronized Map<String, PostingList> makeResident(BlockIndexView view) {
+		if (view.isResident()) return view.getInvertedIndex();
+		double start = System.currentTimeMillis();
+		Map<String, PostingList> invertedIndex = view.decode();
+		double end = System.currentTimeMillis();
+		System.out.println("Loaded block index of " + view.getTableName() + " in: " + (end - start)/1000 + " seconds");
+		// a view replaced or evicted meanwhile is not charged, nor does it keep the copy
+		if (views.get(view.getTableName()) != view) return invertedIndex;
+		long bytes = estimateBytes(invertedIndex);
+		view.setResidentIndex(invertedIndex, bytes);
+		residentBytes += bytes;
+		enforceBudget(view);
+		return invertedIndex;
+	}
+
+	static synchronized EntityTokens makeEntityTokensResident(BlockIndexView view) {
+		if (view.hasEntityTokens()) return view.getEntityTokens();
+		double start = System.currentTimeMillis();
+		EntityTokens entityTokens = view.invert();
+		long bytes = entityTokens.estimateBytes();
+		view.setEntityTokens(entityTokens, bytes);
+		// a view replaced meanwhile is no longer charged, its tokens are dropped with it
+		if (views.get(view.getTableName()) == view) residentBytes += bytes;
+		else view.setEntityTokens(null, 0);
+		double end = System.currentTimeMillis();
+		System.out.println("Entity tokens of " + view.getTableName() + " in: " + (end - start)/1000 + " seconds");
+		enforceBudget(view);
+		return entityTokens;
+	}
+
+	/** Drops the heap copies of the least recently used indices until the budget is met. */
+	private static void enforceBudget(BlockIndexView keep) {
+		long budget = DeduplicationProperties.getIndexCacheBytes();
+		List<BlockIndexView> candidates = new ArrayList<>(views.values());
+		for (BlockIndexView view : candidates) {
+			if (residentBytes <= budget) break;
+			if (view == keep || (!view.isResident() && !view.hasEntityTokens())) continue;
+			residentBytes -= view.residentBytes + view.entityTokensBytes;
+			view.setResidentIndex(null, 0);
+			view.setEntityTokens(null, 0);
+			System.out.println("Evicted block index of " + view.getTableName() + " from memory");
+		}
+	}
+
+	private static BlockIndexStatistic loadStatistic(String tableName) {
+		ObjectMapper objectMapper = new ObjectMapper();
+		try {
+			return objectMapper.readValue(new File(dumpDirectories.getBlockIndexStatsDirPath() + tableName + ".json"),
+					BlockIndexStatistic.class);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	// Rough heap footprint: map entry, token string and the posting array
+	private static long estimateBytes(Map<String, PostingList> invertedIndex) {
+		long bytes = 0;
+		for (Map.Entry<String, PostingList> block : invertedIndex.entrySet())
+			bytes += 96 + 2L * block.getKey().length() + 4L * block.getValue().size();
+		return bytes;
+	}
+
+}
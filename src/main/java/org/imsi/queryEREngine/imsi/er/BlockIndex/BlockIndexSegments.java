@@ -0,0 +1,175 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
+import org.imsi.queryEREngine.imsi.er.Utilities.SerializationUtilities;
+
+/**
+ * Manifest of the segments that make up the block index of a table. The base segment covers
+ * the CSV file up to the point it was built. Rows appended later are indexed into small delta
+ * segments, each with its own mapped index, entities to blocks and offsets dumps, until
+ * {@link BlockIndexCompactor} merges them back into the base.
+ *
+ * Postings of the same token are combined with a union, so applying a delta twice is harmless.
+ */
+public class BlockIndexSegments implements Serializable {
+
+	private static final long serialVersionUID = -4170563328176829645L;
+	public static final String FILE_SUFFIX = "Segments";
+
+	private static final DumpDirectories dumpDirectories = new DumpDirectories();
+	private static final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+	private final String tableName;
+	private long indexedBytes;
+	private int appendedEntities;
+	private int nextSegment;
+	private final List<Integer> segments = new ArrayList<>();
+
+	public BlockIndexSegments(String tableName, long indexedBytes) {
+		this.tableName = tableName;
+		this.indexedBytes = indexedBytes;
+	}
+
+	/** Returns the manifest of a table, or null if its index predates segments. */
+	public static BlockIndexSegments load(String tableName) {
+		String path = dumpDirectories.getBlockIndexDirPath() + tableName + FILE_SUFFIX;
+		if (!new File(path).exists()) return null;
+		return (BlockIndexSegments) SerializationUtilities.loadSerializedObject(path);
+	}
+
+	public void store() {
+		SerializationUtilities.storeSerializedObject(this, dumpDirectories.getBlockIndexDirPath() + tableName + FILE_SUFFIX);
+	}
+
+	/** Lock held while the segments of a table are appended or compacted. */
+	public static Object lock(String tableName) {
+		return locks.computeIfAbsent(tableName, x -> new Object());
+	}
+
+	/** Reserves the id of a new delta segment. */
+	public int addSegment(long indexedBytes, int entities) {
+		int segment = nextSegment++;
+		segments.add(segment);
+		this.indexedBytes = indexedBytes;
+		this.appendedEntities += entities;
+		return segment;
+	}
+
+	/** Forgets the given segments once they have been merged into the base. */
+	public void removeSegments(List<Integer> merged) {
+		segments.removeAll(merged);
+		if (segments.isEmpty()) appendedEntities = 0;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	/** End of the rows of the CSV file covered by the index. */
+	public long getIndexedBytes() {
+		return indexedBytes;
+	}
+
+	/** Entities in delta segments, not yet counted in the stored statistics. */
+	public int getAppendedEntities() {
+		return appendedEntities;
+	}
+
+	public List<Integer> getSegments() {
+		return Collections.unmodifiableList(segments);
+	}
+
+	public String basePath() {
+		return dumpDirectories.getBlockIndexDirPath() + tableName + MappedBlockIndex.FILE_SUFFIX;
+	}
+
+	public String entityBlockCountsPath() {
+		return entityBlockCountsPath(tableName);
+	}
+
+	public static String entityBlockCountsPath(String tableName) {
+		return dumpDirectories.getBlockIndexDirPath() + tableName + EntityBlockCounts.FILE_SUFFIX;
+	}
+
+	public String tokenDictionaryPath() {
+		return dumpDirectories.getBlockIndexDirPath() + tableName + TokenDictionary.FILE_SUFFIX;
+	}
+
+	public String indexPath(int segment) {
+		return dumpDirectories.getBlockIndexDirPath() + tableName + "InvertedIndex." + segment + ".idx";
+	}
+
+	public String entitiesToBlocksPath(int segment) {
+		return dumpDirectories.getBlockIndexDirPath() + tableName + "EntitiesToBlocks." + segment;
+	}
+
+	public String baseOffsetsPath() {
+		return baseOffsetsPath(tableName);
+	}
+
+	public static String baseOffsetsPath(String tableName) {
+		return dumpDirectories.getOffsetsDirPath() + tableName + OffsetIndex.FILE_SUFFIX;
+	}
+
+	public String offsetsPath(int segment) {
+		return dumpDirectories.getOffsetsDirPath() + tableName + "." + segment + OffsetIndex.FILE_SUFFIX;
+	}
+
+	/** Adds the postings of every delta segment to the given inverted index. */
+	public void mergeInvertedIndex(Map<String, PostingList> invertedIndex) {
+		for (Integer segment : segments) {
+			MappedBlockIndex delta = MappedBlockIndex.open(indexPath(segment));
+			mergeInvertedIndex(invertedIndex, delta.toMap());
+			delta.close();
+		}
+	}
+
+	/** Adds the entities to blocks of every delta segment to the given map. */
+	@SuppressWarnings("unchecked")
+	public void mergeEntitiesToBlocks(Map<Integer, Set<String>> entitiesToBlocks) {
+		for (Integer segment : segments)
+			mergeEntitiesToBlocks(entitiesToBlocks,
+					(Map<Integer, Set<String>>) SerializationUtilities.loadSerializedObject(entitiesToBlocksPath(segment)));
+	}
+
+	public static void mergeInvertedIndex(Map<String, PostingList> invertedIndex, Map<String, PostingList> delta) {
+		for (Map.Entry<String, PostingList> block : delta.entrySet())
+			invertedIndex.merge(block.getKey(), block.getValue(), PostingList::union);
+	}
+
+	public static void mergeEntitiesToBlocks(Map<Integer, Set<String>> entitiesToBlocks,
+			Map<Integer, Set<String>> delta) {
+		for (Map.Entry<Integer, Set<String>> entity : delta.entrySet()) {
+			Set<String> blocks = entitiesToBlocks.get(entity.getKey());
+			if (blocks == null)
+				entitiesToBlocks.put(entity.getKey(), entity.getValue());
+			else {
+				blocks = new LinkedHashSet<>(blocks);
+				blocks.addAll(entity.getValue());
+				entitiesToBlocks.put(entity.getKey(), blocks);
+			}
+		}
+	}
+
+	/** Opens the offsets of the base and of every delta segment of a table. */
+	public static OffsetIndex openOffsets(String tableName) {
+		BlockIndexSegments segments = load(tableName);
+		List<String> deltaPaths = new ArrayList<>();
+		if (segments != null)
+			for (Integer segment : segments.segments)
+				deltaPaths.add(segments.offsetsPath(segment));
+		return OffsetIndex.open(baseOffsetsPath(tableName), deltaPaths);
+	}
+
+}
@@ -0,0 +1,116 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.imsi.queryEREngine.imsi.er.DataStructures.EntityProfile;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingListBuilder;
+
+import com.univocity.parsers.csv.CsvFormat;
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
+
+/**
+ * Partial block index over a byte range of a CSV file.
+ * Ranges always start at a row boundary, so the offsets recorded by a shard are
+ * absolute file offsets and can be merged as they are with the other shards.
+ * The range is decoded as UTF-8, like the rest of the table, and the offsets are the byte
+ * offsets of the rows, mapped back from the chars of the parser by {@link RowOffsetReader}.
+ */
+class BlockIndexShard implements Callable<BlockIndexShard> {
+
+	private final File file;
+	private final long start;
+	private final long end;
+	private final CsvFormat format;
+	private final int key;
+	private final boolean keepProfiles;
+
+	HashMap<String, PostingListBuilder> invertedIndex = new HashMap<>();
+	HashMap<String, Integer> tfIdf = new HashMap<>();
+	OffsetIndexBuilder offsetIndex = new OffsetIndexBuilder();
+	List<EntityProfile> entityProfiles = new ArrayList<>();
+	int entities = 0;
+
+	List<Map<String, PostingListBuilder>> indexPartitions;
+	List<Map<String, Integer>> tfIdfPartitions;
+
+	BlockIndexShard(File file, long start, long end, CsvFormat format, int key, boolean keepProfiles) {
+		this.file = file;
+		this.start = start;
+		this.end = end;
+		this.format = format;
+		this.key = key;
+		this.keepProfiles = keepProfiles;
+	}
+
+	@Override
+	public BlockIndexShard call() throws IOException {
+		CsvParserSettings parserSettings = new CsvParserSettings();
+		parserSettings.setNullValue("");
+		parserSettings.setEmptyValue("");
+		parserSettings.setFormat(format);
+		parserSettings.setReadInputOnSeparateThread(false);
+		CsvParser parser = new CsvParser(parserSettings);
+		try (FileInputStream input = new FileInputStream(file)) {
+			input.getChannel().position(start);
+			RowOffsetReader reader = new RowOffsetReader(new BoundedInputStream(input, end - start), start,
+					StandardCharsets.UTF_8);
+			parser.beginParsing(reader);
+			for (;;) {
+				long rowOffset = reader.offsetOf(parser.getContext().currentChar() - 1);
+				String[] currentLine = parser.parseNext();
+				if (currentLine == null) break;
+				if (currentLine[key].equals("")) continue;
+				Integer entityId = Integer.parseInt(currentLine[key]);
+				offsetIndex.add(entityId, rowOffset);
+
+				EntityProfile eP = keepProfiles ? new EntityProfile(currentLine[key]) : null;
+				for (int index = 0; index < currentLine.length; index++) {
+					if (index == key) continue;
+					if (keepProfiles) eP.addAttribute(index, currentLine[index]);
+					BlockIndex.indexValue(currentLine[index], entityId, invertedIndex, tfIdf);
+				}
+				if (keepProfiles) entityProfiles.add(eP);
+				entities++;
+			}
+		} finally {
+			parser.stopParsing();
+		}
+		return this;
+	}
+
+	/**
+	 * Splits the partial index by token hash so that partition i of every shard
+	 * can be merged independently of the others.
+	 */
+	void partition(int partitions) {
+		indexPartitions = new ArrayList<>(partitions);
+		tfIdfPartitions = new ArrayList<>(partitions);
+		for (int i = 0; i < partitions; i++) {
+			indexPartitions.add(new HashMap<>());
+			tfIdfPartitions.add(new HashMap<>());
+		}
+		for (Map.Entry<String, PostingListBuilder> block : invertedIndex.entrySet()) {
+			indexPartitions.get(partitionOf(block.getKey(), partitions)).put(block.getKey(), block.getValue());
+		}
+		for (Map.Entry<String, Integer> token : tfIdf.entrySet()) {
+			tfIdfPartitions.get(partitionOf(token.getKey(), partitions)).put(token.getKey(), token.getValue());
+		}
+		invertedIndex = null;
+		tfIdf = null;
+	}
+
+	static int partitionOf(String token, int partitions) {
+		return (token.hashCode() & Integer.MAX_VALUE) % partitions;
+	}
+
+}
@@ -5,6 +5,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -13,6 +14,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
@@ -20,9 +22,12 @@ import java.util.stream.Collectors;
 import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
 import org.imsi.queryEREngine.imsi.er.DataStructures.Comparison;
 import org.imsi.queryEREngine.imsi.er.DataStructures.EntityIndex;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingListBuilder;
 import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
 import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
 import com.fasterxml.jackson.core.JsonGenerator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class BlockIndexStatistic implements Serializable {
@@ -32,7 +37,7 @@ public class BlockIndexStatistic implements Serializable {
 	 */
 	private static final long serialVersionUID = 2830872461507252831L;
 	private String tableName;
-	private Map<String, Set<Integer>> invertedIndex;
+	private Map<String, PostingList> invertedIndex;
 	private Map<Integer, Set<String>> entitiesToBlocks;
 	private Map<String, Integer> blocksHistogram;
 	private int tableSize;
@@ -48,6 +53,7 @@ public class BlockIndexStatistic implements Serializable {
 	protected HashMap<Integer, Double> entitiesToComparisons;
 	protected HashMap<String, Double> averageBlockWeight;
 	protected double SAMPLING_PERCENT = 1;
+	private final Random random = new Random();
 
 	public BlockIndexStatistic() {
 		super();
@@ -64,9 +70,17 @@ public class BlockIndexStatistic implements Serializable {
 		this.meanComparisonsPerBlock = meanComparisonsPerBlock;
 	}
 
-	public BlockIndexStatistic(Map<String, Set<Integer>> invertedIndex,
+	/** Returns a copy that can be modified without affecting the statistics shared across queries. */
+	public BlockIndexStatistic copy() {
+		return new BlockIndexStatistic(averageBlockWeight == null ? null : new HashMap<>(averageBlockWeight),
+				averageWeight, validComparisons, totalComparisons, meanEntitiesPerBlock,
+				meanComparisonsPerBlock, tableSize);
+	}
+
+	public BlockIndexStatistic(Map<String, PostingList> invertedIndex,
 							   Map<Integer, Set<String>> entitiesToBlocks, String tableName) {
-		this.invertedIndex = invertedIndex;
+		// purging removes blocks, keep the caller's index intact
+		this.invertedIndex = new LinkedHashMap<>(invertedIndex);
 		this.entitiesToBlocks = entitiesToBlocks;
 		this.tokenToIndexMap = new HashMap<>(invertedIndex.size());
 		this.entitiesToComparisons = new HashMap<>();
@@ -100,7 +114,7 @@ public class BlockIndexStatistic implements Serializable {
 		Set<String> removedTokens = new HashSet<>();
 		while(blockIterator.hasNext()) {
 			String token = blockIterator.next();
-			Set<Integer> block = invertedIndex.get(token);
+			PostingList block = invertedIndex.get(token);
 			long size = block.size();
 			long comps = (size * (size - 1))/2;
 			if(comps < p) break;
@@ -118,8 +132,7 @@ public class BlockIndexStatistic implements Serializable {
 	
 	private void filterBlocks(double ratio) {
 		Iterator<Integer> blockIterator = entitiesToBlocks.keySet().iterator();
-		invertedIndex.clear();
-		invertedIndex = new LinkedHashMap<String, Set<Integer>>();
+		LinkedHashMap<String, PostingListBuilder> filteredIndex = new LinkedHashMap<>();
 		while(blockIterator.hasNext()) {
 			Integer entity = blockIterator.next();
 			Set<String> blocks = entitiesToBlocks.get(entity);
@@ -128,27 +141,28 @@ public class BlockIndexStatistic implements Serializable {
 			Iterator<String> blocksIter = blocks.iterator();
 			while(i < size) {
 				if(!blocksIter.hasNext()) break;
-				Set<Integer> termEntities = invertedIndex.computeIfAbsent(blocksIter.next(),
-						x -> new HashSet<Integer>());
+				PostingListBuilder termEntities = filteredIndex.computeIfAbsent(blocksIter.next(),
+						x -> new PostingListBuilder());
 				termEntities.add(entity);
 				i++;
 			}
 		}
+		invertedIndex = new LinkedHashMap<>();
+		filteredIndex.forEach((token, entities) -> invertedIndex.put(token, entities.build()));
 	}
 	
 
-	public List<AbstractBlock> parseIndex(Map<String, Set<Integer>> invertedIndex) {
+	public List<AbstractBlock> parseIndex(Map<String, PostingList> invertedIndex) {
 		List<AbstractBlock> blocks = new ArrayList<AbstractBlock>();
 		int blockIndex = 0;
-		for (Entry<String, Set<Integer>> term : invertedIndex.entrySet()) {
-			Set<Integer> ids = term.getValue();
+		for (Entry<String, PostingList> term : invertedIndex.entrySet()) {
+			PostingList ids = term.getValue();
 			int size = ids.size();
 			if (1 < size) {
-				List<Integer> sample = ids.stream().collect(Collectors.toList());
-				Collections.shuffle(sample);
+				int[] sample = ids.toIntArray();
+				IntArrays.shuffle(sample, random);
 				int new_size = (int) Math.round(size * SAMPLING_PERCENT);
-				int[] idsArray = new int[new_size];
-				for(int i = 0; i < new_size; i++) idsArray[i] = sample.get(i);
+				int[] idsArray = new_size == size ? sample : Arrays.copyOf(sample, new_size);
 //				int[] idsArray = Converter.convertListToArray(term.getValue());
 				UnilateralBlock uBlock = new UnilateralBlock(idsArray);
 				this.tokenToIndexMap.put(blockIndex, term.getKey());
@@ -0,0 +1,180 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+/**
+ * Read-only view of the block index of a table, handed out by the {@link BlockIndexRegistry}.
+ * Lookups are served from the resident inverted index when it is on the heap and from
+ * the mapped index files of the base and delta segments otherwise. A view stays usable after
+ * the registry replaces it, its mapped files are released by the garbage collector.
+ */
+public class BlockIndexView {
+
+	private final String tableName;
+	private final MappedBlockIndex mappedBlockIndex;
+	private final List<MappedBlockIndex> deltas;
+	private final BlockIndexStatistic statistic;
+	private final TokenDictionary tokenDictionary;
+	private volatile Map<String, PostingList> residentIndex;
+	private OffsetIndex offsetIndex;
+	private volatile EntityTokens entityTokens;
+	private EntityBlockCounts entityBlockCounts;
+	long residentBytes;
+	long entityTokensBytes;
+
+	BlockIndexView(String tableName, MappedBlockIndex mappedBlockIndex, List<MappedBlockIndex> deltas,
+			TokenDictionary tokenDictionary, BlockIndexStatistic statistic) {
+		this.tableName = tableName;
+		this.mappedBlockIndex = mappedBlockIndex;
+		this.deltas = deltas;
+		this.statistic = statistic;
+		this.tokenDictionary = tokenDictionary;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	/** Returns a private copy of the statistics of the table. */
+	public BlockIndexStatistic getStatistic() {
+		return statistic == null ? null : statistic.copy();
+	}
+
+	public boolean isResident() {
+		return residentIndex != null;
+	}
+
+	/**
+	 * Returns the whole inverted index, loading it on the heap if it was evicted.
+	 */
+	public Map<String, PostingList> getInvertedIndex() {
+		Map<String, PostingList> invertedIndex = residentIndex;
+		if (invertedIndex == null)
+			invertedIndex = BlockIndexRegistry.makeResident(this);
+		return invertedIndex;
+	}
+
+	/** Returns the postings of a token, or null if the token has no block. */
+	public PostingList get(String token) {
+		Map<String, PostingList> invertedIndex = residentIndex;
+		if (invertedIndex != null) return invertedIndex.get(token);
+		PostingList postings = mappedBlockIndex.get(token);
+		for (MappedBlockIndex delta : deltas) {
+			PostingList appended = delta.get(token);
+			if (appended != null) postings = postings == null ? appended : postings.union(appended);
+		}
+		return postings;
+	}
+
+	/** Returns the blocks of the given tokens that exist in the index. */
+	public HashMap<String, PostingList> lookup(Collection<String> tokens) {
+		Map<String, PostingList> invertedIndex = residentIndex;
+		if (invertedIndex == null) {
+			HashMap<String, PostingList> blocks = mappedBlockIndex.lookup(tokens);
+			for (MappedBlockIndex delta : deltas)
+				BlockIndexSegments.mergeInvertedIndex(blocks, delta.lookup(tokens));
+			return blocks;
+		}
+		HashMap<String, PostingList> blocks = new HashMap<>(tokens.size() * 4 / 3 + 1);
+		for (String token : tokens) {
+			PostingList postings = invertedIndex.get(token);
+			if (postings != null) blocks.put(token, postings);
+		}
+		return blocks;
+	}
+
+	/** Returns the blocks of the given tokens that exist in the index, keyed by token id. */
+	public Int2ObjectOpenHashMap<PostingList> lookupIds(Collection<String> tokens) {
+		HashMap<String, PostingList> blocks = lookup(tokens);
+		Int2ObjectOpenHashMap<PostingList> blockIds = new Int2ObjectOpenHashMap<>(blocks.size());
+		blocks.forEach((token, postings) -> blockIds.put(tokenDictionary.id(token), postings));
+		return blockIds;
+	}
+
+	/** Returns the postings of a token id, or null if the token has no block. */
+	public PostingList postings(int tokenId) {
+		Map<String, PostingList> invertedIndex = residentIndex;
+		if (invertedIndex != null) return invertedIndex.get(tokenDictionary.token(tokenId));
+		PostingList postings = tokenId < mappedBlockIndex.size() ? mappedBlockIndex.postings(tokenId) : null;
+		if (deltas.isEmpty()) return postings;
+		String token = tokenDictionary.token(tokenId);
+		for (MappedBlockIndex delta : deltas) {
+			PostingList appended = delta.get(token);
+			if (appended != null) postings = postings == null ? appended : postings.union(appended);
+		}
+		return postings;
+	}
+
+	public TokenDictionary getTokenDictionary() {
+		return tokenDictionary;
+	}
+
+	/**
+	 * Returns the token ids of every entity of the table, inverting the index if they are not on
+	 * the heap. They count towards the same budget as the resident inverted index.
+	 */
+	public EntityTokens getEntityTokens() {
+		EntityTokens tokens = entityTokens;
+		if (tokens == null)
+			tokens = BlockIndexRegistry.makeEntityTokensResident(this);
+		return tokens;
+	}
+
+	boolean hasEntityTokens() {
+		return entityTokens != null;
+	}
+
+	/**
+	 * Returns the mapped block counts of the entities of the table, opening them on first use.
+	 * They are written when the index is built, appended to or compacted, so the view only maps
+	 * them. Returns null if the file is missing, in which case the blocks of a query are counted
+	 * from the blocks it joined.
+	 */
+	public synchronized EntityBlockCounts getEntityBlockCounts() {
+		if (entityBlockCounts == null) {
+			String path = BlockIndexSegments.entityBlockCountsPath(tableName);
+			if (!new File(path).exists()) return null;
+			entityBlockCounts = EntityBlockCounts.open(path);
+		}
+		return entityBlockCounts;
+	}
+
+	/** Returns the mapped offsets of the entities of the table, opening them on first use. */
+	public synchronized OffsetIndex getOffsetIndex() {
+		if (offsetIndex == null) offsetIndex = BlockIndexSegments.openOffsets(tableName);
+		return offsetIndex;
+	}
+
+	/** Inverts the base and delta segments into the token ids of every entity. */
+	EntityTokens invert() {
+		return new EntityTokens(mappedBlockIndex, deltas, tokenDictionary);
+	}
+
+	/** Decodes the base and delta segments into a single inverted index. */
+	Map<String, PostingList> decode() {
+		Map<String, PostingList> invertedIndex = mappedBlockIndex.toMap();
+		for (MappedBlockIndex delta : deltas)
+			BlockIndexSegments.mergeInvertedIndex(invertedIndex, delta.toMap());
+		return invertedIndex;
+	}
+
+	void setResidentIndex(Map<String, PostingList> invertedIndex, long bytes) {
+		this.residentIndex = invertedIndex == null ? null : Collections.unmodifiableMap(invertedIndex);
+		this.residentBytes = invertedIndex == null ? 0 : bytes;
+	}
+
+	void setEntityTokens(EntityTokens entityTokens, long bytes) {
+		this.entityTokens = entityTokens;
+		this.entityTokensBytes = entityTokens == null ? 0 : bytes;
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
+import org.imsi.queryEREngine.imsi.er.Utilities.DeduplicationProperties;
+
+import it.unimi.dsi.fastutil.ints.IntCollection;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Joins a query with the block index of a table by point lookups of the query tokens only.
+ * Token ids are sorted, which is the order of the postings in the index file, and looked up
+ * in batches: the postings of a batch are decoded and turned into blocks in parallel, then
+ * handed to the next stage in token order. The work depends on the tokens and postings of
+ * the query, not on the size of the table.
+ */
+public class BlockJoin {
+
+	/** Receives the postings of every joined token and its block, null for a single entity. */
+	public interface BlockConsumer {
+		void accept(int tokenId, PostingList postings, UnilateralBlock block);
+	}
+
+	private final BlockIndexView view;
+	private final int[] tokenIds;
+	private final RoaringBitmap qIds;
+	private final IntSet protectedTokens;
+	private final int batchSize;
+
+	public BlockJoin(BlockIndexView view, IntCollection tokenIds, RoaringBitmap qIds, IntSet protectedTokens) {
+		this(view, tokenIds, qIds, protectedTokens, DeduplicationProperties.getJoinBatch());
+	}
+
+	public BlockJoin(BlockIndexView view, IntCollection tokenIds, RoaringBitmap qIds, IntSet protectedTokens,
+			int batchSize) {
+		this.view = view;
+		this.tokenIds = tokenIds.toIntArray();
+		this.qIds = qIds;
+		this.protectedTokens = protectedTokens;
+		this.batchSize = Math.max(1, batchSize);
+		Arrays.sort(this.tokenIds);
+	}
+
+	/** Streams the joined blocks to the consumer, batch by batch. */
+	public void forEachBlock(BlockConsumer consumer) {
+		PostingList[] postings = new PostingList[Math.min(batchSize, tokenIds.length)];
+		UnilateralBlock[] blocks = new UnilateralBlock[postings.length];
+		for (int from = 0; from < tokenIds.length; from += batchSize) {
+			int start = from;
+			int end = Math.min(from + batchSize, tokenIds.length);
+			IntStream.range(start, end).parallel().forEach(i -> {
+				PostingList tokenPostings = view.postings(tokenIds[i]);
+				postings[i - start] = tokenPostings;
+				blocks[i - start] = tokenPostings == null || tokenPostings.size() < 2 ? null
+						: block(tokenIds[i], tokenPostings);
+			});
+			for (int i = start; i < end; i++) {
+				if (postings[i - start] != null) consumer.accept(tokenIds[i], postings[i - start], blocks[i - start]);
+			}
+		}
+	}
+
+	private UnilateralBlock block(int tokenId, PostingList postings) {
+		UnilateralBlock block = new UnilateralBlock(postings.toIntArray(), qIds);
+		block.setProtected(protectedTokens.contains(tokenId));
+		return block;
+	}
+
+}
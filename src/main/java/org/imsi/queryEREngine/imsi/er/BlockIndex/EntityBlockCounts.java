@@ -0,0 +1,171 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+/**
+ * Read-only, memory-mapped number of blocks of every entity of a table, written next to the
+ * block index when it is built or compacted. Only tokens shared by at least two entities are
+ * blocks. Together with the number of blocks of the table it gives the entity factors of the
+ * ECBS and JS weights at query time, so a query does not count the blocks of its entities
+ * from the few blocks it joined. Block cardinalities are the posting sizes of the mapped index.
+ *
+ * Layout (big endian), dense or sparse as in {@link OffsetIndex}:
+ * <pre>
+ * header   magic, version, layout, entries, min id, slots, blocks
+ * dense    int[slots], 0 for missing ids
+ * sparse   int[entries] sorted ids, int[entries] counts
+ * </pre>
+ */
+public class EntityBlockCounts implements Closeable {
+
+	public static final String FILE_SUFFIX = "EntityBlocks.cnt";
+
+	static final int MAGIC = 0x51455243;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 7 * 4;
+
+	private final String path;
+	private final int layout;
+	private final int entries;
+	private final int minId;
+	private final int slots;
+	private final int blocks;
+	private IntBuffer counts;
+	private IntBuffer ids;
+
+	private EntityBlockCounts(String path) throws IOException {
+		this.path = path;
+		try (RandomAccessFile file = new RandomAccessFile(path, "r");
+				FileChannel channel = file.getChannel()) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION)
+				throw new IOException("Not an entity block counts file: " + path);
+			layout = header.getInt();
+			entries = header.getInt();
+			minId = header.getInt();
+			slots = header.getInt();
+			blocks = header.getInt();
+			if (layout == OffsetIndex.DENSE) {
+				counts = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, 4L * slots).asIntBuffer();
+			} else {
+				ids = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, 4L * entries).asIntBuffer();
+				counts = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + 4L * entries, 4L * entries)
+						.asIntBuffer();
+			}
+		}
+	}
+
+	public static EntityBlockCounts open(String path) {
+		try {
+			return new EntityBlockCounts(path);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Counts the blocks of every entity in the given postings and writes them to a file. The file
+	 * is written next to the target and moved over it, so views that still map the previous
+	 * counts keep reading them.
+	 */
+	public static void write(Collection<PostingList> postings, String path) {
+		Int2IntOpenHashMap entityBlocks = new Int2IntOpenHashMap();
+		int blocks = 0;
+		for (PostingList block : postings) {
+			if (block.size() < 2) continue;
+			blocks++;
+			IntIterator entities = block.iterator();
+			while (entities.hasNext()) entityBlocks.addTo(entities.nextInt(), 1);
+		}
+		int[] ids = entityBlocks.keySet().toIntArray();
+		Arrays.sort(ids);
+		int entries = ids.length;
+		int minId = entries == 0 ? 0 : ids[0];
+		long span = entries == 0 ? 0 : (long) ids[entries - 1] - minId + 1;
+		boolean dense = span <= 2L * entries + 1024;
+		String tmpPath = path + ".tmp";
+		try (RandomAccessFile file = new RandomAccessFile(tmpPath, "rw");
+				FileChannel channel = file.getChannel()) {
+			file.setLength(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).putInt(dense ? OffsetIndex.DENSE : OffsetIndex.SPARSE)
+					.putInt(entries).putInt(minId).putInt(dense ? (int) span : 0).putInt(blocks);
+			header.flip();
+			channel.write(header, 0);
+			if (dense) {
+				IntBuffer counts = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES, 4L * span).asIntBuffer();
+				for (int id : ids) counts.put(id - minId, entityBlocks.get(id));
+			} else {
+				IntBuffer idBuffer = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES, 4L * entries)
+						.asIntBuffer();
+				IntBuffer counts = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + 4L * entries,
+						4L * entries).asIntBuffer();
+				idBuffer.put(ids);
+				for (int id : ids) counts.put(entityBlocks.get(id));
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		try {
+			Files.move(Paths.get(tmpPath), Paths.get(path), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Returns the number of blocks of an entity, 0 if it is in none or was appended after the count. */
+	public int get(int id) {
+		if (layout == OffsetIndex.DENSE) {
+			long slot = (long) id - minId;
+			return slot < 0 || slot >= slots ? 0 : counts.get((int) slot);
+		}
+		int low = 0;
+		int high = entries - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = ids.get(mid);
+			if (midId < id) low = mid + 1;
+			else if (midId > id) high = mid - 1;
+			else return counts.get(mid);
+		}
+		return 0;
+	}
+
+	/** Number of blocks of the table. */
+	public int getNoOfBlocks() {
+		return blocks;
+	}
+
+	/** Number of entities in at least one block. */
+	public int size() {
+		return entries;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public void close() {
+		// buffers are unmapped once they become unreachable
+		counts = null;
+		ids = null;
+	}
+
+}
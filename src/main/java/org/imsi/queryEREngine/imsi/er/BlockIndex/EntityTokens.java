@@ -0,0 +1,94 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.util.List;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Token ids of every entity of a table, the inverse of the block index, in compressed sparse
+ * rows: the tokens of the entity in row r are {@code tokenIds[rowStarts[r] .. rowStarts[r + 1])}.
+ * It holds the same mapping as the stored entities to blocks, keyed by token id, and lets query
+ * blocking find the tokens of its entities without tokenizing their rows again.
+ */
+public class EntityTokens {
+
+	private final Int2IntOpenHashMap rows = new Int2IntOpenHashMap();
+	private final int[] rowStarts;
+	private final int[] tokenIds;
+
+	private interface PostingConsumer {
+		void accept(int tokenId, int entity);
+	}
+
+	/** Inverts the postings of the base and delta segments, in two passes over them. */
+	EntityTokens(MappedBlockIndex base, List<MappedBlockIndex> deltas, TokenDictionary dictionary) {
+		rows.defaultReturnValue(-1);
+		IntArrayList counts = new IntArrayList();
+		forEachPosting(base, deltas, dictionary, (tokenId, entity) -> {
+			int row = rows.get(entity);
+			if (row < 0) {
+				row = rows.size();
+				rows.put(entity, row);
+				counts.add(0);
+			}
+			counts.set(row, counts.getInt(row) + 1);
+		});
+		rowStarts = new int[counts.size() + 1];
+		for (int row = 0; row < counts.size(); row++)
+			rowStarts[row + 1] = rowStarts[row] + counts.getInt(row);
+		tokenIds = new int[rowStarts[counts.size()]];
+		int[] next = new int[counts.size()];
+		System.arraycopy(rowStarts, 0, next, 0, next.length);
+		forEachPosting(base, deltas, dictionary, (tokenId, entity) -> tokenIds[next[rows.get(entity)]++] = tokenId);
+	}
+
+	private static void forEachPosting(MappedBlockIndex base, List<MappedBlockIndex> deltas,
+			TokenDictionary dictionary, PostingConsumer consumer) {
+		for (int tokenId = 0; tokenId < base.size(); tokenId++) {
+			IntIterator entities = base.postings(tokenId).iterator();
+			while (entities.hasNext()) consumer.accept(tokenId, entities.nextInt());
+		}
+		for (MappedBlockIndex delta : deltas) {
+			for (int i = 0; i < delta.size(); i++) {
+				int tokenId = dictionary.id(delta.token(i));
+				IntIterator entities = delta.postings(i).iterator();
+				while (entities.hasNext()) consumer.accept(tokenId, entities.nextInt());
+			}
+		}
+	}
+
+	/** Adds the token ids of an entity to the given set. */
+	public void addTokenIds(int entity, IntOpenHashSet into) {
+		int row = rows.get(entity);
+		if (row < 0) return;
+		for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++) into.add(tokenIds[i]);
+	}
+
+	/** Returns the ids of every token held by at least one of the given entities. */
+	public IntOpenHashSet tokenIds(RoaringBitmap entities) {
+		IntOpenHashSet ids = new IntOpenHashSet();
+		entities.forEach((int entity) -> addTokenIds(entity, ids));
+		return ids;
+	}
+
+	/** Number of entities with at least one token. */
+	public int size() {
+		return rows.size();
+	}
+
+	/** Number of entity, token pairs. */
+	public int postings() {
+		return tokenIds.length;
+	}
+
+	// Rough heap footprint: the open addressing table of rows and the two arrays
+	long estimateBytes() {
+		return 16L * rows.size() + 4L * rowStarts.length + 4L * tokenIds.length;
+	}
+
+}
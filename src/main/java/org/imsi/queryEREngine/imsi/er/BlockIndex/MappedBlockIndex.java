@@ -0,0 +1,298 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.IntArrayPostingList;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+
+/**
+ * Read-only, memory-mapped inverted index. The file holds a sorted token dictionary
+ * followed by the postings of every token as varint encoded gaps, so looking up a token
+ * only touches the pages of its own postings.
+ *
+ * Layout (big endian):
+ * <pre>
+ * header          magic, version, tokens, token bytes length, postings length
+ * token offsets   int[tokens + 1] into the token bytes
+ * token bytes     UTF-8 tokens in unsigned byte order
+ * posting offsets long[tokens + 1] into the postings region
+ * posting sizes   int[tokens]
+ * postings        varint gaps
+ * </pre>
+ * The position of a token in the dictionary is its token id.
+ */
+public class MappedBlockIndex implements Closeable {
+
+	public static final String FILE_SUFFIX = "InvertedIndex.idx";
+
+	private static final int MAGIC = 0x51455249;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8;
+	// postings are mapped in chunks, a single mapping cannot exceed 2GB
+	private static final int CHUNK_SHIFT = 30;
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	private final String path;
+	private final int tokens;
+	private final long postingsLength;
+	private ByteBuffer dictionary;
+	private MappedByteBuffer[] postings;
+	private final int tokenBytesStart;
+	private final int postingOffsetsStart;
+	private final int postingSizesStart;
+
+	private MappedBlockIndex(String path) throws IOException {
+		this.path = path;
+		try (RandomAccessFile file = new RandomAccessFile(path, "r");
+				FileChannel channel = file.getChannel()) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION)
+				throw new IOException("Not a block index file: " + path);
+			tokens = header.getInt();
+			int tokenBytes = header.getInt();
+			postingsLength = header.getLong();
+
+			tokenBytesStart = 4 * (tokens + 1);
+			postingOffsetsStart = tokenBytesStart + tokenBytes;
+			postingSizesStart = postingOffsetsStart + 8 * (tokens + 1);
+			int dictionaryLength = postingSizesStart + 4 * tokens;
+			dictionary = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, dictionaryLength);
+
+			long postingsStart = (long) HEADER_BYTES + dictionaryLength;
+			int chunks = (int) ((postingsLength + CHUNK_MASK) >>> CHUNK_SHIFT);
+			postings = new MappedByteBuffer[chunks];
+			for (int i = 0; i < chunks; i++) {
+				long chunkStart = (long) i << CHUNK_SHIFT;
+				long chunkLength = Math.min(CHUNK_MASK + 1, postingsLength - chunkStart);
+				postings[i] = channel.map(FileChannel.MapMode.READ_ONLY, postingsStart + chunkStart, chunkLength);
+			}
+		}
+	}
+
+	public static MappedBlockIndex open(String path) {
+		try {
+			return new MappedBlockIndex(path);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static boolean exists(String path) {
+		return new File(path).exists();
+	}
+
+	/**
+	 * Writes an inverted index in the mapped format.
+	 */
+	public static void write(Map<String, PostingList> invertedIndex, String path) {
+		List<byte[]> tokens = new ArrayList<>(invertedIndex.size());
+		Map<byte[], PostingList> byBytes = new HashMap<>(invertedIndex.size() * 4 / 3 + 1);
+		for (Map.Entry<String, PostingList> block : invertedIndex.entrySet()) {
+			byte[] token = block.getKey().getBytes(StandardCharsets.UTF_8);
+			tokens.add(token);
+			byBytes.put(token, block.getValue());
+		}
+		tokens.sort(BYTE_ORDER);
+
+		int tokenBytes = 0;
+		for (byte[] token : tokens) tokenBytes += token.length;
+		byte[][] encoded = new byte[tokens.size()][];
+		long postingsLength = 0;
+		for (int i = 0; i < tokens.size(); i++) {
+			encoded[i] = encode(byBytes.get(tokens.get(i)));
+			postingsLength += encoded[i].length;
+		}
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(tokens.size());
+			out.writeInt(tokenBytes);
+			out.writeLong(postingsLength);
+			int tokenOffset = 0;
+			for (byte[] token : tokens) {
+				out.writeInt(tokenOffset);
+				tokenOffset += token.length;
+			}
+			out.writeInt(tokenOffset);
+			for (byte[] token : tokens) out.write(token);
+			long postingOffset = 0;
+			for (byte[] posting : encoded) {
+				out.writeLong(postingOffset);
+				postingOffset += posting.length;
+			}
+			out.writeLong(postingOffset);
+			for (byte[] token : tokens) out.writeInt(byBytes.get(token).size());
+			for (byte[] posting : encoded) out.write(posting);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static byte[] encode(PostingList postingList) {
+		byte[] buffer = new byte[postingList.size() * 5];
+		int position = 0;
+		int previous = 0;
+		for (int i = 0; i < postingList.size(); i++) {
+			int id = postingList.getInt(i);
+			int gap = id - previous;
+			previous = id;
+			while ((gap & ~0x7F) != 0) {
+				buffer[position++] = (byte) ((gap & 0x7F) | 0x80);
+				gap >>>= 7;
+			}
+			buffer[position++] = (byte) gap;
+		}
+		return Arrays.copyOf(buffer, position);
+	}
+
+	private static final Comparator<byte[]> BYTE_ORDER = (a, b) -> {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			int compare = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (compare != 0) return compare;
+		}
+		return a.length - b.length;
+	};
+
+	/** Number of tokens in the dictionary. */
+	public int size() {
+		return tokens;
+	}
+
+	/** Returns the id of a token, or -1 if the token has no block. */
+	public int tokenId(String token) {
+		byte[] key = token.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = tokens - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int compare = compareToken(mid, key);
+			if (compare < 0) low = mid + 1;
+			else if (compare > 0) high = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	private int compareToken(int id, byte[] key) {
+		int start = tokenBytesStart + dictionary.getInt(4 * id);
+		int end = tokenBytesStart + dictionary.getInt(4 * (id + 1));
+		int length = Math.min(end - start, key.length);
+		for (int i = 0; i < length; i++) {
+			int compare = (dictionary.get(start + i) & 0xFF) - (key[i] & 0xFF);
+			if (compare != 0) return compare;
+		}
+		return (end - start) - key.length;
+	}
+
+	public String token(int id) {
+		int start = tokenBytesStart + dictionary.getInt(4 * id);
+		int end = tokenBytesStart + dictionary.getInt(4 * (id + 1));
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) bytes[i] = dictionary.get(start + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Size of the block of a token, without decoding its postings. */
+	public int postingSize(int id) {
+		return dictionary.getInt(postingSizesStart + 4 * id);
+	}
+
+	public PostingList postings(int id) {
+		int size = postingSize(id);
+		int[] ids = new int[size];
+		long position = dictionary.getLong(postingOffsetsStart + 8 * id);
+		int previous = 0;
+		for (int i = 0; i < size; i++) {
+			int gap = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = postings[(int) (position >>> CHUNK_SHIFT)].get((int) (position & CHUNK_MASK));
+				position++;
+				gap |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			previous += gap;
+			ids[i] = previous;
+		}
+		return IntArrayPostingList.wrap(ids);
+	}
+
+	/** Returns the postings of a token, or null if the token has no block. */
+	public PostingList get(String token) {
+		int id = tokenId(token);
+		return id < 0 ? null : postings(id);
+	}
+
+	/**
+	 * Looks up the blocks of the given tokens. Tokens are resolved first and their
+	 * postings are read in file order, so the postings region is scanned forward only.
+	 */
+	public HashMap<String, PostingList> lookup(Collection<String> tokens) {
+		int[] ids = new int[tokens.size()];
+		int found = 0;
+		for (String token : tokens) {
+			int id = tokenId(token);
+			if (id >= 0) ids[found++] = id;
+		}
+		ids = Arrays.copyOf(ids, found);
+		Arrays.sort(ids);
+		HashMap<String, PostingList> blocks = new HashMap<>(found * 4 / 3 + 1);
+		for (int i = 0; i < ids.length; i++) {
+			if (i > 0 && ids[i] == ids[i - 1]) continue;
+			blocks.put(token(ids[i]), postings(ids[i]));
+		}
+		return blocks;
+	}
+
+	/**
+	 * Decodes the whole index, ordered by descending block size as produced by
+	 * {@link BlockIndex#sortIndex()}.
+	 */
+	public LinkedHashMap<String, PostingList> toMap() {
+		Integer[] order = new Integer[tokens];
+		for (int i = 0; i < tokens; i++) order[i] = i;
+		Arrays.sort(order, (a, b) -> Integer.compare(postingSize(b), postingSize(a)));
+		LinkedHashMap<String, PostingList> invertedIndex = new LinkedHashMap<>(tokens * 4 / 3 + 1);
+		for (Integer id : order) invertedIndex.put(token(id), postings(id));
+		return invertedIndex;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/** Mapped size of the index in bytes. */
+	public long getMappedBytes() {
+		return HEADER_BYTES + (dictionary == null ? 0 : dictionary.capacity()) + postingsLength;
+	}
+
+	@Override
+	public void close() {
+		// buffers are unmapped once they become unreachable
+		dictionary = null;
+		postings = null;
+	}
+
+}
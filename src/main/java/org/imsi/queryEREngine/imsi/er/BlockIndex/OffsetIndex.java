@@ -0,0 +1,168 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Read-only, memory-mapped map from entity id to the byte offset of its row in the CSV file.
+ * When the ids are contiguous enough the file is a dense long array indexed by
+ * {@code id - minId}, so a lookup is a single read. Otherwise it falls back to sorted id and
+ * offset arrays searched with a binary search.
+ *
+ * Layout (big endian):
+ * <pre>
+ * header   magic, version, layout, entries, min id, slots
+ * dense    long[slots], -1 for missing ids
+ * sparse   int[entries] sorted ids, long[entries] offsets
+ * </pre>
+ * Offsets of delta segments are kept in their own files and looked up after the base.
+ */
+public class OffsetIndex implements Closeable {
+
+	public static final String FILE_SUFFIX = ".off";
+	public static final long MISSING = -1;
+
+	static final int MAGIC = 0x5145524f;
+	static final int VERSION = 1;
+	static final int DENSE = 0;
+	static final int SPARSE = 1;
+	static final int HEADER_BYTES = 6 * 4;
+	// longs per mapped chunk, a single mapping cannot exceed 2GB
+	static final int CHUNK_SHIFT = 27;
+	static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	/** Receives the entries of the index. */
+	public interface OffsetConsumer {
+		void accept(int id, long offset);
+	}
+
+	private final String path;
+	private final int layout;
+	private final int entries;
+	private final int minId;
+	private final int slots;
+	private LongBuffer[] offsets;
+	private ByteBuffer ids;
+	private OffsetIndex[] deltas = new OffsetIndex[0];
+
+	private OffsetIndex(String path) throws IOException {
+		this.path = path;
+		try (RandomAccessFile file = new RandomAccessFile(path, "r");
+				FileChannel channel = file.getChannel()) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION)
+				throw new IOException("Not an offset index file: " + path);
+			layout = header.getInt();
+			entries = header.getInt();
+			minId = header.getInt();
+			slots = header.getInt();
+			long offsetsStart = HEADER_BYTES;
+			long length = slots;
+			if (layout == SPARSE) {
+				ids = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, 4L * entries);
+				offsetsStart += 4L * entries;
+				length = entries;
+			}
+			offsets = mapLongs(channel, FileChannel.MapMode.READ_ONLY, offsetsStart, length);
+		}
+	}
+
+	static LongBuffer[] mapLongs(FileChannel channel, FileChannel.MapMode mode, long start, long length)
+			throws IOException {
+		int chunks = (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+		LongBuffer[] buffers = new LongBuffer[chunks];
+		for (int i = 0; i < chunks; i++) {
+			long chunkStart = (long) i << CHUNK_SHIFT;
+			long chunkLength = Math.min(CHUNK_MASK + 1, length - chunkStart);
+			buffers[i] = channel.map(mode, start + 8 * chunkStart, 8 * chunkLength).asLongBuffer();
+		}
+		return buffers;
+	}
+
+	public static OffsetIndex open(String path) {
+		try {
+			return new OffsetIndex(path);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Opens the offsets of a base segment together with the offsets of its delta segments. */
+	public static OffsetIndex open(String path, List<String> deltaPaths) {
+		OffsetIndex offsetIndex = open(path);
+		offsetIndex.deltas = new OffsetIndex[deltaPaths.size()];
+		for (int i = 0; i < deltaPaths.size(); i++)
+			offsetIndex.deltas[i] = open(deltaPaths.get(i));
+		return offsetIndex;
+	}
+
+	/** Returns the offset of the row of an entity, or {@link #MISSING}. */
+	public long get(int id) {
+		for (int i = deltas.length - 1; i >= 0; i--) {
+			long offset = deltas[i].get(id);
+			if (offset != MISSING) return offset;
+		}
+		if (layout == DENSE) {
+			long slot = (long) id - minId;
+			if (slot < 0 || slot >= slots) return MISSING;
+			return offset(slot);
+		}
+		int low = 0;
+		int high = entries - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = ids.getInt(4 * mid);
+			if (midId < id) low = mid + 1;
+			else if (midId > id) high = mid - 1;
+			else return offset(mid);
+		}
+		return MISSING;
+	}
+
+	private long offset(long slot) {
+		return offsets[(int) (slot >>> CHUNK_SHIFT)].get((int) (slot & CHUNK_MASK));
+	}
+
+	/** Visits every entry of the base and then of the delta segments. */
+	public void forEach(OffsetConsumer consumer) {
+		if (layout == DENSE) {
+			for (long slot = 0; slot < slots; slot++) {
+				long offset = offset(slot);
+				if (offset != MISSING) consumer.accept((int) (minId + slot), offset);
+			}
+		} else {
+			for (int i = 0; i < entries; i++)
+				consumer.accept(ids.getInt(4 * i), offset(i));
+		}
+		for (OffsetIndex delta : deltas) delta.forEach(consumer);
+	}
+
+	/** Number of entries, counting ids that appear in more than one segment once per segment. */
+	public int size() {
+		int size = entries;
+		for (OffsetIndex delta : deltas) size += delta.size();
+		return size;
+	}
+
+	public boolean isDense() {
+		return layout == DENSE;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public void close() {
+		// buffers are unmapped once they become unreachable
+		offsets = null;
+		ids = null;
+		for (OffsetIndex delta : deltas) delta.close();
+	}
+
+}
@@ -0,0 +1,145 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Collects entity offsets while a table is parsed, without boxing, and writes them as an
+ * {@link OffsetIndex}. Every shard of a parallel build fills its own builder, and all of them
+ * are written to a single file.
+ */
+public class OffsetIndexBuilder {
+
+	private final IntArrayList ids = new IntArrayList();
+	private final LongArrayList offsets = new LongArrayList();
+
+	public void add(int id, long offset) {
+		ids.add(id);
+		offsets.add(offset);
+	}
+
+	public void addAll(OffsetIndexBuilder other) {
+		ids.addAll(other.ids);
+		offsets.addAll(other.offsets);
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	public void write(String path) {
+		write(Arrays.asList(this), path);
+	}
+
+	/**
+	 * Writes the offsets of all parts to a single file. The dense layout is used when the ids
+	 * cover at least about half of their range. If an id appears more than once, the last entry
+	 * wins, taking the parts in list order and the entries of a part in the order they were added.
+	 */
+	public static void write(List<OffsetIndexBuilder> parts, String path) {
+		int entries = 0;
+		int minId = Integer.MAX_VALUE;
+		int maxId = Integer.MIN_VALUE;
+		for (OffsetIndexBuilder part : parts) {
+			entries += part.size();
+			for (int i = 0; i < part.size(); i++) {
+				minId = Math.min(minId, part.ids.getInt(i));
+				maxId = Math.max(maxId, part.ids.getInt(i));
+			}
+		}
+		if (entries == 0) {
+			minId = 0;
+			maxId = -1;
+		}
+		long span = (long) maxId - minId + 1;
+		boolean dense = span <= 2L * entries + 1024 && span <= Integer.MAX_VALUE;
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw");
+				FileChannel channel = file.getChannel()) {
+			file.setLength(0);
+			int unique = dense ? writeDense(parts, channel, minId, span) : writeSparse(parts, channel, entries);
+			ByteBuffer header = ByteBuffer.allocate(OffsetIndex.HEADER_BYTES);
+			header.putInt(OffsetIndex.MAGIC).putInt(OffsetIndex.VERSION)
+					.putInt(dense ? OffsetIndex.DENSE : OffsetIndex.SPARSE).putInt(unique).putInt(minId)
+					.putInt(dense ? (int) span : 0);
+			header.flip();
+			channel.write(header, 0);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Fills the slots and returns the number of distinct ids. */
+	private static int writeDense(List<OffsetIndexBuilder> parts, FileChannel channel, int minId, long span)
+			throws IOException {
+		LongBuffer[] slots = OffsetIndex.mapLongs(channel, FileChannel.MapMode.READ_WRITE, OffsetIndex.HEADER_BYTES, span);
+		Arrays.stream(slots).parallel().forEach(buffer -> {
+			for (int i = 0; i < buffer.capacity(); i++) buffer.put(i, OffsetIndex.MISSING);
+		});
+		// written in order so that a later entry of a repeated id overwrites the earlier one
+		int unique = 0;
+		for (OffsetIndexBuilder part : parts) {
+			for (int i = 0; i < part.size(); i++) {
+				long slot = (long) part.ids.getInt(i) - minId;
+				LongBuffer buffer = slots[(int) (slot >>> OffsetIndex.CHUNK_SHIFT)];
+				int position = (int) (slot & OffsetIndex.CHUNK_MASK);
+				if (buffer.get(position) == OffsetIndex.MISSING) unique++;
+				buffer.put(position, part.offsets.getLong(i));
+			}
+		}
+		return unique;
+	}
+
+	/** Writes the entries sorted by id, keeping the last entry of a repeated id, and returns their number. */
+	private static int writeSparse(List<OffsetIndexBuilder> parts, FileChannel channel, int entries)
+			throws IOException {
+		int[] ids = new int[entries];
+		long[] offsets = new long[entries];
+		int[] order = new int[entries];
+		int position = 0;
+		for (OffsetIndexBuilder part : parts) {
+			part.ids.getElements(0, ids, position, part.size());
+			part.offsets.getElements(0, offsets, position, part.size());
+			position += part.size();
+		}
+		for (int i = 0; i < entries; i++) order[i] = i;
+		it.unimi.dsi.fastutil.Arrays.parallelQuickSort(0, entries, (a, b) -> {
+			int compare = Integer.compare(ids[a], ids[b]);
+			return compare != 0 ? compare : Integer.compare(order[a], order[b]);
+		}, (a, b) -> {
+			int id = ids[a];
+			ids[a] = ids[b];
+			ids[b] = id;
+			long offset = offsets[a];
+			offsets[a] = offsets[b];
+			offsets[b] = offset;
+			int added = order[a];
+			order[a] = order[b];
+			order[b] = added;
+		});
+		int unique = 0;
+		for (int i = 0; i < entries; i++) {
+			if (i + 1 < entries && ids[i + 1] == ids[i]) continue;
+			ids[unique] = ids[i];
+			offsets[unique] = offsets[i];
+			unique++;
+		}
+		IntBuffer idBuffer = channel.map(FileChannel.MapMode.READ_WRITE, OffsetIndex.HEADER_BYTES, 4L * unique)
+				.asIntBuffer();
+		idBuffer.put(ids, 0, unique);
+		LongBuffer[] offsetBuffers = OffsetIndex.mapLongs(channel, FileChannel.MapMode.READ_WRITE,
+				OffsetIndex.HEADER_BYTES + 4L * unique, unique);
+		for (int i = 0; i < offsetBuffers.length; i++)
+			offsetBuffers[i].put(offsets, i << OffsetIndex.CHUNK_SHIFT, offsetBuffers[i].capacity());
+		return unique;
+	}
+
+}
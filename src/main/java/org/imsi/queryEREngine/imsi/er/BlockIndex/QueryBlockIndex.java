@@ -3,30 +3,33 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.imsi.queryEREngine.imsi.er.DataStructures.*;
-import org.imsi.queryEREngine.imsi.er.Utilities.Converter;
-import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
-import org.imsi.queryEREngine.imsi.er.Utilities.SerializationUtilities;
+import org.imsi.queryEREngine.imsi.er.Utilities.Tokenizer;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import org.roaringbitmap.RoaringBitmap;
+
 public class QueryBlockIndex extends BlockIndex {
 
-    protected Set<Integer> qIds;
+    protected RoaringBitmap qIds;
 
-    private static List<String> queryTokens;
+    private List<String> queryTokens = new ArrayList<>();
 
     public QueryBlockIndex() {
-        this.qIds = new HashSet<>();
+        this.qIds = new RoaringBitmap();
     }
 
     public QueryBlockIndex(String tableName) {
         this();
-        blockIndexStatistic = loadBlockIndexStatistic(tableName);
+        this.tableName = tableName;
+        blockIndexStatistic = BlockIndexRegistry.get(tableName).getStatistic();
     }
 
     public BlockIndexStatistic
@@ -41,80 +44,6 @@ public class QueryBlockIndex extends BlockIndex {
         return null;
     }
 
-    public static List<AbstractBlock> parseIndex(Map<String, Set<Integer>> invertedIndex, Set<Integer> qIds) {
-        List<AbstractBlock> blocks = new ArrayList<AbstractBlock>();
-        for (Map.Entry<String, Set<Integer>> term : invertedIndex.entrySet()) {
-            if (1 < term.getValue().size()) {
-                boolean isProtected = false;
-                if(queryTokens.contains(term.getKey().trim())){
-
-                    System.err.println("Protected terms: " + term.getKey());
-                    isProtected = true;
-                }
-
-
-                int[] idsArray = Converter.convertListToArray(term.getValue());
-                UnilateralBlock uBlock = new UnilateralBlock(idsArray, qIds);
-                uBlock.setProtected(isProtected);
-                blocks.add(uBlock);
-            }
-        }
-     //   invertedIndex.clear();
-        return blocks;
-    }
-
-    public void createBlockIndex(HashMap<Integer, Object[]> queryData, Integer key) {
-        // Get project results from previous enumerator
-        for (Object[] row : queryData.values()) {
-            Object[] currentLine = (Object[]) row;
-            Integer fields = currentLine.length;
-            String entityKey = currentLine[key].toString();
-            if (entityKey.contentEquals("")) continue;
-            EntityProfile eP = new EntityProfile(currentLine[key].toString()); // 0 is id, must put this in schema catalog
-            qIds.add(Integer.valueOf(entityKey));
-            int index = 0;
-            while (index < fields) {
-                if (index != key) {
-                    eP.addAttribute(index, currentLine[index].toString());
-                    ;
-                }
-                index++;
-            }
-            this.entityProfiles.add(eP);
-
-        }
-    }
-
-
-    public void createBlockIndex(HashMap<Integer, Object[]> queryData, Integer key, List<String> tokens) {
-        List<String> queryTokens = new ArrayList<>();
-
-//        queryTokens.add("powershot");
-//        queryTokens.add("digital");
-        queryTokens.addAll(tokens);
-        this.queryTokens= queryTokens;
-        // Get project results from previous enumerator
-        for (Object[] row : queryData.values()) {
-            Object[] currentLine = (Object[]) row;
-            Integer fields = currentLine.length;
-            String entityKey = currentLine[key].toString();
-            if (entityKey.contentEquals("")) continue;
-            EntityProfile eP = new EntityProfile(currentLine[key].toString()); // 0 is id, must put this in schema catalog
-            qIds.add(Integer.valueOf(entityKey));
-            int index = 0;
-            while (index < fields) {
-                if (index != key) {
-                    eP.addAttribute(index, currentLine[index].toString());
-                    ;
-                }
-                index++;
-            }
-            this.entityProfiles.add(eP);
-
-        }
-    }
-
-
     public <T> void createBlockIndex(List<T> dataset, Integer key) {
         // Get project results from previous enumerator
         for (T row : dataset) {
@@ -123,7 +52,7 @@ public class QueryBlockIndex extends BlockIndex {
             String entityKey = currentLine[key].toString();
             if (entityKey.contentEquals("")) continue;
             EntityProfile eP = new EntityProfile(currentLine[key].toString()); // 0 is id, must put this in schema catalog
-            qIds.add(Integer.valueOf(entityKey));
+            qIds.add(Integer.parseInt(entityKey));
             int index = 0;
             while (index < fields) {
                 if (index != key) {
@@ -137,42 +66,65 @@ public class QueryBlockIndex extends BlockIndex {
         }
     }
 
+    /**
+     * Keeps only the ids of the query entities. Their tokens are read from the index of the
+     * table by {@link #joinEntityBlocks}, so no entity profiles are built.
+     */
+    public void createBlockIndex(RoaringBitmap queryIds, List<String> tokens) {
+        this.queryTokens = new ArrayList<>(tokens);
+        qIds.or(queryIds);
+    }
+
     public void buildQueryBlocks() {
         this.invertedIndex = indexEntities(0, entityProfiles);
     }
 
-    @SuppressWarnings("unchecked")
     public List<AbstractBlock> joinBlockIndices(String name, boolean doER) {
-        if (doER) {
-            DumpDirectories dumpDirectories = new DumpDirectories();
-            final Map<String, Set<Integer>> bBlocks = (Map<String, Set<Integer>>) SerializationUtilities
-                    .loadSerializedObject(dumpDirectories.getBlockIndexDirPath() + name + "InvertedIndex");
-            bBlocks.keySet().retainAll(this.invertedIndex.keySet());
-            return parseIndex(bBlocks, qIds);
-        } else return new ArrayList<>();
+        return joinBlockIndicesReturn(name, doER).getLeft();
     }
 
-    @SuppressWarnings("unchecked")
-    public Pair<List<AbstractBlock>, HashMap<String, Set<Integer>>> joinBlockIndicesReturn(String name, boolean doER) {
+    public Pair<List<AbstractBlock>, Int2ObjectOpenHashMap<PostingList>> joinBlockIndicesReturn(String name, boolean doER) {
         if (doER) {
-            DumpDirectories dumpDirectories = new DumpDirectories();
-            final HashMap<String, Set<Integer>> bBlocks = (HashMap<String, Set<Integer>>) SerializationUtilities
-                    .loadSerializedObject(dumpDirectories.getBlockIndexDirPath() + name + "InvertedIndex");
-            bBlocks.keySet().retainAll(this.invertedIndex.keySet());
-            List<AbstractBlock> blocks = parseIndex(bBlocks, qIds);
-            return Pair.of(blocks, bBlocks);
+            BlockIndexView view = BlockIndexRegistry.get(name);
+            return join(view, view.getTokenDictionary().ids(this.invertedIndex.keySet()));
         } else {
-            return Pair.of(new ArrayList<>(), new HashMap<>());
+            return Pair.of(new ArrayList<>(), new Int2ObjectOpenHashMap<>());
         }
     }
 
-    public Set<Integer> blocksToEntities(List<AbstractBlock> blocks) {
-        Set<Integer> joinedEntityIds = new HashSet<>();
+    /**
+     * Joins the query entities with the blocks of the table through the tokens they already
+     * have in the index, the same blocks as tokenizing their rows. The work is proportional
+     * to the postings of the query entities.
+     */
+    public Pair<List<AbstractBlock>, Int2ObjectOpenHashMap<PostingList>> joinEntityBlocks(String name, boolean doER) {
+        if (!doER) return Pair.of(new ArrayList<>(), new Int2ObjectOpenHashMap<>());
+        BlockIndexView view = BlockIndexRegistry.get(name);
+        return join(view, view.getEntityTokens().tokenIds(qIds));
+    }
+
+    /**
+     * Looks up the blocks of the given token ids with a {@link BlockJoin} and collects them,
+     * together with the postings of every joined token keyed by token id.
+     */
+    private Pair<List<AbstractBlock>, Int2ObjectOpenHashMap<PostingList>> join(BlockIndexView view, IntSet tokenIds) {
+        IntSet protectedTokens = view.getTokenDictionary().ids(queryTokens);
+        final Int2ObjectOpenHashMap<PostingList> bBlocks = new Int2ObjectOpenHashMap<>(tokenIds.size());
+        List<AbstractBlock> blocks = new ArrayList<>();
+        new BlockJoin(view, tokenIds, qIds, protectedTokens).forEachBlock((tokenId, postings, block) -> {
+            bBlocks.put(tokenId, postings);
+            if (block != null) blocks.add(block);
+        });
+        return Pair.of(blocks, bBlocks);
+    }
+
+    public RoaringBitmap blocksToEntities(List<AbstractBlock> blocks) {
+        RoaringBitmap joinedEntityIds = new RoaringBitmap();
 //        if (blocks.get(0) instanceof UnilateralBlock) {
             for (AbstractBlock block : blocks) {
                 UnilateralBlock uBlock = (UnilateralBlock) block;
                 int[] entities = uBlock.getEntities();
-                joinedEntityIds.addAll(Arrays.stream(entities).boxed().collect(Collectors.toSet()));
+                joinedEntityIds.addN(entities, 0, entities.length);
             }
 //        } else if (blocks.get(0) instanceof BilateralBlock) {
 //            for (AbstractBlock block : blocks) {
@@ -186,53 +138,38 @@ public class QueryBlockIndex extends BlockIndex {
         return joinedEntityIds;
     }
 
-    public Set<Integer> blocksToEntitiesD(List<AbstractBlock> blocks) {
-        Set<Integer> joinedEntityIds = new HashSet<>();
+    public RoaringBitmap blocksToEntitiesD(List<AbstractBlock> blocks) {
+        RoaringBitmap joinedEntityIds = new RoaringBitmap();
         for (AbstractBlock block : blocks) {
             DecomposedBlock dBlock = (DecomposedBlock) block;
             int[] entities1 = dBlock.getEntities1();
             int[] entities2 = dBlock.getEntities2();
-            joinedEntityIds.addAll(Arrays.stream(entities1).boxed().collect(Collectors.toSet()));
-            joinedEntityIds.addAll(Arrays.stream(entities2).boxed().collect(Collectors.toSet()));
+            joinedEntityIds.addN(entities1, 0, entities1.length);
+            joinedEntityIds.addN(entities2, 0, entities2.length);
         }
         return joinedEntityIds;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
-    protected Map<String, Set<Integer>> indexEntities(int sourceId, List<EntityProfile> profiles) {
-        invertedIndex = new HashMap<String, Set<Integer>>();
-        InputStream file = this.getClass().getClassLoader().getResourceAsStream("stopwords_SER");
-        //file = new File(this.getClass().getClassLoader().getResource("stopwords_SER").toExternalForm());
-        HashSet<String> stopwords = (HashSet<String>) SerializationUtilities
-                .loadSerializedObject(file);
+    protected Map<String, PostingList> indexEntities(int sourceId, List<EntityProfile> profiles) {
+        HashMap<String, PostingListBuilder> postings = new HashMap<>();
         HashMap<String, Integer> tfIdf = new HashMap<>();
         for (EntityProfile profile : profiles) {
+            int entityId = Integer.parseInt(profile.getEntityUrl());
             for (Attribute attribute : profile.getAttributes()) {
                 if (attribute.getValue() == null)
                     continue;
-                String cleanValue = attribute.getValue().replaceAll("_", " ").trim().replaceAll("\\s*,\\s*$", "")
-                        .toLowerCase();
-                for (String token : cleanValue.split("[\\W_]")) {
-                    if (2 < token.trim().length()) {
-                        if (stopwords.contains(token.toLowerCase()))
-                            continue;
-                        Set<Integer> termEntities = invertedIndex.computeIfAbsent(token.trim(),
-                                x -> new HashSet<Integer>());
-
-                        termEntities.add(Integer.parseInt(profile.getEntityUrl()));
-                        //int tokenCount = tfIdf.containsKey(token) ? tfIdf.get(token) : 0;
-                        //tfIdf.put(token, tokenCount + 1);
-                    }
-                }
+                Tokenizer.tokenize(attribute.getValue(),
+                        token -> postings.computeIfAbsent(token, x -> new PostingListBuilder()).add(entityId));
             }
 
         }
         //this.setTfIdf(tfIdf);
+        invertedIndex = buildPostings(postings);
         return invertedIndex;
     }
 
-    public Set<Integer> getIds() {
+    public RoaringBitmap getIds() {
         return qIds;
     }
 
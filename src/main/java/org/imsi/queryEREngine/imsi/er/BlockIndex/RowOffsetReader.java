@@ -0,0 +1,94 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+
+/**
+ * Decodes a CSV file, or a byte range of it, and maps the char offsets of the parser back to
+ * the byte offsets of the file. Only the line breaks are kept: a row starts right after one,
+ * and in UTF-8 a '\n' byte is never part of a longer char, so the n-th line break of the
+ * chars is the n-th line break of the bytes. The parser must read on the calling thread,
+ * since the line breaks are recorded as it reads ahead.
+ */
+public class RowOffsetReader extends Reader {
+
+	private final long start;
+	private final Reader reader;
+	private final LongArrayFIFOQueue lineBytes = new LongArrayFIFOQueue();
+	private final LongArrayFIFOQueue lineChars = new LongArrayFIFOQueue();
+	private long bytes;
+	private long chars;
+
+	/**
+	 * @param input the bytes of the file from {@code start} on
+	 * @param start offset of the input in the file
+	 * @param charset charset of the file, where '\n' is a single byte as in UTF-8
+	 */
+	public RowOffsetReader(InputStream input, long start, Charset charset) {
+		this.start = start;
+		this.reader = new InputStreamReader(new LineCountingStream(input), charset);
+	}
+
+	/**
+	 * Returns the byte offset in the file of the row at the given char offset of the input.
+	 * Rows must be asked for in order, and must start a line or be at the end of the input.
+	 */
+	public long offsetOf(long charOffset) {
+		if (charOffset <= 0) return start;
+		while (!lineChars.isEmpty() && lineChars.firstLong() < charOffset) {
+			lineChars.dequeueLong();
+			lineBytes.dequeueLong();
+		}
+		if (lineChars.isEmpty() && chars <= charOffset) return start + bytes;
+		if (lineChars.isEmpty() || lineChars.firstLong() != charOffset)
+			throw new IllegalStateException("No line starts at char " + charOffset);
+		return start + lineBytes.firstLong();
+	}
+
+	@Override
+	public int read(char[] buffer, int offset, int length) throws IOException {
+		int read = reader.read(buffer, offset, length);
+		for (int i = 0; i < read; i++)
+			if (buffer[offset + i] == '\n') lineChars.enqueue(chars + i + 1);
+		if (read > 0) chars += read;
+		return read;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/** Records the offset after every line break of the bytes read. */
+	private class LineCountingStream extends FilterInputStream {
+
+		LineCountingStream(InputStream input) {
+			super(input);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = in.read();
+			if (read < 0) return read;
+			bytes++;
+			if (read == '\n') lineBytes.enqueue(bytes);
+			return read;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = in.read(buffer, offset, length);
+			for (int i = 0; i < read; i++)
+				if (buffer[offset + i] == '\n') lineBytes.enqueue(bytes + i + 1);
+			if (read > 0) bytes += read;
+			return read;
+		}
+	}
+
+}
@@ -0,0 +1,175 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Integer ids for the tokens of a table. Base tokens are numbered by their rank in the sorted
+ * dictionary of the mapped index, so the base needs no storage of its own and a lookup is a
+ * binary search over the mapped token bytes. Tokens first seen in delta segments follow, in
+ * segment order. Ids are stable until the segments are compacted.
+ *
+ * The appended tokens are stored next to the mapped index whenever a segment is appended, with
+ * the segments they cover, so opening a table reads them instead of looking up every token of
+ * its deltas in the base. They are found again from the deltas if the file is missing or stale.
+ *
+ * Layout (big endian):
+ * <pre>
+ * header   magic, version, segments, int[segments] segment ids, tokens
+ * tokens   modified UTF-8 tokens in id order
+ * </pre>
+ */
+public class TokenDictionary {
+
+	public static final int MISSING = -1;
+	public static final String FILE_SUFFIX = "AppendedTokens.dict";
+
+	private static final int MAGIC = 0x51455244;
+	private static final int VERSION = 1;
+
+	private final MappedBlockIndex base;
+	private final Object2IntOpenHashMap<String> appendedIds;
+	private final List<String> appendedTokens;
+
+	private TokenDictionary(MappedBlockIndex base) {
+		this.base = base;
+		this.appendedIds = new Object2IntOpenHashMap<>();
+		this.appendedIds.defaultReturnValue(MISSING);
+		this.appendedTokens = new ArrayList<>();
+	}
+
+	/** Finds the appended tokens in the given delta segments. */
+	TokenDictionary(MappedBlockIndex base, List<MappedBlockIndex> deltas) {
+		this(base);
+		for (MappedBlockIndex delta : deltas) addDelta(delta);
+	}
+
+	/**
+	 * Opens the dictionary of a table, reading the stored appended tokens if they cover exactly
+	 * the given segments.
+	 */
+	static TokenDictionary open(MappedBlockIndex base, List<MappedBlockIndex> deltas, BlockIndexSegments segments) {
+		if (segments == null || deltas.isEmpty()) return new TokenDictionary(base, deltas);
+		TokenDictionary dictionary = new TokenDictionary(base);
+		List<Integer> covered = dictionary.load(segments.tokenDictionaryPath());
+		if (segments.getSegments().equals(covered)) return dictionary;
+		return new TokenDictionary(base, deltas);
+	}
+
+	/**
+	 * Stores the appended tokens of the segments of a table, extending the stored ones when they
+	 * cover the first segments, such as after a segment was appended.
+	 */
+	public static void store(BlockIndexSegments segments) {
+		String path = segments.tokenDictionaryPath();
+		List<Integer> segmentIds = segments.getSegments();
+		MappedBlockIndex base = MappedBlockIndex.open(segments.basePath());
+		TokenDictionary dictionary = new TokenDictionary(base);
+		List<Integer> covered = dictionary.load(path);
+		if (covered == null || covered.size() > segmentIds.size()
+				|| !covered.equals(segmentIds.subList(0, covered.size()))) {
+			dictionary = new TokenDictionary(base);
+			covered = new ArrayList<>();
+		}
+		for (Integer segment : segmentIds.subList(covered.size(), segmentIds.size())) {
+			MappedBlockIndex delta = MappedBlockIndex.open(segments.indexPath(segment));
+			dictionary.addDelta(delta);
+			delta.close();
+		}
+		dictionary.write(segmentIds, path);
+		base.close();
+	}
+
+	private void addDelta(MappedBlockIndex delta) {
+		for (int i = 0; i < delta.size(); i++) {
+			String token = delta.token(i);
+			if (base.tokenId(token) >= 0 || appendedIds.containsKey(token)) continue;
+			appendedIds.put(token, base.size() + appendedTokens.size());
+			appendedTokens.add(token);
+		}
+	}
+
+	/** Reads the stored appended tokens and returns the segments they cover, or null. */
+	private List<Integer> load(String path) {
+		if (!new File(path).exists()) return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+			List<Integer> segments = new ArrayList<>();
+			int noOfSegments = in.readInt();
+			for (int i = 0; i < noOfSegments; i++) segments.add(in.readInt());
+			int tokens = in.readInt();
+			for (int i = 0; i < tokens; i++) {
+				String token = in.readUTF();
+				appendedIds.put(token, base.size() + appendedTokens.size());
+				appendedTokens.add(token);
+			}
+			return segments;
+		} catch (IOException e) {
+			e.printStackTrace();
+			appendedIds.clear();
+			appendedTokens.clear();
+			return null;
+		}
+	}
+
+	private void write(List<Integer> segments, String path) {
+		String tmpPath = path + ".tmp";
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmpPath), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(segments.size());
+			for (Integer segment : segments) out.writeInt(segment);
+			out.writeInt(appendedTokens.size());
+			for (String token : appendedTokens) out.writeUTF(token);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		try {
+			Files.move(Paths.get(tmpPath), Paths.get(path), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Returns the id of a token, or {@link #MISSING} if the table has no block for it. */
+	public int id(String token) {
+		int id = base.tokenId(token);
+		return id >= 0 ? id : appendedIds.getInt(token);
+	}
+
+	public String token(int id) {
+		return id < base.size() ? base.token(id) : appendedTokens.get(id - base.size());
+	}
+
+	/** Returns the ids of the given tokens that have a block in the table. */
+	public IntOpenHashSet ids(Collection<String> tokens) {
+		IntOpenHashSet ids = new IntOpenHashSet(tokens.size());
+		for (String token : tokens) {
+			int id = id(token.trim());
+			if (id != MISSING) ids.add(id);
+		}
+		return ids;
+	}
+
+	public int size() {
+		return base.size() + appendedTokens.size();
+	}
+
+}
@@ -3,11 +3,11 @@ package org.imsi.queryEREngine.imsi.er.DataStructures;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.ComparisonRefinement.AbstractDuplicatePropagation;
 import org.imsi.queryEREngine.imsi.er.Utilities.ComparisonIterator;
 import org.imsi.queryEREngine.imsi.er.Utilities.QueryComparisonIterator;
+import org.roaringbitmap.RoaringBitmap;
 
 public abstract class AbstractBlock implements Serializable {
 
@@ -40,7 +40,7 @@ public abstract class AbstractBlock implements Serializable {
 		return new ComparisonIterator(this);
 	}
 
-	public QueryComparisonIterator getQueryComparisonIterator(Set<Integer> qIds) {
+	public QueryComparisonIterator getQueryComparisonIterator(RoaringBitmap qIds) {
 		return new QueryComparisonIterator(this, qIds);
 	}
 
@@ -4,6 +4,8 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.imsi.queryEREngine.imsi.er.Utilities.SortedIntersection;
+
 
 public class EntityIndex implements Serializable {
 
@@ -60,33 +62,11 @@ public class EntityIndex implements Serializable {
         int[] blocks1 = entityBlocks[comparison.getEntityId1()];
         int[] blocks2 = entityBlocks[comparison.getEntityId2() + datasetLimit];
 
-        boolean firstCommonIndex = false;
-        int noOfBlocks1 = blocks1.length;
-        int noOfBlocks2 = blocks2.length;
-        final List<Integer> indices = new ArrayList<>();
-        for (int i = 0; i < noOfBlocks1; i++) {
-            for (int j = 0; j < noOfBlocks2; j++) {
-                if (blocks2[j] < blocks1[i]) {
-                    continue;
-                }
-
-                if (blocks1[i] < blocks2[j]) {
-                    break;
-                }
-
-                if (blocks1[i] == blocks2[j]) {
-                    if (!firstCommonIndex) {
-                        firstCommonIndex = true;
-                        if (blocks1[i] != blockIndex) {
-                            return null;
-                        }
-                    }
-                    indices.add(blocks1[i]);
-                }
-            }
+        int[] commonBlocks = SortedIntersection.intersection(blocks1, blocks2);
+        if (0 < commonBlocks.length && commonBlocks[0] != blockIndex) {
+            return null;
         }
-
-        return indices;
+        return toList(commonBlocks);
     }
 
     public int getDatasetLimit() {
@@ -104,137 +84,43 @@ public class EntityIndex implements Serializable {
     public int[] getNoOfCommonBlocksAndFCB(int blockIndex, Comparison comparison) {
         int[] blocks1 = entityBlocks[comparison.getEntityId1()];
         int[] blocks2 = entityBlocks[comparison.getEntityId2() + datasetLimit];
-//        Arrays.parallelSort(blocks1);
-//        System.out.println(blocks2[0]+"  --->   "+blocks1[0]+"   "+blockIndex);
-//        Arrays.parallelSort(blocks2);
-//        HashSet<Integer> b1 = new HashSet<Integer>(Arrays.asList(Arrays.stream( blocks1 ).boxed().toArray( Integer[]::new )));
-//        HashSet<Integer> b2 = new HashSet<Integer>(Arrays.asList(Arrays.stream( blocks2 ).boxed().toArray( Integer[]::new )));
-//        b1.retainAll(b2);
-        int[] arr = new int[2];
-        boolean firstCommonIndex = false;
-        int commonBlocks = 0;
-        int noOfBlocks1 = blocks1.length;
-        int noOfBlocks2 = blocks2.length;
-        arr[1] = blockIndex;
-//        ArrayList<Integer> check1 = new ArrayList<>();
-//        ArrayList<Integer> check2 = new ArrayList<>();
-        for (int i = 0; i < noOfBlocks1; i++) {
-            for (int j = 0; j < noOfBlocks2; j++) {
-                if (blocks2[j] < blocks1[i]) {
-                    continue;
-                }
 
-                if (blocks1[i] < blocks2[j]) {
-                    break;
-                }
-
-                if (blocks1[i] == blocks2[j]) {
-                    commonBlocks++;
-//                    check1.add(blocks1[i]);
-//                    check2.add(blocks2[j]);
-                    if (!firstCommonIndex) {
-                        firstCommonIndex = true;
-                        arr[1] = blocks1[i];
-                        if (blocks1[i] != blockIndex) {
-                            arr[0] = -1;
-                            return arr;
-//                            return -1;
-                        }
-                    }
-                    if (arr[1] > blocks1[i]) arr[1] = blocks1[i];
-                }
-            }
-        }
-//        int[] l = check1.stream().mapToInt(i -> i).toArray();
-//        int[] k = check2.stream().mapToInt(i -> i).toArray();
-//        Arrays.parallelSort(l);
-//        Arrays.parallelSort(k);
-//        92252644u7907261
-//        129375895u20786922
-//        33474778u17728996
-//        if(comparison.getEntityId1() == 73498671 && comparison.getEntityId2()==72285978){
-//            System.err.println(arr[1]);
-//        }else if(comparison.getEntityId2() == 73498671 && comparison.getEntityId1()==72285978){
-//            System.err.println(arr[1]);
-//        }
-//        Object min = Collections.min(b1);
-//        if (commonBlocks > 0 && Integer.parseInt(min.toString()) < blockIndex) System.err.println(min.toString() + "  " + arr[1]+"   "+blockIndex);
-        //System.err.println(l[0] + "  " +l[1]+ "  " + k[0] + "  " + arr[1]+"   "+blockIndex);
-
-        arr[0] = commonBlocks;
+        int[] arr = new int[2];
+        arr[0] = SortedIntersection.countIfFirst(blocks1, blocks2, blockIndex);
+        arr[1] = arr[0] < 0 ? SortedIntersection.first(blocks1, blocks2) : blockIndex;
         return arr;
     }
 
+    /**
+     * Common blocks of two entities, or -1 if the given block is not the first of them, so that
+     * every comparison is counted once. The second entity is offset by the dataset limit.
+     */
     public int getNoOfCommonBlocks(int blockIndex, Comparison comparison) {
-//        System.err.println("LIMIT->  "+datasetLimit);
-
         int[] blocks1 = entityBlocks[comparison.getEntityId1()];
         int[] blocks2 = entityBlocks[comparison.getEntityId2() + datasetLimit];
 
         if(blocks1.length==0 || blocks2.length==0) System.err.println(blocks1.length+"    "+blocks2.length);
 
-        boolean firstCommonIndex = false;
-        int commonBlocks = 0;
-        int noOfBlocks1 = blocks1.length;
-        int noOfBlocks2 = blocks2.length;
-        for (int i = 0; i < noOfBlocks1; i++) {
-            for (int j = 0; j < noOfBlocks2; j++) {
-                if (blocks2[j] < blocks1[i]) {
-                    continue;
-                }
-
-                if (blocks1[i] < blocks2[j]) {
-                    break;
-                }
-
-                if (blocks1[i] == blocks2[j]) {
-                    commonBlocks++;
-                    if (!firstCommonIndex) {
-                        firstCommonIndex = true;
-                        if (blocks1[i] != blockIndex) {
-                            return -1;
-                        }
-                    }
-                }
-            }
-        }
-
-        return commonBlocks;
+        return SortedIntersection.countIfFirst(blocks1, blocks2, blockIndex);
     }
 
+    /**
+     * Common blocks of two entities, each weighted by log10(|b|)/|b| of its assignments, or -1 if
+     * the given block is not the first of them.
+     */
     public double getNoOfCommonBlocks(int blockIndex, Comparison comparison, List<AbstractBlock> blocks) {
         int[] blocks1 = entityBlocks[comparison.getEntityId1()];
         int[] blocks2 = entityBlocks[comparison.getEntityId2() + datasetLimit];
 
-        boolean firstCommonIndex = false;
+        int[] common = SortedIntersection.intersection(blocks1, blocks2);
+        if (0 < common.length && common[0] != blockIndex) {
+            return -1;
+        }
         double commonBlocks = 0.0d;
-        int noOfBlocks1 = blocks1.length;
-        int noOfBlocks2 = blocks2.length;
-        for (int i = 0; i < noOfBlocks1; i++) {
-            for (int j = 0; j < noOfBlocks2; j++) {
-                if (blocks2[j] < blocks1[i]) {
-                    continue;
-                }
-
-                if (blocks1[i] < blocks2[j]) {
-                    break;
-                }
-
-                if (blocks1[i] == blocks2[j]) {
-//                    System.out.println(Math.log10(blocks.get(i).getTotalBlockAssignments())/blocks.get(i).getTotalBlockAssignments());
-                    commonBlocks+=Math.log10(blocks.get(i).getTotalBlockAssignments())/blocks.get(i).getTotalBlockAssignments();
-//                    commonBlocks++;
-                    if (!firstCommonIndex) {
-                        firstCommonIndex = true;
-                        if (blocks1[i] != blockIndex) {
-                            return -1;
-                        }
-                    }
-                }
-            }
+        for (int commonIndex : common) {
+            double assignments = blocks.get(commonIndex).getTotalBlockAssignments();
+            commonBlocks += Math.log10(assignments) / assignments;
         }
-
-//        System.out.println(commonBlocks);
         return commonBlocks;
     }
 
@@ -260,62 +146,54 @@ public class EntityIndex implements Serializable {
     }
 
     public List<Integer> getTotalCommonIndices(Comparison comparison) {
-        final List<Integer> indices = new ArrayList<>();
-
         int[] blocks1 = entityBlocks[comparison.getEntityId1()];
         int[] blocks2 = entityBlocks[comparison.getEntityId2() + datasetLimit];
-        if (blocks1.length == 0 || blocks2.length == 0) {
-            return indices;
-        }
-
-        int noOfBlocks1 = blocks1.length;
-        int noOfBlocks2 = blocks2.length;
-        for (int i = 0; i < noOfBlocks1; i++) {
-            for (int j = 0; j < noOfBlocks2; j++) {
-                if (blocks2[j] < blocks1[i]) {
-                    continue;
-                }
-
-                if (blocks1[i] < blocks2[j]) {
-                    break;
-                }
-
-                if (blocks1[i] == blocks2[j]) {
-                    indices.add(blocks1[i]);
-                }
-            }
-        }
-
-        return indices;
+        return toList(SortedIntersection.intersection(blocks1, blocks2));
     }
 
     public int getTotalNoOfCommonBlocks(Comparison comparison) {
         int[] blocks1 = entityBlocks[comparison.getEntityId1()];
         int[] blocks2 = entityBlocks[comparison.getEntityId2() + datasetLimit];
-        if (blocks1.length == 0 || blocks2.length == 0) {
-            return 0;
-        }
+        return SortedIntersection.count(blocks1, blocks2);
+    }
 
-        int commonBlocks = 0;
-        int noOfBlocks1 = blocks1.length;
-        int noOfBlocks2 = blocks2.length;
-        for (int i = 0; i < noOfBlocks1; i++) {
-            for (int j = 0; j < noOfBlocks2; j++) {
-                if (blocks2[j] < blocks1[i]) {
+    /**
+     * Accumulates the common blocks of an entity with all of its neighbours in one pass over its
+     * blocks, instead of intersecting the block lists of every pair. The counters are indexed by
+     * neighbour id and must be zero; the caller resets those of the returned neighbours.
+     *
+     * @return the number of distinct neighbours, written to the start of {@code neighbours}
+     */
+    public int getNeighbourhood(int entityId, AbstractBlock[] blocks, int[] commonBlocks, int[] neighbours) {
+        boolean firstPartition = entityId < datasetLimit;
+        int noOfNeighbours = 0;
+        for (int blockIndex : entityBlocks[entityId]) {
+            AbstractBlock block = blocks[blockIndex];
+            boolean bilateral = block instanceof BilateralBlock;
+            int[] entities;
+            if (bilateral) {
+                entities = firstPartition ? ((BilateralBlock) block).getIndex2Entities() : ((BilateralBlock) block).getIndex1Entities();
+            } else {
+                entities = ((UnilateralBlock) block).getEntities();
+            }
+            for (int neighbourId : entities) {
+                if (!bilateral && neighbourId == entityId) {
                     continue;
                 }
-
-                if (blocks1[i] < blocks2[j]) {
-                    break;
-                }
-
-                if (blocks1[i] == blocks2[j]) {
-                    commonBlocks++;
+                if (commonBlocks[neighbourId]++ == 0) {
+                    neighbours[noOfNeighbours++] = neighbourId;
                 }
             }
         }
+        return noOfNeighbours;
+    }
 
-        return commonBlocks;
+    private static List<Integer> toList(int[] blockIndices) {
+        final List<Integer> indices = new ArrayList<>(blockIndices.length);
+        for (int blockIndex : blockIndices) {
+            indices.add(blockIndex);
+        }
+        return indices;
     }
 
     public int getValidEntities1() {
@@ -419,22 +297,9 @@ public class EntityIndex implements Serializable {
         int[] blocks1 = entityBlocks[comparison.getEntityId1()];
         int[] blocks2 = entityBlocks[comparison.getEntityId2() + datasetLimit];
 
-        int noOfBlocks1 = blocks1.length;
-        int noOfBlocks2 = blocks2.length;
-        for (int i = 0; i < noOfBlocks1; i++) {
-            for (int j = 0; j < noOfBlocks2; j++) {
-                if (blocks2[j] < blocks1[i]) {
-                    continue;
-                }
-
-                if (blocks1[i] < blocks2[j]) {
-                    break;
-                }
-
-                if (blocks1[i] == blocks2[j]) {
-                    return blocks1[i] != blockIndex;
-                }
-            }
+        int firstCommonBlock = SortedIntersection.first(blocks1, blocks2);
+        if (0 <= firstCommonBlock) {
+            return firstCommonBlock != blockIndex;
         }
 
         System.err.println("Error!!!!");
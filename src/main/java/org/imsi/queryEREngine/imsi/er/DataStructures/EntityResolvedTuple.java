@@ -15,6 +15,7 @@ import org.imsi.queryEREngine.imsi.er.Utilities.EntityGrouping;
 import org.imsi.queryEREngine.imsi.er.Utilities.MapUtilities;
 import org.imsi.queryEREngine.imsi.er.Utilities.SerializationUtilities;
 import org.imsi.queryEREngine.imsi.er.Utilities.UnionFind;
+import org.roaringbitmap.RoaringBitmap;
 
 public class EntityResolvedTuple<T> extends AbstractEnumerable<T> {
 
@@ -136,7 +137,7 @@ public class EntityResolvedTuple<T> extends AbstractEnumerable<T> {
 	}
 	
 	public void mergeLinks(HashMap<Integer, Set<Integer>> links, String tableName, boolean firstDedup,
-			Set<Integer> totalIds, boolean runLinks) {
+			RoaringBitmap totalIds, boolean runLinks) {
 		this.links = links;
 		if(!firstDedup) this.combineLinks(links);
 		if(runLinks) storeLinks(tableName);
@@ -154,11 +155,11 @@ public class EntityResolvedTuple<T> extends AbstractEnumerable<T> {
 	}
 	
 	
-	public void filterData(Set<Integer> totalIds) {
+	public void filterData(RoaringBitmap totalIds) {
 		HashMap<Integer, Object[]> filteredData = new HashMap<>();
 		// First filter the merged revUF by keeping only the query ids + dup ids
-		this.revUF.keySet().retainAll(totalIds);
-		this.revUF.values().forEach(v -> v.retainAll(totalIds));
+		this.revUF.keySet().removeIf(id -> !totalIds.contains(id));
+		this.revUF.values().forEach(v -> v.removeIf(id -> !totalIds.contains(id)));
 		for (int id : this.revUF.keySet()) {
 			Object[] datum = this.data.get(id);
 			if(datum == null) System.out.println(datum);
@@ -0,0 +1,226 @@
+package org.imsi.queryEREngine.imsi.er.DataStructures;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntIterators;
+
+/**
+ * Posting list backed by a sorted int array. On disk the ids are written as
+ * varint encoded gaps, which keeps the serialized index a fraction of the
+ * size of the boxed sets.
+ */
+public class IntArrayPostingList implements PostingList {
+
+	private static final long serialVersionUID = -4325794180385043121L;
+
+	public static final IntArrayPostingList EMPTY = new IntArrayPostingList(IntArrays.EMPTY_ARRAY);
+
+	// Lists longer than this ratio over the other use binary search instead of merging
+	private static final int GALLOP_RATIO = 32;
+
+	private transient int[] ids;
+
+	private IntArrayPostingList(int[] ids) {
+		this.ids = ids;
+	}
+
+	/** Wraps an array that is already sorted and free of duplicates. */
+	public static IntArrayPostingList wrap(int[] sortedIds) {
+		return sortedIds.length == 0 ? EMPTY : new IntArrayPostingList(sortedIds);
+	}
+
+	/** Sorts and removes duplicates from the given ids. */
+	public static IntArrayPostingList of(int[] ids, int length) {
+		int[] sorted = Arrays.copyOf(ids, length);
+		Arrays.sort(sorted);
+		int unique = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (unique == 0 || sorted[i] != sorted[unique - 1])
+				sorted[unique++] = sorted[i];
+		}
+		return wrap(unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique));
+	}
+
+	public static IntArrayPostingList of(int... ids) {
+		return of(ids, ids.length);
+	}
+
+	@Override
+	public int size() {
+		return ids.length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return ids.length == 0;
+	}
+
+	@Override
+	public int getInt(int index) {
+		return ids[index];
+	}
+
+	@Override
+	public boolean contains(int id) {
+		return Arrays.binarySearch(ids, id) >= 0;
+	}
+
+	@Override
+	public IntIterator iterator() {
+		return IntIterators.wrap(ids);
+	}
+
+	@Override
+	public int[] toIntArray() {
+		return ids.clone();
+	}
+
+	@Override
+	public int intersectionCount(PostingList other) {
+		if (other.size() < size()) return other.intersectionCount(this);
+		if (other.size() / GALLOP_RATIO > size()) {
+			int count = 0;
+			for (int id : ids)
+				if (other.contains(id)) count++;
+			return count;
+		}
+		int count = 0;
+		int i = 0, j = 0;
+		int otherSize = other.size();
+		while (i < ids.length && j < otherSize) {
+			int a = ids[i];
+			int b = other.getInt(j);
+			if (a < b) i++;
+			else if (b < a) j++;
+			else {
+				count++;
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public PostingList intersect(PostingList other) {
+		int[] common = new int[Math.min(size(), other.size())];
+		int count = 0;
+		int i = 0, j = 0;
+		int otherSize = other.size();
+		while (i < ids.length && j < otherSize) {
+			int a = ids[i];
+			int b = other.getInt(j);
+			if (a < b) i++;
+			else if (b < a) j++;
+			else {
+				common[count++] = a;
+				i++;
+				j++;
+			}
+		}
+		return wrap(count == common.length ? common : Arrays.copyOf(common, count));
+	}
+
+	@Override
+	public PostingList difference(PostingList other) {
+		int[] remaining = new int[ids.length];
+		int count = 0;
+		int j = 0;
+		int otherSize = other.size();
+		for (int a : ids) {
+			while (j < otherSize && other.getInt(j) < a) j++;
+			if (j < otherSize && other.getInt(j) == a) continue;
+			remaining[count++] = a;
+		}
+		if (count == ids.length) return this;
+		return wrap(Arrays.copyOf(remaining, count));
+	}
+
+	@Override
+	public PostingList union(PostingList other) {
+		if (other.isEmpty()) return this;
+		if (isEmpty()) return other;
+		int otherSize = other.size();
+		int[] merged = new int[ids.length + otherSize];
+		int count = 0;
+		int i = 0, j = 0;
+		while (i < ids.length || j < otherSize) {
+			int next;
+			if (j >= otherSize || (i < ids.length && ids[i] < other.getInt(j))) next = ids[i++];
+			else if (i >= ids.length || other.getInt(j) < ids[i]) next = other.getInt(j++);
+			else {
+				next = ids[i++];
+				j++;
+			}
+			merged[count++] = next;
+		}
+		return wrap(count == merged.length ? merged : Arrays.copyOf(merged, count));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof IntArrayPostingList)) return false;
+		return Arrays.equals(ids, ((IntArrayPostingList) obj).ids);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(ids);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(ids);
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(ids.length);
+		int previous = 0;
+		for (int id : ids) {
+			writeVarInt(out, id - previous);
+			previous = id;
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		ids = new int[in.readInt()];
+		int previous = 0;
+		for (int i = 0; i < ids.length; i++) {
+			previous += readVarInt(in);
+			ids[i] = previous;
+		}
+	}
+
+	private Object readResolve() {
+		return ids.length == 0 ? EMPTY : this;
+	}
+
+	private static void writeVarInt(ObjectOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(ObjectInputStream in) throws IOException {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+}
@@ -0,0 +1,36 @@
+package org.imsi.queryEREngine.imsi.er.DataStructures;
+
+import java.io.Serializable;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+/**
+ * Sorted, duplicate-free list of the entity ids that share a blocking key.
+ * Replaces the Set<Integer> postings of the inverted index, postings are kept
+ * as primitive ints and are never modified once built.
+ */
+public interface PostingList extends Serializable {
+
+	int size();
+
+	boolean isEmpty();
+
+	/** Returns the id at the given position of the sorted list. */
+	int getInt(int index);
+
+	boolean contains(int id);
+
+	IntIterator iterator();
+
+	/** Returns a copy of the ids in ascending order. */
+	int[] toIntArray();
+
+	int intersectionCount(PostingList other);
+
+	PostingList intersect(PostingList other);
+
+	PostingList difference(PostingList other);
+
+	PostingList union(PostingList other);
+
+}
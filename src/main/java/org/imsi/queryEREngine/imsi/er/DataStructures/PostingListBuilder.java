@@ -0,0 +1,39 @@
+package org.imsi.queryEREngine.imsi.er.DataStructures;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+/**
+ * Growable list of ids used while an inverted index is being built.
+ * Ids mostly arrive in ascending order, so consecutive duplicates are
+ * dropped on insertion and the rest are removed by {@link #build()}.
+ */
+public class PostingListBuilder {
+
+	private final IntArrayList ids;
+
+	public PostingListBuilder() {
+		this.ids = new IntArrayList(4);
+	}
+
+	public void add(int id) {
+		int size = ids.size();
+		if (size > 0 && ids.getInt(size - 1) == id) return;
+		ids.add(id);
+	}
+
+	public void addAll(PostingListBuilder other) {
+		ids.addAll(other.ids);
+	}
+
+	public void addAll(PostingList postingList) {
+		IntIterator iterator = postingList.iterator();
+		while (iterator.hasNext())
+			add(iterator.nextInt());
+	}
+
+	public PostingList build() {
+		return IntArrayPostingList.of(ids.elements(), ids.size());
+	}
+
+}
@@ -2,7 +2,8 @@ package org.imsi.queryEREngine.imsi.er.DataStructures;
 
 import java.io.Serializable;
 import java.util.Arrays;
-import java.util.Set;
+
+import org.roaringbitmap.RoaringBitmap;
 
 public class UnilateralBlock extends AbstractBlock implements Serializable {
 
@@ -16,7 +17,7 @@ public class UnilateralBlock extends AbstractBlock implements Serializable {
         this.entities = entities;
     }
 
-    public UnilateralBlock(int[] entities, Set<Integer> qIds) {
+    public UnilateralBlock(int[] entities, RoaringBitmap qIds) {
         super();
         this.entities = entities;
         this.queryEntities = Arrays.stream(entities).filter(qIds::contains).toArray();
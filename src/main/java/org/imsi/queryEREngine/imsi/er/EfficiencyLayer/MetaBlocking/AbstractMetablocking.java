@@ -166,35 +166,30 @@ public abstract class AbstractMetablocking extends AbstractEfficiencyMethod {
     }
 
     protected double getWeight(Comparison comparison) {
+        if (weightingScheme == WeightingScheme.ARCS) {
+            final List<Integer> commonIndices = entityIndex.getTotalCommonIndices(comparison);
+            double totalWeight = 0;
+            for (Integer index : commonIndices) {
+                totalWeight += 1.0 / comparisonsPerBlock[index];
+            }
+            return totalWeight;
+        }
+        return getWeight(comparison, entityIndex.getTotalNoOfCommonBlocks(comparison));
+    }
+
+    /** Weight of a comparison from its number of common blocks, as accumulated over a neighbourhood. */
+    protected double getWeight(Comparison comparison, double commonBlocks) {
         switch (weightingScheme) {
             case ARCS:
-                final List<Integer> commonIndices = entityIndex.getTotalCommonIndices(comparison);
-                double totalWeight = 0;
-                for (Integer index : commonIndices) {
-                    totalWeight += 1.0 / comparisonsPerBlock[index];
-                }
-                return totalWeight;
+                return getWeight(comparison);
             case CBS:
-                return entityIndex.getTotalNoOfCommonBlocks(comparison);
+                return commonBlocks;
             case ECBS:
-                double commonBlocks = entityIndex.getTotalNoOfCommonBlocks(comparison);
-                if (commonBlocks < 0) {
-                    return commonBlocks;
-                }
                 return commonBlocks * Math.log10(totalBlocks / entityIndex.getNoOfEntityBlocks(comparison.getEntityId1(), 0)) * Math.log10(totalBlocks / entityIndex.getNoOfEntityBlocks(comparison.getEntityId2(), comparison.isCleanCleanER() ? 1 : 0));
             case JS:
-                double commonBlocksJS = entityIndex.getTotalNoOfCommonBlocks(comparison);
-                if (commonBlocksJS < 0) {
-                    return commonBlocksJS;
-                }
-                return commonBlocksJS / (entityIndex.getNoOfEntityBlocks(comparison.getEntityId1(), 0) + entityIndex.getNoOfEntityBlocks(comparison.getEntityId2(), comparison.isCleanCleanER() ? 1 : 0) - commonBlocksJS);
+                return commonBlocks / (entityIndex.getNoOfEntityBlocks(comparison.getEntityId1(), 0) + entityIndex.getNoOfEntityBlocks(comparison.getEntityId2(), comparison.isCleanCleanER() ? 1 : 0) - commonBlocks);
             case EJS:
-                double commonBlocksEJS = entityIndex.getTotalNoOfCommonBlocks(comparison);
-                if (commonBlocksEJS < 0) {
-                    return commonBlocksEJS;
-                }
-
-                double probability = commonBlocksEJS / (entityIndex.getNoOfEntityBlocks(comparison.getEntityId1(), 0) + entityIndex.getNoOfEntityBlocks(comparison.getEntityId2(), comparison.isCleanCleanER() ? 1 : 0) - commonBlocksEJS);
+                double probability = commonBlocks / (entityIndex.getNoOfEntityBlocks(comparison.getEntityId1(), 0) + entityIndex.getNoOfEntityBlocks(comparison.getEntityId2(), comparison.isCleanCleanER() ? 1 : 0) - commonBlocks);
                 return probability * Math.log10(validComparisons / comparisonsPerEntity[comparison.getEntityId1()]) * Math.log10(validComparisons / comparisonsPerEntity[comparison.isCleanCleanER() ? comparison.getEntityId2() + entityIndex.getDatasetLimit() : comparison.getEntityId2()]);
         }
 
@@ -18,11 +18,8 @@ package org.imsi.queryEREngine.imsi.er.EfficiencyLayer.MetaBlocking;
 import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
 import org.imsi.queryEREngine.imsi.er.DataStructures.BilateralBlock;
 import org.imsi.queryEREngine.imsi.er.DataStructures.Comparison;
-import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 
 
@@ -30,6 +27,8 @@ public abstract class AbstractNodePruning extends AbstractMetablocking {
     
     protected boolean cleanCleanER;
     protected AbstractBlock[] blocksArray;
+    protected int[] commonBlocks;
+    protected int[] neighbours;
     
     public AbstractNodePruning(String description, WeightingScheme scheme) {
         super(description, scheme);
@@ -48,37 +47,42 @@ public abstract class AbstractNodePruning extends AbstractMetablocking {
     }
     
     protected Integer[] getAdjacentEntities(int entityId) { // continuous entity id
-        int[] associatedBlocks = entityIndex.getEntityBlocks(entityId, 0);
-        if (associatedBlocks.length == 0) { // singleton entity
+        int noOfNeighbours = getNeighbourhood(entityId);
+        if (noOfNeighbours < 0) { // singleton entity
             return null;
         }
-        
-        Set<Integer> adjacentEntities = new HashSet<Integer>();
-        if (!cleanCleanER) {
-            for (int blockIndex : associatedBlocks) {
-                UnilateralBlock block = (UnilateralBlock) blocksArray[blockIndex];
-                for (int neighborId : block.getEntities()) {
-                    adjacentEntities.add(neighborId);
-                }
-            }
-            adjacentEntities.remove(entityId);
-        } else {
-            boolean firstPartition = entityId < entityIndex.getDatasetLimit();
-            for (int blockIndex : associatedBlocks) {
-                BilateralBlock block = (BilateralBlock) blocksArray[blockIndex];
-                if (firstPartition) {
-                    for (int neighborId : block.getIndex2Entities()) {
-                        adjacentEntities.add(neighborId);
-                    }
-                } else {
-                    for (int neighborId : block.getIndex1Entities()) {
-                        adjacentEntities.add(neighborId);
-                    }
-                }
-            }
+
+        Integer[] adjacentEntities = new Integer[noOfNeighbours];
+        for (int i = 0; i < noOfNeighbours; i++) {
+            adjacentEntities[i] = neighbours[i];
+        }
+        clearNeighbourhood(noOfNeighbours);
+        return adjacentEntities;
+    }
+
+    /**
+     * Counts the common blocks of an entity with each of its neighbours in one pass over its
+     * blocks. The neighbours are {@code neighbours[0 .. n)} and their counts are in
+     * {@code commonBlocks}, until {@link #clearNeighbourhood(int)} is called. Both are allocated
+     * on first use, so subclasses that override {@link #applyProcessing(List)} need not do it.
+     *
+     * @return the number n of neighbours, or -1 for a singleton entity
+     */
+    protected int getNeighbourhood(int entityId) { // continuous entity id
+        if (entityIndex.getEntityBlocks(entityId, 0).length == 0) {
+            return -1;
+        }
+        if (commonBlocks == null || commonBlocks.length < entityIndex.getNoOfEntities()) {
+            commonBlocks = new int[entityIndex.getNoOfEntities()];
+            neighbours = new int[entityIndex.getNoOfEntities()];
+        }
+        return entityIndex.getNeighbourhood(entityId, blocksArray, commonBlocks, neighbours);
+    }
+
+    protected void clearNeighbourhood(int noOfNeighbours) {
+        for (int i = 0; i < noOfNeighbours; i++) {
+            commonBlocks[neighbours[i]] = 0;
         }
-        
-        return adjacentEntities.toArray(new Integer[adjacentEntities.size()]);
     }
     
     protected Comparison getComparison(int entityId1, int entityId2) {
@@ -2,10 +2,10 @@ package org.imsi.queryEREngine.imsi.er.EfficiencyLayer.MetaBlocking;
 
 
 import java.util.List;
-import java.util.Set;
 
 import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
 import org.imsi.queryEREngine.imsi.er.Utilities.MetaBlockingConfiguration.WeightingScheme;
+import org.roaringbitmap.RoaringBitmap;
 
 
 public class EfficientEdgePruning extends EdgePruning {
@@ -15,7 +15,7 @@ public class EfficientEdgePruning extends EdgePruning {
         averageWeight = 2;
     }
 
-    public EfficientEdgePruning(Set<Integer> qIds) {
+    public EfficientEdgePruning(RoaringBitmap qIds) {
         super("Efficient Edge Pruning", qIds, WeightingScheme.ECBS);
         averageWeight = Double.MIN_VALUE;
     }
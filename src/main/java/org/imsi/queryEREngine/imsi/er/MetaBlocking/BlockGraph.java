@@ -0,0 +1,310 @@
+package org.imsi.queryEREngine.imsi.er.MetaBlocking;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.imsi.queryEREngine.imsi.er.BlockIndex.EntityBlockCounts;
+import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
+import org.imsi.queryEREngine.imsi.er.DataStructures.DecomposedBlock;
+import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Bipartite graph of the entities and blocks of a query in compressed sparse rows. Entities are
+ * numbered densely in id order and blocks by ascending size: the entities of block b are
+ * {@code blockEntities[blockStarts[b] .. blockStarts[b + 1])}, in ascending order, and the blocks
+ * of entity e are {@code entityBlocks[entityStarts[e] .. entityStarts[e + 1])}, from the smallest
+ * to the largest.
+ * Purging and filtering rebuild the arrays in place of restructuring block objects.
+ *
+ * The ECBS factor of an entity, log(|B| / |B_e|), is taken from the graph itself, or from the
+ * block counts of the whole table when they are given, since a query joins only part of the
+ * blocks of its entities.
+ */
+public class BlockGraph {
+
+	private final int[] entityIds;
+	private final boolean[] queryEntities;
+	private boolean[] protectedBlocks;
+	private int[] blockStarts;
+	private int[] blockEntities;
+	private int[] entityStarts;
+	private int[] entityBlocks;
+	private int[] tableBlockCounts;
+	private double tableBlocks;
+	private double[] entityWeights;
+
+	public BlockGraph(List<AbstractBlock> blocks) {
+		RoaringBitmap entities = new RoaringBitmap();
+		RoaringBitmap queryIds = new RoaringBitmap();
+		long[] order = new long[blocks.size()];
+		for (int b = 0; b < blocks.size(); b++) {
+			UnilateralBlock block = (UnilateralBlock) blocks.get(b);
+			entities.addN(block.getEntities(), 0, block.getEntities().length);
+			queryIds.addN(block.getQueryEntities(), 0, block.getQueryEntities().length);
+			order[b] = (long) block.getEntities().length << 32 | b;
+		}
+		Arrays.sort(order);
+
+		entityIds = entities.toArray();
+		queryEntities = new boolean[entityIds.length];
+		queryIds.forEach((int id) -> queryEntities[local(id)] = true);
+
+		protectedBlocks = new boolean[blocks.size()];
+		blockStarts = new int[blocks.size() + 1];
+		for (int b = 0; b < order.length; b++) {
+			UnilateralBlock block = (UnilateralBlock) blocks.get((int) order[b]);
+			protectedBlocks[b] = block.isProtected();
+			blockStarts[b + 1] = blockStarts[b] + block.getEntities().length;
+		}
+		blockEntities = new int[blockStarts[blocks.size()]];
+		for (int b = 0; b < order.length; b++) {
+			int next = blockStarts[b];
+			for (int id : ((UnilateralBlock) blocks.get((int) order[b])).getEntities())
+				blockEntities[next++] = local(id);
+			Arrays.sort(blockEntities, blockStarts[b], next);
+		}
+		indexEntities();
+	}
+
+	/** Weighs the entities by the block counts of the table instead of the blocks of the graph. */
+	public void setEntityBlockCounts(EntityBlockCounts counts) {
+		tableBlockCounts = new int[entityIds.length];
+		for (int e = 0; e < entityIds.length; e++) tableBlockCounts[e] = counts.get(entityIds[e]);
+		tableBlocks = counts.getNoOfBlocks();
+		weighEntities();
+	}
+
+	private int local(int id) {
+		return Arrays.binarySearch(entityIds, id);
+	}
+
+	/** Transposes the block rows into entity rows, keeping the blocks of an entity in block order. */
+	private void indexEntities() {
+		entityStarts = new int[entityIds.length + 1];
+		for (int e : blockEntities) entityStarts[e + 1]++;
+		for (int e = 0; e < entityIds.length; e++) entityStarts[e + 1] += entityStarts[e];
+		entityBlocks = new int[blockEntities.length];
+		int[] next = Arrays.copyOf(entityStarts, entityIds.length);
+		for (int b = 0; b < getNoOfBlocks(); b++) {
+			for (int i = blockStarts[b]; i < blockStarts[b + 1]; i++) entityBlocks[next[blockEntities[i]]++] = b;
+		}
+		weighEntities();
+	}
+
+	private void weighEntities() {
+		double noOfBlocks = Math.max(tableBlocks, getNoOfBlocks());
+		entityWeights = new double[entityIds.length];
+		for (int e = 0; e < entityIds.length; e++) entityWeights[e] = Math.log10(noOfBlocks / getNoOfBlocks(e));
+	}
+
+	/**
+	 * Comparisons-based block purging: drops the unprotected blocks with more comparisons than
+	 * the level where the comparisons grow faster than the block assignments, as
+	 * {@link org.imsi.queryEREngine.imsi.er.EfficiencyLayer.BlockRefinement.ComparisonsBasedBlockPurging}.
+	 */
+	public void purge(double smoothingFactor) {
+		int noOfBlocks = getNoOfBlocks();
+		double[] comparisons = new double[noOfBlocks];
+		for (int b = 0; b < noOfBlocks; b++) comparisons[b] = getNoOfComparisons(b);
+		Integer[] order = new Integer[noOfBlocks];
+		for (int b = 0; b < noOfBlocks; b++) order[b] = b;
+		Arrays.sort(order, Comparator.comparingDouble(b -> comparisons[b]));
+		double[] levels = new double[noOfBlocks];
+		double[] assignmentsPerLevel = new double[noOfBlocks];
+		double[] comparisonsPerLevel = new double[noOfBlocks];
+		int noOfLevels = 0;
+		for (int b : order) {
+			if (noOfLevels == 0 || comparisons[b] != levels[noOfLevels - 1]) {
+				levels[noOfLevels] = comparisons[b];
+				assignmentsPerLevel[noOfLevels] = noOfLevels == 0 ? 0 : assignmentsPerLevel[noOfLevels - 1];
+				comparisonsPerLevel[noOfLevels] = noOfLevels == 0 ? 0 : comparisonsPerLevel[noOfLevels - 1];
+				noOfLevels++;
+			}
+			assignmentsPerLevel[noOfLevels - 1] += blockStarts[b + 1] - blockStarts[b];
+			comparisonsPerLevel[noOfLevels - 1] += comparisons[b];
+		}
+
+		double currentBC = 0;
+		double currentCC = 0;
+		double currentSize = 0;
+		double previousBC;
+		double previousCC;
+		double previousSize = 0;
+		for (int l = noOfLevels - 1; 0 <= l; l--) {
+			previousSize = currentSize;
+			previousBC = currentBC;
+			previousCC = currentCC;
+			currentSize = levels[l];
+			currentBC = assignmentsPerLevel[l];
+			currentCC = comparisonsPerLevel[l];
+			if (currentBC * previousCC < smoothingFactor * currentCC * previousBC) break;
+		}
+		double maxComparisons = previousSize;
+		boolean[] retained = new boolean[blockEntities.length];
+		for (int b = 0; b < noOfBlocks; b++) {
+			if (protectedBlocks[b] || comparisons[b] <= maxComparisons)
+				Arrays.fill(retained, blockStarts[b], blockStarts[b + 1], true);
+		}
+		retain(retained);
+	}
+
+	/**
+	 * Block filtering: keeps every entity in the smallest {@code round(ratio * |blocks|)} of its
+	 * blocks. Blocks left with a single entity or without query entities are dropped.
+	 */
+	public void filter(double ratio) {
+		int[] limits = new int[entityIds.length];
+		for (int e = 0; e < entityIds.length; e++)
+			limits[e] = (int) Math.round(ratio * (entityStarts[e + 1] - entityStarts[e]));
+		int[] counters = new int[entityIds.length];
+		boolean[] retained = new boolean[blockEntities.length];
+		for (int b = 0; b < getNoOfBlocks(); b++) {
+			int noOfRetained = 0;
+			boolean query = false;
+			for (int i = blockStarts[b]; i < blockStarts[b + 1]; i++) {
+				int e = blockEntities[i];
+				if (counters[e] < limits[e]) {
+					retained[i] = true;
+					noOfRetained++;
+					query |= queryEntities[e];
+				}
+			}
+			if (noOfRetained < 2 || !query) {
+				Arrays.fill(retained, blockStarts[b], blockStarts[b + 1], false);
+				continue;
+			}
+			for (int i = blockStarts[b]; i < blockStarts[b + 1]; i++) {
+				if (retained[i]) counters[blockEntities[i]]++;
+			}
+		}
+		retain(retained);
+	}
+
+	/** Keeps the retained block memberships, dropping the blocks that are left with fewer than two entities. */
+	private void retain(boolean[] retained) {
+		int noOfBlocks = getNoOfBlocks();
+		int[] starts = new int[noOfBlocks + 1];
+		int[] entities = new int[blockEntities.length];
+		boolean[] protects = new boolean[noOfBlocks];
+		int blocks = 0;
+		for (int b = 0; b < noOfBlocks; b++) {
+			int start = starts[blocks];
+			int end = start;
+			for (int i = blockStarts[b]; i < blockStarts[b + 1]; i++) {
+				if (retained[i]) entities[end++] = blockEntities[i];
+			}
+			if (end - start < 2) continue;
+			protects[blocks] = protectedBlocks[b];
+			starts[++blocks] = end;
+		}
+		// filtering may leave a smaller block after a larger one, blocks are kept in ascending size
+		long[] order = new long[blocks];
+		for (int b = 0; b < blocks; b++) order[b] = (long) (starts[b + 1] - starts[b]) << 32 | b;
+		Arrays.sort(order);
+		protectedBlocks = new boolean[blocks];
+		blockStarts = new int[blocks + 1];
+		blockEntities = new int[starts[blocks]];
+		for (int b = 0; b < blocks; b++) {
+			int from = (int) order[b];
+			int size = starts[from + 1] - starts[from];
+			System.arraycopy(entities, starts[from], blockEntities, blockStarts[b], size);
+			blockStarts[b + 1] = blockStarts[b] + size;
+			protectedBlocks[b] = protects[from];
+		}
+		indexEntities();
+	}
+
+	/** Comparisons of a block as counted by {@link UnilateralBlock#getNoOfComparisons()}. */
+	public double getNoOfComparisons(int block) {
+		double noOfEntities = blockStarts[block + 1] - blockStarts[block];
+		double noOfQueryEntities = 0;
+		for (int i = blockStarts[block]; i < blockStarts[block + 1]; i++) {
+			if (queryEntities[blockEntities[i]]) noOfQueryEntities++;
+		}
+		if (0 < noOfQueryEntities) return noOfQueryEntities * noOfEntities - noOfQueryEntities;
+		return noOfEntities * (noOfEntities - 1) / 2;
+	}
+
+	/** Common blocks of two entities, by a merge of their block rows. */
+	public int getNoOfCommonBlocks(int entity1, int entity2) {
+		int i = entityStarts[entity1];
+		int j = entityStarts[entity2];
+		int commonBlocks = 0;
+		while (i < entityStarts[entity1 + 1] && j < entityStarts[entity2 + 1]) {
+			if (entityBlocks[i] < entityBlocks[j]) {
+				i++;
+			} else if (entityBlocks[j] < entityBlocks[i]) {
+				j++;
+			} else {
+				commonBlocks++;
+				i++;
+				j++;
+			}
+		}
+		return commonBlocks;
+	}
+
+	/** Candidate pairs of the given edges between entities of the graph, with the larger entity id first. */
+	public DecomposedBlock getDecomposedBlock(long[] edges) {
+		int[] entities1 = new int[edges.length];
+		int[] entities2 = new int[edges.length];
+		for (int i = 0; i < edges.length; i++) {
+			int id1 = entityIds[TopKEdges.entity1(edges[i])];
+			int id2 = entityIds[TopKEdges.entity2(edges[i])];
+			entities1[i] = Math.max(id1, id2);
+			entities2[i] = Math.min(id1, id2);
+		}
+		return new DecomposedBlock(false, entities1, entities2);
+	}
+
+	public int getNoOfEntities() {
+		return entityIds.length;
+	}
+
+	public int getNoOfBlocks() {
+		return blockStarts.length - 1;
+	}
+
+	/** Blocks of an entity in the table if its counts are given, otherwise in the graph. */
+	public int getNoOfBlocks(int entity) {
+		int blocks = entityStarts[entity + 1] - entityStarts[entity];
+		return tableBlockCounts == null ? blocks : Math.max(blocks, tableBlockCounts[entity]);
+	}
+
+	/** ECBS factor of an entity, log(|B| / |B_e|). */
+	public double getEntityWeight(int entity) {
+		return entityWeights[entity];
+	}
+
+	public long getNoOfAssignments() {
+		return blockEntities.length;
+	}
+
+	public int getEntityId(int entity) {
+		return entityIds[entity];
+	}
+
+	public boolean isQueryEntity(int entity) {
+		return queryEntities[entity];
+	}
+
+	public int[] getBlockStarts() {
+		return blockStarts;
+	}
+
+	public int[] getBlockEntities() {
+		return blockEntities;
+	}
+
+	public int[] getEntityStarts() {
+		return entityStarts;
+	}
+
+	public int[] getEntityBlocks() {
+		return entityBlocks;
+	}
+
+}
@@ -0,0 +1,163 @@
+package org.imsi.queryEREngine.imsi.er.MetaBlocking;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.imsi.queryEREngine.imsi.er.BlockIndex.EntityBlockCounts;
+import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
+import org.imsi.queryEREngine.imsi.er.DataStructures.DecomposedBlock;
+import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.AbstractEfficiencyMethod;
+import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.MetaBlocking.WeightingScheme;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+/**
+ * Meta-blocking of the query blocks inside the engine: block purging, block filtering and
+ * cardinality edge pruning on a {@link BlockGraph}. The blocks are replaced by a single
+ * {@link DecomposedBlock} holding the retained candidate pairs, so only pairs reach the matcher.
+ *
+ * Edges are weighted by ECBS and only edges with at least one query entity are considered, each
+ * of them once. The entities are striped over one partition per thread; every partition counts
+ * the common blocks of its query entities with their neighbours and keeps its own top k edges,
+ * which are merged at the end. As in {@link CardinalityEdgePruning}, k is the number of block
+ * assignments after filtering. Node-centric pruning is delegated to {@link NodePruning}.
+ *
+ * Under a comparison or time budget the candidate pairs are ordered by descending weight, so
+ * that progressive matching compares the likeliest matches first. Entities are weighted by the block counts of their table when
+ * they are given, see {@link BlockGraph#setEntityBlockCounts(EntityBlockCounts)}.
+ */
+public class BlockGraphPruning extends AbstractEfficiencyMethod {
+
+	private static final double SMOOTHING_FACTOR = 1.025;
+
+	private final boolean runPurging;
+	private final boolean runFiltering;
+	private final boolean runEdgePruning;
+	private final double filterRatio;
+	private final NodePruning.Mode nodePruning;
+	private EntityBlockCounts entityBlockCounts;
+	private boolean orderByWeight;
+
+	public BlockGraphPruning(boolean runPurging, boolean runFiltering, boolean runEdgePruning, double filterRatio) {
+		this(runPurging, runFiltering, runEdgePruning, filterRatio, null);
+	}
+
+	/**
+	 * @param nodePruning prunes every neighbourhood in the given mode instead of the whole graph,
+	 *                    or null for cardinality edge pruning
+	 */
+	public BlockGraphPruning(boolean runPurging, boolean runFiltering, boolean runEdgePruning, double filterRatio,
+			NodePruning.Mode nodePruning) {
+		super("Block Graph Pruning");
+		this.runPurging = runPurging;
+		this.runFiltering = runFiltering;
+		this.runEdgePruning = runEdgePruning;
+		this.filterRatio = filterRatio;
+		this.nodePruning = nodePruning;
+	}
+
+	/** Weighs the entities by the block counts of their table, or by the query blocks if null. */
+	public BlockGraphPruning setEntityBlockCounts(EntityBlockCounts entityBlockCounts) {
+		this.entityBlockCounts = entityBlockCounts;
+		return this;
+	}
+
+	/** Orders the candidate pairs by descending weight, for progressive matching under a budget. */
+	public BlockGraphPruning setOrderByWeight(boolean orderByWeight) {
+		this.orderByWeight = orderByWeight;
+		return this;
+	}
+
+	@Override
+	public void applyProcessing(List<AbstractBlock> blocks) {
+		double start = System.currentTimeMillis();
+		BlockGraph graph = new BlockGraph(blocks);
+		if (entityBlockCounts != null) graph.setEntityBlockCounts(entityBlockCounts);
+		if (runPurging) graph.purge(SMOOTHING_FACTOR);
+		if (runFiltering) graph.filter(filterRatio);
+		double graphEnd = System.currentTimeMillis();
+		System.err.println("Block graph of " + graph.getNoOfBlocks() + " blocks and " + graph.getNoOfEntities()
+				+ " entities pruned in: " + (graphEnd - start) / 1000 + " seconds");
+
+		long[] edges;
+		if (runEdgePruning && nodePruning != null) {
+			edges = new NodePruning(nodePruning, WeightingScheme.ECBS).prune(graph);
+			if (orderByWeight) edges = orderByWeight(edges, weigh(graph, edges));
+		} else {
+			TopKEdges topKEdges = pruneEdges(graph, runEdgePruning ? graph.getNoOfAssignments() : Long.MAX_VALUE);
+			edges = topKEdges.getEdges();
+			if (orderByWeight) edges = orderByWeight(edges, topKEdges.getWeights());
+		}
+		blocks.clear();
+		blocks.add(graph.getDecomposedBlock(edges));
+		double end = System.currentTimeMillis();
+		System.err.println("Edge pruning kept " + edges.length + " candidate pairs in: "
+				+ (end - graphEnd) / 1000 + " seconds");
+	}
+
+	/** The ECBS weights of the edges kept by node pruning, which only returns the edges. */
+	private static float[] weigh(BlockGraph graph, long[] edges) {
+		float[] weights = new float[edges.length];
+		for (int i = 0; i < edges.length; i++) {
+			int entity1 = TopKEdges.entity1(edges[i]);
+			int entity2 = TopKEdges.entity2(edges[i]);
+			weights[i] = (float) (graph.getNoOfCommonBlocks(entity1, entity2) * graph.getEntityWeight(entity1)
+					* graph.getEntityWeight(entity2));
+		}
+		return weights;
+	}
+
+	/** The edges by descending weight. */
+	private static long[] orderByWeight(long[] edges, float[] weights) {
+		int[] order = new int[edges.length];
+		for (int i = 0; i < edges.length; i++) order[i] = i;
+		IntArrays.quickSort(order, (i, j) -> Float.compare(weights[j], weights[i]));
+		long[] ordered = new long[edges.length];
+		for (int i = 0; i < order.length; i++) ordered[i] = edges[order[i]];
+		return ordered;
+	}
+
+	private TopKEdges pruneEdges(BlockGraph graph, long k) {
+		int partitions = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), graph.getNoOfEntities()));
+		TopKEdges[] topKEdges = new TopKEdges[partitions];
+		IntStream.range(0, partitions).parallel()
+				.forEach(partition -> topKEdges[partition] = pruneEdges(graph, k, partition, partitions));
+		for (int partition = 1; partition < partitions; partition++) topKEdges[0].addAll(topKEdges[partition]);
+		return topKEdges[0];
+	}
+
+	/** Top k edges of the query entities e with {@code e % partitions == partition}. */
+	private TopKEdges pruneEdges(BlockGraph graph, long k, int partition, int partitions) {
+		int[] blockStarts = graph.getBlockStarts();
+		int[] blockEntities = graph.getBlockEntities();
+		int[] entityStarts = graph.getEntityStarts();
+		int[] entityBlocks = graph.getEntityBlocks();
+
+		TopKEdges topKEdges = new TopKEdges(k);
+		int[] commonBlocks = new int[graph.getNoOfEntities()];
+		int[] neighbours = new int[graph.getNoOfEntities()];
+		for (int entity = partition; entity < graph.getNoOfEntities(); entity += partitions) {
+			if (!graph.isQueryEntity(entity)) continue;
+			int noOfNeighbours = 0;
+			for (int i = entityStarts[entity]; i < entityStarts[entity + 1]; i++) {
+				int block = entityBlocks[i];
+				for (int j = blockStarts[block]; j < blockStarts[block + 1]; j++) {
+					int neighbour = blockEntities[j];
+					// an edge between two query entities is counted from the smaller one
+					if (neighbour == entity || (neighbour < entity && graph.isQueryEntity(neighbour))) continue;
+					if (commonBlocks[neighbour]++ == 0) neighbours[noOfNeighbours++] = neighbour;
+				}
+			}
+			double entityWeight = graph.getEntityWeight(entity);
+			for (int n = 0; n < noOfNeighbours; n++) {
+				int neighbour = neighbours[n];
+				double weight = commonBlocks[neighbour] * entityWeight * graph.getEntityWeight(neighbour);
+				commonBlocks[neighbour] = 0;
+				if (topKEdges.getMinimumWeight() < weight) topKEdges.offer(TopKEdges.edge(entity, neighbour), (float) weight);
+			}
+		}
+		return topKEdges;
+	}
+
+}
@@ -22,6 +22,8 @@ import org.imsi.queryEREngine.imsi.er.DataStructures.Comparison;
 import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.MetaBlocking.AbstractMetablocking;
 import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.MetaBlocking.WeightingScheme;
 import org.imsi.queryEREngine.imsi.er.Utilities.QueryComparisonIterator;
+import org.imsi.queryEREngine.imsi.er.Utilities.SortedIntersection;
+import org.roaringbitmap.RoaringBitmap;
 
 import java.util.*;
 
@@ -31,7 +33,7 @@ public class CardinalityEdgePruning extends AbstractMetablocking {
     protected long kThreshold;
     protected double minimumWeight;
     protected Queue<Comparison> topKEdges;
-    protected Set<Integer> qIds;
+    protected RoaringBitmap qIds;
     protected int[][] entityBlocks;
     protected double averageWeight = Double.MIN_VALUE;
     protected double selectivity;
@@ -45,7 +47,7 @@ public class CardinalityEdgePruning extends AbstractMetablocking {
         super(description, scheme);
     }
 
-    public CardinalityEdgePruning(WeightingScheme scheme, Set<Integer> qIds, double selectivity) {
+    public CardinalityEdgePruning(WeightingScheme scheme, RoaringBitmap qIds, double selectivity) {
         super("", scheme);
         this.qIds = qIds;
         this.selectivity = selectivity;
@@ -178,29 +180,7 @@ public class CardinalityEdgePruning extends AbstractMetablocking {
     }
 
     public int getNoOfCommonBlocks(Comparison comparison) {
-        int[] blocks1 = entityBlocks[comparison.getEntityId1()];
-        int[] blocks2 = entityBlocks[comparison.getEntityId2()];
-
-        int commonBlocks = 0;
-        int noOfBlocks1 = blocks1.length;
-        int noOfBlocks2 = blocks2.length;
-        for (int i = 0; i < noOfBlocks1; i++) {
-            for (int j = 0; j < noOfBlocks2; j++) {
-                if (blocks2[j] < blocks1[i]) {
-                    continue;
-                }
-
-                if (blocks1[i] < blocks2[j]) {
-                    break;
-                }
-
-                if (blocks1[i] == blocks2[j]) {
-                    commonBlocks++;
-                }
-            }
-        }
-
-        return commonBlocks;
+        return SortedIntersection.count(entityBlocks[comparison.getEntityId1()], entityBlocks[comparison.getEntityId2()]);
     }
 
     Queue removelast(Queue<Comparison> pq) {
@@ -43,21 +43,22 @@ public class CardinalityNodePruning extends AbstractNodePruning {
         kThreshold = (int) Math.max(1, blockAssingments / entityIndex.getNoOfEntities());
         System.out.println(kThreshold);
         for (int i = firstId; i < lastId; i++) {
-            final Integer[] neighbors = getAdjacentEntities(i);
-            if (neighbors == null) {
+            final int noOfNeighbors = getNeighbourhood(i);
+            if (noOfNeighbors < 0) {
                 continue;
             }
 
             Queue<Comparison> nearestEntities = new PriorityQueue<Comparison>((int) (2 * kThreshold), new ComparisonWeightComparator());
-            for (int neighborId : neighbors) {
-                Comparison comparison = getComparison(i, neighborId);
-                comparison.setUtilityMeasure(getWeight(comparison));
+            for (int j = 0; j < noOfNeighbors; j++) {
+                Comparison comparison = getComparison(i, neighbours[j]);
+                comparison.setUtilityMeasure(getWeight(comparison, commonBlocks[neighbours[j]]));
 
                 nearestEntities.add(comparison);
                 if (kThreshold < nearestEntities.size()) {
                     nearestEntities.poll();
                 }
             }
+            clearNeighbourhood(noOfNeighbors);
 
             blocks.add(getDecomposedBlock(cleanCleanER, nearestEntities));
         }
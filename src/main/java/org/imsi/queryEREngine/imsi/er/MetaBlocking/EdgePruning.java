@@ -6,16 +6,16 @@ import org.imsi.queryEREngine.imsi.er.DataStructures.Comparison;
 import org.imsi.queryEREngine.imsi.er.Utilities.AbstractMetablocking;
 import org.imsi.queryEREngine.imsi.er.Utilities.MetaBlockingConfiguration.WeightingScheme;
 import org.imsi.queryEREngine.imsi.er.Utilities.QueryComparisonIterator;
+import org.roaringbitmap.RoaringBitmap;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class EdgePruning extends AbstractMetablocking {
 
     protected double averageWeight;
-    protected Set<Integer> qIds;
+    protected RoaringBitmap qIds;
     protected int ucomps=0;
 
     public EdgePruning(WeightingScheme scheme) {
@@ -27,7 +27,7 @@ public class EdgePruning extends AbstractMetablocking {
         super(description, scheme);
     }
 
-    protected EdgePruning(String description, Set<Integer> qIds, WeightingScheme scheme) {
+    protected EdgePruning(String description, RoaringBitmap qIds, WeightingScheme scheme) {
         super(description, scheme);
         this.qIds = qIds;
     }
@@ -0,0 +1,294 @@
+package org.imsi.queryEREngine.imsi.er.MetaBlocking;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
+import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.AbstractEfficiencyMethod;
+import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.MetaBlocking.WeightingScheme;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Node-centric pruning of a {@link BlockGraph}, in a fork/join pool. Weighted node pruning keeps
+ * the edges of a query entity that weigh at least the average of its neighbourhood, cardinality
+ * node pruning keeps its k heaviest edges, with k the block assignments per entity. An edge is
+ * kept if either of its entities keeps it.
+ *
+ * Entity ranges are split recursively, so idle threads steal the neighbourhoods of busy ones.
+ * The neighbourhood of a hub entity, whose blocks hold more than {@link #HUB_ASSIGNMENTS}
+ * entities, is split further into disjoint ranges of neighbours, which are found by binary
+ * search in the sorted blocks. A task borrows dense arrays to count the common blocks from the
+ * scratch of the pruning call, clears them after each neighbourhood and returns them when it
+ * finishes, so at most one set per running task is allocated and none outlives the call.
+ */
+public class NodePruning extends AbstractEfficiencyMethod {
+
+	public enum Mode {
+		WEIGHTED, CARDINALITY
+	}
+
+	/** Block assignments of an entity above which its neighbourhood is split into sub-tasks. */
+	public static final int HUB_ASSIGNMENTS = 1 << 15;
+	private static final int ENTITIES_PER_TASK = 64;
+
+	private final Mode mode;
+	private final WeightingScheme scheme;
+	private final ForkJoinPool pool;
+
+	private BlockGraph graph;
+	private double[] blockWeights;
+	private int kThreshold;
+	private ConcurrentLinkedQueue<Neighbourhood> scratch;
+
+	public NodePruning(Mode mode, WeightingScheme scheme) {
+		this(mode, scheme, ForkJoinPool.commonPool());
+	}
+
+	public NodePruning(Mode mode, WeightingScheme scheme, ForkJoinPool pool) {
+		super(mode == Mode.WEIGHTED ? "Weighted Node Pruning" : "Cardinality Node Pruning");
+		if (scheme == WeightingScheme.EJS) throw new IllegalArgumentException("EJS is not supported on a block graph");
+		this.mode = mode;
+		this.scheme = scheme;
+		this.pool = pool;
+	}
+
+	@Override
+	public void applyProcessing(List<AbstractBlock> blocks) {
+		BlockGraph blockGraph = new BlockGraph(blocks);
+		blocks.clear();
+		blocks.add(blockGraph.getDecomposedBlock(prune(blockGraph)));
+	}
+
+	/** Returns the kept edges as pairs of entities of the graph, smaller first, sorted and distinct. */
+	public long[] prune(BlockGraph blockGraph) {
+		graph = blockGraph;
+		blockWeights = new double[graph.getNoOfBlocks()];
+		for (int b = 0; b < blockWeights.length; b++)
+			blockWeights[b] = scheme == WeightingScheme.ARCS ? 1 / graph.getNoOfComparisons(b) : 1;
+		kThreshold = (int) Math.max(1, graph.getNoOfAssignments() / Math.max(1, graph.getNoOfEntities()));
+		scratch = new ConcurrentLinkedQueue<>();
+		try {
+			long[] edges = pool.invoke(new EntityRange(0, graph.getNoOfEntities())).toLongArray();
+			Arrays.parallelSort(edges);
+			int size = 0;
+			for (int i = 0; i < edges.length; i++) {
+				if (size == 0 || edges[size - 1] != edges[i]) edges[size++] = edges[i];
+			}
+			return Arrays.copyOf(edges, size);
+		} finally {
+			scratch = null;
+			graph = null;
+		}
+	}
+
+	/** Dense counters of one task, with the list of touched neighbours to clear them. */
+	private static class Neighbourhood {
+		final double[] commonBlocks;
+		final int[] neighbours;
+		int size;
+
+		Neighbourhood(int noOfEntities) {
+			commonBlocks = new double[noOfEntities];
+			neighbours = new int[noOfEntities];
+		}
+	}
+
+	private class EntityRange extends RecursiveTask<LongArrayList> {
+		private final int from;
+		private final int to;
+
+		EntityRange(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected LongArrayList compute() {
+			if (ENTITIES_PER_TASK < to - from) {
+				int middle = (from + to) >>> 1;
+				EntityRange right = new EntityRange(middle, to);
+				right.fork();
+				LongArrayList edges = new EntityRange(from, middle).compute();
+				edges.addAll(right.join());
+				return edges;
+			}
+			LongArrayList edges = new LongArrayList();
+			Neighbourhood neighbourhood = borrow();
+			try {
+				for (int entity = from; entity < to; entity++) {
+					if (graph.isQueryEntity(entity)) prune(entity, neighbourhood, edges);
+				}
+			} finally {
+				scratch.offer(neighbourhood);
+			}
+			return edges;
+		}
+	}
+
+	private int getNoOfAssignments(int entity) {
+		int[] entityStarts = graph.getEntityStarts();
+		int[] entityBlocks = graph.getEntityBlocks();
+		int[] blockStarts = graph.getBlockStarts();
+		int assignments = 0;
+		for (int i = entityStarts[entity]; i < entityStarts[entity + 1]; i++)
+			assignments += blockStarts[entityBlocks[i] + 1] - blockStarts[entityBlocks[i]];
+		return assignments;
+	}
+
+	private Neighbourhood borrow() {
+		Neighbourhood neighbourhood = scratch.poll();
+		return neighbourhood != null ? neighbourhood : new Neighbourhood(graph.getNoOfEntities());
+	}
+
+	private void prune(int entity, Neighbourhood neighbourhood, LongArrayList edges) {
+		int assignments = getNoOfAssignments(entity);
+		if (assignments <= HUB_ASSIGNMENTS) {
+			count(entity, 0, graph.getNoOfEntities(), neighbourhood);
+			if (mode == Mode.WEIGHTED) {
+				double[] weights = weigh(entity, neighbourhood);
+				double average = 0;
+				for (double weight : weights) average += weight;
+				average /= weights.length;
+				keepAbove(entity, neighbourhood.neighbours, weights, average, edges);
+			} else {
+				TopKEdges topKEdges = new TopKEdges(kThreshold);
+				offer(entity, neighbourhood.neighbours, weigh(entity, neighbourhood), topKEdges);
+				for (long edge : topKEdges.getEdges()) edges.add(normalize(edge));
+			}
+			clear(neighbourhood);
+			return;
+		}
+
+		// a hub: the neighbours are split into ranges of entities, weighed by separate tasks
+		int parts = Math.min(pool.getParallelism() * 4, (assignments + HUB_ASSIGNMENTS - 1) / HUB_ASSIGNMENTS);
+		NeighbourRange[] ranges = new NeighbourRange[parts];
+		for (int part = 0; part < parts; part++) {
+			ranges[part] = new NeighbourRange(entity, (int) ((long) graph.getNoOfEntities() * part / parts),
+					(int) ((long) graph.getNoOfEntities() * (part + 1) / parts));
+		}
+		RecursiveAction.invokeAll(ranges);
+		if (mode == Mode.WEIGHTED) {
+			double total = 0;
+			int noOfNeighbours = 0;
+			for (NeighbourRange range : ranges) {
+				for (double weight : range.weights) total += weight;
+				noOfNeighbours += range.weights.length;
+			}
+			for (NeighbourRange range : ranges)
+				keepAbove(entity, range.neighbours, range.weights, total / noOfNeighbours, edges);
+		} else {
+			TopKEdges topKEdges = new TopKEdges(kThreshold);
+			for (NeighbourRange range : ranges) offer(entity, range.neighbours, range.weights, topKEdges);
+			for (long edge : topKEdges.getEdges()) edges.add(normalize(edge));
+		}
+	}
+
+	/** The neighbours of a hub entity in {@code [from, to)} and the weights of their edges. */
+	private class NeighbourRange extends RecursiveAction {
+		private final int entity;
+		private final int from;
+		private final int to;
+		int[] neighbours;
+		double[] weights;
+
+		NeighbourRange(int entity, int from, int to) {
+			this.entity = entity;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			Neighbourhood neighbourhood = borrow();
+			try {
+				count(entity, from, to, neighbourhood);
+				weights = weigh(entity, neighbourhood);
+				neighbours = Arrays.copyOf(neighbourhood.neighbours, neighbourhood.size);
+				clear(neighbourhood);
+			} finally {
+				scratch.offer(neighbourhood);
+			}
+		}
+	}
+
+	/** Counts the common blocks of an entity with its neighbours in {@code [from, to)}. */
+	private void count(int entity, int from, int to, Neighbourhood neighbourhood) {
+		int[] entityStarts = graph.getEntityStarts();
+		int[] entityBlocks = graph.getEntityBlocks();
+		int[] blockStarts = graph.getBlockStarts();
+		int[] blockEntities = graph.getBlockEntities();
+		boolean wholeRange = from == 0 && to == graph.getNoOfEntities();
+		for (int i = entityStarts[entity]; i < entityStarts[entity + 1]; i++) {
+			int block = entityBlocks[i];
+			int start = blockStarts[block];
+			int end = blockStarts[block + 1];
+			if (!wholeRange) {
+				start = insertionPoint(blockEntities, start, end, from);
+				end = insertionPoint(blockEntities, start, end, to);
+			}
+			for (int j = start; j < end; j++) {
+				int neighbour = blockEntities[j];
+				if (neighbour == entity) continue;
+				if (neighbourhood.commonBlocks[neighbour] == 0) neighbourhood.neighbours[neighbourhood.size++] = neighbour;
+				neighbourhood.commonBlocks[neighbour] += blockWeights[block];
+			}
+		}
+	}
+
+	private static int insertionPoint(int[] entities, int from, int to, int entity) {
+		int index = Arrays.binarySearch(entities, from, to, entity);
+		return index < 0 ? -index - 1 : index;
+	}
+
+	private double[] weigh(int entity, Neighbourhood neighbourhood) {
+		double entityBlocks = graph.getNoOfBlocks(entity);
+		double entityWeight = graph.getEntityWeight(entity);
+		double[] weights = new double[neighbourhood.size];
+		for (int n = 0; n < neighbourhood.size; n++) {
+			int neighbour = neighbourhood.neighbours[n];
+			double commonBlocks = neighbourhood.commonBlocks[neighbour];
+			double neighbourBlocks = graph.getNoOfBlocks(neighbour);
+			switch (scheme) {
+				case ECBS:
+					weights[n] = commonBlocks * entityWeight * graph.getEntityWeight(neighbour);
+					break;
+				case JS:
+					weights[n] = commonBlocks / (entityBlocks + neighbourBlocks - commonBlocks);
+					break;
+				default:
+					weights[n] = commonBlocks;
+			}
+		}
+		return weights;
+	}
+
+	private static void clear(Neighbourhood neighbourhood) {
+		for (int n = 0; n < neighbourhood.size; n++) neighbourhood.commonBlocks[neighbourhood.neighbours[n]] = 0;
+		neighbourhood.size = 0;
+	}
+
+	private static void keepAbove(int entity, int[] neighbours, double[] weights, double threshold, LongArrayList edges) {
+		for (int n = 0; n < weights.length; n++) {
+			if (threshold <= weights[n]) edges.add(normalize(TopKEdges.edge(entity, neighbours[n])));
+		}
+	}
+
+	private static void offer(int entity, int[] neighbours, double[] weights, TopKEdges topKEdges) {
+		for (int n = 0; n < weights.length; n++) {
+			if (topKEdges.getMinimumWeight() < weights[n])
+				topKEdges.offer(TopKEdges.edge(entity, neighbours[n]), (float) weights[n]);
+		}
+	}
+
+	private static long normalize(long edge) {
+		int entity1 = TopKEdges.entity1(edge);
+		int entity2 = TopKEdges.entity2(edge);
+		return entity1 < entity2 ? edge : TopKEdges.edge(entity2, entity1);
+	}
+
+}
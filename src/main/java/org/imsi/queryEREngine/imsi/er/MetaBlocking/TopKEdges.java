@@ -0,0 +1,107 @@
+package org.imsi.queryEREngine.imsi.er.MetaBlocking;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heap of the k heaviest edges of a blocking graph, on primitive arrays. An edge is
+ * a pair of entity ids packed in a long with a float weight, so no comparison objects are created
+ * while the candidates are scanned. Ties at the threshold keep the edge that was offered first.
+ */
+public class TopKEdges {
+
+	private final int k;
+	private long[] edges;
+	private float[] weights;
+	private int size;
+
+	public TopKEdges(long k) {
+		this.k = (int) Math.min(k, Integer.MAX_VALUE - 8);
+		int capacity = Math.max(16, Math.min(this.k, 1 << 16));
+		edges = new long[capacity];
+		weights = new float[capacity];
+	}
+
+	public static long edge(int entity1, int entity2) {
+		return ((long) entity1 << 32) | (entity2 & 0xFFFFFFFFL);
+	}
+
+	public static int entity1(long edge) {
+		return (int) (edge >>> 32);
+	}
+
+	public static int entity2(long edge) {
+		return (int) edge;
+	}
+
+	/** Weight an edge must exceed to enter a full heap, or negative infinity while it is not full. */
+	public float getMinimumWeight() {
+		return size < k ? Float.NEGATIVE_INFINITY : weights[0];
+	}
+
+	public void offer(long edge, float weight) {
+		if (size < k) {
+			if (size == edges.length) {
+				int capacity = (int) Math.min((long) size * 2, k);
+				edges = Arrays.copyOf(edges, capacity);
+				weights = Arrays.copyOf(weights, capacity);
+			}
+			siftUp(size++, edge, weight);
+		} else if (0 < k && weights[0] < weight) {
+			siftDown(0, edge, weight);
+		}
+	}
+
+	/** Offers every edge of another heap to this one. */
+	public void addAll(TopKEdges other) {
+		for (int i = 0; i < other.size; i++) offer(other.edges[i], other.weights[i]);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getEdge(int i) {
+		return edges[i];
+	}
+
+	/** The kept edges, in heap order. */
+	public long[] getEdges() {
+		return Arrays.copyOf(edges, size);
+	}
+
+	public float getWeight(int i) {
+		return weights[i];
+	}
+
+	/** The weights of the kept edges, in the order of {@link #getEdges()}. */
+	public float[] getWeights() {
+		return Arrays.copyOf(weights, size);
+	}
+
+	private void siftUp(int i, long edge, float weight) {
+		while (0 < i) {
+			int parent = (i - 1) >>> 1;
+			if (weights[parent] <= weight) break;
+			edges[i] = edges[parent];
+			weights[i] = weights[parent];
+			i = parent;
+		}
+		edges[i] = edge;
+		weights[i] = weight;
+	}
+
+	private void siftDown(int i, long edge, float weight) {
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && weights[child + 1] < weights[child]) child++;
+			if (weight <= weights[child]) break;
+			edges[i] = edges[child];
+			weights[i] = weights[child];
+			i = child;
+		}
+		edges[i] = edge;
+		weights[i] = weight;
+	}
+
+}
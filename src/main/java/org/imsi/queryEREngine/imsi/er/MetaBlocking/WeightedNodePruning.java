@@ -21,6 +21,7 @@ import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.MetaBlocking.AbstractNodeP
 import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.MetaBlocking.WeightingScheme;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -37,18 +38,20 @@ public class WeightedNodePruning extends AbstractNodePruning {
     @Override
     protected void processPartition(int firstId, int lastId, List<AbstractBlock> blocks) {
         for (int i = firstId; i < lastId; i++) {
-            final Integer[] neighbors = getAdjacentEntities(i);
-            if (neighbors == null) {
+            final int noOfNeighbors = getNeighbourhood(i);
+            if (noOfNeighbors < 0) {
                 continue;
             }
             
             double averageWeight = 0;
-            final double[] weights = new double[neighbors.length];
+            final int[] neighbors = Arrays.copyOf(neighbours, noOfNeighbors);
+            final double[] weights = new double[noOfNeighbors];
             for (int j = 0; j < weights.length; j++) {
                 Comparison comparison = getComparison(i, neighbors[j]);
-                weights[j] = getWeight(comparison);
+                weights[j] = getWeight(comparison, commonBlocks[neighbors[j]]);
                 averageWeight += weights[j];
             }
+            clearNeighbourhood(noOfNeighbors);
             averageWeight /= weights.length;
             
             final List<Integer> entitiesPart1 = new ArrayList<Integer>();
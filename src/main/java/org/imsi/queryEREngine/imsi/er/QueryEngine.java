@@ -20,9 +20,9 @@ import java.util.Properties;
 import java.util.Set;
 
 import org.imsi.queryEREngine.apache.calcite.jdbc.CalciteConnection;
-import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvSchema;
-import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvTranslatableTable;
 import org.imsi.queryEREngine.imsi.calcite.util.DeduplicationExecution;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.BlockIndexRegistry;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.OffsetIndex;
 import org.imsi.queryEREngine.imsi.er.ConnectionPool.CalciteConnectionPool;
 import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
 import org.imsi.queryEREngine.imsi.er.DataStructures.IdDuplicates;
@@ -33,10 +33,10 @@ import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
 import org.imsi.queryEREngine.imsi.er.Utilities.ExecuteBlockComparisons;
 import org.imsi.queryEREngine.imsi.er.Utilities.OffsetIdsMap;
 import org.imsi.queryEREngine.imsi.er.Utilities.SerializationUtilities;
-import org.imsi.queryEREngine.apache.calcite.schema.Table;
 
 import com.univocity.parsers.csv.CsvParser;
 import com.univocity.parsers.csv.CsvParserSettings;
+import org.roaringbitmap.RoaringBitmap;
 
 public class QueryEngine {
 
@@ -159,30 +159,15 @@ public class QueryEngine {
 	
 	private static OffsetIdsMap offsetToIds(String tableName) throws IOException {
     	
-		Map<String, Table> tableMap = CsvSchema.tableMap;
-		Table table = tableMap.get(tableName);
-		CsvTranslatableTable csvTable = (CsvTranslatableTable) table;
-        CsvParser parser = openCsv(csvTable.getSource().path());
-        String[] row;
         HashMap<Integer, Integer> offsetToId = new HashMap<>();
         HashMap<Integer, Integer> idToOffset = new HashMap<>();
-        
-    	long rowOffset = parser.getContext().currentChar() - 1;
-        while ((row = parser.parseNext()) != null) {
-        	int rowOffsetInt = (int) rowOffset;
-        	try {
-	        	Integer id = Integer.parseInt(row[csvTable.getKey()]);
-	        	offsetToId.put(rowOffsetInt, id);
-//	        	System.out.print(rowOffsetInt + " = ");
-//	        	for(String s : row) System.out.print(s + ", ");
-//	        	System.out.println();
-	        	idToOffset.put(id, rowOffsetInt);
-        	}
-        	catch(Exception e) {
-        	}
-        	
-        	rowOffset = parser.getContext().currentChar() - 1;
-        }
+        // read from the offsets stored with the block index instead of parsing the table again
+        OffsetIndex offsetIndex = BlockIndexRegistry.get(tableName).getOffsetIndex();
+        offsetIndex.forEach((id, offset) -> {
+        	if (offsetIndex.get(id) != offset) return;
+        	offsetToId.put((int) offset, id);
+        	idToOffset.put(id, (int) offset);
+        });
         return new OffsetIdsMap(offsetToId, idToOffset);
     }
 	
@@ -222,7 +207,7 @@ public class QueryEngine {
 			} catch (Exception e1) {
 				e1.printStackTrace();
 			}
-			Set<Integer> qIds = DeduplicationExecution.qIds;
+			RoaringBitmap qIds = DeduplicationExecution.qIds;
 			List<Set<Integer>> inIdsSets = new ArrayList<>();
 			Set<Integer> currSet = null;
 			for (Integer value : qIds) {
@@ -4,6 +4,7 @@ import org.apache.commons.lang.ArrayUtils;
 import org.imsi.queryEREngine.imsi.er.DataStructures.*;
 import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.AbstractEfficiencyMethod;
 import org.imsi.queryEREngine.imsi.er.Utilities.MetaBlockingConfiguration.WeightingScheme;
+import org.roaringbitmap.RoaringBitmap;
 
 import java.util.*;
 
@@ -79,7 +80,7 @@ public abstract class AbstractMetablocking extends AbstractEfficiencyMethod {
         }
     }
 
-    protected void getStatistics(List<AbstractBlock> blocks, Set<Integer> qIds) {
+    protected void getStatistics(List<AbstractBlock> blocks, RoaringBitmap qIds) {
         if (entityIndex == null) {
             entityIndex = new EntityIndex(blocks);
         }
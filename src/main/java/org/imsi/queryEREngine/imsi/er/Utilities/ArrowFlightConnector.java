@@ -1,28 +1,51 @@
 package org.imsi.queryEREngine.imsi.er.Utilities;
 
 import org.apache.arrow.flight.*;
-import org.apache.arrow.memory.BufferAllocator;
-import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.VectorSchemaRoot;
-import org.apache.arrow.vector.types.pojo.Field;
-import org.apache.arrow.vector.types.pojo.FieldType;
-import org.apache.arrow.vector.types.pojo.Schema;
-import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Class responsible for initiating a connection to an existing arrow flight server on a given port.
- * You can then initiate server calls using the public functions of this class, such as storing data,
- * retrieving data, executing actions, and awaiting responses.
+ * You can then initiate server calls using the public functions of this class: storing tables,
+ * exchanging tables for the results of the server, and executing actions.
+ * The connection is a client leased from the {@link FlightClientPool}, which outlives the connector.
  */
 public class ArrowFlightConnector {
-    private static final BufferAllocator ALLOCATOR = new RootAllocator(Long.MAX_VALUE);
-    private static FlightClient client;
-    private final Location location;
-    private static final int FLIGHT_TIMEOUT = 2;
+    private final FlightClient client;
+    private static final long READY_WAIT_NANOS = 100_000;
+    // longest wait for the server to take the next batch
+    private static final long READY_TIMEOUT_SECONDS = 600;
+    private static final AtomicInteger UPLOADERS = new AtomicInteger();
+    // uploads of exchanges, so that their results are read on the calling thread meanwhile
+    private static final ExecutorService UPLOAD_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "flight-exchange-upload-" + UPLOADERS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Fills the next record batch of a stream. */
+    public interface BatchWriter {
+        /** Writes the next rows into the root, returns false once there are no rows left. */
+        boolean next(VectorSchemaRoot root);
+    }
+
+    /** Consumes a record batch sent back by the server. */
+    public interface BatchReader {
+        void read(VectorSchemaRoot root);
+    }
 
     /**
      * Initiates a remote connection at an Arrow Flight server on the given port
@@ -31,83 +54,140 @@ public class ArrowFlightConnector {
      * @param port The port at which the connection will be established
      */
     public ArrowFlightConnector(int port) {
-        this.location = Location.forGrpcInsecure("0.0.0.0", port);
-        System.out.println("Attempting to connect to server at port " + port + "...");
-        client = FlightClient.builder(ALLOCATOR, this.location).build();
-        System.out.println("Connection established");
+        this.client = FlightClientPool.lease(Location.forGrpcInsecure("0.0.0.0", port));
     }
 
     /**
-     * Asks the server to store data under "descriptor" identifier
-     * The data can later be retrieved or deleted using the same descriptor
+     * Initiates a remote connection at the next of the matcher.endpoints servers. All the calls of
+     * a connector go to the same server, so the data it stores there can be referred to by its
+     * later calls. Connectors of concurrent queries may share the server, so they must store
+     * their data under descriptors of their own.
+     */
+    public ArrowFlightConnector() {
+        this.client = FlightClientPool.lease();
+    }
+
+    /**
+     * Asks the server to store a table under "descriptor" identifier, streamed as a sequence of
+     * record batches. Every batch is written into the same root while the previous one is still
+     * on the wire, and only once the transport is ready for more, so that a large table is
+     * never held off-heap whole. The upload fails if the server fails the call meanwhile or stops
+     * taking batches.
      * <p>
-     * @param vsr A VectorSchemaRoot table that holds data to be stored
+     * @param root The root the batches are written into, its schema is the schema of the table
+     * @param dictionaries The dictionaries of the encoded columns of the root, or null
+     * @param writer Writes the next batch into the root
      * @param descriptor A unique identifier under which the data is stored
-     * @return VectorSchemaRoot table with all the resulting data
+     * @return the number of batches sent
      */
-    public void putData(VectorSchemaRoot vsr, String descriptor){
-        Schema schema = vsr.getSchema();
-    
-        // Print the schema to inspect it
-        System.out.println("Schema: " + schema.toString());
-        // for (Field field : schema.getFields()) {
-        //     System.out.println("Field: " + field.getName() + ", Type: " + field.getFieldType());
-            
-        //     if (field.getFieldType().getType() instanceof ArrowType.List) {
-        //         // If the field is a list, find its child field by name
-        //         ArrowType.List listType = (ArrowType.List) field.getFieldType().getType();
-        //         String childFieldName = listType.getField().getName();
-        //         System.out.println("Child Field Name of " + field.getName() + ": " + childFieldName);
-        //     }
-        // }
-    
-        FlightClient.ClientStreamListener listener = client.startPut(
-                FlightDescriptor.path(descriptor),
-                vsr, new AsyncPutListener());
-        listener.putNext();
+    public int putBatches(String descriptor, VectorSchemaRoot root, DictionaryProvider dictionaries,
+                          BatchWriter writer) {
+        AsyncPutListener putListener = new AsyncPutListener();
+        FlightClient.ClientStreamListener listener = client.startPut(FlightDescriptor.path(descriptor), root,
+                dictionaries != null ? dictionaries : new DictionaryProvider.MapDictionaryProvider(),
+                putListener);
+        int batches = 0;
+        try {
+            while (writer.next(root)) {
+                if (!awaitReady(listener, putListener::isCancelled)) {
+                    // throws the error of the server, if it failed the call
+                    putListener.getResult();
+                    throw new IllegalStateException("Server ended the upload of " + descriptor + " early");
+                }
+                listener.putNext();
+                batches++;
+            }
+        } catch (RuntimeException e) {
+            listener.error(e);
+            throw e;
+        }
         listener.completed();
         listener.getResult();
+        return batches;
     }
 
     /**
-     * Asks the server for data under "descriptor" identifier
+     * Streams a table to the server and the results back in one bidirectional DoExchange call.
+     * The batches are written by another thread, as in {@link #putBatches}, while the batches the
+     * server sends back, as soon as it has processed some input, are handed to the reader on the
+     * calling thread. The upload is over when this returns or throws, so the caller may then
+     * release the root.
      * <p>
-     * @param descriptor A unique identifier under which the data is stored
-     * @return VectorSchemaRoot table with all the resulting data
+     * @param descriptor The exchange to run and the tables it uses, as understood by the server
+     * @param root The root the input batches are written into
+     * @param writer Writes the next input batch into the root
+     * @param reader Consumes every result batch
+     * @return the number of result batches received
      */
-    public VectorSchemaRoot getData(String descriptor){
-        FlightStream flightStream = client.getStream(new Ticket(
-                FlightDescriptor.path(descriptor).getPath()
-                        .get(0).getBytes(StandardCharsets.UTF_8)));
-        int batch = 0;
-        VectorSchemaRoot vectorSchemaRootReceived = flightStream.getRoot();
-        while (flightStream.next()) {
-            batch++;
+    public int exchange(FlightDescriptor descriptor, VectorSchemaRoot root, BatchWriter writer, BatchReader reader) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CountDownLatch uploaded = new CountDownLatch(1);
+        try (FlightClient.ExchangeReaderWriter exchange = client.doExchange(descriptor)) {
+            FlightClient.ClientStreamListener listener = exchange.getWriter();
+            Future<?> upload = UPLOAD_EXECUTOR.submit(() -> {
+                try {
+                    if (cancelled.get()) return;
+                    listener.start(root);
+                    while (writer.next(root)) {
+                        if (!awaitReady(listener, cancelled::get)) return;
+                        listener.putNext();
+                    }
+                    listener.completed();
+                } catch (RuntimeException e) {
+                    listener.error(e);
+                    throw e;
+                } finally {
+                    uploaded.countDown();
+                }
+            });
+            int batches = 0;
+            try {
+                FlightStream results = exchange.getReader();
+                while (results.next()) {
+                    reader.read(results.getRoot());
+                    batches++;
+                }
+                upload.get();
+            } finally {
+                // stops an upload still running after a failed read, and waits for it to let go of the root
+                cancelled.set(true);
+                awaitUninterruptibly(uploaded);
+            }
+            return batches;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
-        return vectorSchemaRootReceived;
-
     }
 
     /**
-     * Asks the server if the prediction results are ready.
-     * Server response is handled and true or false is returned accordingly.
-     * Program will stall until server responds or a timeout occurs
-     * <p>
-     * @return boolean
+     * Waits until the transport takes the next batch. Returns false if the call ended meanwhile,
+     * and throws if the server has not taken it in READY_TIMEOUT_SECONDS.
      */
-    public boolean isPredictionReady(){
-        Iterator<Result> actionResult = client.doAction(new Action("is_ready",
-                FlightDescriptor.path("null").getPath().get(0).getBytes(StandardCharsets.UTF_8)),
-                CallOptions.timeout(FLIGHT_TIMEOUT, TimeUnit.SECONDS));
-        if (actionResult.hasNext()) {
-            Result result = actionResult.next();
-            String result_body = new String(result.getBody(), StandardCharsets.UTF_8);
-            return result_body.equals("yes");  /* Server returns "yes" if the results are ready, "no" otherwise */
+    private static boolean awaitReady(OutboundStreamListener listener, BooleanSupplier ended) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(READY_TIMEOUT_SECONDS);
+        while (!listener.isReady()) {
+            if (ended.getAsBoolean()) return false;
+            if (deadline - System.nanoTime() < 0)
+                throw new IllegalStateException("Server did not take a batch in " + READY_TIMEOUT_SECONDS + " seconds");
+            LockSupport.parkNanos(READY_WAIT_NANOS);
         }
-        return false;
-
+        return !ended.getAsBoolean();
     }
 
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
 
     /**
      * Initiates an action call to the connected server.
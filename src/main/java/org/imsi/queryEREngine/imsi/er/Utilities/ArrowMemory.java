@@ -0,0 +1,56 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The off-heap memory of the engine: a single root allocator, of which the Flight clients
+ * and every query get a child allocator. A query closes its allocator once it has matched,
+ * releasing its buffers deterministically and failing loudly on a leak, while the totals
+ * of the root report the off-heap bytes still outstanding.
+ */
+public class ArrowMemory {
+
+    private static final RootAllocator ROOT = new RootAllocator(Long.MAX_VALUE);
+    private static final AtomicInteger QUERIES = new AtomicInteger();
+
+    private ArrowMemory() {
+    }
+
+    /** A child allocator of the root for the buffers of one query, to be closed by the query. */
+    public static BufferAllocator newQueryAllocator() {
+        return ROOT.newChildAllocator("query-" + QUERIES.incrementAndGet(), 0, Long.MAX_VALUE);
+    }
+
+    /** A child allocator of the root for a long-lived component, such as the Flight clients. */
+    static BufferAllocator newAllocator(String name) {
+        return ROOT.newChildAllocator(name, 0, Long.MAX_VALUE);
+    }
+
+    /** Off-heap bytes currently allocated by the queries and the Flight clients. */
+    public static long getAllocatedBytes() {
+        return ROOT.getAllocatedMemory();
+    }
+
+    public static long getPeakBytes() {
+        return ROOT.getPeakMemoryAllocation();
+    }
+
+    /** Number of child allocators still open, the Flight clients' included. */
+    public static int getOpenAllocators() {
+        return ROOT.getChildAllocators().size();
+    }
+
+    public static Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("allocatedBytes", getAllocatedBytes());
+        statistics.put("peakBytes", getPeakBytes());
+        statistics.put("openAllocators", (long) getOpenAllocators());
+        statistics.put("flightClients", (long) FlightClientPool.size());
+        return statistics;
+    }
+}
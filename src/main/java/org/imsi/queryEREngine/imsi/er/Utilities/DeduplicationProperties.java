@@ -1,9 +1,16 @@
 package org.imsi.queryEREngine.imsi.er.Utilities;
 
+import org.apache.arrow.flight.Location;
 import org.imsi.queryEREngine.imsi.calcite.util.DeduplicationExecution;
+import org.imsi.queryEREngine.imsi.er.MetaBlocking.NodePruning;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
 
 public class DeduplicationProperties {
@@ -15,13 +22,55 @@ public class DeduplicationProperties {
     private static final String LINKS = "links";
     private static final String JOIN = "join";
     private static final String FILTER_PARAM = "filter.param";
+    private static final String INDEX_PARALLEL = "index.parallel";
+    private static final String INDEX_THREADS = "index.threads";
+    private static final String INDEX_CACHE_MB = "index.cache.mb";
+    private static final String INDEX_PROFILES = "index.profiles";
+    private static final String INDEX_SEGMENTS_MAX = "index.segments.max";
+    private static final String INDEX_LOAD = "index.load";
+    private static final String INDEX_LOAD_THREADS = "index.load.threads";
+    private static final String JOIN_BATCH = "join.batch";
+    private static final String MB_ENGINE = "mb.engine";
+    private static final String MB_PRUNING = "mb.pruning";
+    private static final String MB_STATISTICS = "mb.statistics";
+    private static final String BUDGET_COMPARISONS = "budget.comparisons";
+    private static final String BUDGET_MS = "budget.ms";
+    private static final String BUDGET_BATCH = "budget.batch";
+    private static final String MATCHER = "matcher";
+    private static final String MATCHER_THRESHOLD = "matcher.threshold";
+    private static final String ARROW_BATCH_MB = "arrow.batch.mb";
+    private static final String ARROW_DICTIONARY = "arrow.dictionary";
+    private static final String MATCHER_ENDPOINTS = "matcher.endpoints";
+    private static final String MATCHER_POOL_SIZE = "matcher.pool.size";
+    private static final String MATCHER_COLUMNS = "matcher.columns";
 
     private static boolean runBP = true;
     private static boolean runBF = true;
     private static boolean runEP = true;
     private static boolean runLinks = true;
     private static boolean runAES = true;
-    private static double filterParam = 0.0;
+    private static double filterParam = 0.5;
+    private static boolean parallelIndex = false;
+    private static int indexThreads = Runtime.getRuntime().availableProcessors();
+    private static long indexCacheBytes = Runtime.getRuntime().maxMemory() / 4;
+    private static boolean storeProfiles = false;
+    private static int maxSegments = 4;
+    private static boolean lazyIndexLoad = false;
+    private static int indexLoadThreads = Runtime.getRuntime().availableProcessors();
+    private static int joinBatch = 4096;
+    private static boolean localMetaBlocking = true;
+    private static NodePruning.Mode nodePruning = null;
+    private static boolean tableStatistics = true;
+    private static long comparisonBudget = 0;
+    private static long timeBudget = 0;
+    private static int budgetBatch = 1024;
+    private static String matcher = Matchers.REMOTE;
+    private static double matcherThreshold = 0.92;
+    private static long arrowBatchBytes = 4L * 1024 * 1024;
+    private static boolean arrowDictionary = true;
+    private static List<Location> matcherEndpoints =
+            Collections.singletonList(Location.forGrpcInsecure("0.0.0.0", FlightMatcher.PORT));
+    private static int matcherPoolSize = 2;
 
     private static Properties properties;
 
@@ -34,7 +83,36 @@ public class DeduplicationProperties {
             runEP = Boolean.parseBoolean(properties.getProperty(EP));
             runLinks = Boolean.parseBoolean(properties.getProperty(LINKS));
             runAES = Boolean.parseBoolean(properties.getProperty(JOIN));
-            filterParam = Double.parseDouble(properties.getProperty(FILTER_PARAM));
+            filterParam = Double.parseDouble(properties.getProperty(FILTER_PARAM, Double.toString(filterParam)));
+            parallelIndex = Boolean.parseBoolean(properties.getProperty(INDEX_PARALLEL, "false"));
+            indexThreads = Integer.parseInt(properties.getProperty(INDEX_THREADS,
+                    Integer.toString(indexThreads)));
+            if (properties.getProperty(INDEX_CACHE_MB) != null)
+                indexCacheBytes = Long.parseLong(properties.getProperty(INDEX_CACHE_MB)) * 1024 * 1024;
+            storeProfiles = Boolean.parseBoolean(properties.getProperty(INDEX_PROFILES, "false"));
+            maxSegments = Integer.parseInt(properties.getProperty(INDEX_SEGMENTS_MAX,
+                    Integer.toString(maxSegments)));
+            lazyIndexLoad = properties.getProperty(INDEX_LOAD, "eager").equalsIgnoreCase("lazy");
+            indexLoadThreads = Integer.parseInt(properties.getProperty(INDEX_LOAD_THREADS,
+                    Integer.toString(indexLoadThreads)));
+            joinBatch = Integer.parseInt(properties.getProperty(JOIN_BATCH, Integer.toString(joinBatch)));
+            localMetaBlocking = !properties.getProperty(MB_ENGINE, "local").equalsIgnoreCase("remote");
+            nodePruning = parseNodePruning(properties.getProperty(MB_PRUNING, "cep"));
+            tableStatistics = !properties.getProperty(MB_STATISTICS, "table").equalsIgnoreCase("query");
+            comparisonBudget = Long.parseLong(properties.getProperty(BUDGET_COMPARISONS, "0"));
+            timeBudget = Long.parseLong(properties.getProperty(BUDGET_MS, "0"));
+            budgetBatch = Integer.parseInt(properties.getProperty(BUDGET_BATCH, Integer.toString(budgetBatch)));
+            matcher = checkMatcher(MATCHER, properties.getProperty(MATCHER, matcher));
+            for (String name : properties.stringPropertyNames()) {
+                if (isTableMatcher(name)) checkMatcher(name, properties.getProperty(name));
+            }
+            matcherThreshold = Double.parseDouble(properties.getProperty(MATCHER_THRESHOLD, Double.toString(matcherThreshold)));
+            if (properties.getProperty(ARROW_BATCH_MB) != null)
+                arrowBatchBytes = Long.parseLong(properties.getProperty(ARROW_BATCH_MB)) * 1024 * 1024;
+            arrowDictionary = Boolean.parseBoolean(properties.getProperty(ARROW_DICTIONARY, "true"));
+            if (properties.getProperty(MATCHER_ENDPOINTS) != null)
+                matcherEndpoints = parseEndpoints(properties.getProperty(MATCHER_ENDPOINTS));
+            matcherPoolSize = Integer.parseInt(properties.getProperty(MATCHER_POOL_SIZE, Integer.toString(matcherPoolSize)));
         }
     }
 
@@ -43,7 +121,8 @@ public class DeduplicationProperties {
         Properties prop = new Properties();
         try (InputStream input = DeduplicationExecution.class.getClassLoader().getResourceAsStream(pathToPropertiesFile)) {
             // load a properties file
-            prop.load(input);
+            if (input != null)
+                prop.load(input);
 
         } catch (IOException ex) {
             ex.printStackTrace();
@@ -78,4 +157,139 @@ public class DeduplicationProperties {
     public static boolean isRunAES() {
         return runAES;
     }
+
+    public static boolean isParallelIndex() {
+        return parallelIndex;
+    }
+
+    public static int getIndexThreads() {
+        return indexThreads;
+    }
+
+    public static long getIndexCacheBytes() {
+        return indexCacheBytes;
+    }
+
+    public static boolean isStoreProfiles() {
+        return storeProfiles;
+    }
+
+    public static int getMaxSegments() {
+        return maxSegments;
+    }
+
+    public static boolean isLazyIndexLoad() {
+        return lazyIndexLoad;
+    }
+
+    public static int getIndexLoadThreads() {
+        return indexLoadThreads;
+    }
+
+    public static int getJoinBatch() {
+        return joinBatch;
+    }
+
+    public static boolean isLocalMetaBlocking() {
+        return localMetaBlocking;
+    }
+
+    public static NodePruning.Mode getNodePruning() {
+        return nodePruning;
+    }
+
+    /** Whether local meta-blocking weighs entities by the block counts of the whole table. */
+    public static boolean isTableStatistics() {
+        return tableStatistics;
+    }
+
+    /** The node pruning mode of a pruning scheme (cep, wnp or cnp), null for cardinality edge pruning. */
+    public static NodePruning.Mode parseNodePruning(String pruning) {
+        if (pruning.equalsIgnoreCase("wnp")) return NodePruning.Mode.WEIGHTED;
+        if (pruning.equalsIgnoreCase("cnp")) return NodePruning.Mode.CARDINALITY;
+        return null;
+    }
+
+    public static long getComparisonBudget() {
+        return comparisonBudget;
+    }
+
+    public static long getTimeBudget() {
+        return timeBudget;
+    }
+
+    public static int getBudgetBatch() {
+        return budgetBatch;
+    }
+
+    /**
+     * Rejects an unknown matcher of a property or a query hint, when it is read rather than when
+     * the query is matched.
+     */
+    public static String checkMatcher(String property, String name) {
+        if (!Matchers.NAMES.contains(name.trim().toLowerCase(Locale.ROOT)))
+            throw new IllegalArgumentException("Invalid " + property + "=" + name + ", expected one of " + Matchers.NAMES);
+        return name.trim();
+    }
+
+    /** Whether a property is a matcher.&lt;table&gt;, rather than one of the other matcher.* properties. */
+    private static boolean isTableMatcher(String name) {
+        return name.startsWith(MATCHER + ".") && !name.equals(MATCHER_THRESHOLD) && !name.equals(MATCHER_ENDPOINTS)
+                && !name.equals(MATCHER_POOL_SIZE) && !name.startsWith(MATCHER_COLUMNS);
+    }
+
+    /** The matcher of a table: matcher.&lt;table&gt; if it is set, otherwise matcher. */
+    public static String getMatcher(String tableName) {
+        if (properties == null || tableName == null) return matcher;
+        return properties.getProperty(MATCHER + "." + tableName, matcher).trim();
+    }
+
+    public static double getMatcherThreshold() {
+        return matcherThreshold;
+    }
+
+    /** Upper bound of the size of a record batch sent to the matcher. */
+    public static long getArrowBatchBytes() {
+        return arrowBatchBytes;
+    }
+
+    public static boolean isArrowDictionary() {
+        return arrowDictionary;
+    }
+
+    /** The Arrow Flight servers of the remote matcher, queries are spread over them. */
+    public static List<Location> getMatcherEndpoints() {
+        return matcherEndpoints;
+    }
+
+    /** Flight clients kept open per matcher endpoint. */
+    public static int getMatcherPoolSize() {
+        return matcherPoolSize;
+    }
+
+    /**
+     * Indices of the attributes of the table sent to the remote matcher, from matcher.columns.&lt;table&gt;
+     * or matcher.columns, null for all of them.
+     */
+    public static int[] getMatcherColumns(String tableName) {
+        if (properties == null) return null;
+        String columns = properties.getProperty(MATCHER_COLUMNS + "." + tableName, properties.getProperty(MATCHER_COLUMNS));
+        if (columns == null || columns.trim().isEmpty()) return null;
+        return Arrays.stream(columns.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    /** Parses a comma separated list of host:port endpoints. */
+    public static List<Location> parseEndpoints(String endpoints) {
+        List<Location> locations = new ArrayList<>();
+        for (String endpoint : endpoints.split(",")) {
+            String[] hostPort = endpoint.trim().split(":");
+            locations.add(Location.forGrpcInsecure(hostPort[0], Integer.parseInt(hostPort[1])));
+        }
+        return locations;
+    }
+
+    /** A query runs progressively when its comparisons or its matching time are bounded. */
+    public static boolean isProgressive() {
+        return 0 < comparisonBudget || 0 < timeBudget;
+    }
 }
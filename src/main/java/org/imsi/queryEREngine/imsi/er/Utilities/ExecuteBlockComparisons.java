@@ -9,11 +9,20 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.apache.arrow.vector.*;
 import org.imsi.queryEREngine.imsi.calcite.util.DeduplicationExecution;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.BlockIndexRegistry;
+import org.imsi.queryEREngine.imsi.er.BlockIndex.OffsetIndex;
 import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
 import org.imsi.queryEREngine.imsi.er.DataStructures.Comparison;
+import org.imsi.queryEREngine.imsi.er.DataStructures.DecomposedBlock;
 import org.imsi.queryEREngine.imsi.er.DataStructures.EntityResolvedTuple;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
 import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,18 +60,25 @@ import org.apache.arrow.vector.types.pojo.ArrowType;
 import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.types.pojo.FieldType;
 import org.apache.arrow.vector.types.pojo.Schema;
+import org.roaringbitmap.RoaringBitmap;
 import java.util.stream.Collectors;
 
 
 public class ExecuteBlockComparisons<T> {
 
     private HashMap<Integer, Object[]> newData = new HashMap<>();
-    private HashMap<String, Set<Integer>> eqbi = new HashMap<>();
+    private Int2ObjectMap<PostingList> eqbi = new Int2ObjectOpenHashMap<>();
     private RandomAccessReader randomAccessReader;
     public static Set<String> matches;
     protected static final Logger DEDUPLICATION_EXEC_LOGGER = LoggerFactory.getLogger(DeduplicationExecution.class);
     CsvParser parser = null;
     private Integer noOfFields;
+    private long comparisonBudget = DeduplicationProperties.getComparisonBudget();
+    private long timeBudget = DeduplicationProperties.getTimeBudget();
+    private boolean blockingOnly = false;
+    private boolean candidatePairs = false;
+    private String matcher;
+    private final Int2ObjectOpenHashMap<Object[]> profiles = new Int2ObjectOpenHashMap<>();
 
     public ExecuteBlockComparisons(HashMap<Integer, Object[]> newData) {
         this.newData = newData;
@@ -72,7 +88,7 @@ public class ExecuteBlockComparisons<T> {
         this.randomAccessReader = randomAccessReader;
     }
 
-    public ExecuteBlockComparisons(HashMap<Integer, Object[]> queryData, HashMap<String, Set<Integer>> eqbi, RandomAccessReader randomAccessReader) {
+    public ExecuteBlockComparisons(HashMap<Integer, Object[]> queryData, Int2ObjectMap<PostingList> eqbi, RandomAccessReader randomAccessReader) {
         this.randomAccessReader = randomAccessReader;
         this.newData = queryData;
         this.eqbi = eqbi;
@@ -89,14 +105,41 @@ public class ExecuteBlockComparisons<T> {
         this.parser = new CsvParser(parserSettings);
     }
 
-    public EntityResolvedTuple comparisonExecutionAll(List<AbstractBlock> blocks, Set<Integer> qIds,
+    /**
+     * Bounds the comparisons and the matching time of the query, 0 for no bound. A bounded query
+     * is matched progressively, on the candidate pairs of the local meta-blocking.
+     */
+    public void setBudget(long comparisonBudget, long timeBudget) {
+        this.comparisonBudget = comparisonBudget;
+        this.timeBudget = timeBudget;
+    }
+
+    /** Skips the matcher, every query entity is resolved to itself. */
+    public void setBlockingOnly(boolean blockingOnly) {
+        this.blockingOnly = blockingOnly;
+    }
+
+    /**
+     * The blocks were pruned by the local meta-blocking of the engine into a single decomposed block
+     * of candidate pairs, which are matched as they are.
+     */
+    public void setCandidatePairs(boolean candidatePairs) {
+        this.candidatePairs = candidatePairs;
+    }
+
+    /** Matches with the named matcher of {@link Matchers}, instead of the one configured for the table. */
+    public void setMatcher(String matcher) {
+        this.matcher = matcher;
+    }
+
+    public EntityResolvedTuple comparisonExecutionAll(List<AbstractBlock> blocks, RoaringBitmap qIds,
                                                       Integer keyIndex, Integer noOfFields, String tableName) {
         return comparisonExecutionJdk(blocks, qIds, keyIndex, noOfFields, tableName);
     }
 
 
     @SuppressWarnings({"rawtypes", "unchecked"})
-    public EntityResolvedTuple comparisonExecutionJdk(List<AbstractBlock> blocks, Set<Integer> qIds,
+    public EntityResolvedTuple comparisonExecutionJdk(List<AbstractBlock> blocks, RoaringBitmap qIds,
                                                       Integer keyIndex, Integer noOfFields, String tableName) {
         int comparisons = 0;
         UnionFind uFind = new UnionFind(qIds);
@@ -110,15 +153,20 @@ public class ExecuteBlockComparisons<T> {
         double compTime = 0.0;
         matches = new HashSet<>();
         DumpDirectories dumpDirectories = new DumpDirectories();
-        HashMap<Integer, Long> offsetIds = (HashMap<Integer, Long>) SerializationUtilities
-                .loadSerializedObject(dumpDirectories.getOffsetsDirPath() + tableName);
-
+        OffsetIndex offsetIds = BlockIndexRegistry.get(tableName).getOffsetIndex();
 
-        // Make arrow data handler that holds pairs and the newdata dictionary (hashmap)
 
-        double dataCollectionStartTime = System.currentTimeMillis();
-
-        ArrowDataHandler arrowHandler = new ArrowDataHandler(newData, eqbi);
+        DecomposedBlock candidates = candidatePairs ? (DecomposedBlock) blocks.get(0) : null;
+        if (blockingOnly) {
+            System.err.println("Blocking only, " + (candidates != null ? candidates.getEntities1().length : blocks.size())
+                    + (candidates != null ? " candidate pairs" : " blocks") + " left unmatched");
+            return resolve(uFind, similarities, keyIndex, noOfFields, 0, compTime);
+        }
+        boolean progressive = candidates != null && (0 < comparisonBudget || 0 < timeBudget);
+        String matcherName = matcher != null ? matcher : DeduplicationProperties.getMatcher(tableName);
+        // the remote matcher enumerates the pairs of the blocks itself, the others are given them
+        DecomposedBlock pairs = candidates == null && Matchers.isInProcess(matcherName)
+                ? getCandidatePairs(blocks) : candidates;
 
 // //            ComparisonIterator iterator = block.getComparisonIterator();
 // 			QueryComparisonIterator iterator = block.getQueryComparisonIterator(qIds);
@@ -179,82 +227,51 @@ public class ExecuteBlockComparisons<T> {
 //             }
 //         }
 
-        /* Generate the dictionary arrow table using data provided at construction */
-        arrowHandler.addDictData();
-
-        double dataCollectionEndTime = System.currentTimeMillis();
-
-        System.err.println("Arrow Vectors created in: " + (dataCollectionEndTime - dataCollectionStartTime) / 1000 + " seconds");
-
-      //  arrowHandler.addEqbiData();
-        
-        /* Initiate a connection, request a bert inference, wait for results, store them in unionFind */
-        try{
-            ArrowFlightConnector connector = new ArrowFlightConnector(5678);
-
-
-           // VectorSchemaRoot pairsRoot = arrowHandler.fetchPairs();
-            VectorSchemaRoot dictRoot = arrowHandler.fetchDict();
-            VectorSchemaRoot eqbiRoot = arrowHandler.fetchEqbi();
-            // for (FieldVector vector : pairsRoot.getFieldVectors()) {
-            //     System.out.println("Vector: " + vector.getField().getName());
-            //     for (int i = 0; i < vector.getValueCount(); i++) {
-            //         System.out.println(vector.getObject(i));
-            //     }
-            //}
-            // for (FieldVector vector : eqbiRoot.getFieldVectors()) {
-            //     System.out.println("Vector: " + vector.getField().getName());
-            //     for (int i = 0; i < vector.getValueCount(); i++) {
-            //         System.err.println("el1");
-            //         System.out.println(vector.getObject(i));
-            //         System.err.println("el2s");
-            //     }
-            // }
-            // Get the key vector
-            System.err.println(eqbiRoot.getRowCount());
-            VarCharVector keyVector = (VarCharVector) eqbiRoot.getVector("key");
-            // Get the values vector
-            ListVector valuesVector = (ListVector) eqbiRoot.getVector("values");
-            // Iterate over the data and print each key-value pair
-            // for (int i = 0; i < eqbiRoot.getRowCount(); i++) {
-            //     // Print the key
-            //     System.err.println("el1");
-            //     byte[] keyBytes = keyVector.get(i);
-            //     String key = new String(keyBytes, StandardCharsets.UTF_8);
-            //     System.out.println("Key: " + key);
-            
-            //     // Print the values
-            //     List<Integer> values = new ArrayList<>();
-            //     for (int j = 0; j < valuesVector.getValueCount(); j++) {
-            //         int value = ((IntVector) valuesVector.getDataVector()).get(j);
-            //         values.add(value);
-            //     }
-            //     System.out.println("Values: " + values);
-            // }
-            
-
-        //    connector.putData(arrowHandler.fetchPairs(), "pairs");
-            connector.putData(arrowHandler.fetchEqbi(), "eqbi");
-            connector.putData(arrowHandler.fetchDict(),  "dict");
-            connector.doAction("bert_inference", "null");
-            while(!connector.isPredictionReady()){
-                System.out.println("Timed out - Retrying...");
-                TimeUnit.SECONDS.sleep(1);
-            }
-            VectorSchemaRoot results = connector.getData("results");
-            UInt4Vector id1s = (UInt4Vector) results.getVector("id1");
-            UInt4Vector id2s = (UInt4Vector) results.getVector("id2");
-
-            for(int i = 0; i < id1s.getValueCount(); i++){
-                uFind.union(id1s.get(i), id2s.get(i));
+        double matchingStartTime = System.currentTimeMillis();
+        try {
+            if (pairs == null) {
+                try (FlightMatcher blockMatcher = new FlightMatcher(getArrowHandler(blocks, null, tableName))) {
+                    blockMatcher.matchBlocks(uFind);
+                }
+            } else {
+                try (Matcher pairMatcher = Matchers.create(matcherName,
+                        () -> getArrowHandler(blocks, pairs, tableName),
+                        id -> getEntity(offsetIds.get(id), id), keyIndex)) {
+                    if (progressive) {
+                        comparisons = matchProgressively(pairMatcher, pairs, uFind);
+                    } else {
+                        pairMatcher.match(pairs.getEntities1(), pairs.getEntities2(), uFind);
+                        comparisons = pairs.getEntities1().length;
+                    }
+                }
             }
         }
         catch(Exception e){
             e.printStackTrace();
         }
+        compTime = System.currentTimeMillis() - matchingStartTime;
+        System.err.println("Matched with " + matcherName + " in: " + compTime / 1000 + " seconds");
+
+        EntityResolvedTuple eRT = resolve(uFind, similarities, keyIndex, noOfFields, comparisons, compTime);
+//        System.err.println("Comparisons: " + comparisons);
+//        System.err.println("ufind size: "+uFind.getParent().size());
+
+        //Print the union ufind.getParent() and for each key print the values in the set
+//        uFind.getParent().keySet().forEach(
+//                            		(key)->{
+//            			System.err.println("key: "+key+" value: "+uFind.getParent().get(key));
+//            		}
+//        );
 
 
 
+        return eRT;
+    }
+
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private EntityResolvedTuple resolve(UnionFind uFind, HashMap<Integer, HashMap<Integer, Double>> similarities,
+                                        Integer keyIndex, Integer noOfFields, int comparisons, double compTime) {
         try {
             randomAccessReader.close();
         } catch (IOException e) {
@@ -265,36 +282,112 @@ public class ExecuteBlockComparisons<T> {
         eRT.setMatches(matches.size());
         eRT.setCompTime(compTime / 1000);
         eRT.getAll();
-//        System.err.println("Comparisons: " + comparisons);
-//        System.err.println("ufind size: "+uFind.getParent().size());
-
-        //Print the union ufind.getParent() and for each key print the values in the set
-//        uFind.getParent().keySet().forEach(
-//                            		(key)->{
-//            			System.err.println("key: "+key+" value: "+uFind.getParent().get(key));
-//            		}
-//        );
+        return eRT;
+    }
 
+    /**
+     * The payload of the remote matcher: the query entities of the candidate pairs, or else of the
+     * surviving blocks, projected to the matcher columns of the table, and the blocks if there are
+     * no pairs.
+     */
+    private ArrowDataHandler getArrowHandler(List<AbstractBlock> blocks, DecomposedBlock pairs, String tableName) {
+        RoaringBitmap entities = new RoaringBitmap();
+        List<int[]> blockEntities = new ArrayList<>();
+        if (pairs != null) {
+            entities.addN(pairs.getEntities1(), 0, pairs.getEntities1().length);
+            entities.addN(pairs.getEntities2(), 0, pairs.getEntities2().length);
+        } else {
+            for (AbstractBlock block : blocks) {
+                int[] blockIds = ((UnilateralBlock) block).getEntities();
+                entities.addN(blockIds, 0, blockIds.length);
+                blockEntities.add(blockIds);
+            }
+        }
+        return new ArrowDataHandler(newData, entities, DeduplicationProperties.getMatcherColumns(tableName),
+                blockEntities);
+    }
 
+    /** Every pair of a query entity with another entity of its blocks, once. */
+    private static DecomposedBlock getCandidatePairs(List<AbstractBlock> blocks) {
+        LongOpenHashSet pairs = new LongOpenHashSet();
+        for (AbstractBlock block : blocks) {
+            UnilateralBlock unilateralBlock = (UnilateralBlock) block;
+            for (int queryEntity : unilateralBlock.getQueryEntities()) {
+                for (int entity : unilateralBlock.getEntities()) {
+                    if (entity == queryEntity) continue;
+                    pairs.add((long) Math.max(entity, queryEntity) << 32 | Math.min(entity, queryEntity));
+                }
+            }
+        }
+        int[] entities1 = new int[pairs.size()];
+        int[] entities2 = new int[pairs.size()];
+        int next = 0;
+        for (LongIterator iterator = pairs.iterator(); iterator.hasNext(); next++) {
+            long pair = iterator.nextLong();
+            entities1[next] = (int) (pair >>> 32);
+            entities2[next] = (int) pair;
+        }
+        return new DecomposedBlock(false, entities1, entities2);
+    }
 
-        return eRT;
+    /**
+     * Matches the candidate pairs in batches, from the heaviest to the lightest, until the
+     * comparison or the time budget is used up. Pairs whose entities are already united, directly
+     * or by transitivity, are not compared. Returns the number of compared pairs.
+     */
+    private int matchProgressively(Matcher matcher, DecomposedBlock candidates, UnionFind uFind) {
+        int[] entities1 = candidates.getEntities1();
+        int[] entities2 = candidates.getEntities2();
+        int batchSize = DeduplicationProperties.getBudgetBatch();
+        double start = System.currentTimeMillis();
+        int comparisons = 0;
+        int batches = 0;
+        int next = 0;
+        while (next < entities1.length && (comparisonBudget <= 0 || comparisons < comparisonBudget)
+                && (timeBudget <= 0 || System.currentTimeMillis() - start < timeBudget)) {
+            long limit = comparisonBudget <= 0 ? batchSize : Math.min(batchSize, comparisonBudget - comparisons);
+            IntArrayList ids1 = new IntArrayList();
+            IntArrayList ids2 = new IntArrayList();
+            for (; next < entities1.length && ids1.size() < limit; next++) {
+                if (isResolved(uFind, entities1[next], entities2[next])) continue;
+                ids1.add(entities1[next]);
+                ids2.add(entities2[next]);
+            }
+            if (ids1.isEmpty()) break;
+            matcher.match(ids1.toIntArray(), ids2.toIntArray(), uFind);
+            comparisons += ids1.size();
+            batches++;
+        }
+        double end = System.currentTimeMillis();
+        System.err.println("Progressive matching compared " + comparisons + " of " + entities1.length
+                + " candidate pairs in " + batches + " batches in: " + (end - start) / 1000 + " seconds");
+        return comparisons;
     }
 
+    /** Whether two entities are already in the same set, without adding them to the union find. */
+    private static boolean isResolved(UnionFind uFind, int id1, int id2) {
+        return uFind.getParent().containsKey(id1) && uFind.getParent().containsKey(id2) && uFind.isInSameSet(id1, id2);
+    }
 
+    /** The query data of an entity, or its line in the source, cached apart so that it is not resolved. */
     private Object[] getEntity(long offset, int id) {
         try {
             if (newData.containsKey(id)) return newData.get(id);
+            if (profiles.containsKey(id)) return profiles.get(id);
+            if (offset == OffsetIndex.MISSING) throw new IOException("No offset of entity " + id);
             randomAccessReader.seek(offset);
             String line = randomAccessReader.readLine();
             if (line != null) {
+                // readLine() maps every byte to a char, the table is UTF-8
+                line = new String(line.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
                 try {
                     Object[] entity = parser.parseLine(line);
-                    newData.put(id, entity);
+                    profiles.put(id, entity);
                     return entity;
                 } catch (Exception e) {
                     line = line.substring(1);
                     Object[] entity = parser.parseLine(line);
-                    newData.put(id, entity);
+                    profiles.put(id, entity);
                     return entity;
                 }
             }
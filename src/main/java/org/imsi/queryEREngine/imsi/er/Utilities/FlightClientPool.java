@@ -0,0 +1,77 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import org.apache.arrow.flight.FlightClient;
+import org.apache.arrow.flight.Location;
+import org.apache.arrow.memory.BufferAllocator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-lived Flight clients to the matcher endpoints, matcher.pool.size per endpoint, shared by
+ * all the queries instead of a client per query. Clients are leased round-robin over the
+ * endpoints and then over the clients of an endpoint; a client multiplexes concurrent calls,
+ * so a lease is not exclusive and is never returned. The clients are closed on shutdown.
+ */
+public class FlightClientPool {
+
+    private static final Map<Location, List<FlightClient>> CLIENTS = new LinkedHashMap<>();
+    private static final AtomicInteger NEXT_ENDPOINT = new AtomicInteger();
+    private static final AtomicInteger NEXT_CLIENT = new AtomicInteger();
+    private static BufferAllocator allocator;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(FlightClientPool::close, "flight-client-pool-close"));
+    }
+
+    private FlightClientPool() {
+    }
+
+    /** A client of the next configured matcher endpoint. */
+    public static FlightClient lease() {
+        List<Location> endpoints = DeduplicationProperties.getMatcherEndpoints();
+        return lease(endpoints.get(Math.floorMod(NEXT_ENDPOINT.getAndIncrement(), endpoints.size())));
+    }
+
+    /** A client of the given endpoint, connecting its clients on the first lease. */
+    public static synchronized FlightClient lease(Location location) {
+        List<FlightClient> clients = CLIENTS.get(location);
+        if (clients == null) {
+            if (allocator == null) allocator = ArrowMemory.newAllocator("flight-clients");
+            System.out.println("Attempting to connect to server at " + location.getUri() + "...");
+            clients = new ArrayList<>();
+            for (int i = 0; i < DeduplicationProperties.getMatcherPoolSize(); i++) {
+                clients.add(FlightClient.builder(allocator, location).build());
+            }
+            CLIENTS.put(location, clients);
+            System.out.println("Connection established");
+        }
+        return clients.get(Math.floorMod(NEXT_CLIENT.getAndIncrement(), clients.size()));
+    }
+
+    /** Number of open clients over all the endpoints. */
+    public static synchronized int size() {
+        return CLIENTS.values().stream().mapToInt(List::size).sum();
+    }
+
+    /** Closes every client and their allocator, the pool reconnects on the next lease. */
+    public static synchronized void close() {
+        for (List<FlightClient> clients : CLIENTS.values()) {
+            for (FlightClient client : clients) {
+                try {
+                    client.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        CLIENTS.clear();
+        if (allocator != null) {
+            allocator.close();
+            allocator = null;
+        }
+    }
+}
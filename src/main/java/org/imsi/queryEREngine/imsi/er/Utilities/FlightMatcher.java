@@ -0,0 +1,69 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+
+import java.util.UUID;
+
+/**
+ * Matches on the Arrow Flight server of the BERT model: the query entities are uploaded once,
+ * then the pairs, or the query blocks, are exchanged for their matches in a DoExchange call.
+ * The server classifies the pairs batch by batch and sends the matches of every batch back
+ * at once, so they are united while the next batches are still being sent and classified.
+ * The entities are stored under a descriptor of the query, so that queries sharing a server
+ * are matched against their own entities, and dropped when the matcher is closed.
+ */
+public class FlightMatcher implements Matcher {
+
+    public static final int PORT = 5678;
+
+    private final ArrowDataHandler arrowHandler;
+    private final ArrowFlightConnector connector;
+    private final String dictionary = "dict-" + UUID.randomUUID();
+
+    public FlightMatcher(ArrowDataHandler arrowHandler) {
+        this.arrowHandler = arrowHandler;
+        try {
+            this.connector = new ArrowFlightConnector();
+            double start = System.currentTimeMillis();
+            int batches = arrowHandler.putDict(connector, dictionary);
+            double end = System.currentTimeMillis();
+            System.err.println("Entities sent in " + batches + " batches in: " + (end - start) / 1000 + " seconds");
+        } catch (RuntimeException e) {
+            arrowHandler.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void match(int[] entities1, int[] entities2, UnionFind uFind) {
+        arrowHandler.exchangePairs(connector, "pairs", dictionary, entities1, entities2, results -> union(results, uFind));
+    }
+
+    /** Matches the pairs of the query blocks, which the server enumerates itself. */
+    public void matchBlocks(UnionFind uFind) {
+        arrowHandler.exchangeBlocks(connector, "blocks", dictionary, results -> union(results, uFind));
+    }
+
+    /** Unites the matches of a result batch, as soon as the server has sent it. */
+    private static void union(VectorSchemaRoot results, UnionFind uFind) {
+        BaseIntVector id1s = (BaseIntVector) results.getVector("id1");
+        BaseIntVector id2s = (BaseIntVector) results.getVector("id2");
+        for (int i = 0; i < results.getRowCount(); i++) {
+            uFind.union((int) id1s.getValueAsLong(i), (int) id2s.getValueAsLong(i));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            connector.doAction("drop_table", dictionary);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            arrowHandler.close();
+        }
+        System.err.println("Off-heap bytes outstanding: " + ArrowMemory.getAllocatedBytes()
+                + ", open allocators: " + ArrowMemory.getOpenAllocators());
+    }
+}
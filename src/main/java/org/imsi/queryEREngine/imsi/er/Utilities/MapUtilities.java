@@ -1,11 +1,13 @@
 package org.imsi.queryEREngine.imsi.er.Utilities;
 
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.roaringbitmap.RoaringBitmap;
+
 public class MapUtilities {
 	public static <U, T> Map<T, Set<U>> deepCopy(Map<T, Set<U>> map) {
 		Map<T, Set<U>> clone = new LinkedHashMap<>();
@@ -14,9 +16,8 @@ public class MapUtilities {
 		return clone;
 	}
 	
-	public static Set<Integer> deepCopySet(Set<Integer> set){
-//		return set.stream().map(Integer::new).collect(Collectors.toSet());
-//		return set.stream().map(Integer::valueOf).collect(Collectors.toSet());
-		return set.stream().collect(Collectors.toSet());
+	/** Copies a collection of ids into a compressed bitmap. */
+	public static RoaringBitmap toBitmap(Collection<Integer> ids) {
+		return RoaringBitmap.bitmapOfUnordered(ids.stream().mapToInt(Integer::intValue).toArray());
 	}
 }
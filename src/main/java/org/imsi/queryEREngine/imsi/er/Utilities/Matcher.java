@@ -0,0 +1,20 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+/**
+ * Decides which candidate pairs of a query are matches. A matcher is created per query by
+ * {@link Matchers} and is given the pairs in one or, when matching progressively, several batches.
+ */
+public interface Matcher extends AutoCloseable {
+
+    /**
+     * Compares the pairs (entities1[i], entities2[i]) and unites the matching ones in uFind.
+     * @param entities1 ids of the first entities of the pairs
+     * @param entities2 ids of the second entities of the pairs
+     * @param uFind sets of the entities resolved so far
+     */
+    void match(int[] entities1, int[] entities2, UnionFind uFind);
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,47 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * The matchers of the engine by name: "remote" sends the pairs to the BERT model over Arrow
+ * Flight, "jaccard" and "jarowinkler" compare the profiles in process.
+ */
+public class Matchers {
+
+    public static final String REMOTE = "remote";
+    public static final String JACCARD = "jaccard";
+    public static final String JARO_WINKLER = "jarowinkler";
+
+    public static final List<String> NAMES = Arrays.asList(REMOTE, JACCARD, JARO_WINKLER);
+
+    /**
+     * Creates the named matcher of a query.
+     * @param arrowHandler supplies the arrow tables of the remote matcher, created on demand
+     * @param profiles the attribute values of an entity by id, for the in-process matchers
+     * @param keyIndex index of the key attribute
+     */
+    public static Matcher create(String name, Supplier<ArrowDataHandler> arrowHandler,
+                                 IntFunction<Object[]> profiles, Integer keyIndex) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case JACCARD:
+                return new SimilarityMatcher(SimilarityMatcher.Similarity.JACCARD,
+                        DeduplicationProperties.getMatcherThreshold(), profiles, keyIndex);
+            case JARO_WINKLER:
+                return new SimilarityMatcher(SimilarityMatcher.Similarity.JARO_WINKLER,
+                        DeduplicationProperties.getMatcherThreshold(), profiles, keyIndex);
+            case REMOTE:
+                return new FlightMatcher(arrowHandler.get());
+            default:
+                throw new IllegalArgumentException("Unknown matcher " + name + ", expected one of " + NAMES);
+        }
+    }
+
+    /** Whether the matcher of the given name runs in process. */
+    public static boolean isInProcess(String name) {
+        return !name.equalsIgnoreCase(REMOTE);
+    }
+}
@@ -1,7 +1,6 @@
 package org.imsi.queryEREngine.imsi.er.Utilities;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -167,7 +166,8 @@ public class ProfileComparison {
 			int index) { 
 		// delete the element at specified index and return the array 
 		int size = oddArray.length;
-		Object[] cleanArr = new Object[size];
+		Object[] cleanArr = new Object[size - 1];
+		System.arraycopy(oddArray, 0, cleanArr, 0, index);
 		System.arraycopy(oddArray, index + 1, cleanArr, index, size - 1 - index);
 		return cleanArr;
 	}
@@ -177,8 +177,7 @@ public class ProfileComparison {
 		for (Attribute attribute : nameValuePairs) {
 			if (attribute.getValue() == null)
 				continue;
-			String[] tokens = attribute.getValue().split("[\\W_]");
-			tokensFrequency.addAll(Arrays.asList(tokens));
+			Tokenizer.split(attribute.getValue(), tokensFrequency::add);
 		}
 
 		return tokensFrequency;
@@ -191,8 +190,7 @@ public class ProfileComparison {
 				String attrStr = attr.toString();
 				if (attrStr.equals(""))
 					continue;
-				String[] tokens = attrStr.split("[\\W_]");
-				tokensFrequency.addAll(Arrays.asList(tokens));
+				Tokenizer.split(attrStr, tokensFrequency::add);
 			}
 		}
 
@@ -235,7 +233,7 @@ public class ProfileComparison {
 		
 		while (index < length) {
 			if(index != keyIndex) {
-				if (entity1[index].equals("")) {
+				if (entity1[index] == null || entity1[index].equals("")) {
 					index += 1;
 					continue;
 				}
@@ -247,7 +245,7 @@ public class ProfileComparison {
 		index = 0;
 		while (index < length) {
 			if(index != keyIndex) {
-				if (entity2[index].equals("")) {
+				if (entity2[index] == null || entity2[index].equals("")) {
 					index += 1;
 					continue;
 				}
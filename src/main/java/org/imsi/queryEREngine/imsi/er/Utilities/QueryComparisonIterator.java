@@ -1,10 +1,10 @@
 package org.imsi.queryEREngine.imsi.er.Utilities;
 
 import org.imsi.queryEREngine.imsi.er.DataStructures.*;
+import org.roaringbitmap.RoaringBitmap;
 
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Set;
 
 public class QueryComparisonIterator implements Iterator<Comparison> {
 
@@ -19,7 +19,7 @@ public class QueryComparisonIterator implements Iterator<Comparison> {
     private int[] queryEntities;
     private int[] entities;
 
-    public QueryComparisonIterator(AbstractBlock block, Set<Integer> qIds) {
+    public QueryComparisonIterator(AbstractBlock block, RoaringBitmap qIds) {
         this.block = block;
         totalComparisons = block.getNoOfComparisons();
         if (block instanceof BilateralBlock) {
@@ -45,7 +45,7 @@ public class QueryComparisonIterator implements Iterator<Comparison> {
         }
     }
 
-    public void splitEntities(UnilateralBlock uniBlock, Set<Integer> qIds) {
+    public void splitEntities(UnilateralBlock uniBlock, RoaringBitmap qIds) {
         entities = uniBlock.getEntities();
         queryEntities = Arrays.stream(entities).filter(qIds::contains).toArray();
 //        entities = Arrays.stream(allEntities).filter(d -> !qIds.contains(d)).toArray();
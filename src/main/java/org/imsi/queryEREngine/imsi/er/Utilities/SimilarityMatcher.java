@@ -0,0 +1,58 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+/**
+ * Matches in process with the profile similarities of {@link ProfileComparison}: a pair is a
+ * match when the similarity of its entities reaches the threshold. The profiles of a batch are
+ * read first, on the calling thread, and the pairs are then compared in parallel.
+ */
+public class SimilarityMatcher implements Matcher {
+
+    public enum Similarity {
+        JACCARD, JARO_WINKLER
+    }
+
+    private final Similarity similarity;
+    private final double threshold;
+    private final IntFunction<Object[]> profiles;
+    private final Integer keyIndex;
+
+    /**
+     * @param profiles the attribute values of an entity by id
+     * @param keyIndex index of the key attribute, left out of the comparison
+     */
+    public SimilarityMatcher(Similarity similarity, double threshold, IntFunction<Object[]> profiles, Integer keyIndex) {
+        this.similarity = similarity;
+        this.threshold = threshold;
+        this.profiles = profiles;
+        this.keyIndex = keyIndex;
+    }
+
+    @Override
+    public void match(int[] entities1, int[] entities2, UnionFind uFind) {
+        Int2ObjectOpenHashMap<Object[]> batch = new Int2ObjectOpenHashMap<>();
+        for (int i = 0; i < entities1.length; i++) {
+            batch.computeIfAbsent(entities1[i], profiles);
+            batch.computeIfAbsent(entities2[i], profiles);
+        }
+        boolean[] matches = new boolean[entities1.length];
+        IntStream.range(0, entities1.length).parallel()
+                .forEach(i -> matches[i] = threshold <= getSimilarity(batch.get(entities1[i]), batch.get(entities2[i])));
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i]) uFind.union(entities1[i], entities2[i]);
+        }
+    }
+
+    public double getSimilarity(Object[] profile1, Object[] profile2) {
+        switch (similarity) {
+            case JARO_WINKLER:
+                return ProfileComparison.getJaroSimilarity(profile1, profile2, keyIndex);
+            default:
+                return ProfileComparison.getJaccardSimilarity(profile1, profile2, keyIndex);
+        }
+    }
+}
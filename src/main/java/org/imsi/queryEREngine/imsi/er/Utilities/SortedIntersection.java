@@ -0,0 +1,89 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import java.util.Arrays;
+
+/**
+ * Intersection of sorted arrays of distinct ints, such as the block lists of the entity index.
+ * Lists of similar length are merged linearly. When one list is much longer than the other, the
+ * longer one is galloped: each element of the shorter list is looked up by an exponential search
+ * forward from the previous match, so the cost follows the shorter list.
+ */
+public final class SortedIntersection {
+
+	/** Length ratio of the two lists above which the longer one is galloped instead of merged. */
+	public static final int GALLOP_RATIO = 16;
+
+	private SortedIntersection() {
+	}
+
+	/** Number of common elements of the two lists. */
+	public static int count(int[] list1, int[] list2) {
+		return intersect(list1, list2, -1, null);
+	}
+
+	/**
+	 * Number of common elements of the two lists, or -1 if the smallest of them is not
+	 * {@code first}, so that a pair sharing several blocks is counted in the first one only.
+	 */
+	public static int countIfFirst(int[] list1, int[] list2, int first) {
+		return intersect(list1, list2, first, null);
+	}
+
+	/** Smallest common element of the two lists, or -1 if they are disjoint. */
+	public static int first(int[] list1, int[] list2) {
+		int[] common = new int[1];
+		return intersect(list1, list2, -1, common) == 0 ? -1 : common[0];
+	}
+
+	/** Common elements of the two lists, in ascending order. */
+	public static int[] intersection(int[] list1, int[] list2) {
+		int[] common = new int[Math.min(list1.length, list2.length)];
+		return Arrays.copyOf(common, intersect(list1, list2, -1, common));
+	}
+
+	/**
+	 * Intersects the lists, stopping early if the smallest common element is not {@code first}
+	 * (when it is not negative) or once {@code common} (when it is not null) is full.
+	 */
+	private static int intersect(int[] list1, int[] list2, int first, int[] common) {
+		if (list2.length < list1.length) {
+			int[] shorter = list2;
+			list2 = list1;
+			list1 = shorter;
+		}
+		boolean gallop = (long) list1.length * GALLOP_RATIO < list2.length;
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < list1.length && j < list2.length) {
+			int element1 = list1[i];
+			int element2 = list2[j];
+			if (element1 < element2) {
+				i++;
+			} else if (element2 < element1) {
+				j = gallop ? gallop(list2, j, element1) : j + 1;
+			} else {
+				if (count == 0 && 0 <= first && element1 != first) return -1;
+				if (common != null) {
+					common[count] = element1;
+					if (count + 1 == common.length) return count + 1;
+				}
+				count++;
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+	/** Index of the first element of {@code list[from..]} that is not less than the key, given {@code list[from] < key}. */
+	private static int gallop(int[] list, int from, int key) {
+		int bound = 1;
+		while (from + bound < list.length && list[from + bound] < key) bound <<= 1;
+		int low = from + (bound >>> 1) + 1;
+		int high = (int) Math.min((long) from + bound, list.length);
+		int index = Arrays.binarySearch(list, low, high, key);
+		return index < 0 ? -index - 1 : index;
+	}
+
+}
@@ -1,7 +1,6 @@
 package org.imsi.queryEREngine.imsi.er.Utilities;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -12,6 +11,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.imsi.queryEREngine.apache.calcite.rex.RexCall;
@@ -22,13 +22,18 @@ import org.imsi.queryEREngine.imsi.er.BlockIndex.BlockIndexStatistic;
 import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
 import org.imsi.queryEREngine.imsi.er.DataStructures.Comparison;
 import org.imsi.queryEREngine.imsi.er.DataStructures.EntityIndex;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingListBuilder;
 import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
 
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
 
 
 public class TokenStatistics {
 
-	private Map<String, Set<Integer>> bBlocks;
+	private Map<String, PostingList> bBlocks;
+	private Function<String, PostingList> postings;
 	private Map<Integer, Set<String>> entitiesToBlocks;
 	private BlockIndexStatistic blockIndexStatistic;
 	private double compsRatio;
@@ -44,10 +49,25 @@ public class TokenStatistics {
 	private Double comparisons;
 	
 
-	public TokenStatistics(Map<String, Set<Integer>> invertedIndex, Map<Integer, Set<String>> entitiesToBlocks,
+	public TokenStatistics(Map<String, PostingList> invertedIndex, Map<Integer, Set<String>> entitiesToBlocks,
 			BlockIndexStatistic blockIndexStatistic, Set<Integer> entitiesWithLinks, List<RexNode> conjuctions) {
 		this.bBlocks = invertedIndex;
 		this.entitiesToBlocks = entitiesToBlocks;
+		this.postings = invertedIndex::get;
+		this.blockIndexStatistic = blockIndexStatistic;
+		this.entitiesWithLinks = entitiesWithLinks;
+		this.comparisons = blockIndexStatistic.getTotalComparisons();
+		getTokens(conjuctions);
+	}
+
+	/**
+	 * Estimates the comparisons of the conjuctions from the postings of their tokens alone,
+	 * without the whole index.
+	 * @param postings the postings of a token, or null if it has no block
+	 */
+	public TokenStatistics(Function<String, PostingList> postings, BlockIndexStatistic blockIndexStatistic,
+			Set<Integer> entitiesWithLinks, List<RexNode> conjuctions) {
+		this.postings = postings;
 		this.blockIndexStatistic = blockIndexStatistic;
 		this.entitiesWithLinks = entitiesWithLinks;
 		this.comparisons = blockIndexStatistic.getTotalComparisons();
@@ -93,7 +113,7 @@ public class TokenStatistics {
 		Set<String> removedTokens = new HashSet<>();
 		while(blockIterator.hasNext()) {
 			String token = blockIterator.next();
-			Set<Integer> block = bBlocks.get(token);
+			PostingList block = bBlocks.get(token);
 			long size = block.size();
 			long comps = (size * (size - 1))/2;
 			if(comps < p) break;
@@ -114,7 +134,7 @@ public class TokenStatistics {
 	private void filterBlocks(double ratio) {
 		double filterStart = System.currentTimeMillis();
 		Iterator<Integer> blockIterator = entitiesToBlocks.keySet().iterator();
-		bBlocks = new LinkedHashMap<String, Set<Integer>>();
+		LinkedHashMap<String, PostingListBuilder> filteredBlocks = new LinkedHashMap<>();
 		while(blockIterator.hasNext()) {
 			Integer entity = blockIterator.next();
 			Set<String> blocks = entitiesToBlocks.get(entity);
@@ -123,12 +143,14 @@ public class TokenStatistics {
 			Iterator<String> blocksIter = blocks.iterator();
 			while(i < size) {
 				if(!blocksIter.hasNext()) break;
-				Set<Integer> termEntities = bBlocks.computeIfAbsent(blocksIter.next(),
-						x -> new HashSet<Integer>());
+				PostingListBuilder termEntities = filteredBlocks.computeIfAbsent(blocksIter.next(),
+						x -> new PostingListBuilder());
 				termEntities.add(entity);
 				i++;
 			}
 		}
+		bBlocks = new LinkedHashMap<>();
+		filteredBlocks.forEach((token, entities) -> bBlocks.put(token, entities.build()));
 		double filterEnd = System.currentTimeMillis();
 		System.out.println("Time of filter: " + (filterEnd - filterStart)/1000);
 	}
@@ -136,9 +158,10 @@ public class TokenStatistics {
 	private double calculateMxN(Set<Integer> entities) {
 		double all_comps = 0;
 		for(String token : bBlocks.keySet()) {
-			Set<Integer> blockEntities = bBlocks.get(token);
+			PostingList blockEntities = bBlocks.get(token);
 			double a = blockEntities.size();
-			blockEntities.removeAll(entities);
+			blockEntities = removeAll(blockEntities, entities);
+			bBlocks.put(token, blockEntities);
 			double n = blockEntities.size();
 			double m = a - n;
 			double total = (m * Math.abs(n-m));
@@ -158,7 +181,7 @@ public class TokenStatistics {
 		double all_comps = 0;
 		double all_ents = 0;
 		for(String token : averageBlockWeight.keySet()) {
-			Set<Integer> blockEntities = bBlocks.get(token);
+			PostingList blockEntities = bBlocks.get(token);
 			double a = blockEntities.size();
 			double comps = a * (a - 1) / 2;
 			double percent = (1 - averageBlockWeight.get(token));
@@ -176,8 +199,8 @@ public class TokenStatistics {
 		long sizes = 0;
 		Set<Integer> uniqueEntities = new HashSet<>();
 		for(String token : bBlocks.keySet()) {
-			Set<Integer> blockEntities = bBlocks.get(token);
-			uniqueEntities.addAll(blockEntities);
+			PostingList blockEntities = bBlocks.get(token);
+			addAll(uniqueEntities, blockEntities);
 			long size = blockEntities.size();
 			sizes += size;
 			comps += (size * (size - 1)) / 2;
@@ -256,10 +279,11 @@ public class TokenStatistics {
 		double all_comps = 0;
 		double all_ents = 0;
 		for(String token : averageBlockWeight.keySet()) {
-			Set<Integer> blockEntities = bBlocks.get(token);
+			PostingList blockEntities = bBlocks.get(token);
 			double percent = (1 - averageBlockWeight.get(token));
 			double a = blockEntities.size();
-			blockEntities.removeAll(entities);
+			blockEntities = removeAll(blockEntities, entities);
+			bBlocks.put(token, blockEntities);
 			double n = blockEntities.size();
 			all_ents += n * percent;
 //			double total = (m * Math.abs(n-m));
@@ -274,12 +298,12 @@ public class TokenStatistics {
 		System.out.println("Time of pruning: " + (pruneEnd - pruneStart)/1000);
 	}
 	
-	public List<AbstractBlock> parseIndex(Map<String, Set<Integer>> invertedIndex) {
+	public List<AbstractBlock> parseIndex(Map<String, PostingList> invertedIndex) {
 		List<AbstractBlock> blocks = new ArrayList<AbstractBlock>();
 		tokenToIndexMap = new HashMap<>();
 		int blockIndex = 0;
-		for (Entry<String, Set<Integer>> term : invertedIndex.entrySet()) {
-			Set<Integer> ids = term.getValue();
+		for (Entry<String, PostingList> term : invertedIndex.entrySet()) {
+			PostingList ids = term.getValue();
 			int size = ids.size();
 			if (1 < size) {
 //				List<Integer> sample = ids.stream().collect(Collectors.toList());
@@ -287,7 +311,7 @@ public class TokenStatistics {
 //				int new_size = (int) Math.round(size * SAMPLING_PERCENT);
 //				int[] idsArray = new int[new_size];
 //				for(int i = 0; i < new_size; i++) idsArray[i] = sample.get(i);
-				int[] idsArray = Converter.convertListToArray(term.getValue());
+				int[] idsArray = term.getValue().toIntArray();
 				UnilateralBlock uBlock = new UnilateralBlock(idsArray);
 				this.tokenToIndexMap.put(blockIndex, term.getKey());
 				uBlock.setBlockIndex(blockIndex);
@@ -301,10 +325,10 @@ public class TokenStatistics {
 	private Set<Integer> getDisjunctionEntities(List<String> tokens) {
 		Set<Integer> unionEntities = new HashSet<>();
 		for(String token : tokens) {
-			Set<Integer> entities = bBlocks.get(token);
+			PostingList entities = postings.apply(token);
 			
 			if(entities == null) continue;
-			unionEntities.addAll(entities);
+			addAll(unionEntities, entities);
 		}
 		unionEntities.removeAll(entitiesWithLinks);
 		return unionEntities;
@@ -315,9 +339,9 @@ public class TokenStatistics {
 		for(List<String> tokenSet : tokens) {
 			Set<Integer> uniqueEntitiesSet = new HashSet<>();
 			for(String token : tokenSet) {
-				Set<Integer> entities = bBlocks.get(token);
+				PostingList entities = postings.apply(token);
 				if(entities == null) continue;
-				uniqueEntitiesSet.addAll(entities);
+				addAll(uniqueEntitiesSet, entities);
 			}
 			uniqueEntitiesSets.add(uniqueEntitiesSet);
 		}
@@ -338,6 +362,10 @@ public class TokenStatistics {
 
 		if(uniqueEntitiesSize == 0)
 			this.comparisons = 0.0;
+		else if(entitiesToBlocks == null) {
+			// the entities are read from the postings, all of them have blocks
+			this.comparisons = uniqueEntitiesSize * uniqueEntitiesSize;
+		}
 		else {
 			entitiesToBlocks.keySet().retainAll(entities);
 			this.comparisons = uniqueEntitiesSize * this.entitiesToBlocks.size();
@@ -404,8 +432,8 @@ public class TokenStatistics {
 		this.comparisons = 0.0;
 		Set<Integer> uniqueEntities = new HashSet<>();
 		for(String token : bBlocks.keySet()) {
-			Set<Integer> blockEntities = bBlocks.get(token);
-			uniqueEntities.addAll(blockEntities);
+			PostingList blockEntities = bBlocks.get(token);
+			addAll(uniqueEntities, blockEntities);
 			long size = blockEntities.size();
 			this.comparisons += (size*(size-1))/2;
 		}
@@ -433,21 +461,14 @@ public class TokenStatistics {
 					final RexCall rexCallConj = (RexCall) disjCondition;
 					TokenVisitor tokenVisitorConj = new TokenVisitor();
 					rexCallConj.accept(tokenVisitorConj);
-					String disjToken = tokenVisitorConj.getToken();
-					disjToken = disjToken.replace("%", "").replace(":VARCHAR", "").replace("'", "").toLowerCase();
-					disjTokens.add(disjToken);
+					disjTokens.addAll(literalTokens(tokenVisitorConj.getToken()));
 				}
 				getCoarseStats(getDisjunctionEntities(disjTokens));
 			}
 			else {
 				switch(kind) {
 					case("LIKE"):
-						token = token.replace("%", "").replace("'", "").toLowerCase();
-						//if its more than 1 tokens
-						if(token.contains(" ")) 
-							tokens.addAll(Arrays.stream(token.split(" ")).collect(Collectors.toList()));
-						else
-							tokens.add(token);
+						tokens.addAll(literalTokens(token));
 						break;
 					case("GREATER_THAN"):
 						token = token.replace("'", "").toLowerCase();
@@ -470,21 +491,13 @@ public class TokenStatistics {
 							betweenEndInt = Integer.parseInt(token);
 						break;
 					case("EQUALS"):
-						token = token.replace("'", "").replace(":VARCHAR", "").toLowerCase();
-						if(token.contains(" ")) 
-							tokens.addAll(Arrays.stream(token.split(" ")).collect(Collectors.toList()));
-						else
-							tokens.add(token);
+						tokens.addAll(literalTokens(token));
 						break;
 					case("OR"):
 						System.out.println(token);				
 						break;
 					default:
-						token = token.replace("'", "").replace(":varchar", "").toLowerCase();
-						if(token.contains(" ")) 
-							tokens.addAll(Arrays.stream(token.split(" ")).collect(Collectors.toList()));
-						else
-							tokens.add(token);
+						tokens.addAll(literalTokens(token));
 						break;
 				}
 				if(!tokens.isEmpty()) allTokens.add(tokens);
@@ -511,6 +524,11 @@ public class TokenStatistics {
 		getCoarseStats(getConjuctionEntities(allTokens));
 	}
 	
+	/** Tokenizes a literal of the query the same way the attribute values were indexed. */
+	private static List<String> literalTokens(String literal) {
+		return Tokenizer.tokens(literal.replace(":VARCHAR", ""));
+	}
+
 	private static long getMaxComparisonsPerBlock(List<Long> blocksSize, Set<Long> distinctComparisonsLevel) {
 		Collections.sort(blocksSize);
 		
@@ -559,6 +577,21 @@ public class TokenStatistics {
         return previousSize;
     }
 
+	private static void addAll(Set<Integer> entities, PostingList postingList) {
+		IntIterator iterator = postingList.iterator();
+		while(iterator.hasNext()) entities.add(iterator.nextInt());
+	}
+
+	private static PostingList removeAll(PostingList postingList, Set<Integer> entities) {
+		PostingListBuilder remaining = new PostingListBuilder();
+		IntIterator iterator = postingList.iterator();
+		while(iterator.hasNext()) {
+			int entity = iterator.nextInt();
+			if(!entities.contains(entity)) remaining.add(entity);
+		}
+		return remaining.build();
+	}
+
 	public Double getComparisons() {
 		return comparisons;
 	}
@@ -0,0 +1,140 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Splits attribute values into tokens by scanning their characters once, without regular
+ * expressions or intermediate strings. A token is a run of ASCII letters and digits, the
+ * characters matched by {@code \w} apart from the underscore.
+ *
+ * {@link #tokenize} gives the blocking keys of the index: lower-cased tokens longer than two
+ * characters that are not stopwords, the same keys as the former
+ * {@code replaceAll(...).toLowerCase().split("[\\W_]")} pipeline. {@link #split} keeps every
+ * piece as {@code String.split("[\\W_]")} does and is used for profile similarities.
+ */
+public final class Tokenizer {
+
+	public static final int MIN_TOKEN_LENGTH = 3;
+
+	private static final Set<String> stopwords = loadStopwords();
+
+	private Tokenizer() {
+	}
+
+	/** Passes the blocking keys of a value to the consumer, in order and with duplicates. */
+	public static void tokenize(String value, Consumer<String> consumer) {
+		int length = value.length();
+		int start = -1;
+		boolean lowerCase = true;
+		for (int i = 0; i <= length; i++) {
+			char c = i < length ? value.charAt(i) : ' ';
+			char lower = lowerWordChar(c);
+			if (lower == 0) {
+				if (start >= 0) emit(value, start, i, lowerCase, consumer);
+				start = -1;
+				continue;
+			}
+			if (start < 0) {
+				start = i;
+				lowerCase = true;
+			}
+			if (lower != c) lowerCase = false;
+			// the dotted capital I lower-cases to an i and a combining dot, which ends the token
+			if (c == '\u0130') {
+				emit(value, start, i + 1, false, consumer);
+				start = -1;
+			}
+		}
+	}
+
+	private static void emit(String value, int start, int end, boolean lowerCase, Consumer<String> consumer) {
+		if (end - start < MIN_TOKEN_LENGTH) return;
+		String token = lowerCase ? value.substring(start, end) : lowerCopy(value, start, end);
+		if (!stopwords.contains(token)) consumer.accept(token);
+	}
+
+	/** Returns the blocking keys of a value. */
+	public static List<String> tokens(String value) {
+		List<String> tokens = new ArrayList<>();
+		tokenize(value, tokens::add);
+		return tokens;
+	}
+
+	/**
+	 * Passes the pieces of {@code value.split("[\\W_]")} to the consumer, case kept and with
+	 * the same empty pieces.
+	 */
+	public static void split(String value, Consumer<String> consumer) {
+		if (value.isEmpty()) {
+			consumer.accept(value);
+			return;
+		}
+		int length = value.length();
+		int start = 0;
+		int emptyPieces = 0;
+		for (int i = 0; i <= length; i++) {
+			if (i < length && isWordChar(value.charAt(i))) continue;
+			if (i == start) emptyPieces++;
+			else {
+				for (; emptyPieces > 0; emptyPieces--) consumer.accept("");
+				consumer.accept(value.substring(start, i));
+			}
+			// a surrogate pair is a single separator
+			if (i + 1 < length && Character.isHighSurrogate(value.charAt(i))
+					&& Character.isLowSurrogate(value.charAt(i + 1))) i++;
+			start = i + 1;
+		}
+	}
+
+	public static boolean isStopword(String token) {
+		return stopwords.contains(token);
+	}
+
+	public static Set<String> getStopwords() {
+		return stopwords;
+	}
+
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+
+	/** Returns the lower case of a token character, or 0 for a separator. */
+	private static char lowerWordChar(char c) {
+		if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') return c;
+		if (c >= 'A' && c <= 'Z') return (char) (c + ('a' - 'A'));
+		if (c < 128) return 0;
+		// a few non ASCII letters, such as the Kelvin sign, lower-case to ASCII
+		char lower = Character.toLowerCase(c);
+		return lower >= 'a' && lower <= 'z' ? lower : 0;
+	}
+
+	private static String lowerCopy(String value, int start, int end) {
+		char[] chars = new char[end - start];
+		for (int i = start; i < end; i++) chars[i - start] = lowerWordChar(value.charAt(i));
+		return new String(chars);
+	}
+
+	private static Set<String> loadStopwords() {
+		InputStream txtFile = Tokenizer.class.getClassLoader().getResourceAsStream("stopwords/stopwords.txt");
+		HashSet<String> stopwords = new HashSet<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(txtFile))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				stopwords.add(line.trim());
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return Collections.unmodifiableSet(stopwords);
+	}
+
+}
@@ -10,6 +10,7 @@ package org.imsi.queryEREngine.imsi.er.Utilities;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import org.roaringbitmap.RoaringBitmap;
 
 public class UnionFind {
 
@@ -67,6 +68,10 @@ public class UnionFind {
     }
 
 
+    public UnionFind(RoaringBitmap set) {
+        set.forEach((int i) -> makeSet(i));
+    }
+
     public UnionFind(Set<Integer> set) {
 
         for (int i : set) {
@@ -0,0 +1,106 @@
+package org.imsi.queryEREngine.imsi.calcite.rel.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.calcite.linq4j.tree.ClassDeclaration;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.imsi.queryEREngine.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.imsi.queryEREngine.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.imsi.queryEREngine.apache.calcite.rel.RelNode;
+import org.imsi.queryEREngine.apache.calcite.schema.SchemaPlus;
+import org.imsi.queryEREngine.apache.calcite.schema.impl.AbstractSchema;
+import org.imsi.queryEREngine.apache.calcite.sql.SqlNode;
+import org.imsi.queryEREngine.apache.calcite.tools.Frameworks;
+import org.imsi.queryEREngine.apache.calcite.tools.Planner;
+import org.imsi.queryEREngine.apache.calcite.util.Sources;
+import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.EnumerableDeduplicate;
+import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvTranslatableTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DeduplicationHintsTest {
+
+	private static final String HINTED = "SELECT /*+ er_budget(comparisons='10000', ms='500'), er_pruning(wnp), "
+			+ "er_blocking_only, er_matcher(jaccard) */ DEDUP * FROM s.people";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void parsesTheHintsOfADedupQuery() throws Exception {
+		DeduplicationHints hints = deduplicate(HINTED).getDeduplicationHints();
+		assertEquals(Long.valueOf(10000), hints.getComparisonBudget());
+		assertEquals(Long.valueOf(500), hints.getTimeBudget());
+		assertEquals("wnp", hints.getPruning());
+		assertTrue(hints.isBlockingOnly());
+		assertEquals("jaccard", hints.getMatcher());
+	}
+
+	@Test
+	void leavesTheSettingsOfAnUnhintedQueryToTheProperties() throws Exception {
+		DeduplicationHints hints = deduplicate("SELECT DEDUP * FROM s.people").getDeduplicationHints();
+		assertNull(hints.getComparisonBudget());
+		assertNull(hints.getTimeBudget());
+		assertNull(hints.getPruning());
+		assertFalse(hints.isBlockingOnly());
+		assertNull(hints.getMatcher());
+	}
+
+	@Test
+	void passesTheHintsToTheDeduplication() throws Exception {
+		Deduplicate deduplicate = deduplicate(HINTED);
+		RelNode input = deduplicate.getInput();
+		EnumerableRel enumerable = (EnumerableRel) EnumerableDeduplicate.create(deduplicate.getHints(), input,
+				deduplicate.getRelTable(), deduplicate.getBlockIndex(), deduplicate.getConjuctions(),
+				deduplicate.getKey(), deduplicate.getSource(), deduplicate.getFieldTypes(), deduplicate.getComparisons());
+		ClassDeclaration code = new EnumerableRelImplementor(input.getCluster().getRexBuilder(), new HashMap<>())
+				.implementRoot(enumerable, EnumerableRel.Prefer.ARRAY);
+
+		String source = Expressions.toString(code);
+		assertTrue(source.contains("deduplicateEnumerator("), source);
+		assertTrue(source.contains("Long.valueOf(10000L), Long.valueOf(500L), \"wnp\", true, \"jaccard\")"), source);
+	}
+
+	@Test
+	void skipsAnInvalidHint() throws Exception {
+		DeduplicationHints hints = deduplicate("SELECT /*+ er_pruning(xyz), er_budget(comparisons='-1') */ DEDUP * FROM s.people")
+				.getDeduplicationHints();
+		assertNull(hints.getPruning());
+		assertNull(hints.getComparisonBudget());
+	}
+
+	/** Converts a query over a CSV table to relational algebra and returns its Deduplicate operator. */
+	private Deduplicate deduplicate(String sql) throws Exception {
+		Path csv = directory.resolve("people.csv");
+		Files.write(csv, Arrays.asList("id:int,name:string", "1,alice", "2,alicia"), StandardCharsets.UTF_8);
+		SchemaPlus rootSchema = Frameworks.createRootSchema(true);
+		SchemaPlus schema = rootSchema.add("S", new AbstractSchema());
+		schema.add("PEOPLE", new CsvTranslatableTable(Sources.of(csv.toFile()), "people", null));
+		Planner planner = Frameworks.getPlanner(Frameworks.newConfigBuilder().defaultSchema(rootSchema).build());
+		SqlNode parsed = planner.parse(sql);
+		RelNode root = planner.rel(planner.validate(parsed)).project();
+		Deduplicate deduplicate = find(root);
+		assertNotNull(deduplicate, root.toString());
+		return deduplicate;
+	}
+
+	private static Deduplicate find(RelNode node) {
+		if (node instanceof Deduplicate) return (Deduplicate) node;
+		for (RelNode input : node.getInputs()) {
+			Deduplicate deduplicate = find(input);
+			if (deduplicate != null) return deduplicate;
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,137 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.imsi.queryEREngine.apache.calcite.util.Source;
+import org.imsi.queryEREngine.apache.calcite.util.Sources;
+import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvEnumerator;
+import org.imsi.queryEREngine.imsi.calcite.adapter.enumerable.csv.CsvFieldType;
+import org.imsi.queryEREngine.imsi.er.DataStructures.Attribute;
+import org.imsi.queryEREngine.imsi.er.DataStructures.EntityProfile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+
+class BaseBlockIndexTest {
+
+	// two, three and four byte chars of UTF-8
+	private static final String[] CITIES = { "\u0391\u03b8\u03ae\u03bd\u03b1", "\u6771\u4eac", "Z\u00fcrich",
+			"caf\u00e9 \ud83d\ude00", "\u212aelvin" };
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void buildsTheSameIndexInParallelAsSequentially() throws Exception {
+		for (String lineBreak : new String[] { "\n", "\r\n" }) {
+			File file = directory.resolve("people" + lineBreak.length() + ".csv").toFile();
+			Int2LongOpenHashMap expectedOffsets = new Int2LongOpenHashMap();
+			// large enough to be split in several shards
+			writeRows(file, 0, 60_000, lineBreak, expectedOffsets);
+			Source source = Sources.of(file);
+
+			BaseBlockIndex sequential = new BaseBlockIndex();
+			OffsetIndexBuilder sequentialOffsets = new OffsetIndexBuilder();
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			CsvEnumerator<Object[]> enumerator = new CsvEnumerator(source, new AtomicBoolean(),
+					Collections.nCopies(3, CsvFieldType.STRING), 0, sequentialOffsets);
+			int sequentialEntities = sequential.createBlockIndex(enumerator, 0, true);
+
+			BaseBlockIndex parallel = new BaseBlockIndex();
+			List<OffsetIndexBuilder> parallelOffsets = new ArrayList<>();
+			int parallelEntities = parallel.createBlockIndex(source, 0, parallelOffsets, 4, true);
+
+			assertEquals(60_000, sequentialEntities);
+			assertEquals(sequentialEntities, parallelEntities);
+			assertTrue(1 < parallelOffsets.size());
+			assertEquals(sequential.getInvertedIndex(), parallel.getInvertedIndex());
+			// the Kelvin sign lower-cases to an ASCII k
+			assertTrue(parallel.getInvertedIndex().containsKey("kelvin"));
+			assertEquals(profiles(sequential), profiles(parallel));
+			assertTrue(profiles(parallel).get("4").contains(new Attribute(1, "zo\u00eb m\u00fcller 4")));
+			assertEquals(expectedOffsets, offsets(Collections.singletonList(sequentialOffsets)));
+			assertEquals(expectedOffsets, offsets(parallelOffsets));
+			assertEquals("3,zo\u00eb m\u00fcller 3,caf\u00e9 \ud83d\ude00", readLine(file, expectedOffsets.get(3)));
+		}
+	}
+
+	@Test
+	void indexesTheAppendedRowsAtTheirByteOffsets() throws Exception {
+		File file = directory.resolve("appended.csv").toFile();
+		Int2LongOpenHashMap expectedOffsets = new Int2LongOpenHashMap();
+		writeRows(file, 0, 10, "\n", expectedOffsets);
+		long start = file.length();
+		writeRows(file, 10, 20, "\n", expectedOffsets);
+
+		BaseBlockIndex delta = new BaseBlockIndex();
+		OffsetIndexBuilder offsets = new OffsetIndexBuilder();
+		assertEquals(file.length(), delta.createDeltaBlockIndex(Sources.of(file), 0, start, offsets));
+
+		Int2LongOpenHashMap deltaOffsets = offsets(Collections.singletonList(offsets));
+		assertEquals(10, deltaOffsets.size());
+		for (int id = 10; id < 20; id++) assertEquals(expectedOffsets.get(id), deltaOffsets.get(id));
+		assertTrue(delta.getInvertedIndex().containsKey("kelvin"));
+	}
+
+	/** Appends rows [from, to), with the header first in an empty file, and records their offsets. */
+	private static void writeRows(File file, int from, int to, String lineBreak, Int2LongOpenHashMap offsets)
+			throws IOException {
+		long offset = file.length();
+		try (OutputStream output = new FileOutputStream(file, true)) {
+			if (offset == 0) {
+				byte[] header = ("id,name,city" + lineBreak).getBytes(StandardCharsets.UTF_8);
+				output.write(header);
+				offset = header.length;
+			}
+			for (int id = from; id < to; id++) {
+				String row = id + ",zo\u00eb m\u00fcller " + id + "," + CITIES[id % CITIES.length] + lineBreak;
+				byte[] bytes = row.getBytes(StandardCharsets.UTF_8);
+				offsets.put(id, offset);
+				output.write(bytes);
+				offset += bytes.length;
+			}
+		}
+	}
+
+	private Int2LongOpenHashMap offsets(List<OffsetIndexBuilder> parts) throws IOException {
+		String path = directory.resolve("offsets" + OffsetIndex.FILE_SUFFIX).toString();
+		OffsetIndexBuilder.write(parts, path);
+		Int2LongOpenHashMap offsets = new Int2LongOpenHashMap();
+		try (OffsetIndex offsetIndex = OffsetIndex.open(path)) {
+			offsetIndex.forEach(offsets::put);
+		}
+		return offsets;
+	}
+
+	private static Map<String, Set<Attribute>> profiles(BlockIndex blockIndex) {
+		Map<String, Set<Attribute>> profiles = new HashMap<>();
+		for (EntityProfile profile : blockIndex.entityProfiles)
+			profiles.put(profile.getEntityUrl(), profile.getAttributes());
+		return profiles;
+	}
+
+	private static String readLine(File file, long offset) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			raf.seek(offset);
+			return new String(raf.readLine().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.IntArrayPostingList;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
+import org.imsi.queryEREngine.imsi.er.Utilities.SerializationUtilities;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BlockIndexCompactorTest {
+
+	private static final String TABLE = "compactedPeople";
+
+	@TempDir
+	Path directory;
+
+	@AfterEach
+	void evict() {
+		BlockIndexRegistry.evict(TABLE);
+	}
+
+	private static Set<String> blocks(String... tokens) {
+		return new LinkedHashSet<>(Arrays.asList(tokens));
+	}
+
+	@Test
+	void mergesTheDeltasWithAUnion() {
+		Map<String, PostingList> invertedIndex = new HashMap<>();
+		invertedIndex.put("smith", IntArrayPostingList.of(1, 2));
+		Map<String, PostingList> delta = new HashMap<>();
+		delta.put("smith", IntArrayPostingList.of(2, 4));
+		delta.put("maria", IntArrayPostingList.of(4));
+		BlockIndexSegments.mergeInvertedIndex(invertedIndex, delta);
+		BlockIndexSegments.mergeInvertedIndex(invertedIndex, delta);
+		assertEquals(IntArrayPostingList.of(1, 2, 4), invertedIndex.get("smith"));
+		assertEquals(IntArrayPostingList.of(4), invertedIndex.get("maria"));
+
+		Map<Integer, Set<String>> entitiesToBlocks = new HashMap<>();
+		entitiesToBlocks.put(2, blocks("smith"));
+		Map<Integer, Set<String>> entitiesDelta = new HashMap<>();
+		entitiesDelta.put(2, blocks("smith", "maria"));
+		entitiesDelta.put(4, blocks("maria"));
+		BlockIndexSegments.mergeEntitiesToBlocks(entitiesToBlocks, entitiesDelta);
+		assertEquals(blocks("smith", "maria"), entitiesToBlocks.get(2));
+		assertEquals(blocks("maria"), entitiesToBlocks.get(4));
+	}
+
+	@Test
+	void compactsTheDeltasIntoTheBase() throws Exception {
+		DumpDirectories dumpDirectories = new DumpDirectories(directory.toString());
+		dumpDirectories.generateDumpDirectories();
+		BlockIndexSegments segments = new BlockIndexSegments(TABLE, 30);
+
+		Map<String, PostingList> base = new HashMap<>();
+		base.put("smith", IntArrayPostingList.of(1, 2));
+		base.put("john", IntArrayPostingList.of(2, 3));
+		MappedBlockIndex.write(base, segments.basePath());
+		Map<Integer, Set<String>> baseEntities = new HashMap<>();
+		baseEntities.put(1, blocks("smith"));
+		baseEntities.put(2, blocks("smith", "john"));
+		baseEntities.put(3, blocks("john"));
+		SerializationUtilities.storeSerializedObject(baseEntities,
+				dumpDirectories.getBlockIndexDirPath() + TABLE + "EntitiesToBlocks");
+		OffsetIndexBuilder baseOffsets = new OffsetIndexBuilder();
+		baseOffsets.add(1, 0);
+		baseOffsets.add(2, 10);
+		baseOffsets.add(3, 20);
+		baseOffsets.write(segments.baseOffsetsPath());
+
+		// the delta appends entity 4 and a new row of entity 3
+		int segment = segments.addSegment(50, 2);
+		Map<String, PostingList> delta = new HashMap<>();
+		delta.put("smith", IntArrayPostingList.of(4));
+		delta.put("maria", IntArrayPostingList.of(3, 4));
+		MappedBlockIndex.write(delta, segments.indexPath(segment));
+		Map<Integer, Set<String>> deltaEntities = new HashMap<>();
+		deltaEntities.put(3, blocks("maria"));
+		deltaEntities.put(4, blocks("smith", "maria"));
+		SerializationUtilities.storeSerializedObject(deltaEntities, segments.entitiesToBlocksPath(segment));
+		OffsetIndexBuilder deltaOffsets = new OffsetIndexBuilder();
+		deltaOffsets.add(4, 30);
+		deltaOffsets.add(3, 40);
+		deltaOffsets.write(segments.offsetsPath(segment));
+		segments.store();
+		TokenDictionary.store(segments);
+
+		BlockIndexCompactor.compact(TABLE, null);
+
+		BlockIndexSegments compacted = BlockIndexSegments.load(TABLE);
+		assertTrue(compacted.getSegments().isEmpty());
+		assertEquals(0, compacted.getAppendedEntities());
+		assertEquals(50, compacted.getIndexedBytes());
+		assertFalse(new File(segments.indexPath(segment)).exists());
+		assertFalse(new File(segments.entitiesToBlocksPath(segment)).exists());
+		assertFalse(new File(segments.offsetsPath(segment)).exists());
+		assertFalse(new File(segments.tokenDictionaryPath()).exists());
+
+		Map<String, PostingList> expected = new HashMap<>();
+		expected.put("smith", IntArrayPostingList.of(1, 2, 4));
+		expected.put("john", IntArrayPostingList.of(2, 3));
+		expected.put("maria", IntArrayPostingList.of(3, 4));
+		try (MappedBlockIndex index = MappedBlockIndex.open(segments.basePath())) {
+			assertEquals(expected, index.toMap());
+		}
+		@SuppressWarnings("unchecked")
+		Map<Integer, Set<String>> entitiesToBlocks = (Map<Integer, Set<String>>) SerializationUtilities
+				.loadSerializedObject(dumpDirectories.getBlockIndexDirPath() + TABLE + "EntitiesToBlocks");
+		assertEquals(blocks("john", "maria"), entitiesToBlocks.get(3));
+		assertEquals(blocks("smith", "maria"), entitiesToBlocks.get(4));
+
+		try (OffsetIndex offsets = OffsetIndex.open(segments.baseOffsetsPath())) {
+			assertEquals(4, offsets.size());
+			assertEquals(10, offsets.get(2));
+			assertEquals(40, offsets.get(3));
+			assertEquals(30, offsets.get(4));
+		}
+		EntityBlockCounts counts = EntityBlockCounts.open(segments.entityBlockCountsPath());
+		assertEquals(3, counts.getNoOfBlocks());
+		assertEquals(2, counts.get(3));
+		assertEquals(2, counts.get(4));
+		assertTrue(BlockIndexRegistry.isRegistered(TABLE));
+	}
+
+}
@@ -0,0 +1,84 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.IntArrayPostingList;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BlockIndexRegistryTest {
+
+	private static final String TABLE = "registeredPeople";
+
+	@TempDir
+	Path directory;
+
+	private Map<String, PostingList> invertedIndex;
+
+	@BeforeEach
+	void writeIndex() throws Exception {
+		DumpDirectories dumpDirectories = new DumpDirectories(directory.toString());
+		dumpDirectories.generateDumpDirectories();
+		invertedIndex = new HashMap<>();
+		invertedIndex.put("smith", IntArrayPostingList.of(1, 2));
+		invertedIndex.put("john", IntArrayPostingList.of(2, 3));
+		MappedBlockIndex.write(invertedIndex, dumpDirectories.getBlockIndexDirPath() + TABLE
+				+ MappedBlockIndex.FILE_SUFFIX);
+	}
+
+	@AfterEach
+	void evict() {
+		BlockIndexRegistry.evict(TABLE);
+	}
+
+	@Test
+	void chargesTheResidentIndexOfARegisteredView() {
+		long residentBytes = BlockIndexRegistry.getResidentBytes();
+		BlockIndexView view = BlockIndexRegistry.register(TABLE, null, null);
+
+		assertEquals(invertedIndex, BlockIndexRegistry.makeResident(view));
+		assertTrue(view.isResident());
+		assertTrue(residentBytes < BlockIndexRegistry.getResidentBytes());
+
+		BlockIndexRegistry.evict(TABLE);
+		assertFalse(view.isResident());
+		assertEquals(residentBytes, BlockIndexRegistry.getResidentBytes());
+	}
+
+	@Test
+	void doesNotChargeAStaleView() {
+		long residentBytes = BlockIndexRegistry.getResidentBytes();
+		BlockIndexView evicted = BlockIndexRegistry.register(TABLE, null, null);
+		BlockIndexRegistry.evict(TABLE);
+		assertEquals(invertedIndex, BlockIndexRegistry.makeResident(evicted));
+		assertFalse(evicted.isResident());
+		assertEquals(residentBytes, BlockIndexRegistry.getResidentBytes());
+
+		BlockIndexView replaced = BlockIndexRegistry.register(TABLE, null, null);
+		BlockIndexRegistry.register(TABLE, null, null);
+		assertEquals(invertedIndex, BlockIndexRegistry.makeResident(replaced));
+		assertFalse(replaced.isResident());
+		assertEquals(residentBytes, BlockIndexRegistry.getResidentBytes());
+	}
+
+	@Test
+	void servesTheStatisticWithoutLoadingTheIndex() {
+		BlockIndexStatistic statistic = new BlockIndexStatistic(invertedIndex, new HashMap<>(), TABLE);
+		BlockIndexView view = BlockIndexRegistry.register(TABLE, null, statistic);
+
+		double comparisons = new BaseBlockIndex(TABLE).getStatistic().getComparisons(null, TABLE);
+		assertEquals(statistic.getTotalComparisons(), comparisons, 1e-9);
+		assertFalse(view.isResident());
+	}
+
+}
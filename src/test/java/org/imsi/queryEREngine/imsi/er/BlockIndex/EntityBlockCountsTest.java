@@ -0,0 +1,73 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.IntArrayPostingList;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EntityBlockCountsTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void countsTheBlocksOfEveryEntity() {
+		Map<String, PostingList> invertedIndex = new LinkedHashMap<>();
+		invertedIndex.put("a", IntArrayPostingList.of(1, 2, 3));
+		invertedIndex.put("b", IntArrayPostingList.of(2, 3));
+		invertedIndex.put("c", IntArrayPostingList.of(3));
+		String path = directory.resolve("table" + EntityBlockCounts.FILE_SUFFIX).toString();
+		EntityBlockCounts.write(invertedIndex.values(), path);
+
+		EntityBlockCounts counts = EntityBlockCounts.open(path);
+		assertEquals(2, counts.getNoOfBlocks());
+		assertEquals(3, counts.size());
+		assertEquals(1, counts.get(1));
+		assertEquals(2, counts.get(2));
+		assertEquals(2, counts.get(3));
+		assertEquals(0, counts.get(4));
+	}
+
+	@Test
+	void roundTripsSparseIds() {
+		Map<String, PostingList> invertedIndex = new LinkedHashMap<>();
+		invertedIndex.put("a", IntArrayPostingList.of(5, 1_000_000, 2_000_000_000));
+		invertedIndex.put("b", IntArrayPostingList.of(5, 2_000_000_000));
+		String path = directory.resolve("sparse" + EntityBlockCounts.FILE_SUFFIX).toString();
+		EntityBlockCounts.write(invertedIndex.values(), path);
+
+		EntityBlockCounts counts = EntityBlockCounts.open(path);
+		assertEquals(2, counts.get(5));
+		assertEquals(1, counts.get(1_000_000));
+		assertEquals(2, counts.get(2_000_000_000));
+		assertEquals(0, counts.get(6));
+	}
+
+	@Test
+	void rewritingLeavesTheOpenCountsReadable() {
+		Map<String, PostingList> invertedIndex = new LinkedHashMap<>();
+		invertedIndex.put("a", IntArrayPostingList.of(1, 2));
+		String path = directory.resolve("table" + EntityBlockCounts.FILE_SUFFIX).toString();
+		EntityBlockCounts.write(invertedIndex.values(), path);
+		EntityBlockCounts before = EntityBlockCounts.open(path);
+
+		// an appended segment adds entity 3 to a new block and to the existing one
+		invertedIndex.put("a", IntArrayPostingList.of(1, 2, 3));
+		invertedIndex.put("b", IntArrayPostingList.of(2, 3));
+		EntityBlockCounts.write(invertedIndex.values(), path);
+		EntityBlockCounts after = EntityBlockCounts.open(path);
+
+		assertEquals(1, before.getNoOfBlocks());
+		assertEquals(1, before.get(2));
+		assertEquals(0, before.get(3));
+		assertEquals(2, after.getNoOfBlocks());
+		assertEquals(2, after.get(2));
+		assertEquals(2, after.get(3));
+	}
+}
@@ -0,0 +1,107 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.IntArrayPostingList;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedBlockIndexTest {
+
+	@TempDir
+	Path directory;
+
+	private static Map<String, PostingList> invertedIndex() {
+		Map<String, PostingList> invertedIndex = new HashMap<>();
+		invertedIndex.put("smith", IntArrayPostingList.of(1, 2, 300, 70_000));
+		invertedIndex.put("john", IntArrayPostingList.of(2, 5));
+		invertedIndex.put("zo\u00eb", IntArrayPostingList.of(4, 9, 11));
+		invertedIndex.put("athens", IntArrayPostingList.of(0, Integer.MAX_VALUE));
+		return invertedIndex;
+	}
+
+	@Test
+	void roundTripsTheInvertedIndex() {
+		String path = directory.resolve("people" + MappedBlockIndex.FILE_SUFFIX).toString();
+		Map<String, PostingList> invertedIndex = invertedIndex();
+		MappedBlockIndex.write(invertedIndex, path);
+
+		try (MappedBlockIndex index = MappedBlockIndex.open(path)) {
+			assertTrue(MappedBlockIndex.exists(path));
+			assertEquals(4, index.size());
+			for (Map.Entry<String, PostingList> block : invertedIndex.entrySet()) {
+				int id = index.tokenId(block.getKey());
+				assertEquals(block.getKey(), index.token(id));
+				assertEquals(block.getValue().size(), index.postingSize(id));
+				assertEquals(block.getValue(), index.postings(id));
+				assertEquals(block.getValue(), index.get(block.getKey()));
+			}
+			assertEquals(-1, index.tokenId("maria"));
+			assertNull(index.get("maria"));
+			assertNull(index.get("smit"));
+		}
+	}
+
+	@Test
+	void numbersTheTokensInByteOrder() {
+		String path = directory.resolve("people" + MappedBlockIndex.FILE_SUFFIX).toString();
+		MappedBlockIndex.write(invertedIndex(), path);
+
+		try (MappedBlockIndex index = MappedBlockIndex.open(path)) {
+			List<String> tokens = new ArrayList<>();
+			for (int id = 0; id < index.size(); id++) tokens.add(index.token(id));
+			assertEquals(Arrays.asList("athens", "john", "smith", "zo\u00eb"), tokens);
+		}
+	}
+
+	@Test
+	void looksUpTheKnownTokens() {
+		String path = directory.resolve("people" + MappedBlockIndex.FILE_SUFFIX).toString();
+		MappedBlockIndex.write(invertedIndex(), path);
+
+		try (MappedBlockIndex index = MappedBlockIndex.open(path)) {
+			HashMap<String, PostingList> blocks = index.lookup(Arrays.asList("zo\u00eb", "maria", "john", "zo\u00eb"));
+			assertEquals(2, blocks.size());
+			assertEquals(IntArrayPostingList.of(2, 5), blocks.get("john"));
+			assertEquals(IntArrayPostingList.of(4, 9, 11), blocks.get("zo\u00eb"));
+		}
+	}
+
+	@Test
+	void decodesTheIndexByDescendingBlockSize() {
+		String path = directory.resolve("people" + MappedBlockIndex.FILE_SUFFIX).toString();
+		MappedBlockIndex.write(invertedIndex(), path);
+
+		try (MappedBlockIndex index = MappedBlockIndex.open(path)) {
+			LinkedHashMap<String, PostingList> decoded = index.toMap();
+			assertEquals(invertedIndex(), decoded);
+			assertEquals(Arrays.asList("smith", "zo\u00eb"), new ArrayList<>(decoded.keySet()).subList(0, 2));
+		}
+	}
+
+	@Test
+	void writesAnEmptyIndex() {
+		String path = directory.resolve("empty" + MappedBlockIndex.FILE_SUFFIX).toString();
+		MappedBlockIndex.write(new HashMap<>(), path);
+
+		try (MappedBlockIndex index = MappedBlockIndex.open(path)) {
+			assertEquals(0, index.size());
+			assertEquals(-1, index.tokenId("smith"));
+			assertTrue(index.toMap().isEmpty());
+		}
+		assertFalse(MappedBlockIndex.exists(directory.resolve("missing").toString()));
+	}
+
+}
@@ -0,0 +1,128 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+
+class OffsetIndexBuilderTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void roundTripsADenseIndex() throws Exception {
+		OffsetIndexBuilder first = new OffsetIndexBuilder();
+		OffsetIndexBuilder second = new OffsetIndexBuilder();
+		for (int id = 0; id < 100; id += 2) first.add(id, 10L * id);
+		for (int id = 1; id < 100; id += 2) second.add(id, 10L * id);
+		String path = directory.resolve("dense" + OffsetIndex.FILE_SUFFIX).toString();
+		OffsetIndexBuilder.write(Arrays.asList(first, second), path);
+
+		try (OffsetIndex offsetIndex = OffsetIndex.open(path)) {
+			assertTrue(offsetIndex.isDense());
+			assertEquals(100, offsetIndex.size());
+			for (int id = 0; id < 100; id++) assertEquals(10L * id, offsetIndex.get(id));
+			assertEquals(OffsetIndex.MISSING, offsetIndex.get(100));
+			assertEquals(OffsetIndex.MISSING, offsetIndex.get(-1));
+		}
+	}
+
+	@Test
+	void roundTripsASparseIndex() throws Exception {
+		OffsetIndexBuilder builder = new OffsetIndexBuilder();
+		int[] ids = {1_000_000, 7, 50_000, 3, 2_000_000_000};
+		for (int id : ids) builder.add(id, id + 1L);
+		String path = directory.resolve("sparse" + OffsetIndex.FILE_SUFFIX).toString();
+		builder.write(path);
+
+		try (OffsetIndex offsetIndex = OffsetIndex.open(path)) {
+			assertFalse(offsetIndex.isDense());
+			assertEquals(ids.length, offsetIndex.size());
+			for (int id : ids) assertEquals(id + 1L, offsetIndex.get(id));
+			assertEquals(OffsetIndex.MISSING, offsetIndex.get(8));
+			Int2LongOpenHashMap entries = new Int2LongOpenHashMap();
+			offsetIndex.forEach(entries::put);
+			assertEquals(ids.length, entries.size());
+		}
+	}
+
+	@Test
+	void keepsTheLastEntryOfARepeatedIdInTheDenseLayout() throws Exception {
+		OffsetIndexBuilder first = new OffsetIndexBuilder();
+		OffsetIndexBuilder second = new OffsetIndexBuilder();
+		for (int id = 0; id < 10; id++) first.add(id, id);
+		first.add(4, 40);
+		second.add(4, 400);
+		second.add(5, 500);
+		second.add(5, 501);
+		String path = directory.resolve("dense-repeated" + OffsetIndex.FILE_SUFFIX).toString();
+		OffsetIndexBuilder.write(Arrays.asList(first, second), path);
+
+		try (OffsetIndex offsetIndex = OffsetIndex.open(path)) {
+			assertTrue(offsetIndex.isDense());
+			assertEquals(10, offsetIndex.size());
+			assertEquals(400, offsetIndex.get(4));
+			assertEquals(501, offsetIndex.get(5));
+			assertEquals(3, offsetIndex.get(3));
+		}
+	}
+
+	@Test
+	void keepsTheLastEntryOfARepeatedIdInTheSparseLayout() throws Exception {
+		OffsetIndexBuilder first = new OffsetIndexBuilder();
+		OffsetIndexBuilder second = new OffsetIndexBuilder();
+		for (int i = 0; i < 50; i++) first.add(i * 100_000, i);
+		first.add(300_000, 30);
+		second.add(300_000, 300);
+		second.add(9, 9);
+		second.add(9, 90);
+		String path = directory.resolve("sparse-repeated" + OffsetIndex.FILE_SUFFIX).toString();
+		OffsetIndexBuilder.write(Arrays.asList(first, second), path);
+
+		try (OffsetIndex offsetIndex = OffsetIndex.open(path)) {
+			assertFalse(offsetIndex.isDense());
+			assertEquals(51, offsetIndex.size());
+			assertEquals(300, offsetIndex.get(300_000));
+			assertEquals(90, offsetIndex.get(9));
+			for (int i = 0; i < 50; i++)
+				if (i != 3) assertEquals(i, offsetIndex.get(i * 100_000));
+		}
+	}
+
+	@Test
+	void readsTheNewestOffsetOfTheDeltaSegments() throws Exception {
+		OffsetIndexBuilder base = new OffsetIndexBuilder();
+		for (int id = 0; id < 10; id++) base.add(id, id);
+		OffsetIndexBuilder delta1 = new OffsetIndexBuilder();
+		delta1.add(3, 30);
+		delta1.add(10, 100);
+		OffsetIndexBuilder delta2 = new OffsetIndexBuilder();
+		delta2.add(3, 300);
+		String basePath = directory.resolve("base" + OffsetIndex.FILE_SUFFIX).toString();
+		String delta1Path = directory.resolve("base.0" + OffsetIndex.FILE_SUFFIX).toString();
+		String delta2Path = directory.resolve("base.1" + OffsetIndex.FILE_SUFFIX).toString();
+		base.write(basePath);
+		delta1.write(delta1Path);
+		delta2.write(delta2Path);
+
+		try (OffsetIndex offsetIndex = OffsetIndex.open(basePath, Arrays.asList(delta1Path, delta2Path))) {
+			assertEquals(13, offsetIndex.size());
+			assertEquals(300, offsetIndex.get(3));
+			assertEquals(100, offsetIndex.get(10));
+			assertEquals(4, offsetIndex.get(4));
+			assertEquals(OffsetIndex.MISSING, offsetIndex.get(11));
+			Int2LongOpenHashMap entries = new Int2LongOpenHashMap();
+			offsetIndex.forEach(entries::put);
+			assertEquals(11, entries.size());
+			assertEquals(300, entries.get(3));
+		}
+	}
+}
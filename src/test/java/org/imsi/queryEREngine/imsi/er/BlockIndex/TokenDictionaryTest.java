@@ -0,0 +1,92 @@
+package org.imsi.queryEREngine.imsi.er.BlockIndex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.IntArrayPostingList;
+import org.imsi.queryEREngine.imsi.er.DataStructures.PostingList;
+import org.imsi.queryEREngine.imsi.er.Utilities.DumpDirectories;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TokenDictionaryTest {
+
+	@TempDir
+	Path directory;
+
+	private static Map<String, PostingList> index(String... tokens) {
+		Map<String, PostingList> invertedIndex = new LinkedHashMap<>();
+		for (String token : tokens) invertedIndex.put(token, IntArrayPostingList.of(1, 2));
+		return invertedIndex;
+	}
+
+	private BlockIndexSegments segments() throws Exception {
+		new DumpDirectories(directory.toString()).generateDumpDirectories();
+		BlockIndexSegments segments = new BlockIndexSegments("people", 0);
+		MappedBlockIndex.write(index("smith", "john"), segments.basePath());
+		return segments;
+	}
+
+	private static void append(BlockIndexSegments segments, String... tokens) {
+		int segment = segments.addSegment(0, 1);
+		MappedBlockIndex.write(index(tokens), segments.indexPath(segment));
+		TokenDictionary.store(segments);
+	}
+
+	@Test
+	void numbersAppendedTokensAfterTheBase() throws Exception {
+		BlockIndexSegments segments = segments();
+		MappedBlockIndex base = MappedBlockIndex.open(segments.basePath());
+		append(segments, "maria", "smith");
+		List<MappedBlockIndex> deltas = Arrays.asList(MappedBlockIndex.open(segments.indexPath(0)));
+
+		TokenDictionary dictionary = new TokenDictionary(base, deltas);
+		assertEquals(3, dictionary.size());
+		assertEquals(base.tokenId("smith"), dictionary.id("smith"));
+		assertEquals(2, dictionary.id("maria"));
+		assertEquals("maria", dictionary.token(2));
+		assertEquals(TokenDictionary.MISSING, dictionary.id("athens"));
+		assertEquals(2, dictionary.ids(Arrays.asList("maria", " john ", "athens")).size());
+	}
+
+	@Test
+	void readsTheStoredAppendedTokens() throws Exception {
+		BlockIndexSegments segments = segments();
+		MappedBlockIndex base = MappedBlockIndex.open(segments.basePath());
+		append(segments, "maria", "smith");
+		append(segments, "athens", "maria", "patras");
+		List<MappedBlockIndex> deltas = Arrays.asList(MappedBlockIndex.open(segments.indexPath(0)),
+				MappedBlockIndex.open(segments.indexPath(1)));
+		TokenDictionary found = new TokenDictionary(base, deltas);
+		assertTrue(new File(segments.tokenDictionaryPath()).exists());
+
+		// the stored tokens are used even without the deltas that they were found in
+		TokenDictionary stored = TokenDictionary.open(base, deltas.subList(0, 1), segments);
+		assertEquals(found.size(), stored.size());
+		for (String token : Arrays.asList("smith", "john", "maria", "athens", "patras"))
+			assertEquals(found.id(token), stored.id(token));
+	}
+
+	@Test
+	void findsTheTokensAgainWhenTheStoredOnesAreStale() throws Exception {
+		BlockIndexSegments segments = segments();
+		MappedBlockIndex base = MappedBlockIndex.open(segments.basePath());
+		append(segments, "maria");
+		append(segments, "athens");
+		segments.removeSegments(Collections.singletonList(0));
+
+		List<MappedBlockIndex> deltas = Arrays.asList(MappedBlockIndex.open(segments.indexPath(1)));
+		TokenDictionary dictionary = TokenDictionary.open(base, deltas, segments);
+		assertEquals(3, dictionary.size());
+		assertEquals(2, dictionary.id("athens"));
+		assertEquals(TokenDictionary.MISSING, dictionary.id("maria"));
+	}
+}
@@ -0,0 +1,42 @@
+package org.imsi.queryEREngine.imsi.er.DataStructures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class EntityIndexTest {
+
+	@Test
+	void weighsTheCommonBlocksOfAPairInItsFirstBlock() {
+		List<AbstractBlock> blocks = new ArrayList<>();
+		blocks.add(new UnilateralBlock(new int[] {0, 1, 2}));
+		blocks.add(new UnilateralBlock(new int[] {2, 3}));
+		blocks.add(new UnilateralBlock(new int[] {0, 1}));
+		EntityIndex entityIndex = new EntityIndex(blocks);
+		Comparison comparison = new Comparison(false, 0, 1);
+
+		double expected = Math.log10(blocks.get(0).getTotalBlockAssignments()) / blocks.get(0).getTotalBlockAssignments()
+				+ Math.log10(blocks.get(2).getTotalBlockAssignments()) / blocks.get(2).getTotalBlockAssignments();
+		assertEquals(expected, entityIndex.getNoOfCommonBlocks(0, comparison, blocks), 1e-12);
+		assertEquals(-1, entityIndex.getNoOfCommonBlocks(2, comparison, blocks));
+		assertEquals(0, entityIndex.getNoOfCommonBlocks(1, new Comparison(false, 0, 3), blocks));
+	}
+
+	@Test
+	void countsTheNeighbourhoodOfAnEntityInOnePass() {
+		List<AbstractBlock> blocks = new ArrayList<>();
+		blocks.add(new UnilateralBlock(new int[] {0, 1, 2}));
+		blocks.add(new UnilateralBlock(new int[] {0, 1}));
+		EntityIndex entityIndex = new EntityIndex(blocks);
+		int[] commonBlocks = new int[entityIndex.getNoOfEntities()];
+		int[] neighbours = new int[entityIndex.getNoOfEntities()];
+
+		int noOfNeighbours = entityIndex.getNeighbourhood(0, blocks.toArray(new AbstractBlock[0]), commonBlocks, neighbours);
+		assertEquals(2, noOfNeighbours);
+		assertEquals(2, commonBlocks[1]);
+		assertEquals(1, commonBlocks[2]);
+	}
+}
@@ -0,0 +1,91 @@
+package org.imsi.queryEREngine.imsi.er.DataStructures;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class IntArrayPostingListTest {
+
+	@Test
+	void sortsAndDropsDuplicates() {
+		PostingList postingList = IntArrayPostingList.of(7, 3, 7, 1, 3);
+		assertArrayEquals(new int[] { 1, 3, 7 }, postingList.toIntArray());
+		assertEquals(3, postingList.size());
+		assertEquals(3, postingList.getInt(1));
+		assertTrue(postingList.contains(7));
+		assertFalse(postingList.contains(2));
+		assertSame(IntArrayPostingList.EMPTY, IntArrayPostingList.of());
+	}
+
+	@Test
+	void combinesListsAsSets() {
+		Random random = new Random(13);
+		for (int round = 0; round < 200; round++) {
+			// lengths far apart take the binary search path of intersectionCount
+			TreeSet<Integer> set1 = randomSet(random, 1 + random.nextInt(round % 2 == 0 ? 10 : 2000));
+			TreeSet<Integer> set2 = randomSet(random, 1 + random.nextInt(2000));
+			PostingList list1 = of(set1);
+			PostingList list2 = of(set2);
+
+			TreeSet<Integer> intersection = new TreeSet<>(set1);
+			intersection.retainAll(set2);
+			TreeSet<Integer> difference = new TreeSet<>(set1);
+			difference.removeAll(set2);
+			TreeSet<Integer> union = new TreeSet<>(set1);
+			union.addAll(set2);
+
+			assertEquals(intersection.size(), list1.intersectionCount(list2));
+			assertEquals(intersection.size(), list2.intersectionCount(list1));
+			assertEquals(of(intersection), list1.intersect(list2));
+			assertEquals(of(difference), list1.difference(list2));
+			assertEquals(of(union), list1.union(list2));
+		}
+	}
+
+	@Test
+	void buildsFromUnorderedIds() {
+		PostingListBuilder builder = new PostingListBuilder();
+		for (int id : new int[] { 5, 5, 2, 9, 2 }) builder.add(id);
+		PostingListBuilder other = new PostingListBuilder();
+		other.add(1);
+		builder.addAll(other);
+		builder.addAll(IntArrayPostingList.of(9, 12));
+		assertEquals(IntArrayPostingList.of(1, 2, 5, 9, 12), builder.build());
+	}
+
+	@Test
+	void serializesTheGaps() throws Exception {
+		PostingList postingList = IntArrayPostingList.of(0, 1, 127, 128, 16_384, Integer.MAX_VALUE);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(postingList);
+			out.writeObject(IntArrayPostingList.of());
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			assertEquals(postingList, in.readObject());
+			assertSame(IntArrayPostingList.EMPTY, in.readObject());
+		}
+	}
+
+	private static TreeSet<Integer> randomSet(Random random, int size) {
+		TreeSet<Integer> set = new TreeSet<>();
+		while (set.size() < size) set.add(random.nextInt(5000));
+		return set;
+	}
+
+	private static PostingList of(TreeSet<Integer> set) {
+		return IntArrayPostingList.wrap(set.stream().mapToInt(Integer::intValue).toArray());
+	}
+
+}
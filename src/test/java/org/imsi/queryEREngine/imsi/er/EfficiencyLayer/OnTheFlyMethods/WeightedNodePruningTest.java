@@ -0,0 +1,39 @@
+package org.imsi.queryEREngine.imsi.er.EfficiencyLayer.OnTheFlyMethods;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
+import org.imsi.queryEREngine.imsi.er.DataStructures.IdDuplicates;
+import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
+import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.ComparisonRefinement.UnilateralDuplicatePropagation;
+import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.MetaBlocking.WeightingScheme;
+import org.junit.jupiter.api.Test;
+
+class WeightedNodePruningTest {
+
+	@Test
+	void keepsNeighboursAboveTheAverageWeight() {
+		List<AbstractBlock> blocks = new ArrayList<>();
+		blocks.add(new UnilateralBlock(new int[] {0, 1, 2}));
+		blocks.add(new UnilateralBlock(new int[] {0, 1}));
+		blocks.add(new UnilateralBlock(new int[] {2, 3}));
+		blocks.add(new UnilateralBlock(new int[] {1, 3}));
+		Set<IdDuplicates> duplicates = new HashSet<>();
+		duplicates.add(new IdDuplicates(0, 1));
+		duplicates.add(new IdDuplicates(2, 3));
+
+		WeightedNodePruning pruning = new WeightedNodePruning(new UnilateralDuplicatePropagation(duplicates),
+				WeightingScheme.CBS);
+		pruning.applyProcessing(blocks);
+
+		// 0 keeps 1, 1 keeps 0, 2 keeps all of its three neighbours, 3 keeps 1 and 2
+		double[] performance = pruning.getPerformance();
+		assertEquals(1.0, performance[0]);
+		assertEquals(7, performance[2]);
+	}
+}
@@ -0,0 +1,78 @@
+package org.imsi.queryEREngine.imsi.er.MetaBlocking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
+import org.imsi.queryEREngine.imsi.er.DataStructures.DecomposedBlock;
+import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
+import org.junit.jupiter.api.Test;
+
+import org.roaringbitmap.RoaringBitmap;
+
+class BlockGraphPruningTest {
+
+	@Test
+	void ordersThePairsByWeightUnderABudget() {
+		for (NodePruning.Mode nodePruning : new NodePruning.Mode[] { null, NodePruning.Mode.WEIGHTED }) {
+			List<AbstractBlock> blocks = randomBlocks(new Random(5));
+			BlockGraph graph = new BlockGraph(blocks);
+			DecomposedBlock ordered = prune(blocks, nodePruning, true);
+			DecomposedBlock unordered = prune(blocks, nodePruning, false);
+
+			assertArrayEquals(pairs(unordered), pairs(ordered));
+			double previous = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < ordered.getEntities1().length; i++) {
+				int entity1 = local(graph, ordered.getEntities1()[i]);
+				int entity2 = local(graph, ordered.getEntities2()[i]);
+				float weight = (float) (graph.getNoOfCommonBlocks(entity1, entity2) * graph.getEntityWeight(entity1)
+						* graph.getEntityWeight(entity2));
+				assertTrue(weight <= previous);
+				previous = weight;
+			}
+		}
+	}
+
+	private static DecomposedBlock prune(List<AbstractBlock> blocks, NodePruning.Mode nodePruning, boolean orderByWeight) {
+		List<AbstractBlock> pruned = new ArrayList<>(blocks);
+		new BlockGraphPruning(false, false, true, 0.5, nodePruning).setOrderByWeight(orderByWeight)
+				.applyProcessing(pruned);
+		assertEquals(1, pruned.size());
+		return (DecomposedBlock) pruned.get(0);
+	}
+
+	/** The pairs of a decomposed block, packed and sorted. */
+	private static long[] pairs(DecomposedBlock block) {
+		long[] pairs = new long[block.getEntities1().length];
+		for (int i = 0; i < pairs.length; i++) pairs[i] = TopKEdges.edge(block.getEntities1()[i], block.getEntities2()[i]);
+		Arrays.sort(pairs);
+		return pairs;
+	}
+
+	private static int local(BlockGraph graph, int id) {
+		for (int entity = 0; entity < graph.getNoOfEntities(); entity++) {
+			if (graph.getEntityId(entity) == id) return entity;
+		}
+		throw new IllegalArgumentException("Unknown entity " + id);
+	}
+
+	private static List<AbstractBlock> randomBlocks(Random random) {
+		RoaringBitmap qIds = new RoaringBitmap();
+		for (int e = 0; e < 200; e += 3) qIds.add(e);
+		List<AbstractBlock> blocks = new ArrayList<>();
+		for (int b = 0; b < 80; b++) {
+			RoaringBitmap members = new RoaringBitmap();
+			int size = 2 + random.nextInt(10);
+			while (members.getCardinality() < size) members.add(random.nextInt(200));
+			blocks.add(new UnilateralBlock(members.toArray(), qIds));
+		}
+		return blocks;
+	}
+
+}
@@ -0,0 +1,108 @@
+package org.imsi.queryEREngine.imsi.er.MetaBlocking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
+import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
+import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.BlockRefinement.ComparisonsBasedBlockPurging;
+import org.junit.jupiter.api.Test;
+
+import org.roaringbitmap.RoaringBitmap;
+
+class BlockGraphTest {
+
+	@Test
+	void indexesTheBlocksOfEveryEntity() {
+		RoaringBitmap qIds = RoaringBitmap.bitmapOf(10);
+		List<AbstractBlock> blocks = new ArrayList<>();
+		blocks.add(new UnilateralBlock(new int[] { 10, 20, 30 }, qIds));
+		blocks.add(new UnilateralBlock(new int[] { 10, 20 }, qIds));
+		BlockGraph graph = new BlockGraph(blocks);
+
+		assertEquals(3, graph.getNoOfEntities());
+		assertEquals(2, graph.getNoOfBlocks());
+		assertEquals(5, graph.getNoOfAssignments());
+		assertEquals(Arrays.asList("[10, 20, 30]", "[10, 20]"), blocks(graph));
+		assertEquals(2, graph.getNoOfCommonBlocks(0, 1));
+		assertEquals(1, graph.getNoOfCommonBlocks(1, 2));
+		assertEquals(2, graph.getNoOfBlocks(0));
+		// one query entity against the other two
+		assertEquals(2, graph.getNoOfComparisons(1));
+		assertEquals(Math.log10(2.0 / 1), graph.getEntityWeight(2), 1e-12);
+	}
+
+	@Test
+	void purgesAsComparisonsBasedBlockPurging() {
+		Random random = new Random(23);
+		int purgedBlocks = 0;
+		for (int round = 0; round < 20; round++) {
+			RoaringBitmap qIds = new RoaringBitmap();
+			for (int e = 0; e < 300; e += 1 + random.nextInt(4)) qIds.add(e);
+			List<AbstractBlock> blocks = new ArrayList<>();
+			for (int b = 0; b < 60; b++) {
+				RoaringBitmap members = new RoaringBitmap();
+				int size = 2 + (int) (150 / Math.pow(b + 1, 1.2));
+				while (members.getCardinality() < size) members.add(random.nextInt(300));
+				UnilateralBlock block = new UnilateralBlock(members.toArray(), qIds);
+				block.setProtected(b == 0 && round % 2 == 0);
+				blocks.add(block);
+			}
+			BlockGraph graph = new BlockGraph(blocks);
+			graph.purge(1.025);
+			List<AbstractBlock> purged = new ArrayList<>(blocks);
+			new ComparisonsBasedBlockPurging(1.025).applyProcessing(purged);
+
+			assertEquals(blocks(purged), blocks(graph));
+			purgedBlocks += blocks.size() - purged.size();
+		}
+		assertTrue(0 < purgedBlocks);
+	}
+
+	@Test
+	void filtersEveryEntityToItsSmallestBlocks() {
+		RoaringBitmap qIds = RoaringBitmap.bitmapOf(1);
+		List<AbstractBlock> blocks = new ArrayList<>();
+		blocks.add(new UnilateralBlock(new int[] { 1, 2, 3, 4, 5 }, qIds));
+		blocks.add(new UnilateralBlock(new int[] { 1, 3, 4 }, qIds));
+		blocks.add(new UnilateralBlock(new int[] { 1, 2 }, qIds));
+		blocks.add(new UnilateralBlock(new int[] { 4, 5 }, qIds));
+		BlockGraph graph = new BlockGraph(blocks);
+		graph.filter(0.5);
+
+		// {4, 5} has no query entity, and only 4 and 5 are left in the largest block
+		assertEquals(Arrays.asList("[1, 2]", "[1, 3, 4]"), blocks(graph));
+		assertEquals(2, graph.getNoOfBlocks(0));
+		assertEquals(1, graph.getNoOfBlocks(1));
+	}
+
+	/** The blocks of a graph as sorted lists of entity ids. */
+	private static List<String> blocks(BlockGraph graph) {
+		List<String> blocks = new ArrayList<>();
+		for (int b = 0; b < graph.getNoOfBlocks(); b++) {
+			int[] ids = new int[graph.getBlockStarts()[b + 1] - graph.getBlockStarts()[b]];
+			for (int i = 0; i < ids.length; i++) ids[i] = graph.getEntityId(graph.getBlockEntities()[graph.getBlockStarts()[b] + i]);
+			blocks.add(Arrays.toString(ids));
+		}
+		Collections.sort(blocks);
+		return blocks;
+	}
+
+	private static List<String> blocks(List<AbstractBlock> blockList) {
+		List<String> blocks = new ArrayList<>();
+		for (AbstractBlock block : blockList) {
+			int[] ids = ((UnilateralBlock) block).getEntities().clone();
+			Arrays.sort(ids);
+			blocks.add(Arrays.toString(ids));
+		}
+		Collections.sort(blocks);
+		return blocks;
+	}
+
+}
@@ -0,0 +1,123 @@
+package org.imsi.queryEREngine.imsi.er.MetaBlocking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
+import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
+import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.MetaBlocking.WeightingScheme;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Latency of {@link NodePruning} on skewed synthetic block graphs, in the common pool and on a
+ * single thread, against the sequential {@link WeightedNodePruning}. Block sizes follow a Zipf
+ * law and a few hub entities are placed in a large share of the blocks, so a handful of
+ * neighbourhoods dominate the work. Every entity is a query entity.
+ *
+ * Run with {@code mvn test-compile} and then the main method, with the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodePruningBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Graph {
+		@Param({ "20000" })
+		int entities;
+
+		@Param({ "5000" })
+		int blocks;
+
+		@Param({ "16" })
+		int hubs;
+
+		List<AbstractBlock> blockList;
+		BlockGraph graph;
+		ForkJoinPool singleThread;
+
+		@Setup
+		public void setup() {
+			blockList = skewedBlocks(entities, blocks, hubs, new Random(42));
+			graph = new BlockGraph(blockList);
+			singleThread = new ForkJoinPool(1);
+		}
+
+		@TearDown
+		public void tearDown() {
+			singleThread.shutdown();
+		}
+	}
+
+	/** Blocks of Zipf distributed sizes over random entities, with every hub in a third of them. */
+	static List<AbstractBlock> skewedBlocks(int entities, int blocks, int hubs, Random random) {
+		RoaringBitmap qIds = new RoaringBitmap();
+		qIds.add(0L, entities);
+		List<AbstractBlock> blockList = new ArrayList<>();
+		for (int b = 0; b < blocks; b++) {
+			int size = 2 + (int) (entities / 20 / Math.pow(b + 1, 0.8));
+			IntOpenHashSet members = new IntOpenHashSet();
+			while (members.size() < size) members.add(hubs + random.nextInt(entities - hubs));
+			for (int hub = 0; hub < hubs; hub++) {
+				if (random.nextInt(3) == 0) members.add(hub);
+			}
+			int[] blockEntities = members.toIntArray();
+			Arrays.sort(blockEntities);
+			blockList.add(new UnilateralBlock(blockEntities, qIds));
+		}
+		return blockList;
+	}
+
+	@Benchmark
+	public long[] weighted(Graph graph) {
+		return new NodePruning(NodePruning.Mode.WEIGHTED, WeightingScheme.ECBS).prune(graph.graph);
+	}
+
+	@Benchmark
+	public long[] weightedSingleThread(Graph graph) {
+		return new NodePruning(NodePruning.Mode.WEIGHTED, WeightingScheme.ECBS, graph.singleThread).prune(graph.graph);
+	}
+
+	@Benchmark
+	public long[] cardinality(Graph graph) {
+		return new NodePruning(NodePruning.Mode.CARDINALITY, WeightingScheme.ECBS).prune(graph.graph);
+	}
+
+	@Benchmark
+	public List<AbstractBlock> sequentialWeighted(Graph graph) {
+		List<AbstractBlock> blocks = new ArrayList<>(graph.blockList);
+		new WeightedNodePruning(WeightingScheme.ECBS).applyProcessing(blocks);
+		return blocks;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(NodePruningBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,192 @@
+package org.imsi.queryEREngine.imsi.er.MetaBlocking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
+import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
+import org.imsi.queryEREngine.imsi.er.EfficiencyLayer.MetaBlocking.WeightingScheme;
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongAVLTreeSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+
+import org.roaringbitmap.RoaringBitmap;
+
+class NodePruningTest {
+
+	@Test
+	void keepsTheEdgesAboveTheAverageOfTheNeighbourhood() {
+		// 0 shares two blocks with 1 and one with 2 and 3: the average is 4 / 3
+		RoaringBitmap qIds = RoaringBitmap.bitmapOf(0);
+		List<AbstractBlock> blocks = new ArrayList<>();
+		blocks.add(new UnilateralBlock(new int[] { 0, 1, 2 }, qIds));
+		blocks.add(new UnilateralBlock(new int[] { 0, 1, 3 }, qIds));
+		BlockGraph graph = new BlockGraph(blocks);
+
+		long[] edges = new NodePruning(NodePruning.Mode.WEIGHTED, WeightingScheme.CBS).prune(graph);
+		assertArrayEquals(new long[] { TopKEdges.edge(0, 1) }, edges);
+	}
+
+	@Test
+	void matchesABruteForceWeightedNodePruning() {
+		ForkJoinPool singleThread = new ForkJoinPool(1);
+		try {
+			for (WeightingScheme scheme : new WeightingScheme[] { WeightingScheme.ARCS, WeightingScheme.CBS,
+					WeightingScheme.ECBS, WeightingScheme.JS }) {
+				BlockGraph graph = new BlockGraph(randomBlocks(new Random(7), 500, 200, 0.5));
+				long[] expected = weighted(graph, scheme);
+				assertArrayEquals(expected, new NodePruning(NodePruning.Mode.WEIGHTED, scheme).prune(graph), scheme.name());
+				assertArrayEquals(expected,
+						new NodePruning(NodePruning.Mode.WEIGHTED, scheme, singleThread).prune(graph), scheme.name());
+			}
+		} finally {
+			singleThread.shutdown();
+		}
+	}
+
+	@Test
+	void splitsTheNeighbourhoodOfAHub() {
+		// the query entity 0 is in a block larger than the hub threshold
+		int noOfEntities = NodePruning.HUB_ASSIGNMENTS + 1000;
+		RoaringBitmap qIds = RoaringBitmap.bitmapOf(0);
+		List<AbstractBlock> blocks = new ArrayList<>();
+		int[] hubBlock = new int[noOfEntities];
+		for (int e = 0; e < noOfEntities; e++) hubBlock[e] = e;
+		blocks.add(new UnilateralBlock(hubBlock, qIds));
+		Random random = new Random(11);
+		for (int b = 0; b < 50; b++) {
+			int[] block = { 0, 1 + random.nextInt(noOfEntities - 1) };
+			blocks.add(new UnilateralBlock(block, qIds));
+		}
+		BlockGraph graph = new BlockGraph(blocks);
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			long[] expected = weighted(graph, WeightingScheme.CBS);
+			assertTrue(0 < expected.length);
+			assertArrayEquals(expected, new NodePruning(NodePruning.Mode.WEIGHTED, WeightingScheme.CBS, pool).prune(graph));
+
+			long[] edges = new NodePruning(NodePruning.Mode.CARDINALITY, WeightingScheme.CBS, pool).prune(graph);
+			assertCardinality(graph, WeightingScheme.CBS, edges);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void keepsTheHeaviestEdgesOfEveryQueryEntity() {
+		for (WeightingScheme scheme : new WeightingScheme[] { WeightingScheme.CBS, WeightingScheme.JS }) {
+			BlockGraph graph = new BlockGraph(randomBlocks(new Random(3), 400, 150, 0.3));
+			long[] edges = new NodePruning(NodePruning.Mode.CARDINALITY, scheme).prune(graph);
+			assertCardinality(graph, scheme, edges);
+		}
+	}
+
+	@Test
+	void rejectsEnhancedJaccard() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new NodePruning(NodePruning.Mode.WEIGHTED, WeightingScheme.EJS));
+	}
+
+	/** Blocks of random entities, a share of which are query entities. */
+	private static List<AbstractBlock> randomBlocks(Random random, int entities, int blocks, double queryShare) {
+		RoaringBitmap qIds = new RoaringBitmap();
+		for (int e = 0; e < entities; e++) {
+			if (random.nextDouble() < queryShare) qIds.add(e);
+		}
+		List<AbstractBlock> blockList = new ArrayList<>();
+		for (int b = 0; b < blocks; b++) {
+			RoaringBitmap members = new RoaringBitmap();
+			int size = 2 + random.nextInt(20);
+			while (members.getCardinality() < size) members.add(random.nextInt(entities));
+			blockList.add(new UnilateralBlock(members.toArray(), qIds));
+		}
+		return blockList;
+	}
+
+	/** The neighbours of an entity in the order they are first met, and the weights of their edges. */
+	private static double[] weigh(BlockGraph graph, WeightingScheme scheme, int entity, IntArrayList neighbours) {
+		double[] commonBlocks = new double[graph.getNoOfEntities()];
+		int[] blockStarts = graph.getBlockStarts();
+		int[] blockEntities = graph.getBlockEntities();
+		int[] entityStarts = graph.getEntityStarts();
+		for (int i = entityStarts[entity]; i < entityStarts[entity + 1]; i++) {
+			int block = graph.getEntityBlocks()[i];
+			for (int j = blockStarts[block]; j < blockStarts[block + 1]; j++) {
+				int neighbour = blockEntities[j];
+				if (neighbour == entity) continue;
+				if (commonBlocks[neighbour] == 0) neighbours.add(neighbour);
+				commonBlocks[neighbour] += scheme == WeightingScheme.ARCS ? 1 / graph.getNoOfComparisons(block) : 1;
+			}
+		}
+		double[] weights = new double[neighbours.size()];
+		for (int n = 0; n < weights.length; n++) {
+			int neighbour = neighbours.getInt(n);
+			double common = commonBlocks[neighbour];
+			if (scheme == WeightingScheme.ECBS) {
+				weights[n] = common * graph.getEntityWeight(entity) * graph.getEntityWeight(neighbour);
+			} else if (scheme == WeightingScheme.JS) {
+				weights[n] = common / (graph.getNoOfBlocks(entity) + graph.getNoOfBlocks(neighbour) - common);
+			} else {
+				weights[n] = common;
+			}
+		}
+		return weights;
+	}
+
+	private static long[] weighted(BlockGraph graph, WeightingScheme scheme) {
+		LongSortedSet edges = new LongAVLTreeSet();
+		for (int entity = 0; entity < graph.getNoOfEntities(); entity++) {
+			if (!graph.isQueryEntity(entity)) continue;
+			IntArrayList neighbours = new IntArrayList();
+			double[] weights = weigh(graph, scheme, entity, neighbours);
+			double average = 0;
+			for (double weight : weights) average += weight;
+			average /= weights.length;
+			for (int n = 0; n < weights.length; n++) {
+				if (average <= weights[n]) edges.add(edge(entity, neighbours.getInt(n)));
+			}
+		}
+		return edges.toLongArray();
+	}
+
+	/**
+	 * Every query entity keeps the edges heavier than its k-th heaviest one, and every kept edge
+	 * is among the k heaviest of one of its entities.
+	 */
+	private static void assertCardinality(BlockGraph graph, WeightingScheme scheme, long[] edges) {
+		int k = (int) Math.max(1, graph.getNoOfAssignments() / graph.getNoOfEntities());
+		LongSortedSet kept = new LongAVLTreeSet(edges);
+		assertEquals(edges.length, kept.size());
+		LongSortedSet justified = new LongAVLTreeSet();
+		for (int entity = 0; entity < graph.getNoOfEntities(); entity++) {
+			if (!graph.isQueryEntity(entity)) continue;
+			IntArrayList neighbours = new IntArrayList();
+			double[] weights = weigh(graph, scheme, entity, neighbours);
+			double[] sorted = weights.clone();
+			Arrays.sort(sorted);
+			float kthWeight = sorted.length < k ? Float.NEGATIVE_INFINITY : (float) sorted[sorted.length - k];
+			for (int n = 0; n < weights.length; n++) {
+				long edge = edge(entity, neighbours.getInt(n));
+				if (kthWeight < (float) weights[n]) assertTrue(kept.contains(edge));
+				if (kthWeight <= (float) weights[n]) justified.add(edge);
+			}
+		}
+		for (long edge : edges) assertTrue(justified.contains(edge));
+	}
+
+	private static long edge(int entity1, int entity2) {
+		return entity1 < entity2 ? TopKEdges.edge(entity1, entity2) : TopKEdges.edge(entity2, entity1);
+	}
+
+}
@@ -0,0 +1,193 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.arrow.flight.FlightServer;
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.flight.Location;
+import org.apache.arrow.flight.NoOpFlightProducer;
+import org.apache.arrow.flight.PutResult;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.UInt4Vector;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryEncoder;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.roaringbitmap.RoaringBitmap;
+
+class ArrowDataHandlerTest {
+
+	private BufferAllocator allocator;
+	private RecordingProducer producer;
+	private FlightServer server;
+
+	@BeforeEach
+	void startServer() throws Exception {
+		allocator = new RootAllocator();
+		producer = new RecordingProducer(allocator);
+		server = FlightServer.builder(allocator, Location.forGrpcInsecure("0.0.0.0", 0), producer).build().start();
+	}
+
+	@AfterEach
+	void stopServer() throws Exception {
+		server.close();
+		allocator.close();
+	}
+
+	@Test
+	void putsTheCandidateEntitiesAsTheDictionaryTable() {
+		HashMap<Integer, Object[]> data = new HashMap<>();
+		for (int id = 0; id < 100; id++) data.put(id, new Object[] { id, "name" + id, id % 2 == 0 ? "athens" : null });
+		RoaringBitmap candidates = new RoaringBitmap();
+		candidates.add(0L, 50L);
+
+		try (ArrowDataHandler handler = new ArrowDataHandler(data, candidates, new int[] { 1, 2 }, null)) {
+			assertEquals(1, handler.putDict(new ArrowFlightConnector(server.getPort()), "dict"));
+		}
+		Map<Integer, List<String>> rows = producer.rows;
+		assertEquals(50, rows.size());
+		// the names are distinct and sent as is, the cities repeat and are dictionary encoded
+		assertEquals(Arrays.asList("name7", ""), rows.get(7));
+		assertEquals(Arrays.asList("name8", "athens"), rows.get(8));
+		assertEquals(Arrays.asList(false, true), producer.encoded);
+	}
+
+	@Test
+	void exchangesThePairsInBatches() {
+		int noOfPairs = (int) (2.5 * DeduplicationProperties.getArrowBatchBytes() / 8);
+		int[] id1s = new int[noOfPairs];
+		int[] id2s = new int[noOfPairs];
+		for (int i = 0; i < noOfPairs; i++) {
+			id1s[i] = i;
+			id2s[i] = i + 1;
+		}
+		List<Integer> results = new ArrayList<>();
+		try (ArrowDataHandler handler = new ArrowDataHandler(new HashMap<>(), Collections.emptyList())) {
+			int batches = handler.exchangePairs(new ArrowFlightConnector(server.getPort()), "pairs", "dict", id1s, id2s,
+					root -> results.add(((IntVector) root.getVector(0)).get(0)));
+			assertEquals(3, batches);
+		}
+		assertEquals(noOfPairs, results.stream().mapToInt(Integer::intValue).sum());
+		assertEquals(noOfPairs, producer.values);
+		assertEquals(Arrays.asList("pairs", "dict"), producer.path);
+	}
+
+	@Test
+	void exchangesTheBlocksInBatches() {
+		List<int[]> blocks = new ArrayList<>();
+		int[] block = new int[100];
+		for (int i = 0; i < block.length; i++) block[i] = 3 * i;
+		int noOfBlocks = (int) (2.5 * DeduplicationProperties.getArrowBatchBytes() / (4 + 4 * block.length));
+		for (int b = 0; b < noOfBlocks; b++) blocks.add(block);
+		List<Integer> results = new ArrayList<>();
+		try (ArrowDataHandler handler = new ArrowDataHandler(new HashMap<>(), blocks)) {
+			int batches = handler.exchangeBlocks(new ArrowFlightConnector(server.getPort()), "blocks", "dict",
+					root -> results.add(((IntVector) root.getVector(0)).get(0)));
+			assertEquals(3, batches);
+		}
+		assertEquals(noOfBlocks, results.stream().mapToInt(Integer::intValue).sum());
+		assertEquals((long) noOfBlocks * block.length, producer.values);
+		assertArrayEquals(block, producer.lastBlock);
+	}
+
+	/**
+	 * Records the table put to it, and answers every batch of an exchange with its number of
+	 * rows, counting the pairs or the entities of the blocks it was sent.
+	 */
+	private static class RecordingProducer extends NoOpFlightProducer {
+		private final BufferAllocator allocator;
+		final Map<Integer, List<String>> rows = new ConcurrentHashMap<>();
+		final List<Boolean> encoded = new ArrayList<>();
+		volatile long values;
+		volatile int[] lastBlock;
+		volatile List<String> path;
+
+		RecordingProducer(BufferAllocator allocator) {
+			this.allocator = allocator;
+		}
+
+		@Override
+		public Runnable acceptPut(CallContext context, FlightStream flightStream, StreamListener<PutResult> ackStream) {
+			return () -> {
+				while (flightStream.next()) {
+					VectorSchemaRoot root = flightStream.getRoot();
+					List<FieldVector> columns = root.getFieldVectors().subList(1, root.getFieldVectors().size());
+					List<ValueVector> decoded = new ArrayList<>();
+					encoded.clear();
+					for (FieldVector column : columns) {
+						DictionaryEncoding encoding = column.getField().getDictionary();
+						encoded.add(encoding != null);
+						if (encoding == null) {
+							decoded.add(column);
+						} else {
+							Dictionary dictionary = flightStream.getDictionaryProvider().lookup(encoding.getId());
+							decoded.add(DictionaryEncoder.decode(column, dictionary));
+						}
+					}
+					UInt4Vector ids = (UInt4Vector) root.getVector(0);
+					for (int row = 0; row < root.getRowCount(); row++) {
+						List<String> values = new ArrayList<>();
+						for (ValueVector column : decoded)
+							values.add(new String(((VarCharVector) column).get(row), StandardCharsets.UTF_8));
+						rows.put(ids.get(row), values);
+					}
+					for (int i = 0; i < columns.size(); i++) {
+						if (decoded.get(i) != columns.get(i)) decoded.get(i).close();
+					}
+				}
+				ackStream.onCompleted();
+			};
+		}
+
+		@Override
+		public void doExchange(CallContext context, FlightStream reader, ServerStreamListener writer) {
+			path = reader.getDescriptor().getPath();
+			try (IntVector counts = new IntVector("rows", allocator);
+					VectorSchemaRoot results = VectorSchemaRoot.of(counts)) {
+				writer.start(results);
+				while (reader.next()) {
+					VectorSchemaRoot root = reader.getRoot();
+					if (root.getVector(0) instanceof ListVector) {
+						ListVector blocks = (ListVector) root.getVector(0);
+						UInt4Vector entities = (UInt4Vector) blocks.getDataVector();
+						for (int row = 0; row < root.getRowCount(); row++) {
+							int start = blocks.getElementStartIndex(row);
+							int end = blocks.getElementEndIndex(row);
+							int[] block = new int[end - start];
+							for (int i = start; i < end; i++) block[i - start] = entities.get(i);
+							lastBlock = block;
+							values += block.length;
+						}
+					} else {
+						values += root.getRowCount();
+					}
+					counts.setSafe(0, root.getRowCount());
+					results.setRowCount(1);
+					writer.putNext();
+				}
+				writer.completed();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import org.roaringbitmap.RoaringBitmap;
+
+class MatchersTest {
+
+	private static final Map<Integer, Object[]> PROFILES = new HashMap<>();
+
+	static {
+		PROFILES.put(0, new Object[] { "0", "john smith", "athens" });
+		PROFILES.put(1, new Object[] { "1", "john smith", "athens" });
+		PROFILES.put(2, new Object[] { "2", "mary jones", "patras" });
+		PROFILES.put(3, new Object[] { "3", "john smith", "" });
+	}
+
+	@Test
+	void createsTheMatchersByName() {
+		assertTrue(Matchers.create("Jaccard", null, PROFILES::get, 0) instanceof SimilarityMatcher);
+		assertTrue(Matchers.create(Matchers.JARO_WINKLER, null, PROFILES::get, 0) instanceof SimilarityMatcher);
+		assertThrows(IllegalArgumentException.class, () -> Matchers.create("levenshtein", null, PROFILES::get, 0));
+		assertTrue(Matchers.isInProcess(Matchers.JACCARD));
+		assertFalse(Matchers.isInProcess("REMOTE"));
+	}
+
+	@Test
+	void unitesThePairsReachingTheThreshold() {
+		// the key is left out, so 0 and 1 are identical and 3 shares two of the three tokens of 0
+		for (SimilarityMatcher.Similarity similarity : SimilarityMatcher.Similarity.values()) {
+			UnionFind uFind = new UnionFind(RoaringBitmap.bitmapOf(0, 1, 2, 3));
+			try (Matcher matcher = new SimilarityMatcher(similarity, 0.6, PROFILES::get, 0)) {
+				matcher.match(new int[] { 0, 0, 1 }, new int[] { 1, 2, 3 }, uFind);
+			}
+			assertTrue(uFind.isInSameSet(0, 1), similarity.name());
+			assertFalse(uFind.isInSameSet(0, 2), similarity.name());
+			assertEquals(1.0, new SimilarityMatcher(similarity, 0.6, PROFILES::get, 0)
+					.getSimilarity(PROFILES.get(0), PROFILES.get(1)), 1e-9);
+		}
+	}
+
+	@Test
+	void comparesTheTokensOfTheProfiles() {
+		SimilarityMatcher matcher = new SimilarityMatcher(SimilarityMatcher.Similarity.JACCARD, 0.5, PROFILES::get, 0);
+		assertEquals(2.0 / 3, matcher.getSimilarity(PROFILES.get(0), PROFILES.get(3)), 1e-9);
+		assertEquals(0.0, matcher.getSimilarity(PROFILES.get(0), PROFILES.get(2)), 1e-9);
+
+		UnionFind uFind = new UnionFind(RoaringBitmap.bitmapOf(0, 1, 2, 3));
+		matcher.match(new int[] { 0, 2 }, new int[] { 3, 3 }, uFind);
+		assertTrue(uFind.isInSameSet(0, 3));
+		assertFalse(uFind.isInSameSet(2, 3));
+	}
+
+}
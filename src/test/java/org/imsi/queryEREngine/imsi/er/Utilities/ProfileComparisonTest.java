@@ -0,0 +1,36 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ProfileComparisonTest {
+
+	@Test
+	void removesOnlyTheElementAtTheIndex() {
+		Object[] profile = {"a", "b", "c", "d"};
+		assertArrayEquals(new Object[] {"b", "c", "d"}, ProfileComparison.removeArrayElement(profile, 0));
+		assertArrayEquals(new Object[] {"a", "b", "d"}, ProfileComparison.removeArrayElement(profile, 2));
+		assertArrayEquals(new Object[] {"a", "b", "c"}, ProfileComparison.removeArrayElement(profile, 3));
+		assertArrayEquals(new Object[] {"a", "b", "c", "d"}, profile);
+	}
+
+	@Test
+	void leavesTheKeyOutOfTheJaccardSimilarity() {
+		Object[] profile1 = {"john smith", "1", "athens"};
+		Object[] profile2 = {"john smith", "2", "athens"};
+		assertEquals(1.0, ProfileComparison.getJaccardSimilarity(profile1, profile2, 1), 1e-12);
+		// 2 of the 4 tokens are common
+		Object[] profile3 = {"1", "john smith", "athens"};
+		Object[] profile4 = {"2", "john smith", "patras"};
+		assertEquals(0.5, ProfileComparison.getJaccardSimilarity(profile3, profile4, 0), 1e-12);
+	}
+
+	@Test
+	void skipsMissingValuesInTheJaroWinklerSimilarity() {
+		Object[] profile1 = {"1", "john", null};
+		Object[] profile2 = {"2", "john", "athens"};
+		assertEquals(1.0, ProfileComparison.getJaroSimilarity(profile1, profile2, 0), 1e-12);
+	}
+}
@@ -0,0 +1,65 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.jupiter.api.Test;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+class SimilarityMatcherTest {
+
+	private static Int2ObjectOpenHashMap<Object[]> profiles() {
+		Int2ObjectOpenHashMap<Object[]> profiles = new Int2ObjectOpenHashMap<>();
+		profiles.put(0, new Object[] {"0", "john smith", "athens"});
+		profiles.put(1, new Object[] {"1", "john smith", "athens"});
+		profiles.put(2, new Object[] {"2", "maria papadopoulou", "patras"});
+		profiles.put(3, new Object[] {"3", "john smith", "patras"});
+		return profiles;
+	}
+
+	@Test
+	void unitesThePairsAboveTheThreshold() {
+		Int2ObjectOpenHashMap<Object[]> profiles = profiles();
+		UnionFind uFind = new UnionFind(new HashSet<>(Arrays.asList(0, 1, 2, 3)));
+		try (Matcher matcher = new SimilarityMatcher(SimilarityMatcher.Similarity.JACCARD, 0.9, profiles::get, 0)) {
+			matcher.match(new int[] {0, 0, 1}, new int[] {1, 2, 3}, uFind);
+		}
+		assertTrue(uFind.isInSameSet(0, 1));
+		assertFalse(uFind.isInSameSet(0, 2));
+		// 2 of the 4 tokens are common
+		assertFalse(uFind.isInSameSet(1, 3));
+	}
+
+	@Test
+	void matchesAcrossBatches() {
+		Int2ObjectOpenHashMap<Object[]> profiles = profiles();
+		UnionFind uFind = new UnionFind(new HashSet<>(Arrays.asList(0, 1, 2, 3)));
+		try (Matcher matcher = new SimilarityMatcher(SimilarityMatcher.Similarity.JACCARD, 0.5, profiles::get, 0)) {
+			matcher.match(new int[] {0}, new int[] {1}, uFind);
+			matcher.match(new int[] {1}, new int[] {3}, uFind);
+		}
+		assertTrue(uFind.isInSameSet(0, 3));
+		assertFalse(uFind.isInSameSet(0, 2));
+	}
+
+	@Test
+	void comparesWithTheJaroWinklerSimilarity() {
+		Int2ObjectOpenHashMap<Object[]> profiles = profiles();
+		UnionFind uFind = new UnionFind(new HashSet<>(Arrays.asList(0, 1, 2, 3)));
+		try (Matcher matcher = new SimilarityMatcher(SimilarityMatcher.Similarity.JARO_WINKLER, 0.99, profiles::get, 0)) {
+			matcher.match(new int[] {0, 0}, new int[] {1, 2}, uFind);
+		}
+		assertTrue(uFind.isInSameSet(0, 1));
+		assertFalse(uFind.isInSameSet(0, 2));
+	}
+
+	@Test
+	void rejectsAnUnknownMatcher() {
+		assertThrows(IllegalArgumentException.class, () -> Matchers.create("bert", () -> null, id -> null, 0));
+	}
+}
@@ -0,0 +1,156 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.imsi.queryEREngine.imsi.er.DataStructures.AbstractBlock;
+import org.imsi.queryEREngine.imsi.er.DataStructures.Comparison;
+import org.imsi.queryEREngine.imsi.er.DataStructures.EntityIndex;
+import org.imsi.queryEREngine.imsi.er.DataStructures.UnilateralBlock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Common-block counting with {@link SortedIntersection} against the nested loop it replaced in
+ * {@link EntityIndex}, on pairs of block lists of the given lengths, and the common blocks of
+ * every neighbour of an entity by pairwise intersections against one pass over its blocks.
+ *
+ * Run with {@code mvn test-compile} and then the main method, with the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortedIntersectionBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Lists {
+		@Param({ "8", "64" })
+		int shorter;
+
+		@Param({ "64", "4096" })
+		int longer;
+
+		int[][] lists1 = new int[1024][];
+		int[][] lists2 = new int[1024][];
+
+		@Setup
+		public void setup() {
+			Random random = new Random(42);
+			for (int i = 0; i < lists1.length; i++) {
+				lists1[i] = random.ints(0, 1 << 17).distinct().limit(shorter).sorted().toArray();
+				lists2[i] = random.ints(0, 1 << 17).distinct().limit(longer).sorted().toArray();
+			}
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Blocks {
+		@Param({ "20000" })
+		int entities;
+
+		@Param({ "2000" })
+		int blocks;
+
+		AbstractBlock[] blockArray;
+		EntityIndex entityIndex;
+		int[] commonBlocks;
+		int[] neighbours;
+
+		@Setup
+		public void setup() {
+			Random random = new Random(42);
+			List<AbstractBlock> blockList = new ArrayList<>();
+			for (int b = 0; b < blocks; b++) {
+				int size = 2 + (int) (entities / 50 / Math.pow(b + 1, 0.5));
+				UnilateralBlock block = new UnilateralBlock(random.ints(0, entities).distinct().limit(size).sorted().toArray());
+				block.setBlockIndex(b);
+				blockList.add(block);
+			}
+			blockArray = blockList.toArray(new AbstractBlock[0]);
+			entityIndex = new EntityIndex(blockList);
+			commonBlocks = new int[entityIndex.getNoOfEntities()];
+			neighbours = new int[entityIndex.getNoOfEntities()];
+		}
+	}
+
+	@Benchmark
+	public int nestedLoop(Lists lists) {
+		int commonBlocks = 0;
+		for (int i = 0; i < lists.lists1.length; i++) commonBlocks += nestedLoop(lists.lists1[i], lists.lists2[i]);
+		return commonBlocks;
+	}
+
+	@Benchmark
+	public int sortedIntersection(Lists lists) {
+		int commonBlocks = 0;
+		for (int i = 0; i < lists.lists1.length; i++)
+			commonBlocks += SortedIntersection.count(lists.lists1[i], lists.lists2[i]);
+		return commonBlocks;
+	}
+
+	/** The common blocks of the first 100 entities with each neighbour, one intersection per pair. */
+	@Benchmark
+	public long pairwiseNeighbourhoods(Blocks blocks) {
+		long commonBlocks = 0;
+		for (int entity = 0; entity < 100; entity++) {
+			int noOfNeighbours = blocks.entityIndex.getNeighbourhood(entity, blocks.blockArray, blocks.commonBlocks,
+					blocks.neighbours);
+			for (int n = 0; n < noOfNeighbours; n++) {
+				blocks.commonBlocks[blocks.neighbours[n]] = 0;
+				commonBlocks += blocks.entityIndex.getTotalNoOfCommonBlocks(new Comparison(false, entity, blocks.neighbours[n]));
+			}
+		}
+		return commonBlocks;
+	}
+
+	/** The common blocks of the first 100 entities with each neighbour, accumulated over their blocks. */
+	@Benchmark
+	public long accumulatedNeighbourhoods(Blocks blocks) {
+		long commonBlocks = 0;
+		for (int entity = 0; entity < 100; entity++) {
+			int noOfNeighbours = blocks.entityIndex.getNeighbourhood(entity, blocks.blockArray, blocks.commonBlocks,
+					blocks.neighbours);
+			for (int n = 0; n < noOfNeighbours; n++) {
+				commonBlocks += blocks.commonBlocks[blocks.neighbours[n]];
+				blocks.commonBlocks[blocks.neighbours[n]] = 0;
+			}
+		}
+		return commonBlocks;
+	}
+
+	/** The loop of {@code EntityIndex.getTotalNoOfCommonBlocks} before the intersection kernels. */
+	private static int nestedLoop(int[] blocks1, int[] blocks2) {
+		int commonBlocks = 0;
+		for (int i = 0; i < blocks1.length; i++) {
+			for (int j = 0; j < blocks2.length; j++) {
+				if (blocks2[j] < blocks1[i]) continue;
+				if (blocks1[i] < blocks2[j]) break;
+				commonBlocks++;
+			}
+		}
+		return commonBlocks;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(SortedIntersectionBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,63 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class SortedIntersectionTest {
+
+	@Test
+	void intersectsListsOfEveryLengthRatio() {
+		Random random = new Random(17);
+		for (int round = 0; round < 500; round++) {
+			// the longer list is galloped once it is GALLOP_RATIO times longer than the shorter one
+			int[] list1 = randomList(random, random.nextInt(20));
+			int[] list2 = randomList(random, random.nextInt(round % 2 == 0 ? 20 : 3000));
+			int[] expected = intersection(list1, list2);
+
+			assertArrayEquals(expected, SortedIntersection.intersection(list1, list2));
+			assertArrayEquals(expected, SortedIntersection.intersection(list2, list1));
+			assertEquals(expected.length, SortedIntersection.count(list1, list2));
+			assertEquals(expected.length, SortedIntersection.count(list2, list1));
+			assertEquals(expected.length == 0 ? -1 : expected[0], SortedIntersection.first(list1, list2));
+		}
+	}
+
+	@Test
+	void countsAPairInItsFirstCommonBlockOnly() {
+		int[] blocks1 = { 2, 5, 9, 14 };
+		int[] blocks2 = { 5, 9, 20 };
+		assertEquals(2, SortedIntersection.countIfFirst(blocks1, blocks2, 5));
+		assertEquals(-1, SortedIntersection.countIfFirst(blocks1, blocks2, 9));
+		assertEquals(0, SortedIntersection.countIfFirst(blocks1, new int[] { 3 }, 2));
+	}
+
+	@Test
+	void gallopsToTheEndOfTheLongerList() {
+		int[] longer = new int[10_000];
+		for (int i = 0; i < longer.length; i++) longer[i] = 2 * i;
+		assertArrayEquals(new int[] { 0, 19_998 }, SortedIntersection.intersection(new int[] { 0, 19_998, 30_000 }, longer));
+		assertEquals(-1, SortedIntersection.first(new int[] { 1, 19_999 }, longer));
+	}
+
+	private static int[] randomList(Random random, int size) {
+		TreeSet<Integer> set = new TreeSet<>();
+		while (set.size() < size) set.add(random.nextInt(4 * size + 10));
+		return set.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static int[] intersection(int[] list1, int[] list2) {
+		TreeSet<Integer> set = new TreeSet<>();
+		for (int element : list1) set.add(element);
+		TreeSet<Integer> common = new TreeSet<>();
+		for (int element : list2) {
+			if (set.contains(element)) common.add(element);
+		}
+		return common.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+}
@@ -0,0 +1,121 @@
+package org.imsi.queryEREngine.imsi.er.Utilities;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of {@link Tokenizer} against the regular expression pipeline it replaced, over
+ * attribute values shaped like the rows of a people table. The tokens counter reports tokens
+ * per second.
+ *
+ * Run with {@code mvn test-compile} and then the main method, with the test classpath.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+	private static final String[] WORDS = { "John", "Smith", "Street", "Avenue", "Athens", "london", "Road",
+			"the", "of", "Apt.", "NEW-YORK", "o'brien", "42", "1987", "Main_St", "Kelly,", "Anne-Marie" };
+
+	@State(Scope.Benchmark)
+	public static class Values {
+		String[] values = new String[4096];
+
+		@Setup
+		public void setup() {
+			Random random = new Random(42);
+			for (int i = 0; i < values.length; i++) {
+				StringBuilder value = new StringBuilder();
+				int words = 1 + random.nextInt(6);
+				for (int w = 0; w < words; w++) {
+					if (w > 0) value.append(random.nextBoolean() ? " " : ", ");
+					value.append(WORDS[random.nextInt(WORDS.length)]);
+				}
+				values[i] = value.toString();
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+		public long tokens;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			tokens = 0;
+		}
+	}
+
+	@Benchmark
+	public void tokenizer(Values values, Counters counters, Blackhole blackhole) {
+		for (String value : values.values) {
+			Tokenizer.tokenize(value, token -> {
+				blackhole.consume(token);
+				counters.tokens++;
+			});
+		}
+	}
+
+	@Benchmark
+	public void regex(Values values, Counters counters, Blackhole blackhole) {
+		Set<String> stopwords = Tokenizer.getStopwords();
+		for (String value : values.values) {
+			String cleanValue = value.replaceAll("_", " ").trim().replaceAll("\\s*,\\s*$", "").toLowerCase();
+			for (String token : cleanValue.split("[\\W_]")) {
+				if (2 < token.trim().length() && !stopwords.contains(token.toLowerCase())) {
+					blackhole.consume(token.trim());
+					counters.tokens++;
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public void split(Values values, Counters counters, Blackhole blackhole) {
+		for (String value : values.values) {
+			Tokenizer.split(value, token -> {
+				blackhole.consume(token);
+				counters.tokens++;
+			});
+		}
+	}
+
+	@Benchmark
+	public void regexSplit(Values values, Counters counters, Blackhole blackhole) {
+		for (String value : values.values) {
+			for (String token : value.split("[\\W_]")) {
+				blackhole.consume(token);
+				counters.tokens++;
+			}
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(TokenizerBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+}